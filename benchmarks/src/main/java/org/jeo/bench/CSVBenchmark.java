@@ -0,0 +1,109 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.jeo.csv.CSVDataset;
+import org.jeo.csv.CSVOpts;
+import org.jeo.data.Cursor;
+import org.jeo.data.Query;
+import org.jeo.feature.Feature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * Scans of a csv file of points, with and without the columnar cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CSVBenchmark {
+
+    @Param({"100000"})
+    int size;
+
+    @Param({"false", "true"})
+    boolean cache;
+
+    File dir;
+    CSVDataset csv;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = Files.tempDir("csv");
+
+        File file = new File(dir, "points.csv");
+        new Synthetic().csv(file, size);
+
+        CSVOpts opts = new CSVOpts().xy("x", "y");
+        if (cache) {
+            opts.cache(new File(dir, "cache"));
+        }
+        csv = new CSVDataset(file, opts);
+    }
+
+    @TearDown
+    public void tearDown() {
+        csv.close();
+        Files.delete(dir);
+    }
+
+    @Benchmark
+    public double scan() throws IOException {
+        return scan(new Query());
+    }
+
+    @Benchmark
+    public double scanBounds() throws IOException {
+        return scan(new Query().bounds(new Envelope(-90, 0, -45, 0)));
+    }
+
+    @Benchmark
+    public double scanFilter() throws IOException {
+        return scan(new Query().filter("category = 3"));
+    }
+
+    double scan(Query q) throws IOException {
+        double sum = 0;
+        Cursor<Feature> c = csv.cursor(q);
+        try {
+            while (c.hasNext()) {
+                sum += c.next().geometry().getCoordinate().x;
+            }
+        }
+        finally {
+            c.close();
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,186 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.bench;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.jeo.json.JSONValue;
+import org.jeo.json.parser.ParseException;
+
+/**
+ * Compares two JMH result files written with <tt>-rf json</tt>.
+ * <p>
+ * Usage:
+ * <pre>
+ * java -cp target/benchmarks.jar org.jeo.bench.Compare baseline.json current.json [threshold]
+ * </pre>
+ * For every benchmark and parameter combination present in both files the scores are printed
+ * along with the relative change, positive meaning faster. A change is flagged as a regression
+ * when it is worse than the threshold percentage (default 5) and larger than the combined score
+ * errors. The exit status is 1 if any regression is found.
+ * </p>
+ */
+public class Compare {
+
+    static class Result {
+        String mode;
+        double score, error;
+        String unit;
+
+        /**
+         * Whether higher scores are better for the benchmark mode.
+         */
+        boolean higherIsBetter() {
+            return "thrpt".equals(mode);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: Compare <baseline.json> <current.json> [threshold]");
+            System.exit(2);
+        }
+
+        Map<String,Result> base = read(new File(args[0]));
+        Map<String,Result> curr = read(new File(args[1]));
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 5;
+
+        int regressions = compare(base, curr, threshold, System.out);
+        System.exit(regressions > 0 ? 1 : 0);
+    }
+
+    /**
+     * Prints the comparison of two result sets, returning the number of regressions.
+     */
+    static int compare(Map<String,Result> base, Map<String,Result> curr, double threshold,
+        PrintStream out) {
+
+        int width = 9;
+        for (String key : curr.keySet()) {
+            width = Math.max(width, key.length());
+        }
+
+        String fmt = "%-" + width + "s %14s %14s %-12s %9s %s%n";
+        out.printf(Locale.ROOT, fmt, "Benchmark", "Baseline", "Current", "Units", "Change", "");
+
+        int regressions = 0;
+        for (Map.Entry<String,Result> e : curr.entrySet()) {
+            Result c = e.getValue();
+            Result b = base.get(e.getKey());
+            if (b == null) {
+                out.printf(Locale.ROOT, fmt, e.getKey(), "-", score(c), c.unit, "", "new");
+                continue;
+            }
+
+            // positive change is an improvement regardless of mode
+            double change = (c.score - b.score) / b.score * 100;
+            if (!c.higherIsBetter()) {
+                change = -change;
+            }
+
+            String flag = "";
+            double error = nan(b.error) + nan(c.error);
+            if (change < -threshold && Math.abs(c.score - b.score) > error) {
+                flag = "REGRESSION";
+                regressions++;
+            }
+            else if (change > threshold && Math.abs(c.score - b.score) > error) {
+                flag = "improved";
+            }
+
+            out.printf(Locale.ROOT, fmt, e.getKey(), score(b), score(c), c.unit,
+                String.format(Locale.ROOT, "%+.1f%%", change), flag);
+        }
+
+        for (String key : base.keySet()) {
+            if (!curr.containsKey(key)) {
+                Result b = base.get(key);
+                out.printf(Locale.ROOT, fmt, key, score(b), "-", b.unit, "", "missing");
+            }
+        }
+        return regressions;
+    }
+
+    /**
+     * Reads a result file into a map keyed by benchmark name and parameters.
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String,Result> read(File file) throws IOException {
+        Object json;
+        BufferedReader in = new BufferedReader(new FileReader(file));
+        try {
+            json = JSONValue.parseWithException(in);
+        }
+        catch (ParseException e) {
+            throw new IOException("unable to parse " + file, e);
+        }
+        finally {
+            in.close();
+        }
+
+        Map<String,Result> results = new LinkedHashMap<String, Result>();
+        for (Object o : (List<Object>) json) {
+            Map<String,Object> obj = (Map<String, Object>) o;
+
+            StringBuilder key = new StringBuilder((String) obj.get("benchmark"));
+            key.replace(0, key.lastIndexOf(".", key.lastIndexOf(".") - 1) + 1, "");
+
+            Map<String,Object> params = (Map<String, Object>) obj.get("params");
+            if (params != null && !params.isEmpty()) {
+                List<String> kv = new ArrayList<String>();
+                for (Map.Entry<String,Object> p : new TreeMap<String,Object>(params).entrySet()) {
+                    kv.add(p.getKey() + "=" + p.getValue());
+                }
+                key.append(kv);
+            }
+
+            Map<String,Object> metric = (Map<String, Object>) obj.get("primaryMetric");
+
+            Result r = new Result();
+            r.mode = (String) obj.get("mode");
+            r.score = number(metric.get("score"));
+            r.error = number(metric.get("scoreError"));
+            r.unit = (String) metric.get("scoreUnit");
+            results.put(key.toString(), r);
+        }
+        return results;
+    }
+
+    static double number(Object obj) {
+        if (obj instanceof Number) {
+            return ((Number) obj).doubleValue();
+        }
+        // jmh writes NaN as a string
+        return obj != null ? Double.parseDouble(obj.toString()) : Double.NaN;
+    }
+
+    static double nan(double d) {
+        return Double.isNaN(d) ? 0 : d;
+    }
+
+    static String score(Result r) {
+        return String.format(Locale.ROOT, "%.3f", r.score);
+    }
+}
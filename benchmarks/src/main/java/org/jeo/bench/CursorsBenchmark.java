@@ -0,0 +1,124 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.bench;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jeo.data.Cursor;
+import org.jeo.data.Cursors;
+import org.jeo.feature.Feature;
+import org.jeo.filter.Filter;
+import org.jeo.filter.cql.CQL;
+import org.jeo.filter.cql.ParseException;
+import org.jeo.proj.Proj;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * Chains of {@link Cursors} wrappers over an in memory list of polygons.
+ * <p>
+ * Each benchmark touches the geometry and name of every feature so that lazy wrappers do their
+ * work.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CursorsBenchmark {
+
+    @Param({"10000"})
+    int size;
+
+    List<Feature> features;
+
+    Filter<Feature> filter;
+    Envelope bbox;
+    List<String> fields;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() throws ParseException {
+        features = new Synthetic().polygons(size, 16);
+        filter = CQL.parse("category < 5 AND value > 25");
+        bbox = new Envelope(-90, 90, -45, 45);
+        fields = Arrays.asList("geometry", "name");
+    }
+
+    @Benchmark
+    public int plain() throws IOException {
+        return consume(Cursors.create(features));
+    }
+
+    @Benchmark
+    public int filter() throws IOException {
+        return consume(Cursors.filter(Cursors.create(features), filter));
+    }
+
+    @Benchmark
+    public int intersects() throws IOException {
+        return consume(Cursors.intersects(Cursors.create(features), bbox));
+    }
+
+    @Benchmark
+    public int reproject() throws IOException {
+        return consume(Cursors.reproject(Cursors.create(features), Proj.EPSG_900913));
+    }
+
+    @Benchmark
+    public int selectFields() throws IOException {
+        return consume(Cursors.selectFields(Cursors.create(features), fields));
+    }
+
+    @Benchmark
+    public int chain() throws IOException {
+        Cursor<Feature> c = Cursors.create(features);
+        c = Cursors.filter(c, filter);
+        c = Cursors.intersects(c, bbox);
+        c = Cursors.selectFields(c, fields);
+        c = Cursors.reproject(c, Proj.EPSG_900913);
+        return consume(c);
+    }
+
+    int consume(Cursor<Feature> c) throws IOException {
+        int n = 0;
+        try {
+            while (c.hasNext()) {
+                Feature f = c.next();
+                n += f.geometry().getNumPoints() + ((String) f.get("name")).length();
+            }
+        }
+        finally {
+            c.close();
+        }
+        return n;
+    }
+}
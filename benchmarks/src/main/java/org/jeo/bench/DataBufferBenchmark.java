@@ -0,0 +1,75 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.bench;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.jeo.raster.DataBuffer;
+import org.jeo.raster.DataType;
+import org.jeo.util.Dimension;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Nearest neighbour resampling of raster buffers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DataBufferBenchmark {
+
+    @Param({"BYTE", "INT", "DOUBLE"})
+    DataType datatype;
+
+    /** source raster size */
+    @Param({"1024"})
+    int size;
+
+    /** ratio of the target to source raster size */
+    @Param({"0.25", "2"})
+    double ratio;
+
+    DataBuffer<Object> buffer;
+    Dimension from, to;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        byte[] data = new Synthetic().bytes(size * size * datatype.size());
+        buffer = DataBuffer.create(ByteBuffer.wrap(data), datatype);
+
+        int n = (int) (size * ratio);
+        from = new Dimension(size, size);
+        to = new Dimension(n, n);
+    }
+
+    @Benchmark
+    public DataBuffer<Object> resample() {
+        return DataBuffer.resample(buffer, from, to);
+    }
+}
@@ -0,0 +1,48 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.bench;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Scratch file helpers for benchmarks.
+ */
+class Files {
+
+    /**
+     * Creates a new temporary directory.
+     */
+    static File tempDir(String prefix) throws IOException {
+        File f = File.createTempFile("jeo-bench-" + prefix, "");
+        if (!f.delete() || !f.mkdirs()) {
+            throw new IOException("unable to create directory " + f.getPath());
+        }
+        return f;
+    }
+
+    /**
+     * Recursively deletes a file.
+     */
+    static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
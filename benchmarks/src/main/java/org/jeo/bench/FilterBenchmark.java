@@ -0,0 +1,83 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jeo.feature.Feature;
+import org.jeo.filter.Filter;
+import org.jeo.filter.cql.CQL;
+import org.jeo.filter.cql.ParseException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * CQL parsing and evaluation of the parsed filters against features.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FilterBenchmark {
+
+    @Param({
+        "category = 3",
+        "category < 5 AND value > 25",
+        "name LIKE 'name1%' OR (category IN (1, 2, 3) AND value BETWEEN 10 AND 90)",
+        "BBOX(geometry, -90, -45, 90, 45)"
+    })
+    String cql;
+
+    @Param({"10000"})
+    int size;
+
+    List<Feature> features;
+    Filter<Feature> filter;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() throws ParseException {
+        features = new Synthetic().points(size);
+        filter = CQL.parse(cql);
+    }
+
+    @Benchmark
+    public Filter<?> parse() throws ParseException {
+        return CQL.parse(cql);
+    }
+
+    @Benchmark
+    public int apply() {
+        int n = 0;
+        for (int i = 0; i < features.size(); i++) {
+            if (filter.apply(features.get(i))) {
+                n++;
+            }
+        }
+        return n;
+    }
+}
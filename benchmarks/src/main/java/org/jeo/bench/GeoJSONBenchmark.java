@@ -0,0 +1,98 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.bench;
+
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jeo.data.Cursor;
+import org.jeo.data.Cursors;
+import org.jeo.feature.Feature;
+import org.jeo.geojson.GeoJSONReader;
+import org.jeo.geojson.GeoJSONWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * GeoJSON encoding and parsing throughput for point and polygon collections.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GeoJSONBenchmark {
+
+    @Param({"points", "polygons"})
+    String geometry;
+
+    @Param({"10000"})
+    int size;
+
+    /** coordinate precision of the writer, -1 for full precision */
+    @Param({"-1", "6"})
+    int precision;
+
+    List<Feature> features;
+    String json;
+
+    CharArrayWriter out;
+
+    @Setup
+    public void setUp() throws IOException {
+        Synthetic data = new Synthetic();
+        features = "points".equals(geometry) ? data.points(size) : data.polygons(size, 32);
+        json = Synthetic.geojson(features);
+        out = new CharArrayWriter(json.length());
+    }
+
+    @Benchmark
+    public int write() throws IOException {
+        out.reset();
+
+        GeoJSONWriter w = new GeoJSONWriter(out);
+        w.setPrecision(precision);
+        w.featureCollection(Cursors.create(features));
+        w.flush();
+        return out.size();
+    }
+
+    @Benchmark
+    public int read() throws IOException {
+        int n = 0;
+        Cursor<Feature> c = new GeoJSONReader().features(json);
+        try {
+            while (c.hasNext()) {
+                n += c.next().geometry().getNumPoints();
+            }
+        }
+        finally {
+            c.close();
+        }
+        return n;
+    }
+}
@@ -0,0 +1,186 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jeo.data.Cursor;
+import org.jeo.data.Query;
+import org.jeo.data.Transaction;
+import org.jeo.feature.Feature;
+import org.jeo.geopkg.GeoPackage;
+import org.jeo.geopkg.GeoPkgVector;
+import org.jeo.geopkg.GeoPkgWorkspace;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * GeoPackage feature reads and transactional inserts.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GeoPkgBenchmark {
+
+    /**
+     * GeoPackage with a table of polygons, created once.
+     */
+    @State(Scope.Benchmark)
+    public static class Read {
+
+        @Param({"10000"})
+        int size;
+
+        File dir;
+        GeoPkgWorkspace gpkg;
+        GeoPkgVector polygons;
+
+        @Setup
+        public void setUp() throws IOException {
+            dir = Files.tempDir("gpkg");
+            gpkg = GeoPackage.open(new File(dir, "read.gpkg"));
+
+            List<Feature> features = new Synthetic().polygons(size, 16);
+            polygons = gpkg.create(features.get(0).schema());
+            insert(polygons, features);
+        }
+
+        @TearDown
+        public void tearDown() {
+            gpkg.close();
+            Files.delete(dir);
+        }
+    }
+
+    /**
+     * Empty GeoPackage table recreated for every iteration.
+     */
+    @State(Scope.Benchmark)
+    public static class Write {
+
+        @Param({"1000"})
+        int batch;
+
+        List<Feature> features;
+
+        File dir;
+        GeoPkgWorkspace gpkg;
+        GeoPkgVector polygons;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            features = new Synthetic().polygons(batch, 16);
+            dir = Files.tempDir("gpkg");
+        }
+
+        @Setup(Level.Iteration)
+        public void open() throws IOException {
+            File file = new File(dir, "write.gpkg");
+            file.delete();
+
+            gpkg = GeoPackage.open(file);
+            polygons = gpkg.create(features.get(0).schema());
+        }
+
+        @TearDown(Level.Iteration)
+        public void close() {
+            gpkg.close();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            Files.delete(dir);
+        }
+    }
+
+    @Benchmark
+    public double cursor(Read s) throws IOException {
+        return read(s.polygons, new Query());
+    }
+
+    @Benchmark
+    public double cursorBounds(Read s) throws IOException {
+        return read(s.polygons, new Query().bounds(new Envelope(-90, 0, -45, 0)));
+    }
+
+    @Benchmark
+    public double cursorFilter(Read s) throws IOException {
+        return read(s.polygons, new Query().filter("category = 3 AND value > 50"));
+    }
+
+    @Benchmark
+    public int insert(Write s) throws IOException {
+        insert(s.polygons, s.features);
+        return s.features.size();
+    }
+
+    static double read(GeoPkgVector data, Query q) throws IOException {
+        double sum = 0;
+        Cursor<Feature> c = data.cursor(q);
+        try {
+            while (c.hasNext()) {
+                Feature f = c.next();
+                sum += f.geometry().getNumPoints() + ((Number) f.get("value")).doubleValue();
+            }
+        }
+        finally {
+            c.close();
+        }
+        return sum;
+    }
+
+    static void insert(GeoPkgVector data, List<Feature> features) throws IOException {
+        Transaction tx = data.transaction(null);
+        try {
+            Cursor<Feature> c = data.cursor(new Query().append().transaction(tx));
+            try {
+                for (Feature src : features) {
+                    Feature f = c.next();
+                    f.put(src.geometry());
+                    f.put("name", src.get("name"));
+                    f.put("category", src.get("category"));
+                    f.put("value", src.get("value"));
+                    c.write();
+                }
+            }
+            finally {
+                c.close();
+            }
+            tx.commit();
+        }
+        catch (IOException e) {
+            tx.rollback();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.jeo.map.Rule;
+import org.jeo.map.render.Label;
+import org.jeo.map.render.LabelIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.util.AffineTransformation;
+
+/**
+ * Conflict detection of labels in a {@link LabelIndex}.
+ * <p>
+ * Labels are text sized boxes placed randomly over a large screen, with random priorities, 
+ * optionally rotated so the exact shape test is exercised.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LabelIndexBenchmark {
+
+    @Param({"100000"})
+    int size;
+
+    @Param({"false", "true"})
+    boolean rotated;
+
+    List<Label> labels;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(Synthetic.SEED);
+        GeometryFactory gf = new GeometryFactory();
+
+        Rule[] rules = new Rule[10];
+        for (int i = 0; i < rules.length; i++) {
+            rules[i] = new Rule();
+            rules[i].put("text-priority", i);
+        }
+
+        labels = new ArrayList<Label>(size);
+        for (int i = 0; i < size; i++) {
+            double x = random.nextDouble() * 8192, y = random.nextDouble() * 8192;
+            double w = 20 + random.nextDouble() * 80, h = 12;
+
+            Label l = new Label("label" + i, rules[random.nextInt(rules.length)], null, null);
+            Envelope box = new Envelope(x - w/2, x + w/2, y - h/2, y + h/2);
+            if (rotated) {
+                Geometry shape = AffineTransformation.rotationInstance(
+                    random.nextDouble() * Math.PI, x, y).transform(gf.toGeometry(box));
+                l.setBounds(shape.getEnvelopeInternal());
+                l.setShape(shape);
+            }
+            else {
+                l.setBounds(box);
+            }
+            labels.add(l);
+        }
+    }
+
+    @Benchmark
+    public int insert() {
+        LabelIndex index = new LabelIndex();
+
+        int n = 0;
+        for (int i = 0; i < labels.size(); i++) {
+            if (index.insert(labels.get(i))) {
+                n++;
+            }
+        }
+        return n;
+    }
+}
@@ -0,0 +1,130 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.bench;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.jeo.data.Cursors;
+import org.jeo.data.Query;
+import org.jeo.data.mem.MemVector;
+import org.jeo.feature.Feature;
+import org.jeo.geom.Envelopes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * Concurrent reads and writes of a {@link MemVector}.
+ * <p>
+ * Readers run bounding box queries with an attribute filter. In the <tt>contended</tt> group a
+ * writer repeatedly removes and adds back a batch of features while the readers run, the
+ * <tt>uncontended</tt> group runs the same readers alone as a baseline.
+ * </p>
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MemVectorBenchmark {
+
+    @Param({"100000"})
+    int size;
+
+    @Param({"100"})
+    int batch;
+
+    MemVector mem;
+    List<Feature> batches;
+    int next;
+
+    @Setup
+    public void setUp() {
+        List<Feature> features = new Synthetic().points(size);
+        mem = Synthetic.memory(features);
+        mem.index("category", false);
+
+        batches = features.subList(0, Math.min(batch * 10, size));
+    }
+
+    /**
+     * Per thread query boxes.
+     */
+    @State(Scope.Thread)
+    public static class Queries {
+
+        List<Query> queries;
+        int next;
+
+        @Setup
+        public void setUp() {
+            queries = new ArrayList<Query>();
+            for (Envelope box : Envelopes.randoms(Synthetic.WORLD, 0.001f, 0.01f, 1000,
+                new Random(Thread.currentThread().getId()))) {
+                queries.add(new Query().bounds(box).filter("category = 3"));
+            }
+        }
+
+        Query next() {
+            return queries.get(next++ % queries.size());
+        }
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(7)
+    public int read(Queries queries) throws IOException {
+        return query(queries);
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public void write() {
+        int i = (next++ * batch) % batches.size();
+        List<Feature> b = batches.subList(i, Math.min(i + batch, batches.size()));
+
+        mem.removeAll(b);
+        mem.addAll(b);
+    }
+
+    @Benchmark
+    @Group("uncontended")
+    @GroupThreads(7)
+    public int readOnly(Queries queries) throws IOException {
+        return query(queries);
+    }
+
+    int query(Queries queries) throws IOException {
+        return Cursors.size(mem.cursor(queries.next()));
+    }
+}
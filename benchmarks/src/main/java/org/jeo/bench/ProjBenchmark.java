@@ -0,0 +1,124 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jeo.feature.Feature;
+import org.jeo.proj.Proj;
+import org.osgeo.proj4j.CoordinateReferenceSystem;
+import org.osgeo.proj4j.CoordinateTransform;
+import org.osgeo.proj4j.ProjCoordinate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * Coordinate, geometry and envelope transforms between geographic and projected systems.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ProjBenchmark {
+
+    @Param({"EPSG:3857", "EPSG:26910"})
+    String target;
+
+    @Param({"1000"})
+    int size;
+
+    CoordinateReferenceSystem from, to;
+    CoordinateTransform tx;
+
+    List<Geometry> geoms;
+    ProjCoordinate[] coords;
+    ProjCoordinate dst = new ProjCoordinate();
+
+    @Setup
+    public void setUp() {
+        from = Proj.EPSG_4326;
+        to = Proj.crs(target);
+        tx = Proj.transform(from, to);
+
+        geoms = new ArrayList<Geometry>();
+        for (Feature f : new Synthetic().polygons(area(target), size, 16)) {
+            geoms.add(f.geometry());
+        }
+
+        List<ProjCoordinate> list = new ArrayList<ProjCoordinate>();
+        for (Geometry g : geoms) {
+            for (Coordinate c : g.getCoordinates()) {
+                list.add(new ProjCoordinate(c.x, c.y));
+            }
+        }
+        coords = list.toArray(new ProjCoordinate[list.size()]);
+    }
+
+    /*
+     * Geographic area of use of the target crs.
+     */
+    static Envelope area(String target) {
+        if ("EPSG:26910".equals(target)) {
+            // utm zone 10n
+            return new Envelope(-126, -120, 30, 70);
+        }
+        return new Envelope(-180, 180, -80, 80);
+    }
+
+    @Benchmark
+    public double coordinates() {
+        double sum = 0;
+        for (ProjCoordinate c : coords) {
+            tx.transform(c, dst);
+            sum += dst.x;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int geometries() {
+        int n = 0;
+        for (Geometry g : geoms) {
+            n += Proj.transform(g, tx).getNumPoints();
+        }
+        return n;
+    }
+
+    @Benchmark
+    public double envelopes() {
+        double sum = 0;
+        for (Geometry g : geoms) {
+            sum += Proj.reproject(g.getEnvelopeInternal(), from, to).getWidth();
+        }
+        return sum;
+    }
+}
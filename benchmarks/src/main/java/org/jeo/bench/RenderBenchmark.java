@@ -0,0 +1,121 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.bench;
+
+import static org.jeo.map.CartoCSS.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.jeo.data.mem.MemVector;
+import org.jeo.filter.Property;
+import org.jeo.map.RGB;
+import org.jeo.map.Style;
+import org.jeo.map.View;
+import org.jeo.map.render.Renderer;
+import org.jeo.map.render.Renderers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * Renders a synthetic polygon layer with labels through {@link org.jeo.map.render.BaseRenderer}.
+ * <p>
+ * The full extent view exercises culling of small features, the zoomed in view exercises
+ * clipping.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RenderBenchmark {
+
+    @Param({"svg", "java2d"})
+    String renderer;
+
+    @Param({"10000"})
+    int size;
+
+    @Param({"world", "zoom"})
+    String extent;
+
+    MemVector data;
+    Style style;
+    Envelope bounds;
+
+    @Setup
+    public void setUp() throws IOException {
+        data = Synthetic.memory(new Synthetic().polygons(size, 16));
+
+        style = Style.build().select("*")
+            .set(POLYGON_FILL, RGB.green).set(LINE_COLOR, RGB.black).set(LINE_WIDTH, 0.5)
+            .set(TEXT_NAME, new Property("name")).set(TEXT_FILL, RGB.black).set(TEXT_SIZE, 10)
+            .style();
+
+        bounds = "world".equals(extent) ? Synthetic.WORLD : new Envelope(-20, 20, -10, 10);
+    }
+
+    @Benchmark
+    public long render() throws IOException {
+        View view = org.jeo.map.Map.build().layer("polygons", data).style(style)
+            .bounds(bounds).size(512, 256).view();
+
+        Map<Object,Object> opts = new HashMap<Object, Object>();
+
+        CountingOutputStream out = new CountingOutputStream();
+        Renderer r = Renderers.create(renderer, view, opts);
+        try {
+            r.init(view, opts);
+            r.render(out);
+        }
+        finally {
+            r.close();
+        }
+        return out.count;
+    }
+
+    /**
+     * Output stream discarding and counting bytes.
+     */
+    static class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.bench;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.jeo.data.Cursors;
+import org.jeo.feature.ArrayFeature;
+import org.jeo.feature.BasicFeature;
+import org.jeo.feature.Feature;
+import org.jeo.feature.Schema;
+import org.jeo.feature.SchemaBuilder;
+import org.jeo.filter.Filter;
+import org.jeo.filter.cql.CQL;
+import org.jeo.filter.cql.ParseException;
+import org.jeo.geom.GeomBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vividsolutions.jts.geom.Point;
+
+/**
+ * Field access on features with wide schemas, as read from database tables with many columns.
+ * <p>
+ * Compares list backed {@link BasicFeature} objects with {@link ArrayFeature} objects, looking up
+ * the last field by name and filtering on it.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SchemaBenchmark {
+
+    @Param({"10", "100", "400"})
+    int fields;
+
+    @Param({"10000"})
+    int size;
+
+    Schema schema;
+    String last;
+
+    List<Feature> basic;
+    List<Feature> array;
+
+    Filter<Feature> filter;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() throws ParseException {
+        SchemaBuilder sb = Schema.build("wide").field("geometry", Point.class, "epsg:4326");
+        for (int i = 1; i < fields; i++) {
+            sb.field("field" + i, Double.class);
+        }
+        schema = sb.schema();
+        last = "field" + (fields - 1);
+
+        Random random = new Random(Synthetic.SEED);
+        GeomBuilder gb = new GeomBuilder();
+
+        basic = new ArrayList<Feature>(size);
+        array = new ArrayList<Feature>(size);
+        for (int i = 0; i < size; i++) {
+            Object[] values = new Object[fields];
+            values[0] = gb.point(random.nextDouble() * 360 - 180, random.nextDouble() * 180 - 90)
+                .toPoint();
+            for (int j = 1; j < fields; j++) {
+                values[j] = random.nextDouble() * 100;
+            }
+
+            basic.add(new BasicFeature(String.valueOf(i), Arrays.asList(values), schema));
+            array.add(new ArrayFeature(String.valueOf(i), values, schema));
+        }
+
+        filter = CQL.parse(last + " > 50");
+    }
+
+    @Benchmark
+    public int indexOf() {
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            n += schema.indexOf(last);
+        }
+        return n;
+    }
+
+    @Benchmark
+    public double getBasic() {
+        return sum(basic);
+    }
+
+    @Benchmark
+    public double getArray() {
+        return sum(array);
+    }
+
+    @Benchmark
+    public int geometryBasic() {
+        return geometry(basic);
+    }
+
+    @Benchmark
+    public int geometryArray() {
+        return geometry(array);
+    }
+
+    @Benchmark
+    public int filterBasic() throws IOException {
+        return filter(basic);
+    }
+
+    @Benchmark
+    public int filterArray() throws IOException {
+        return filter(array);
+    }
+
+    double sum(List<Feature> features) {
+        double sum = 0;
+        for (int i = 0; i < features.size(); i++) {
+            sum += (Double) features.get(i).get(last);
+        }
+        return sum;
+    }
+
+    int geometry(List<Feature> features) {
+        int n = 0;
+        for (int i = 0; i < features.size(); i++) {
+            n += features.get(i).geometry().getNumPoints();
+        }
+        return n;
+    }
+
+    int filter(List<Feature> features) throws IOException {
+        return Cursors.size(Cursors.filter(Cursors.create(features), filter));
+    }
+}
@@ -0,0 +1,147 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.bench;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.jeo.geom.Envelopes;
+import org.jeo.geom.PackedRTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.index.ItemVisitor;
+import com.vividsolutions.jts.index.quadtree.Quadtree;
+import com.vividsolutions.jts.index.strtree.STRtree;
+
+/**
+ * Building and querying spatial indexes of feature bounds.
+ * <p>
+ * Compares the JTS {@link Quadtree} and {@link STRtree} with {@link PackedRTree}. Queries count
+ * the items whose bounds actually intersect the query box, so the quadtree pays for filtering its
+ * false positives.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SpatialIndexBenchmark {
+
+    @Param({"100000"})
+    int size;
+
+    List<Envelope> boxes;
+    List<Envelope> queries;
+
+    Quadtree quadtree;
+    STRtree strtree;
+    PackedRTree packed;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(Synthetic.SEED);
+        boxes = Envelopes.randoms(Synthetic.WORLD, 0.0001f, 0.01f, size, random);
+        queries = Envelopes.randoms(Synthetic.WORLD, 0.01f, 0.1f, 1000, random);
+
+        quadtree = buildQuadtree();
+        strtree = buildSTRtree();
+        packed = buildPacked();
+    }
+
+    @Benchmark
+    public Quadtree buildQuadtree() {
+        Quadtree index = new Quadtree();
+        for (int i = 0; i < boxes.size(); i++) {
+            index.insert(boxes.get(i), i);
+        }
+        return index;
+    }
+
+    @Benchmark
+    public STRtree buildSTRtree() {
+        STRtree index = new STRtree();
+        for (int i = 0; i < boxes.size(); i++) {
+            index.insert(boxes.get(i), i);
+        }
+        index.build();
+        return index;
+    }
+
+    @Benchmark
+    public PackedRTree buildPacked() {
+        PackedRTree index = new PackedRTree(boxes.size());
+        for (int i = 0; i < boxes.size(); i++) {
+            index.insert(boxes.get(i), i);
+        }
+        index.build();
+        return index;
+    }
+
+    @Benchmark
+    public int queryQuadtree() {
+        int n = 0;
+        for (Envelope q : queries) {
+            for (Object item : quadtree.query(q)) {
+                if (boxes.get((Integer) item).intersects(q)) {
+                    n++;
+                }
+            }
+        }
+        return n;
+    }
+
+    @Benchmark
+    public int querySTRtree() {
+        final int[] n = new int[1];
+        for (Envelope q : queries) {
+            strtree.query(q, new ItemVisitor() {
+                @Override
+                public void visitItem(Object item) {
+                    n[0]++;
+                }
+            });
+        }
+        return n[0];
+    }
+
+    @Benchmark
+    public int queryPacked() {
+        final int[] n = new int[1];
+        for (Envelope q : queries) {
+            packed.query(q, new PackedRTree.Visitor() {
+                @Override
+                public boolean visit(int item) {
+                    n[0]++;
+                    return true;
+                }
+            });
+        }
+        return n[0];
+    }
+}
@@ -0,0 +1,196 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.bench;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.jeo.data.Cursors;
+import org.jeo.data.mem.MemVector;
+import org.jeo.feature.Feature;
+import org.jeo.feature.Features;
+import org.jeo.feature.Schema;
+import org.jeo.geojson.GeoJSONWriter;
+import org.jeo.geom.Envelopes;
+import org.jeo.geom.GeomBuilder;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * Generates synthetic benchmark data.
+ * <p>
+ * All data is derived from a seeded generator so that every run of a benchmark operates on the
+ * same data. Features are spread over the world in geographic coordinates and carry a name, a
+ * category and a numeric value.
+ * </p>
+ */
+public class Synthetic {
+
+    /** default seed */
+    public static final long SEED = 2014;
+
+    /** extent of generated data */
+    public static final Envelope WORLD = new Envelope(-180, 180, -90, 90);
+
+    /** number of distinct values of the category attribute */
+    public static final int CATEGORIES = 10;
+
+    final Random random;
+
+    public Synthetic() {
+        this(SEED);
+    }
+
+    public Synthetic(long seed) {
+        random = new Random(seed);
+    }
+
+    /**
+     * Schema of generated features with the specified geometry type.
+     */
+    public static Schema schema(String name, Class<? extends Geometry> type) {
+        return Schema.build(name).field("geometry", type, "epsg:4326")
+            .field("name", String.class).field("category", Integer.class)
+            .field("value", Double.class).schema();
+    }
+
+    /**
+     * Generates random points.
+     */
+    public List<Feature> points(int n) {
+        Schema schema = schema("points", Point.class);
+        GeomBuilder gb = new GeomBuilder();
+
+        List<Feature> list = new ArrayList<Feature>(n);
+        for (int i = 0; i < n; i++) {
+            Point p = gb.point(x(), y()).toPoint();
+            list.add(feature(schema, i, p));
+        }
+        return list;
+    }
+
+    /**
+     * Generates random polygons with the specified number of vertices.
+     * <p>
+     * Polygons are star shaped around the center of envelopes obtained from
+     * {@link Envelopes#randoms(Envelope, float, float, int, Random)}, with sizes from 0.01% to
+     * 1% of the world extent.
+     * </p>
+     */
+    public List<Feature> polygons(int n, int vertices) {
+        return polygons(WORLD, n, vertices);
+    }
+
+    /**
+     * Generates random polygons within the specified extent.
+     *
+     * @see #polygons(int, int)
+     */
+    public List<Feature> polygons(Envelope extent, int n, int vertices) {
+        Schema schema = schema("polygons", Polygon.class);
+        GeomBuilder gb = new GeomBuilder();
+
+        List<Envelope> boxes = Envelopes.randoms(extent, 0.0001f, 0.01f, n, random);
+        List<Feature> list = new ArrayList<Feature>(n);
+        for (int i = 0; i < n; i++) {
+            Envelope e = boxes.get(i);
+            double cx = e.centre().x, cy = e.centre().y;
+
+            double[] ords = new double[(vertices + 1) * 2];
+            for (int j = 0; j < vertices; j++) {
+                double a = 2 * Math.PI * j / vertices;
+                double r = 0.5 + random.nextDouble() / 2;
+                ords[j*2] = cx + Math.cos(a) * r * e.getWidth() / 2;
+                ords[j*2+1] = cy + Math.sin(a) * r * e.getHeight() / 2;
+            }
+            ords[vertices*2] = ords[0];
+            ords[vertices*2+1] = ords[1];
+
+            list.add(feature(schema, i, gb.points(ords).ring().toPolygon()));
+        }
+        return list;
+    }
+
+    /**
+     * Loads features into a memory dataset.
+     */
+    public static MemVector memory(List<Feature> features) {
+        MemVector mem = new MemVector(features.get(0).schema());
+        mem.addAll(features);
+        return mem;
+    }
+
+    /**
+     * Encodes features as a GeoJSON feature collection.
+     */
+    public static String geojson(List<Feature> features) throws IOException {
+        StringWriter out = new StringWriter();
+        GeoJSONWriter w = new GeoJSONWriter(out);
+        w.featureCollection(Cursors.create(features));
+        w.flush();
+        return out.toString();
+    }
+
+    /**
+     * Writes random points to a csv file with columns <tt>x</tt>, <tt>y</tt>, <tt>name</tt>,
+     * <tt>category</tt> and <tt>value</tt>.
+     */
+    public void csv(File file, int n) throws IOException {
+        BufferedWriter w = new BufferedWriter(new FileWriter(file));
+        try {
+            w.write("x,y,name,category,value");
+            w.newLine();
+            for (int i = 0; i < n; i++) {
+                w.write(x() + "," + y() + ",name" + i + "," + random.nextInt(CATEGORIES) + ","
+                    + random.nextDouble() * 100);
+                w.newLine();
+            }
+        }
+        finally {
+            w.close();
+        }
+    }
+
+    /**
+     * Generates raw raster data.
+     */
+    public byte[] bytes(int n) {
+        byte[] b = new byte[n];
+        random.nextBytes(b);
+        return b;
+    }
+
+    Feature feature(Schema schema, int i, Geometry g) {
+        return Features.create(String.valueOf(i), schema, g, "name" + i,
+            random.nextInt(CATEGORIES), random.nextDouble() * 100);
+    }
+
+    double x() {
+        return WORLD.getMinX() + random.nextDouble() * WORLD.getWidth();
+    }
+
+    double y() {
+        return WORLD.getMinY() + random.nextDouble() * WORLD.getHeight();
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * JMH benchmarks and synthetic data generators.
+ */
+package org.jeo.bench;
@@ -35,6 +35,10 @@ import org.jeo.feature.Features;
 import org.jeo.feature.Schema;
 import org.jeo.filter.Filter;
 import org.jeo.geojson.GeoJSONWriter;
+import org.jeo.geopkg.GeoPkgWorkspace;
+import org.jeo.geopkg.TileEntry;
+import org.jeo.mvt.VectorTileEncoder;
+import org.jeo.tile.Tile;
 import org.osgeo.proj4j.CoordinateReferenceSystem;
 
 import com.beust.jcommander.Parameter;
@@ -62,6 +66,13 @@ public class ConvertCmd extends JeoCmd {
     @Parameter(names = {"-mu", "--multify"}, description="Wrap single geometry objects in collection")
     boolean multify = false;
 
+    @Parameter(names = {"-p", "--precision"}, description="Decimal places of GeoJSON coordinates")
+    Integer precision;
+
+    @Parameter(names = {"-vt", "--vector-tiles"},
+        description="Zoom levels (min-max) of vector tiles to write to a GeoPackage target")
+    String tiles;
+
     @Override
     protected void doCommand(JeoCLI cli) throws Exception {
         Object from = Drivers.open(parseDataURI(datas.get(0)));
@@ -72,6 +83,11 @@ public class ConvertCmd extends JeoCmd {
         VectorDataset orig = open((VectorDataset) from);
         Schema schema = orig.schema();
 
+        if (tiles != null) {
+            writeTiles(orig, cli);
+            return;
+        }
+
         // choose a sink, if user specified a destination dataset copy over otherwise just
         // output as geojson
         Sink sink = null;
@@ -173,6 +189,74 @@ public class ConvertCmd extends JeoCmd {
 
     }
 
+    void writeTiles(VectorDataset orig, JeoCLI cli) throws Exception {
+        int[] zoom = parseZoomRange(tiles);
+
+        if (datas.size() < 2) {
+            throw new IllegalArgumentException("Vector tiles require a target GeoPackage");
+        }
+
+        // open the geopackage itself, the fragment names the tile set
+        URI uri = parseDataURI(datas.get(1));
+        String name = uri.getFragment() != null ? uri.getFragment() : orig.getName();
+        uri = new URI(uri.getScheme(), uri.getSchemeSpecificPart(), null);
+
+        Object to = Drivers.open(uri);
+        if (!(to instanceof GeoPkgWorkspace)) {
+            throw new IllegalArgumentException("Vector tile target must be a GeoPackage: " + uri);
+        }
+
+        GeoPkgWorkspace geopkg = open((GeoPkgWorkspace) to);
+        if (geopkg.get(name) != null) {
+            throw new IllegalArgumentException("Destination dataset already exists");
+        }
+
+        VectorTileEncoder encoder = new VectorTileEncoder(VectorTileEncoder.webMercator(zoom[1]));
+
+        TileEntry entry = new TileEntry();
+        entry.setTableName(name);
+        entry.setTilePyramid(encoder.getPyramid());
+        geopkg.create(entry);
+
+        Query q = new Query();
+        if (bbox != null) {
+            q.bounds(bbox);
+        }
+        if (filter != null) {
+            q.filter(filter);
+        }
+
+        int count = 0;
+        Cursor<Tile> c = encoder.encode(orig, q, zoom[0], zoom[1]);
+        try {
+            while (c.hasNext()) {
+                geopkg.insert(entry, c.next());
+                count++;
+            }
+        }
+        finally {
+            c.close();
+        }
+
+        cli.getConsole().println(String.format("Wrote %d tiles to %s", count, name));
+        cli.getConsole().flush();
+    }
+
+    int[] parseZoomRange(String range) {
+        try {
+            String[] split = range.split("-");
+            int min = Integer.parseInt(split[0].trim());
+            int max = split.length > 1 ? Integer.parseInt(split[1].trim()) : min;
+            if (split.length > 2 || min < 0 || max < min) {
+                throw new IllegalArgumentException();
+            }
+            return new int[]{min, max};
+        }
+        catch(RuntimeException e) {
+            throw new IllegalArgumentException("Invalid zoom range: " + range + ", expected min-max");
+        }
+    }
+
     interface Sink {
         void start(VectorDataset data, JeoCLI cli) throws IOException;
 
@@ -247,6 +331,9 @@ public class ConvertCmd extends JeoCmd {
         @Override
         public void start(VectorDataset data, JeoCLI cli) throws IOException {
             out = cli.newJSONWriter();
+            if (precision != null) {
+                out.setPrecision(precision);
+            }
             out.featureCollection();
         }
 
@@ -18,6 +18,7 @@ import java.net.URI;
 import java.util.List;
 
 import org.jeo.cli.JeoCLI;
+import org.jeo.data.Aggregate;
 import org.jeo.data.Cursor;
 import org.jeo.data.Cursors;
 import org.jeo.data.Dataset;
@@ -51,6 +52,14 @@ public class QueryCmd extends JeoCmd {
 
     @Parameter(names = {"-s", "-summary"}, description = "Summarize results only")
     boolean summary;
+
+    @Parameter(names = {"-a", "--aggregate"},
+        description = "Aggregates to compute separated by ';', one of count, count(p), sum(p), " +
+            "min(p), max(p), mean(p), histogram(p,lower,upper,bins)")
+    String aggregate;
+
+    @Parameter(names = {"-g", "--group-by"}, description = "Properties to group aggregates by")
+    String groupBy;
     
     @Override
     protected void doCommand(JeoCLI cli) throws Exception {
@@ -92,12 +101,21 @@ public class QueryCmd extends JeoCmd {
         if (count != null) {
             q.limit(count);
         }
+        if (aggregate != null) {
+            for (String spec : aggregate.split(";")) {
+                q.aggregate(Aggregate.parse(spec));
+            }
+        }
+        if (groupBy != null) {
+            q.groupBy(groupBy.split(" *, *"));
+        }
 
-        if (summary) {
+        if (summary && !q.isAggregated()) {
             w.object().key("count").value(dataset.count(q)).endObject();
         }
         else {
-            w.featureCollection(dataset.cursor(q));
+            // features are written out as they are read
+            w.featureCollection(dataset.cursor(q.reuse()));
         }
     }
 
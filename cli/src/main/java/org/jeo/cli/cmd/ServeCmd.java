@@ -25,6 +25,8 @@ import org.jeo.data.DataRepository;
 import org.jeo.data.DataRepositoryView;
 import org.jeo.data.DirectoryRepository;
 import org.jeo.data.JSONRepository;
+import org.jeo.data.MetadataCache;
+import org.jeo.filter.Filters;
 import org.jeo.nano.NanoServer;
 
 import com.beust.jcommander.Parameter;
@@ -60,7 +62,12 @@ public class ServeCmd extends JeoCmd {
     DataRepositoryView registry(File f, JeoCLI cli) throws IOException {
         DataRepository repo;
         if (f.isDirectory()) {
-            repo = new DirectoryRepository(f);
+            DirectoryRepository dir = new DirectoryRepository(f);
+            dir.setMetadataCache(MetadataCache.forDirectory(f));
+
+            // listing starts computing metadata in the background
+            dir.query(Filters.all());
+            repo = dir;
         } else {
             repo = new JSONRepository(f);
         }
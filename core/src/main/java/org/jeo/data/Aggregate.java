@@ -0,0 +1,345 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jeo.util.Convert;
+import org.jeo.util.Optional;
+
+/**
+ * Aggregate function computed over the features matching a {@link Query}.
+ * <p>
+ * Usage:
+ * <pre><code>
+ * Query q = new Query().aggregate(Aggregate.count(), Aggregate.sum("population")).groupBy("state");
+ * </code></pre>
+ * Each aggregate becomes a property of the features returned for the query, named with
+ * {@link #getName()}. The values are:
+ * <ul>
+ *   <li>{@link Type#COUNT} - number of features, or of non null values of the property, as a
+ *   {@link Long}</li>
+ *   <li>{@link Type#SUM}, {@link Type#MEAN} - sum and average of the non null values, as a
+ *   {@link Double}, <code>null</code> if there are no values</li>
+ *   <li>{@link Type#MIN}, {@link Type#MAX} - smallest and largest value, <code>null</code> if
+ *   there are no values</li>
+ *   <li>{@link Type#HISTOGRAM} - number of values falling in each of a number of equal width
+ *   bins spanning a range, as a list of {@link Long}. The last bin includes the upper end of the
+ *   range, values outside the range are not counted.</li>
+ * </ul>
+ * </p>
+ */
+public class Aggregate {
+
+    /**
+     * Aggregate function.
+     */
+    public static enum Type {
+        COUNT, SUM, MIN, MAX, MEAN, HISTOGRAM;
+    }
+
+    static final Pattern SPEC = Pattern.compile(
+        "\\s*(\\w+)\\s*(?:\\(\\s*([^,\\s)]*)\\s*((?:,\\s*[^,\\s)]+\\s*)*)\\))?\\s*");
+
+    /**
+     * Counts features.
+     */
+    public static Aggregate count() {
+        return new Aggregate(Type.COUNT, null, "count", 0, 0, 0);
+    }
+
+    /**
+     * Counts non null values of a property.
+     */
+    public static Aggregate count(String property) {
+        return create(Type.COUNT, property);
+    }
+
+    /**
+     * Sums the values of a property.
+     */
+    public static Aggregate sum(String property) {
+        return create(Type.SUM, property);
+    }
+
+    /**
+     * Smallest value of a property.
+     */
+    public static Aggregate min(String property) {
+        return create(Type.MIN, property);
+    }
+
+    /**
+     * Largest value of a property.
+     */
+    public static Aggregate max(String property) {
+        return create(Type.MAX, property);
+    }
+
+    /**
+     * Average of the values of a property.
+     */
+    public static Aggregate mean(String property) {
+        return create(Type.MEAN, property);
+    }
+
+    /**
+     * Histogram of the values of a property.
+     *
+     * @param property The property.
+     * @param lower Lower end of the range of values.
+     * @param upper Upper end of the range of values.
+     * @param bins Number of bins to split the range into.
+     */
+    public static Aggregate histogram(String property, double lower, double upper, int bins) {
+        if (property == null) {
+            throw new IllegalArgumentException("histogram requires a property");
+        }
+        if (!(upper > lower) || bins < 1) {
+            throw new IllegalArgumentException(String.format(
+                "invalid histogram range [%s,%s] with %d bins", lower, upper, bins));
+        }
+        return new Aggregate(Type.HISTOGRAM, property, "histogram_" + property, lower, upper, bins);
+    }
+
+    static Aggregate create(Type type, String property) {
+        if (property == null) {
+            throw new IllegalArgumentException(type.name().toLowerCase(Locale.ROOT)
+                + " requires a property");
+        }
+        return new Aggregate(type, property,
+            type.name().toLowerCase(Locale.ROOT) + "_" + property, 0, 0, 0);
+    }
+
+    /**
+     * Parses an aggregate from a string of the form <tt>function(property[,args])</tt>, for
+     * example <tt>count</tt>, <tt>count(*)</tt>, <tt>sum(population)</tt> or
+     * <tt>histogram(population,0,1000000,10)</tt>.
+     *
+     * @throws IllegalArgumentException If the string is not a valid aggregate.
+     */
+    public static Aggregate parse(String spec) {
+        Matcher m = SPEC.matcher(spec);
+        if (!m.matches()) {
+            throw new IllegalArgumentException("Invalid aggregate: " + spec);
+        }
+
+        Type type;
+        try {
+            type = Type.valueOf(m.group(1).toUpperCase(Locale.ROOT));
+        }
+        catch(IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown aggregate function: " + m.group(1));
+        }
+
+        String property = m.group(2);
+        if (property != null && (property.isEmpty() || "*".equals(property))) {
+            property = null;
+        }
+
+        List<Double> args = new ArrayList<Double>();
+        if (m.group(3) != null) {
+            for (String arg : m.group(3).split(",")) {
+                if (!arg.trim().isEmpty()) {
+                    Optional<Double> d = Convert.toNumber(arg.trim(), Double.class);
+                    if (!d.has()) {
+                        throw new IllegalArgumentException("Invalid aggregate argument: " + arg);
+                    }
+                    args.add(d.get());
+                }
+            }
+        }
+
+        if (type == Type.HISTOGRAM) {
+            if (args.size() != 3) {
+                throw new IllegalArgumentException(
+                    "histogram requires property, lower, upper and bins: " + spec);
+            }
+            return histogram(property, args.get(0), args.get(1), args.get(2).intValue());
+        }
+        if (!args.isEmpty()) {
+            throw new IllegalArgumentException("Unexpected aggregate arguments: " + spec);
+        }
+        return type == Type.COUNT && property == null ? count() : create(type, property);
+    }
+
+    final Type type;
+    final String property;
+    final String name;
+    final double lower, upper;
+    final int bins;
+
+    Aggregate(Type type, String property, String name, double lower, double upper, int bins) {
+        this.type = type;
+        this.property = property;
+        this.name = name;
+        this.lower = lower;
+        this.upper = upper;
+        this.bins = bins;
+    }
+
+    /**
+     * The aggregate function.
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * The property aggregated, <code>null</code> when counting features.
+     */
+    public String getProperty() {
+        return property;
+    }
+
+    /**
+     * Name of the result property, defaults to <tt>function_property</tt>.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Lower end of the histogram range.
+     */
+    public double getLower() {
+        return lower;
+    }
+
+    /**
+     * Upper end of the histogram range.
+     */
+    public double getUpper() {
+        return upper;
+    }
+
+    /**
+     * Number of histogram bins.
+     */
+    public int getBins() {
+        return bins;
+    }
+
+    /**
+     * Copy of this aggregate with a different result property name.
+     */
+    public Aggregate as(String name) {
+        return new Aggregate(type, property, name, lower, upper, bins);
+    }
+
+    /**
+     * Lower edge of a histogram bin, the upper edge of the range for <tt>i == bins</tt>.
+     */
+    public double edge(int i) {
+        return i == bins ? upper : lower + (upper - lower) * i / bins;
+    }
+
+    /**
+     * The histogram bin a value falls into, <tt>-1</tt> if the value is outside the range.
+     */
+    public int bin(double value) {
+        if (!(value >= lower && value <= upper)) {
+            return -1;
+        }
+
+        int i = Math.min((int) ((value - lower) / (upper - lower) * bins), bins - 1);
+        // agree with the edges exactly
+        if (value < edge(i)) {
+            i--;
+        }
+        else if (i < bins - 1 && value >= edge(i + 1)) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Number of columns used to compute the aggregate natively, one per bin for a histogram,
+     * otherwise one.
+     */
+    public int columns() {
+        return type == Type.HISTOGRAM ? bins : 1;
+    }
+
+    /**
+     * Converts the natively computed columns of the aggregate to the aggregate value.
+     *
+     * @param row Row of native results.
+     * @param offset Position of the first column of the aggregate in the row.
+     */
+    public Object value(Object[] row, int offset) {
+        Object v = row[offset];
+        switch(type) {
+        case COUNT:
+            return v != null ? number(v).longValue() : 0l;
+        case SUM:
+        case MEAN:
+            return v != null ? number(v).doubleValue() : null;
+        case HISTOGRAM:
+            List<Long> counts = new ArrayList<Long>(bins);
+            for (int i = 0; i < bins; i++) {
+                Object c = row[offset + i];
+                counts.add(c != null ? number(c).longValue() : 0l);
+            }
+            return counts;
+        default:
+            return v;
+        }
+    }
+
+    Number number(Object v) {
+        return v instanceof Number ? (Number) v : Convert.toNumber(v).get(
+            "Expected number for " + name + " but got " + v);
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = type.hashCode();
+        result = prime * result + ((property == null) ? 0 : property.hashCode());
+        result = prime * result + name.hashCode();
+        long bits = Double.doubleToLongBits(lower);
+        result = prime * result + (int) (bits ^ (bits >>> 32));
+        bits = Double.doubleToLongBits(upper);
+        result = prime * result + (int) (bits ^ (bits >>> 32));
+        return prime * result + bins;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null || getClass() != obj.getClass())
+            return false;
+        Aggregate other = (Aggregate) obj;
+        return type == other.type && name.equals(other.name) && bins == other.bins
+            && (property == null ? other.property == null : property.equals(other.property))
+            && Double.compare(lower, other.lower) == 0 && Double.compare(upper, other.upper) == 0;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(type.name()).append("(");
+        sb.append(property != null ? property : "*");
+        if (type == Type.HISTOGRAM) {
+            sb.append(",").append(lower).append(",").append(upper).append(",").append(bins);
+        }
+        return sb.append(") AS ").append(name).toString();
+    }
+}
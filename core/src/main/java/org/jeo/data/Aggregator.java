@@ -0,0 +1,394 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.data;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jeo.data.Aggregate.Type;
+import org.jeo.feature.BasicFeature;
+import org.jeo.feature.Feature;
+import org.jeo.util.Convert;
+
+/**
+ * Computes the aggregates of a {@link Query} over a stream of features.
+ * <p>
+ * Features are added one at a time and only the running state of each aggregate is retained, per
+ * group when the query groups features. Aggregators computed over separate parts of a dataset,
+ * for instance by different threads, can be combined with {@link #merge(Aggregator)}.
+ * </p>
+ * <p>
+ * Usage:
+ * <pre><code>
+ * Aggregator agg = new Aggregator(query);
+ * for (Feature f : cursor) {
+ *   agg.add(f);
+ * }
+ * List&lt;Feature> results = agg.features();
+ * </code></pre>
+ * </p>
+ * <p>
+ * The results are one feature per group, ordered by the group values, with the group by
+ * properties followed by the aggregate values. Without grouping there is exactly one result,
+ * even if no features were added.
+ * </p>
+ * <p>
+ * This class is not thread safe.
+ * </p>
+ */
+public class Aggregator {
+
+    /**
+     * Creates the result feature for a row of natively computed aggregates, the group by values
+     * followed by the columns of each aggregate.
+     *
+     * @see Aggregate#columns()
+     * @see Aggregate#value(Object[], int)
+     */
+    public static Feature feature(Query q, int index, Object[] row) {
+        Map<String,Object> values = new LinkedHashMap<String, Object>();
+
+        int i = 0;
+        for (String g : q.getGroupBy()) {
+            values.put(g, row[i++]);
+        }
+        for (Aggregate a : q.getAggregates()) {
+            values.put(a.getName(), a.value(row, i));
+            i += a.columns();
+        }
+        return new BasicFeature(String.valueOf(index), values);
+    }
+
+    /**
+     * Compares two values, nulls first and numbers by value.
+     */
+    public static int compare(Object o1, Object o2) {
+        if (o1 == o2) {
+            return 0;
+        }
+        if (o1 == null) {
+            return -1;
+        }
+        if (o2 == null) {
+            return 1;
+        }
+        if (o1 instanceof Number && o2 instanceof Number) {
+            return Double.compare(((Number) o1).doubleValue(), ((Number) o2).doubleValue());
+        }
+        if (o1 instanceof Comparable && o1.getClass().isInstance(o2)) {
+            return ((Comparable<Object>) o1).compareTo(o2);
+        }
+        return o1.toString().compareTo(o2.toString());
+    }
+
+    final List<Aggregate> aggregates;
+    final List<String> groupBy;
+
+    /** accumulators when not grouping */
+    final Accumulator[] all;
+
+    /** accumulators per group, and key reused to look them up */
+    final Map<Key,Accumulator[]> groups;
+    final Key probe;
+
+    /**
+     * Creates an aggregator for the aggregates and grouping of a query.
+     */
+    public Aggregator(Query q) {
+        this(q.getAggregates(), q.getGroupBy());
+    }
+
+    /**
+     * Creates an aggregator.
+     *
+     * @param aggregates The aggregates to compute.
+     * @param groupBy The properties to group features by, may be empty.
+     */
+    public Aggregator(List<Aggregate> aggregates, List<String> groupBy) {
+        this.aggregates = aggregates;
+        this.groupBy = groupBy;
+
+        if (groupBy.isEmpty()) {
+            all = accumulators();
+            groups = null;
+            probe = null;
+        }
+        else {
+            all = null;
+            groups = new HashMap<Key, Accumulator[]>();
+            probe = new Key(new Object[groupBy.size()]);
+        }
+    }
+
+    /**
+     * Adds a feature to the aggregates.
+     */
+    public void add(Feature f) {
+        Accumulator[] accs = all;
+        if (accs == null) {
+            Object[] values = probe.values;
+            for (int i = 0; i < values.length; i++) {
+                values[i] = f.get(groupBy.get(i));
+            }
+            probe.hash = Arrays.hashCode(values);
+
+            accs = groups.get(probe);
+            if (accs == null) {
+                accs = accumulators();
+                groups.put(new Key(values.clone()), accs);
+            }
+        }
+
+        for (int i = 0; i < accs.length; i++) {
+            accs[i].add(f);
+        }
+    }
+
+    /**
+     * Adds all the features of a cursor to the aggregates, closing the cursor.
+     *
+     * @return This object.
+     */
+    public Aggregator add(Cursor<Feature> cursor) throws IOException {
+        try {
+            while (cursor.hasNext()) {
+                add(cursor.next());
+            }
+        }
+        finally {
+            cursor.close();
+        }
+        return this;
+    }
+
+    /**
+     * Combines the state of another aggregator, computing the same aggregates over other features,
+     * into this one.
+     *
+     * @return This object.
+     */
+    public Aggregator merge(Aggregator other) {
+        if (!aggregates.equals(other.aggregates) || !groupBy.equals(other.groupBy)) {
+            throw new IllegalArgumentException("Aggregators compute different aggregates");
+        }
+
+        if (all != null) {
+            merge(all, other.all);
+        }
+        else {
+            for (Map.Entry<Key, Accumulator[]> e : other.groups.entrySet()) {
+                Accumulator[] accs = groups.get(e.getKey());
+                if (accs == null) {
+                    accs = accumulators();
+                    groups.put(e.getKey(), accs);
+                }
+                merge(accs, e.getValue());
+            }
+        }
+        return this;
+    }
+
+    void merge(Accumulator[] accs, Accumulator[] others) {
+        for (int i = 0; i < accs.length; i++) {
+            accs[i].merge(others[i]);
+        }
+    }
+
+    /**
+     * The aggregate results, one feature per group ordered by group values.
+     */
+    public List<Feature> features() {
+        if (all != null) {
+            return Collections.singletonList(feature(0, new Object[0], all));
+        }
+
+        List<Map.Entry<Key, Accumulator[]>> entries =
+            new ArrayList<Map.Entry<Key,Accumulator[]>>(groups.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<Key, Accumulator[]>>() {
+            @Override
+            public int compare(Map.Entry<Key, Accumulator[]> e1, Map.Entry<Key, Accumulator[]> e2) {
+                Object[] v1 = e1.getKey().values, v2 = e2.getKey().values;
+                for (int i = 0; i < v1.length; i++) {
+                    int cmp = Aggregator.compare(v1[i], v2[i]);
+                    if (cmp != 0) {
+                        return cmp;
+                    }
+                }
+                return 0;
+            }
+        });
+
+        List<Feature> features = new ArrayList<Feature>(entries.size());
+        for (Map.Entry<Key, Accumulator[]> e : entries) {
+            features.add(feature(features.size(), e.getKey().values, e.getValue()));
+        }
+        return features;
+    }
+
+    Feature feature(int index, Object[] keys, Accumulator[] accs) {
+        Map<String,Object> values = new LinkedHashMap<String, Object>();
+        for (int i = 0; i < keys.length; i++) {
+            values.put(groupBy.get(i), keys[i]);
+        }
+        for (Accumulator acc : accs) {
+            values.put(acc.agg.getName(), acc.value());
+        }
+        return new BasicFeature(String.valueOf(index), values);
+    }
+
+    Accumulator[] accumulators() {
+        Accumulator[] accs = new Accumulator[aggregates.size()];
+        for (int i = 0; i < accs.length; i++) {
+            accs[i] = new Accumulator(aggregates.get(i));
+        }
+        return accs;
+    }
+
+    /**
+     * Group by values.
+     */
+    static class Key {
+        final Object[] values;
+        int hash;
+
+        Key(Object[] values) {
+            this.values = values;
+            this.hash = Arrays.hashCode(values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key && Arrays.equals(values, ((Key) obj).values);
+        }
+    }
+
+    /**
+     * Running state of an aggregate.
+     */
+    static class Accumulator {
+        final Aggregate agg;
+
+        /** number of values */
+        long count;
+        double sum;
+        Object min, max;
+        long[] bins;
+
+        Accumulator(Aggregate agg) {
+            this.agg = agg;
+            if (agg.getType() == Type.HISTOGRAM) {
+                bins = new long[agg.getBins()];
+            }
+        }
+
+        void add(Feature f) {
+            if (agg.property == null) {
+                count++;
+                return;
+            }
+
+            Object v = f.get(agg.property);
+            if (v == null) {
+                return;
+            }
+
+            switch(agg.type) {
+            case COUNT:
+                count++;
+                break;
+            case SUM:
+            case MEAN:
+                Number n = number(v);
+                if (n != null) {
+                    sum += n.doubleValue();
+                    count++;
+                }
+                break;
+            case MIN:
+                if (min == null || compare(v, min) < 0) {
+                    min = v;
+                }
+                break;
+            case MAX:
+                if (max == null || compare(v, max) > 0) {
+                    max = v;
+                }
+                break;
+            case HISTOGRAM:
+                n = number(v);
+                int i = n != null ? agg.bin(n.doubleValue()) : -1;
+                if (i >= 0) {
+                    bins[i]++;
+                }
+                break;
+            }
+        }
+
+        void merge(Accumulator other) {
+            count += other.count;
+            sum += other.sum;
+            if (other.min != null && (min == null || compare(other.min, min) < 0)) {
+                min = other.min;
+            }
+            if (other.max != null && (max == null || compare(other.max, max) > 0)) {
+                max = other.max;
+            }
+            if (bins != null) {
+                for (int i = 0; i < bins.length; i++) {
+                    bins[i] += other.bins[i];
+                }
+            }
+        }
+
+        Object value() {
+            switch(agg.type) {
+            case COUNT:
+                return count;
+            case SUM:
+                return count > 0 ? sum : null;
+            case MEAN:
+                return count > 0 ? sum / count : null;
+            case MIN:
+                return min;
+            case MAX:
+                return max;
+            case HISTOGRAM:
+                List<Long> counts = new ArrayList<Long>(bins.length);
+                for (long c : bins) {
+                    counts.add(c);
+                }
+                return counts;
+            default:
+                throw new IllegalStateException();
+            }
+        }
+
+        Number number(Object v) {
+            return v instanceof Number ? (Number) v : Convert.toNumber(v).or(null);
+        }
+    }
+}
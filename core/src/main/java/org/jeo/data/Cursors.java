@@ -27,6 +27,7 @@ import org.jeo.feature.Feature;
 import org.jeo.feature.FeatureWrapper;
 import org.jeo.feature.Features;
 import org.jeo.filter.Filter;
+import org.jeo.filter.FilterCompiler;
 import org.jeo.proj.Proj;
 import org.osgeo.proj4j.CoordinateReferenceSystem;
 import org.osgeo.proj4j.CoordinateTransform;
@@ -37,7 +38,7 @@ import com.vividsolutions.jts.geom.GeometryFactory;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
-import org.jeo.feature.BasicFeature;
+import org.jeo.feature.Field;
 import org.jeo.feature.Schema;
 import org.jeo.feature.SchemaBuilder;
 
@@ -332,6 +333,260 @@ public class Cursors {
         }
     }
 
+    /**
+     * Wraps a cursor returning the features nearest to a point, ordered by increasing distance.
+     * <p>
+     * The original cursor is read fully on the first call to {@link Cursor#hasNext()}, retaining
+     * only the nearest features in a bounded priority queue. The wrapped cursor does not support
+     * {@link Cursor#write()} or {@link Cursor#remove()}.
+     * </p>
+     * @param cursor The original cursor.
+     * @param nearest The point and number of features to return.
+     * 
+     * @return The wrapped cursor.
+     */
+    public static Cursor<Feature> nearest(Cursor<Feature> cursor, Nearest nearest) {
+        return new NearestCursor(cursor, nearest);
+    }
+
+    private static class NearestCursor extends CursorWrapper<Feature> {
+
+        Nearest nearest;
+        Iterator<Feature> it;
+
+        NearestCursor(Cursor<Feature> delegate, Nearest nearest) {
+            super(delegate);
+            this.nearest = nearest;
+        }
+
+        @Override
+        public boolean hasNext() throws IOException {
+            if (it == null) {
+                Nearest.Queue q = nearest.queue();
+                while (delegate.hasNext()) {
+                    q.offer(delegate.next());
+                }
+                it = q.features().iterator();
+            }
+            return it.hasNext();
+        }
+
+        @Override
+        public Feature next() throws IOException {
+            return hasNext() ? it.next() : null;
+        }
+
+        @Override
+        public Cursor<Feature> write() throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Cursor<Feature> remove() throws IOException {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Wraps a cursor returning the aggregates of the features of the original cursor.
+     * <p>
+     * The original cursor is read fully on the first call to {@link Cursor#hasNext()} with an 
+     * {@link Aggregator}. The wrapped cursor does not support {@link Cursor#write()} or 
+     * {@link Cursor#remove()}.
+     * </p>
+     * @param cursor The original cursor.
+     * @param q The query specifying the aggregates and grouping.
+     * 
+     * @return The wrapped cursor.
+     */
+    public static Cursor<Feature> aggregate(Cursor<Feature> cursor, Query q) {
+        return new AggregateCursor(cursor, q);
+    }
+
+    private static class AggregateCursor extends CursorWrapper<Feature> {
+
+        Query q;
+        Iterator<Feature> it;
+
+        AggregateCursor(Cursor<Feature> delegate, Query q) {
+            super(delegate);
+            this.q = q;
+        }
+
+        @Override
+        public boolean hasNext() throws IOException {
+            if (it == null) {
+                Aggregator agg = new Aggregator(q);
+                while (delegate.hasNext()) {
+                    agg.add(delegate.next());
+                }
+                it = agg.features().iterator();
+            }
+            return it.hasNext();
+        }
+
+        @Override
+        public Feature next() throws IOException {
+            return hasNext() ? it.next() : null;
+        }
+
+        @Override
+        public Cursor<Feature> write() throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Cursor<Feature> remove() throws IOException {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Wraps a cursor of reused features, invalidating each feature returned on the next call to 
+     * {@link Cursor#next()} or {@link Cursor#close()}.
+     * <p>
+     * Any access to an invalidated feature throws {@link IllegalStateException}. This is meant to
+     * catch callers retaining features of a {@link Query#reuse()} query.
+     * </p>
+     * @param cursor The original cursor.
+     * 
+     * @return The wrapped cursor.
+     */
+    public static Cursor<Feature> checkReuse(Cursor<Feature> cursor) {
+        return new CheckReuseCursor(cursor);
+    }
+
+    private static class CheckReuseCursor extends CursorWrapper<Feature> {
+
+        CheckedFeature last;
+
+        CheckReuseCursor(Cursor<Feature> delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public Feature next() throws IOException {
+            invalidate();
+            Feature next = super.next();
+            return next != null ? last = new CheckedFeature(next) : null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            invalidate();
+            super.close();
+        }
+
+        void invalidate() {
+            if (last != null) {
+                last.valid = false;
+                last = null;
+            }
+        }
+    }
+
+    private static class CheckedFeature extends FeatureWrapper {
+
+        boolean valid = true;
+
+        CheckedFeature(Feature delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public Feature getDelegate() {
+            return check();
+        }
+
+        @Override
+        public String getId() {
+            return check().getId();
+        }
+
+        @Override
+        public CoordinateReferenceSystem getCRS() {
+            return check().getCRS();
+        }
+
+        @Override
+        public void setCRS(CoordinateReferenceSystem crs) {
+            check().setCRS(crs);
+        }
+
+        @Override
+        public CoordinateReferenceSystem crs() {
+            return check().crs();
+        }
+
+        @Override
+        public boolean has(String key) {
+            return check().has(key);
+        }
+
+        @Override
+        public Object get(String key) {
+            return check().get(key);
+        }
+
+        @Override
+        public Object get(int index) {
+            return check().get(index);
+        }
+
+        @Override
+        public Geometry geometry() {
+            return check().geometry();
+        }
+
+        @Override
+        public void put(String key, Object val) {
+            check().put(key, val);
+        }
+
+        @Override
+        public void set(int index, Object val) {
+            check().set(index, val);
+        }
+
+        @Override
+        public void put(Geometry g) {
+            check().put(g);
+        }
+
+        @Override
+        public boolean isSchemaless() {
+            return check().isSchemaless();
+        }
+
+        @Override
+        public Schema schema() {
+            return check().schema();
+        }
+
+        @Override
+        public List<Object> list() {
+            return check().list();
+        }
+
+        @Override
+        public Map<String, Object> map() {
+            return check().map();
+        }
+
+        @Override
+        public String toString() {
+            return valid ? delegate.toString() : "invalidated feature";
+        }
+
+        Feature check() {
+            if (!valid) {
+                throw new IllegalStateException("Feature used after the cursor moved on, " 
+                    + "features of a reuse query must not be retained");
+            }
+            return delegate;
+        }
+    }
+
     /**
      * Wraps a cursor skipping a specified number of objects. 
      * 
@@ -450,10 +705,24 @@ public class Cursors {
         }
     }
 
+    /**
+     * Feature view reprojecting geometry values as they are accessed. The last geometry 
+     * reprojected is cached, so a geometry accessed repeatedly is only reprojected once.
+     */
     private static class TransformFeature extends FeatureWrapper {
 
         CoordinateTransform transform;
 
+        /** 
+         * last geometry reprojected, and the result
+         * <p>
+         * Keyed on identity, which is safe under {@link Query#reuse()}: a new view wraps each 
+         * feature returned by the cursor, and a reused feature is refilled with new value objects
+         * rather than having its geometry modified in place, so a stale geometry never matches.
+         * </p>
+         */
+        Geometry source, transformed;
+
         TransformFeature(Feature delegate, CoordinateTransform transform) {
             super(delegate);
             this.transform = transform;
@@ -467,13 +736,15 @@ public class Cursors {
 
         @Override
         public Object get(String key) {
-            Object obj = super.get(key);
-            if (obj instanceof Geometry) {
-                obj = reproject((Geometry)obj);
-            }
-            return obj;
+            return transform(super.get(key));
         }
 
+        @Override
+        public Object get(int index) {
+            return transform(super.get(index));
+        }
+
+        @Override
         public List<Object> list() {
             List<Object> l = new ArrayList<Object>(delegate.list());
             for (int i = 0; i < l.size(); i++) {
@@ -485,19 +756,28 @@ public class Cursors {
             return l;
         }
 
+        @Override
         public Map<String,Object> map() {
-            LinkedHashMap<String,Object> m = new LinkedHashMap<String,Object>(delegate.map());
+            Map<String,Object> m = new LinkedHashMap<String,Object>(delegate.map());
             for (Map.Entry<String, Object> e : m.entrySet()) {
                 Object obj = e.getValue();
                 if (obj instanceof Geometry) {
-                    e.setValue(reproject((Geometry)obj));
+                    e.setValue(reproject((Geometry) obj));
                 }
             }
             return m;
         }
 
+        Object transform(Object obj) {
+            return obj instanceof Geometry ? reproject((Geometry) obj) : obj;
+        }
+
         Geometry reproject(Geometry g) {
-            return Proj.transform(g, transform);
+            if (g != source) {
+                transformed = Proj.transform(g, transform);
+                source = g;
+            }
+            return transformed;
         }
     }
 
@@ -525,7 +805,7 @@ public class Cursors {
     
         @Override
         public boolean hasNext() throws IOException {
-            while(delegate.hasNext() && next == null) {
+            while(next == null && delegate.hasNext()) {
                 Feature obj = delegate.next();
                 if (intersects(obj)) {
                     next = obj;
@@ -561,6 +841,7 @@ public class Cursors {
     private static class FilterCursor<T> extends CursorWrapper<T> {
 
         Filter filter;
+        boolean compiled;
         T next;
 
         FilterCursor(Cursor<T> delegate, Filter filter) {
@@ -570,8 +851,14 @@ public class Cursors {
 
         @Override
         public boolean hasNext() throws IOException {
-            while(delegate.hasNext() && next == null) {
+            while(next == null && delegate.hasNext()) {
                 T obj = delegate.next();
+                if (!compiled) {
+                    // compile against the schema of the first feature
+                    Schema schema = obj instanceof Feature ? ((Feature) obj).schema() : null;
+                    filter = FilterCompiler.compile(filter, schema);
+                    compiled = true;
+                }
                 if (filter.apply(obj)) {
                     next = obj;
                 }
@@ -630,43 +917,196 @@ public class Cursors {
 
     static class SelectFieldsCursor extends CursorWrapper<Feature> {
         private final String[] fields;
-        private final Map<String, Object> values;
-        private Schema schema;
+
+        /** schema of the last feature, and the selection resolved against it */
+        private Schema source;
+        private Selection selection;
 
         public SelectFieldsCursor(Cursor<Feature> delegate, Set<String> fields) {
             super(delegate);
             this.fields = fields.toArray(new String[0]);
-            this.values = new HashMap<String, Object>(fields.size());
         }
 
         @Override
         public Feature next() throws IOException {
             Feature next = super.next();
-            if (next != null) {
-                if (schema == null ) {
-                    schema = schema(next);
+            if (next == null) {
+                return null;
+            }
+
+            Schema schema = next.isSchemaless() ? null : next.schema();
+            if (selection == null || schema != source) {
+                selection = new Selection(schema, fields);
+                source = schema;
+            }
+            return new SelectFieldsFeature(next, selection);
+        }
+    }
+
+    /**
+     * Fields selected from features, resolved once against the schema of the features.
+     */
+    static class Selection {
+        /** the selected fields, in schema order for features with a schema */
+        final String[] names;
+        /** schema of the selected fields, null for schemaless features */
+        final Schema schema;
+        /** position in the original schema of each selected field */
+        final int[] index;
+        /** position of the geometry among the selected fields, -1 if none */
+        final int geom;
+
+        Selection(Schema original, String[] fields) {
+            if (original == null) {
+                names = fields;
+                schema = null;
+                index = null;
+                geom = -1;
+                return;
+            }
+
+            schema = SchemaBuilder.selectFields(original, Arrays.asList(fields));
+            names = new String[schema.size()];
+            index = new int[schema.size()];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = schema.getFields().get(i).getName();
+                index[i] = original.indexOf(names[i]);
+            }
+
+            Field g = schema.geometry();
+            geom = g != null ? schema.indexOf(g.getName()) : -1;
+        }
+
+        int indexOf(String name) {
+            if (schema != null) {
+                return schema.indexOf(name);
+            }
+            for (int i = 0; i < names.length; i++) {
+                if (names[i].equals(name)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Feature view restricted to the selected fields of an underlying feature. Values are read
+     * from, and written to, the underlying feature on access.
+     */
+    static class SelectFieldsFeature extends FeatureWrapper {
+
+        final Selection selection;
+
+        /** schema derived from the values of a schemaless feature */
+        Schema derived;
+
+        SelectFieldsFeature(Feature delegate, Selection selection) {
+            super(delegate);
+            this.selection = selection;
+        }
+
+        @Override
+        public boolean has(String key) {
+            return selection.indexOf(key) != -1;
+        }
+
+        @Override
+        public Object get(String key) {
+            int i = selection.indexOf(key);
+            return i != -1 ? get(i) : null;
+        }
+
+        @Override
+        public Object get(int index) {
+            return selection.index != null ? 
+                delegate.get(selection.index[index]) : delegate.get(selection.names[index]);
+        }
+
+        @Override
+        public void put(String key, Object val) {
+            int i = selection.indexOf(key);
+            if (i == -1) {
+                throw new IllegalArgumentException("No such key " + key);
+            }
+            set(i, val);
+        }
+
+        @Override
+        public void set(int index, Object val) {
+            if (selection.index != null) {
+                delegate.set(selection.index[index], val);
+            }
+            else {
+                delegate.put(selection.names[index], val);
+            }
+        }
+
+        @Override
+        public Geometry geometry() {
+            if (selection.schema != null) {
+                return selection.geom != -1 ? (Geometry) get(selection.geom) : null;
+            }
+            for (int i = 0; i < selection.names.length; i++) {
+                Object obj = get(i);
+                if (obj instanceof Geometry) {
+                    return (Geometry) obj;
                 }
+            }
+            return null;
+        }
+
+        @Override
+        public void put(Geometry g) {
+            Field gf = schema().geometry();
+            if (gf == null) {
+                throw new IllegalArgumentException("Feature schema has no geometry");
+            }
+            put(gf.getName(), g);
+        }
 
-                // values is copied by BasicFeature, so we reuse it
-                for (int i = 0; i < fields.length; i++) {
-                    values.put(fields[i], next.get(fields[i]));
+        @Override
+        public boolean isSchemaless() {
+            return selection.schema == null;
+        }
+
+        @Override
+        public Schema schema() {
+            if (selection.schema != null) {
+                return selection.schema;
+            }
+            if (derived == null) {
+                List<Field> fields = new ArrayList<Field>(selection.names.length);
+                for (int i = 0; i < selection.names.length; i++) {
+                    Object obj = get(i);
+                    fields.add(new Field(selection.names[i], obj != null ? obj.getClass() : null));
                 }
-                // this may not be the most efficient approach compared
-                // to wrapping the feature
-                next = new BasicFeature(next.getId(), values, schema);
+                derived = new Schema("feature", fields);
             }
-            return next;
+            return derived;
         }
 
-        public Schema schema(Feature original) {
-            Schema s = null;
-            // if schemaless, don't use any existing derived schema as it will
-            // now look invalid due to removed features
-            // otherwise, derive a new one
-            if (!original.isSchemaless()) {
-                s = SchemaBuilder.selectFields(original.schema(), Arrays.asList(fields));
+        @Override
+        public List<Object> list() {
+            List<Object> list = new ArrayList<Object>(selection.names.length);
+            for (int i = 0; i < selection.names.length; i++) {
+                list.add(get(i));
             }
-            return s;
+            return list;
+        }
+
+        @Override
+        public Map<String, Object> map() {
+            Map<String,Object> map = new LinkedHashMap<String, Object>();
+            for (int i = 0; i < selection.names.length; i++) {
+                map.put(selection.names[i], get(i));
+            }
+            return map;
+        }
+
+        @Override
+        public String toString() {
+            return new StringBuilder(getId()).append(map()).toString();
         }
     }
 
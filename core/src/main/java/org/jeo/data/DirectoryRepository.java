@@ -22,11 +22,13 @@ import java.io.FilenameFilter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 import org.jeo.json.JSONObject;
 import org.jeo.json.JSONValue;
@@ -39,7 +41,15 @@ import org.slf4j.LoggerFactory;
 
 /**
  * A repository that loads workspaces from files in a specified directory.
- *  
+ * <p>
+ * When a {@link MetadataCache} is set with {@link #setMetadataCache(MetadataCache)} the bounds,
+ * crs, count and schema of datasets are computed in the background and persisted. Workspaces
+ * with current metadata list their datasets from the cache, without opening the files until a
+ * dataset is actually accessed.
+ * </p>
+ * <p>
+ * Styles are cached once parsed and reused until the files they were read from change.
+ * </p>
  * @author Justin Deoliveira, OpenGeo
  */
 public class DirectoryRepository implements DataRepository {
@@ -55,6 +65,12 @@ public class DirectoryRepository implements DataRepository {
     /** list of file extensions to restrict to */
     List<String> exts;
 
+    /** metadata cache */
+    MetadataCache metadata;
+
+    /** parsed styles, keyed by name, along with stamp of the files they were read from */
+    Map<String,Pair<String,Style>> styles = new HashMap<String, Pair<String,Style>>();
+
     /**
      * Constructs a new registry.
      * 
@@ -92,6 +108,40 @@ public class DirectoryRepository implements DataRepository {
         return baseDir;
     }
 
+    /**
+     * The metadata cache of the repository, may be <code>null</code>.
+     */
+    public MetadataCache getMetadataCache() {
+        return metadata;
+    }
+
+    /**
+     * Sets the metadata cache of the repository.
+     */
+    public void setMetadataCache(MetadataCache metadata) {
+        this.metadata = metadata;
+    }
+
+    /**
+     * Returns the cached metadata for the datasets of the named workspace.
+     *
+     * @return The list of dataset metadata, or <code>null</code> if no metadata cache is set or the
+     *   metadata has not yet been computed.
+     */
+    public List<MetadataCache.Entry> metadata(String name) {
+        if (metadata == null) {
+            return null;
+        }
+
+        Map<String,FileGroup> files = listFiles(new BaseNameFilter(name));
+        if (files.isEmpty()) {
+            return null;
+        }
+
+        Map.Entry<String,FileGroup> e = files.entrySet().iterator().next();
+        return metadata.get(e.getKey(), e.getValue().all());
+    }
+
     @Override
     public Iterable<Handle<?>> query(Filter<? super Handle<?>> filter)
         throws IOException {
@@ -130,9 +180,14 @@ public class DirectoryRepository implements DataRepository {
             }
 
             if (drv != null) {
-                Handle<?> h = Handle.to(name, handleType(drv), drv, this);
+                Class<?> type = handleType(drv);
+                Handle<?> h = Handle.to(name, type, drv, this);
                 if (filter.apply(h)) {
                     items.add(h);
+
+                    if (metadata != null && type == Workspace.class) {
+                        metadata.schedule(name, grp.all(), opener(grp));
+                    }
                 }
             }
             else {
@@ -145,21 +200,25 @@ public class DirectoryRepository implements DataRepository {
 
     @Override
     public <T> T get(final String key, Class<T> type) throws IOException {
-        CompositeFilenameFilter fileFilter = new CompositeFilenameFilter(new FilenameFilter() {
-            @Override
-            public boolean accept(File dir, String name) {
-                String base = Util.base(name);
-                return base.equalsIgnoreCase(key);
-            }
-        });
+        CompositeFilenameFilter fileFilter = 
+            new CompositeFilenameFilter(new BaseNameFilter(key));
         if (exts != null) {
             fileFilter.and(new ExtensionFilter(exts));
         }
 
         Map<String,FileGroup> files = listFiles(fileFilter);
         if (!files.isEmpty()) {
-            FileGroup grp = files.values().iterator().next();
-            return objOrNull(grp, type);
+            Map.Entry<String,FileGroup> e = files.entrySet().iterator().next();
+            if (type == Style.class) {
+                return type.cast(style(e.getKey(), e.getValue()));
+            }
+            if (metadata != null && type.isAssignableFrom(MetadataWorkspace.class)) {
+                Workspace ws = cached(e.getKey(), e.getValue());
+                if (ws != null) {
+                    return type.cast(ws);
+                }
+            }
+            return objOrNull(e.getValue(), type);
         }
 
         return null;
@@ -167,6 +226,50 @@ public class DirectoryRepository implements DataRepository {
 
     @Override
     public void close() {
+        if (metadata != null) {
+            metadata.close();
+        }
+    }
+
+    Style style(String name, FileGroup grp) throws IOException {
+        String stamp = MetadataCache.stamp(grp.all());
+        synchronized (styles) {
+            Pair<String,Style> cached = styles.get(name);
+            if (cached != null && cached.first().equals(stamp)) {
+                return cached.second();
+            }
+        }
+
+        Style style = objOrNull(grp, Style.class);
+        if (style != null) {
+            synchronized (styles) {
+                styles.put(name, new Pair<String,Style>(stamp, style));
+            }
+        }
+        return style;
+    }
+
+    Workspace cached(String name, FileGroup grp) {
+        List<MetadataCache.Entry> entries = metadata.get(name, grp.all());
+        if (entries == null) {
+            return null;
+        }
+
+        Driver<?> drv = Drivers.find(metadata.driver(name, grp.all()), drivers);
+        if (drv == null) {
+            return null;
+        }
+
+        return new MetadataWorkspace(drv, entries, opener(grp));
+    }
+
+    Callable<Workspace> opener(final FileGroup grp) {
+        return new Callable<Workspace>() {
+            @Override
+            public Workspace call() throws Exception {
+                return objOrNull(grp, Workspace.class);
+            }
+        };
     }
 
     Pair<Driver<?>,Map<String,Object>> readMetaFile(FileGroup grp) {
@@ -307,6 +410,16 @@ public class DirectoryRepository implements DataRepository {
             return meta;
         }
 
+        List<File> all() {
+            if (meta == null) {
+                return files;
+            }
+
+            List<File> all = new ArrayList<File>(files);
+            all.add(meta);
+            return all;
+        }
+
         @Override
         public String toString() {
             return files.toString();
@@ -338,6 +451,20 @@ public class DirectoryRepository implements DataRepository {
 
     }
 
+    static class BaseNameFilter implements FilenameFilter {
+
+        String base;
+
+        BaseNameFilter(String base) {
+            this.base = base;
+        }
+
+        @Override
+        public boolean accept(File dir, String name) {
+            return Util.base(name).equalsIgnoreCase(base);
+        }
+    }
+
     static class ExtensionFilter implements FilenameFilter {
 
         List<String> exts;
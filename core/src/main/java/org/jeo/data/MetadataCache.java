@@ -0,0 +1,514 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.data;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.jeo.feature.Field;
+import org.jeo.feature.Schema;
+import org.jeo.json.JSONValue;
+import org.jeo.proj.Proj;
+import org.osgeo.proj4j.CoordinateReferenceSystem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * Persistent cache of dataset metadata (bounds, crs, feature count and schema).
+ * <p>
+ * Metadata is stored per key (typically the name of a file group in a {@link DirectoryRepository})
+ * along with a stamp computed from the path, length and modification time of the files making
+ * up the data. An entry is only returned while the stamp matches the current state of the files,
+ * which allows clients to answer metadata requests without opening or scanning the data itself.
+ * </p>
+ * <p>
+ * Missing entries are computed with {@link #schedule(String, List, Callable)} on a background
+ * thread. Updates are batched and the cache is saved to disk as a JSON file once all pending
+ * computations have finished, or when the cache is closed. The file is written to a temporary
+ * file first and then renamed, so readers never see a partially written cache.
+ * </p>
+ */
+public class MetadataCache implements Disposable {
+
+    static Logger LOG = LoggerFactory.getLogger(MetadataCache.class);
+
+    /**
+     * Returns a cache stored in the system temporary directory for the specified data directory.
+     */
+    public static MetadataCache forDirectory(File dir) {
+        String path;
+        try {
+            path = dir.getCanonicalPath();
+        } catch (IOException e) {
+            path = dir.getAbsolutePath();
+        }
+
+        File tmp = new File(System.getProperty("java.io.tmpdir"), "jeo");
+        return new MetadataCache(
+            new File(tmp, String.format("%s-%08x.meta.json", dir.getName(), path.hashCode())));
+    }
+
+    File file;
+    Map<String,Record> records;
+    Set<String> pending;
+    boolean dirty;
+    ExecutorService exec;
+
+    /**
+     * Creates a cache stored in the specified file, loading any existing contents.
+     */
+    public MetadataCache(File file) {
+        this.file = file;
+        records = new LinkedHashMap<String, Record>();
+        pending = new HashSet<String>();
+
+        if (file.exists()) {
+            try {
+                load();
+            }
+            catch(Exception e) {
+                LOG.debug("Error reading metadata cache " + file.getPath(), e);
+                records.clear();
+            }
+        }
+    }
+
+    /**
+     * The file the cache is stored in.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the driver name recorded for the specified key, or <code>null</code> if no current
+     * entry exists.
+     *
+     * @param key The cache key.
+     * @param files The files the metadata was derived from.
+     */
+    public synchronized String driver(String key, List<File> files) {
+        Record r = current(key, files);
+        return r != null ? r.driver : null;
+    }
+
+    /**
+     * Returns the dataset metadata for the specified key.
+     *
+     * @param key The cache key.
+     * @param files The files the metadata was derived from.
+     *
+     * @return The list of dataset metadata entries, or <code>null</code> if no entry exists or the
+     *   entry is out of date with respect to the files.
+     */
+    public synchronized List<Entry> get(String key, List<File> files) {
+        Record r = current(key, files);
+        return r != null ? Collections.unmodifiableList(r.entries) : null;
+    }
+
+    /**
+     * Computes and stores metadata for all datasets in a workspace.
+     *
+     * @param key The cache key.
+     * @param files The files the workspace is derived from.
+     * @param ws The workspace.
+     *
+     * @return The computed metadata entries.
+     */
+    public List<Entry> put(String key, List<File> files, Workspace ws) throws IOException {
+        // compute outside of the lock, it may involve scanning the data
+        String stamp = stamp(files);
+
+        List<Entry> entries = new ArrayList<Entry>();
+        for (Handle<Dataset> h : ws.list()) {
+            Dataset data = h.resolve();
+            if (data != null) {
+                try {
+                    entries.add(Entry.of(data));
+                }
+                finally {
+                    data.close();
+                }
+            }
+        }
+
+        Record r = new Record();
+        r.stamp = stamp;
+        r.driver = ws.getDriver() != null ? ws.getDriver().getName() : null;
+        r.entries = entries;
+
+        synchronized (this) {
+            records.put(key, r);
+            dirty = true;
+
+            // background computations save once the last pending one is done
+            if (pending.isEmpty()) {
+                flush();
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Schedules computation of metadata for the specified key in the background.
+     * <p>
+     * This method does nothing if a current entry exists or a computation for the key is already
+     * pending.
+     * </p>
+     * @param key The cache key.
+     * @param files The files the workspace is derived from.
+     * @param open Callback that opens the workspace, the workspace is closed after the metadata
+     *   has been computed.
+     */
+    public synchronized void schedule(final String key, final List<File> files,
+        final Callable<Workspace> open) {
+        if (current(key, files) != null || pending.contains(key)) {
+            return;
+        }
+
+        pending.add(key);
+        executor().submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Workspace ws = open.call();
+                    if (ws != null) {
+                        try {
+                            put(key, files, ws);
+                        }
+                        finally {
+                            ws.close();
+                        }
+                    }
+                }
+                catch(Exception e) {
+                    LOG.debug("Error computing metadata for " + key, e);
+                }
+                finally {
+                    synchronized (MetadataCache.this) {
+                        pending.remove(key);
+                        if (pending.isEmpty()) {
+                            flush();
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Removes all entries from the cache.
+     */
+    public synchronized void clear() {
+        records.clear();
+        dirty = true;
+        flush();
+    }
+
+    /**
+     * Saves the cache to disk if it has been modified since it was last saved.
+     */
+    public synchronized void flush() {
+        if (dirty) {
+            save();
+            dirty = false;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (exec != null) {
+            exec.shutdownNow();
+            exec = null;
+        }
+        flush();
+    }
+
+    Record current(String key, List<File> files) {
+        Record r = records.get(key);
+        return r != null && r.stamp.equals(stamp(files)) ? r : null;
+    }
+
+    ExecutorService executor() {
+        if (exec == null) {
+            exec = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "jeo-metadata");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return exec;
+    }
+
+    static String stamp(List<File> files) {
+        StringBuilder sb = new StringBuilder();
+        for (File f : files) {
+            sb.append(f.getAbsolutePath()).append(":").append(f.length()).append(":")
+              .append(f.lastModified()).append(";");
+        }
+        return sb.toString();
+    }
+
+    void load() throws Exception {
+        BufferedReader in = new BufferedReader(new FileReader(file));
+        try {
+            Map<String,Object> obj = (Map<String, Object>) JSONValue.parseWithException(in);
+            for (Map.Entry<String, Object> e : obj.entrySet()) {
+                records.put(e.getKey(), Record.decode((Map<String, Object>) e.getValue()));
+            }
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    void save() {
+        Map<String,Object> obj = new LinkedHashMap<String, Object>();
+        for (Map.Entry<String, Record> e : records.entrySet()) {
+            obj.put(e.getKey(), e.getValue().encode());
+        }
+
+        try {
+            File dir = file.getAbsoluteFile().getParentFile();
+            if (!dir.exists()) {
+                dir.mkdirs();
+            }
+
+            File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+            Writer out = new BufferedWriter(new FileWriter(tmp));
+            try {
+                JSONValue.writeJSONString(obj, out);
+            }
+            finally {
+                out.close();
+            }
+
+            if (!tmp.renameTo(file)) {
+                file.delete();
+                if (!tmp.renameTo(file)) {
+                    tmp.delete();
+                    throw new IOException("Unable to write " + file.getPath());
+                }
+            }
+        }
+        catch(IOException e) {
+            LOG.debug("Error saving metadata cache " + file.getPath(), e);
+        }
+    }
+
+    static class Record {
+        String stamp;
+        String driver;
+        List<Entry> entries;
+
+        Map<String,Object> encode() {
+            Map<String,Object> obj = new LinkedHashMap<String, Object>();
+            obj.put("stamp", stamp);
+            obj.put("driver", driver);
+
+            List<Object> list = new ArrayList<Object>();
+            for (Entry e : entries) {
+                list.add(e.encode());
+            }
+            obj.put("datasets", list);
+            return obj;
+        }
+
+        static Record decode(Map<String,Object> obj) throws Exception {
+            Record r = new Record();
+            r.stamp = (String) obj.get("stamp");
+            r.driver = (String) obj.get("driver");
+            r.entries = new ArrayList<Entry>();
+            for (Object o : (List<Object>) obj.get("datasets")) {
+                r.entries.add(Entry.decode((Map<String, Object>) o));
+            }
+            return r;
+        }
+    }
+
+    /**
+     * Cached metadata for a single dataset.
+     */
+    public static class Entry {
+
+        String name;
+        String title;
+        String description;
+        CoordinateReferenceSystem crs;
+        Envelope bounds;
+        long count = -1;
+        Schema schema;
+
+        /**
+         * Computes the metadata for a dataset.
+         */
+        public static Entry of(Dataset data) throws IOException {
+            Entry e = new Entry();
+            e.name = data.getName();
+            e.title = data.getTitle();
+            e.description = data.getDescription();
+            e.crs = data.crs();
+            e.bounds = data.bounds();
+
+            if (data instanceof VectorDataset) {
+                VectorDataset vector = (VectorDataset) data;
+                e.schema = vector.schema();
+                e.count = vector.count(new Query());
+            }
+            return e;
+        }
+
+        /**
+         * Name of the dataset.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Title of the dataset, may be <code>null</code>.
+         */
+        public String getTitle() {
+            return title;
+        }
+
+        /**
+         * Description of the dataset, may be <code>null</code>.
+         */
+        public String getDescription() {
+            return description;
+        }
+
+        /**
+         * Coordinate reference system of the dataset, may be <code>null</code>.
+         */
+        public CoordinateReferenceSystem getCRS() {
+            return crs;
+        }
+
+        /**
+         * Bounds of the dataset, may be <code>null</code>.
+         */
+        public Envelope getBounds() {
+            return bounds;
+        }
+
+        /**
+         * Number of features in the dataset, <code>-1</code> for non vector datasets.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Schema of the dataset, <code>null</code> for non vector datasets.
+         */
+        public Schema getSchema() {
+            return schema;
+        }
+
+        Map<String,Object> encode() {
+            Map<String,Object> obj = new LinkedHashMap<String, Object>();
+            obj.put("name", name);
+            obj.put("title", title);
+            obj.put("description", description);
+            obj.put("crs", encode(crs));
+            if (bounds != null) {
+                List<Object> bbox = new ArrayList<Object>();
+                if (!bounds.isNull()) {
+                    bbox.add(bounds.getMinX());
+                    bbox.add(bounds.getMinY());
+                    bbox.add(bounds.getMaxX());
+                    bbox.add(bounds.getMaxY());
+                }
+                obj.put("bbox", bbox);
+            }
+            obj.put("count", count);
+
+            if (schema != null) {
+                List<Object> fields = new ArrayList<Object>();
+                for (Field f : schema) {
+                    Map<String,Object> fld = new LinkedHashMap<String, Object>();
+                    fld.put("name", f.getName());
+                    fld.put("type", f.getType().getName());
+                    if (f.getCRS() != null) {
+                        fld.put("crs", encode(f.getCRS()));
+                    }
+                    fields.add(fld);
+                }
+                obj.put("fields", fields);
+            }
+            return obj;
+        }
+
+        String encode(CoordinateReferenceSystem crs) {
+            if (crs == null) {
+                return null;
+            }
+
+            Integer epsg = Proj.epsgCode(crs);
+            return epsg != null ? "EPSG:" + epsg : Proj.toString(crs);
+        }
+
+        static Entry decode(Map<String,Object> obj) throws Exception {
+            Entry e = new Entry();
+            e.name = (String) obj.get("name");
+            e.title = (String) obj.get("title");
+            e.description = (String) obj.get("description");
+            e.crs = Proj.crs((String) obj.get("crs"));
+
+            List<Number> bbox = (List<Number>) obj.get("bbox");
+            if (bbox != null) {
+                e.bounds = bbox.isEmpty() ? new Envelope() : new Envelope(bbox.get(0).doubleValue(),
+                    bbox.get(2).doubleValue(), bbox.get(1).doubleValue(), bbox.get(3).doubleValue());
+            }
+
+            e.count = ((Number) obj.get("count")).longValue();
+
+            List<Map<String,Object>> fields = (List<Map<String, Object>>) obj.get("fields");
+            if (fields != null) {
+                List<Field> flds = new ArrayList<Field>();
+                for (Map<String,Object> fld : fields) {
+                    Class<?> type = Class.forName((String) fld.get("type"));
+                    flds.add(new Field((String) fld.get("name"), type,
+                        Proj.crs((String) fld.get("crs"))));
+                }
+                e.schema = new Schema(e.name, flds);
+            }
+            return e;
+        }
+    }
+}
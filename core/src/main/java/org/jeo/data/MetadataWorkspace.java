@@ -0,0 +1,113 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.data;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.jeo.feature.Schema;
+import org.jeo.util.Key;
+
+/**
+ * Workspace that lists datasets from cached metadata, deferring opening of the underlying
+ * workspace until a dataset is actually accessed.
+ * <p>
+ * Handles returned from {@link #list()} have their title, description, crs and bounds set from
+ * the cached metadata so that calling {@link Handle#crs()} or {@link Handle#bounds()} does not
+ * resolve the dataset.
+ * </p>
+ */
+class MetadataWorkspace implements Workspace {
+
+    Driver<?> driver;
+    List<MetadataCache.Entry> entries;
+    Callable<Workspace> open;
+
+    Workspace ws;
+
+    MetadataWorkspace(Driver<?> driver, List<MetadataCache.Entry> entries,
+        Callable<Workspace> open) {
+        this.driver = driver;
+        this.entries = entries;
+        this.open = open;
+    }
+
+    @Override
+    public Driver<?> getDriver() {
+        return driver;
+    }
+
+    @Override
+    public Map<Key<?>, Object> getDriverOptions() {
+        try {
+            return workspace().getDriverOptions();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public Iterable<Handle<Dataset>> list() throws IOException {
+        List<Handle<Dataset>> list = new ArrayList<Handle<Dataset>>();
+        for (MetadataCache.Entry e : entries) {
+            Handle<Dataset> h = Handle.to(e.getName(), this);
+            h.setTitle(e.getTitle());
+            h.setDescription(e.getDescription());
+            h.setCRS(e.getCRS());
+            h.setBounds(e.getBounds());
+            list.add(h);
+        }
+        return list;
+    }
+
+    @Override
+    public Dataset get(String layer) throws IOException {
+        return workspace().get(layer);
+    }
+
+    @Override
+    public VectorDataset create(Schema schema) throws IOException {
+        return workspace().create(schema);
+    }
+
+    synchronized Workspace workspace() throws IOException {
+        if (ws == null) {
+            try {
+                ws = open.call();
+            }
+            catch(IOException e) {
+                throw e;
+            }
+            catch(Exception e) {
+                throw new IOException(e);
+            }
+            if (ws == null) {
+                throw new IOException("Unable to open workspace");
+            }
+        }
+        return ws;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (ws != null) {
+            ws.close();
+            ws = null;
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.jeo.feature.Feature;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Point;
+
+/**
+ * Nearest neighbour constraint of a {@link Query}, limiting results to the <tt>k</tt> features
+ * closest to a point.
+ * <p>
+ * Distance is measured from the point to the feature geometry, in the units of the dataset crs.
+ * Features without a geometry are never part of the result. Results are ordered by increasing
+ * distance, features at the same distance in the order they are read.
+ * </p>
+ */
+public class Nearest {
+
+    final Coordinate point;
+    final int k;
+
+    /**
+     * Creates the constraint.
+     *
+     * @param point The point to measure distance from.
+     * @param k The number of features to return.
+     *
+     * @throws IllegalArgumentException If <tt>k</tt> is not positive.
+     */
+    public Nearest(Coordinate point, int k) {
+        if (point == null) {
+            throw new IllegalArgumentException("point must not be null");
+        }
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be positive");
+        }
+
+        this.point = point;
+        this.k = k;
+    }
+
+    /**
+     * The point to measure distance from.
+     */
+    public Coordinate getPoint() {
+        return point;
+    }
+
+    /**
+     * The number of features to return.
+     */
+    public int getK() {
+        return k;
+    }
+
+    /**
+     * Creates a queue that collects the nearest features.
+     */
+    public Queue queue() {
+        return new Queue(this);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * point.hashCode() + k;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null || getClass() != obj.getClass())
+            return false;
+        Nearest other = (Nearest) obj;
+        return k == other.k && point.equals2D(other.point);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("NEAREST(%s %s, %d)", point.x, point.y, k);
+    }
+
+    /**
+     * Bounded priority queue retaining the features nearest to the point of a {@link Nearest}
+     * constraint.
+     * <p>
+     * Usage:
+     * <pre><code>
+     * Nearest.Queue q = nearest.queue();
+     * for (Feature f : cursor) {
+     *   q.offer(f);
+     * }
+     * List&lt;Feature> nearest = q.features();
+     * </code></pre>
+     * </p>
+     */
+    public static class Queue {
+
+        final int k;
+        final Point point;
+        final PriorityQueue<Entry> heap;
+        long seq;
+
+        Queue(Nearest nearest) {
+            k = nearest.k;
+            point = new GeometryFactory().createPoint(nearest.point);
+
+            // farthest entry at the head, later entry first among equal distances
+            heap = new PriorityQueue<Entry>(Math.min(k, 1024), new Comparator<Entry>() {
+                @Override
+                public int compare(Entry e1, Entry e2) {
+                    int cmp = Double.compare(e2.distance, e1.distance);
+                    return cmp != 0 ? cmp : e1.seq < e2.seq ? 1 : e1.seq > e2.seq ? -1 : 0;
+                }
+            });
+        }
+
+        /**
+         * Distance from the point to a feature geometry, <tt>NaN</tt> if the feature has no
+         * geometry.
+         */
+        public double distance(Feature f) {
+            Geometry g = f.geometry();
+            return g != null && !g.isEmpty() ? g.distance(point) : Double.NaN;
+        }
+
+        /**
+         * Offers a feature to the queue.
+         *
+         * @return <code>true</code> if the feature is retained, <code>false</code> if it is
+         *   farther than the features already retained.
+         */
+        public boolean offer(Feature f) {
+            double d = distance(f);
+            if (Double.isNaN(d)) {
+                return false;
+            }
+
+            if (heap.size() < k) {
+                heap.add(new Entry(f, d, seq++));
+                return true;
+            }
+
+            if (d < heap.peek().distance) {
+                heap.poll();
+                heap.add(new Entry(f, d, seq++));
+                return true;
+            }
+
+            seq++;
+            return false;
+        }
+
+        /**
+         * Number of features retained.
+         */
+        public int size() {
+            return heap.size();
+        }
+
+        /**
+         * Whether <tt>k</tt> features have been retained.
+         */
+        public boolean isFull() {
+            return heap.size() == k;
+        }
+
+        /**
+         * Distance of the farthest feature retained once the queue is full, infinity before. Only
+         * features closer than this distance will be retained when offered.
+         */
+        public double distance() {
+            return isFull() ? heap.peek().distance : Double.POSITIVE_INFINITY;
+        }
+
+        /**
+         * The retained features, nearest first.
+         */
+        public List<Feature> features() {
+            List<Entry> entries = new ArrayList<Entry>(heap);
+            Collections.sort(entries, Collections.reverseOrder(heap.comparator()));
+
+            List<Feature> features = new ArrayList<Feature>(entries.size());
+            for (Entry e : entries) {
+                features.add(e.feature);
+            }
+            return features;
+        }
+    }
+
+    static class Entry {
+        final Feature feature;
+        final double distance;
+        final long seq;
+
+        Entry(Feature feature, double distance, long seq) {
+            this.feature = feature;
+            this.distance = distance;
+            this.seq = seq;
+        }
+    }
+}
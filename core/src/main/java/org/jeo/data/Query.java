@@ -33,6 +33,7 @@ import org.osgeo.proj4j.CoordinateReferenceSystem;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Envelope;
 import java.util.HashSet;
 import org.jeo.filter.Expression;
@@ -75,6 +76,17 @@ public class Query {
      */
     List<Sort> sort;
 
+    /**
+     * nearest neighbours
+     */
+    Nearest nearest;
+
+    /**
+     * aggregates and grouping
+     */
+    List<Aggregate> aggregates = new ArrayList<Aggregate>(1);
+    List<String> groupBy = new ArrayList<String>(1);
+
     /**
      * reprojection
      */
@@ -95,6 +107,11 @@ public class Query {
      */
     Cursor.Mode mode = Cursor.READ;
 
+    /**
+     * whether features may be reused by the cursor
+     */
+    boolean reuse;
+
     /**
      * New query instance.
      */
@@ -161,6 +178,13 @@ public class Query {
         return offset;
     }
 
+    /**
+     * Nearest neighbour constraint of the query, <code>null</code> meaning no such constraint.
+     */
+    public Nearest getNearest() {
+        return nearest;
+    }
+
     /**
      * Coordinate reference systems to reproject feature results between, <code>null</code> 
      * meaning no reprojection should occur.
@@ -202,6 +226,15 @@ public class Query {
         return transaction;
     }
 
+    /**
+     * Whether cursors for the query may reuse feature objects.
+     *
+     * @see #reuse()
+     */
+    public boolean isReuse() {
+        return reuse;
+    }
+
     /**
      * Sets the field list of the query.
      * 
@@ -321,6 +354,71 @@ public class Query {
         return this;
     }
 
+    /**
+     * Limits results to the <tt>k</tt> features nearest to a point, ordered by increasing 
+     * distance.
+     * <p>
+     * The point is in the crs of the dataset. The constraint applies after bounds and filter, 
+     * and before offset and limit.
+     * </p>
+     * @return This object.
+     */
+    public Query nearest(Coordinate point, int k) {
+        return nearest(new Nearest(point, k));
+    }
+
+    /**
+     * Sets the nearest neighbour constraint of the query.
+     * 
+     * @return This object.
+     */
+    public Query nearest(Nearest nearest) {
+        this.nearest = nearest;
+        return this;
+    }
+
+    /**
+     * Aggregates of the query, an empty list means features are not aggregated.
+     */
+    public List<Aggregate> getAggregates() {
+        return aggregates;
+    }
+
+    /**
+     * Properties to group features by when aggregating.
+     */
+    public List<String> getGroupBy() {
+        return groupBy;
+    }
+
+    /**
+     * Adds aggregates to compute over the features matching the query.
+     * <p>
+     * An aggregated query returns one feature per group of features, with the group by 
+     * properties and the aggregate values, ordered by the group by values. Aggregates apply 
+     * after bounds, filter and nearest constraints, offset and limit apply to the groups.
+     * </p>
+     * @see Aggregate
+     * 
+     * @return This object.
+     */
+    public Query aggregate(Aggregate... aggregates) {
+        this.aggregates.addAll(Arrays.asList(aggregates));
+        return this;
+    }
+
+    /**
+     * Sets the properties to group features by when aggregating, grouping without aggregates
+     * returns the distinct values of the properties.
+     * 
+     * @return This object.
+     */
+    public Query groupBy(String... properties) {
+        groupBy.clear();
+        groupBy.addAll(Arrays.asList(properties));
+        return this;
+    }
+
     /**
      * Sets the srs to re-project query results to. 
      * 
@@ -399,6 +497,26 @@ public class Query {
         return this;
     }
 
+    /**
+     * Allows read cursors for the query to reuse a single feature object, overwriting its 
+     * values on each call to {@link Cursor#next()}.
+     * <p>
+     * A feature returned by such a cursor is only valid until the next call to 
+     * {@link Cursor#next()} or {@link Cursor#close()}. Callers must not retain it, or any list or 
+     * map obtained from it, and should copy what they need to keep. Values themselves, including
+     * geometries, are not reused. Setting the <tt>jeo.reuse.check</tt> system property makes 
+     * features fail when accessed after they are invalidated. 
+     * </p>
+     * <p>
+     * This is a hint, formats are free to return a new feature for every row.
+     * </p>
+     * @return This object.
+     */
+    public Query reuse() {
+        reuse = true;
+        return this;
+    }
+
     /**
      * Sets the transaction of the query.
      * 
@@ -410,12 +528,20 @@ public class Query {
     }
 
     /**
-     * Determines if the query constrains results with a bounds constraint or filter.
+     * Determines if the query constrains results with a bounds constraint or filter, or 
+     * aggregates them.
      * 
      * @return True if no bounds or filter constraint is applied, otherwise false.
      */
     public boolean isAll() {
-        return Envelopes.isNull(bounds) && !isFiltered();
+        return Envelopes.isNull(bounds) && !isFiltered() && !isAggregated();
+    }
+
+    /**
+     * Determines if the query aggregates results.
+     */
+    public boolean isAggregated() {
+        return !aggregates.isEmpty() || !groupBy.isEmpty();
     }
 
     /**
@@ -430,12 +556,16 @@ public class Query {
      * <p>
      * The adjusted count is equivalent to:
      * <pre>
-     * min(max(0, count-offset), limit)
+     * min(max(0, min(count, k)-offset), limit)
      * </pre>
+     * where <tt>k</tt> is the number of features of the nearest neighbour constraint, if any.
      * </p>
      * @return The adjusted count.
      */
     public long adjustCount(long count) {
+        if (nearest != null) {
+            count = Math.min(count, nearest.getK());
+        }
         if (offset != null) {
             count = Math.max(0, count - offset);
         }
@@ -468,14 +598,18 @@ public class Query {
     public int hashCode() {
         final int prime = 31;
         int result = 1;
+        result = prime * result + ((aggregates == null) ? 0 : aggregates.hashCode());
         result = prime * result + ((bounds == null) ? 0 : bounds.hashCode());
         result = prime * result + ((fields == null) ? 0 : fields.hashCode());
         result = prime * result + ((filter == null) ? 0 : filter.hashCode());
+        result = prime * result + ((groupBy == null) ? 0 : groupBy.hashCode());
         result = prime * result + ((limit == null) ? 0 : limit.hashCode());
         result = prime * result + ((mode == null) ? 0 : mode.hashCode());
+        result = prime * result + ((nearest == null) ? 0 : nearest.hashCode());
         result = prime * result + ((offset == null) ? 0 : offset.hashCode());
         result = prime * result
                 + ((reproject == null) ? 0 : reproject.hashCode());
+        result = prime * result + (reuse ? 1231 : 1237);
         result = prime * result
                 + ((simplify == null) ? 0 : simplify.hashCode());
         result = prime * result + ((sort == null) ? 0 : sort.hashCode());
@@ -493,6 +627,11 @@ public class Query {
         if (getClass() != obj.getClass())
             return false;
         Query other = (Query) obj;
+        if (aggregates == null) {
+            if (other.aggregates != null)
+                return false;
+        } else if (!aggregates.equals(other.aggregates))
+            return false;
         if (bounds == null) {
             if (other.bounds != null)
                 return false;
@@ -508,6 +647,11 @@ public class Query {
                 return false;
         } else if (!filter.equals(other.filter))
             return false;
+        if (groupBy == null) {
+            if (other.groupBy != null)
+                return false;
+        } else if (!groupBy.equals(other.groupBy))
+            return false;
         if (limit == null) {
             if (other.limit != null)
                 return false;
@@ -515,6 +659,11 @@ public class Query {
             return false;
         if (mode != other.mode)
             return false;
+        if (nearest == null) {
+            if (other.nearest != null)
+                return false;
+        } else if (!nearest.equals(other.nearest))
+            return false;
         if (offset == null) {
             if (other.offset != null)
                 return false;
@@ -525,6 +674,8 @@ public class Query {
                 return false;
         } else if (!reproject.equals(other.reproject))
             return false;
+        if (reuse != other.reuse)
+            return false;
         if (simplify == null) {
             if (other.simplify != null)
                 return false;
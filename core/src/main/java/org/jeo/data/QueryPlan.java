@@ -36,6 +36,12 @@ import java.util.Set;
  */
 public class QueryPlan {
 
+    /**
+     * Whether to check that features of cursors for {@link Query#reuse()} queries are not used 
+     * after being invalidated, enabled with the <tt>jeo.reuse.check</tt> system property.
+     */
+    static boolean CHECK_REUSE = Boolean.getBoolean("jeo.reuse.check");
+
     Query q;
 
     boolean bounded;
@@ -45,8 +51,12 @@ public class QueryPlan {
     boolean reprojected;
     boolean simplified;
     boolean sorted;
+    boolean nearest;
+    boolean aggregated;
     boolean fieldsSelected;
 
+    Filter<Feature> residual;
+
     public QueryPlan(Query q) {
         this.q = q;
     }
@@ -79,6 +89,35 @@ public class QueryPlan {
         filtered = true;
     }
 
+    /**
+     * Marks part of {@link Query#getFilter()} as being handled natively, leaving the residual 
+     * filter to be applied by {@link #apply(Cursor)}.
+     * <p>
+     * {@link #isFiltered()} remains <tt>false</tt> unless the residual filter is empty, since 
+     * the features read natively are only candidates.
+     * </p>
+     * @param residual The part of the filter not handled natively, <code>null</code> if none.
+     */
+    public void filtered(Filter<Feature> residual) {
+        if (Filters.isTrueOrNull(residual)) {
+            filtered();
+        }
+        else {
+            this.residual = residual;
+        }
+    }
+
+    /**
+     * The part of {@link Query#getFilter()} that is not handled natively, <code>null</code> if 
+     * the filter is handled entirely.
+     */
+    public Filter<Feature> getResidualFilter() {
+        if (isFiltered()) {
+            return null;
+        }
+        return residual != null ? residual : q.getFilter();
+    }
+
     /**
      * Whether {@link Query#getSort()} was handled natively.
      */
@@ -93,6 +132,44 @@ public class QueryPlan {
         sorted = true;
     }
 
+    /**
+     * Whether {@link Query#getNearest()} was handled natively.
+     */
+    public boolean isNearest() {
+        return nearest;
+    }
+
+    /**
+     * Marks {@link Query#getNearest()} as being handled natively.
+     * <p>
+     * Since the nearest features depend on the bounds and filter of the query, it may only be 
+     * handled natively along with them.
+     * </p>
+     */
+    public void nearest() {
+        nearest = true;
+    }
+
+    /**
+     * Whether {@link Query#getAggregates()} and {@link Query#getGroupBy()} were handled natively.
+     */
+    public boolean isAggregated() {
+        return aggregated;
+    }
+
+    /**
+     * Marks {@link Query#getAggregates()} and {@link Query#getGroupBy()} as being handled 
+     * natively.
+     * <p>
+     * Since aggregates apply to the features matching the query and offset and limit apply to 
+     * the aggregate results, aggregates may only be handled natively along with bounds, filter
+     * and nearest constraints, and offset and limit only along with aggregates.
+     * </p>
+     */
+    public void aggregated() {
+        aggregated = true;
+    }
+
     /**
      * Whether {@link Query#getOffset()} was handled natively.
      */
@@ -163,6 +240,19 @@ public class QueryPlan {
         this.fieldsSelected = true;
     }
 
+    /**
+     * Whether a format may reuse feature objects in the cursor it returns for the query.
+     * <p>
+     * This is the case when the query asks for it with {@link Query#reuse()}, the cursor is a
+     * read cursor, and no part of the query that retains features is left to 
+     * {@link #apply(Cursor)}. It should be called once the plan is updated with the parts of 
+     * the query handled natively.
+     * </p>
+     */
+    public boolean isReusable() {
+        return q.isReuse() && q.getMode() == Cursor.READ && (q.getNearest() == null || isNearest());
+    }
+
     /**
      * Augments the specified cursor with wrappers that handle the parts of the query that could
      * not be processed natively.
@@ -176,17 +266,29 @@ public class QueryPlan {
      * @return The augmented cursor.
      */
     public Cursor<Feature> apply(Cursor<Feature> cursor) {
+        if (CHECK_REUSE && isReusable()) {
+            cursor = Cursors.checkReuse(cursor);
+        }
 
         Envelope bounds = q.getBounds();
         if (!isBounded() && !Envelopes.isNull(bounds)) {
             cursor = Cursors.intersects(cursor, bounds);
         }
 
-        Filter<Feature> filter = q.getFilter();
-        if (!isFiltered() && !Filters.isFalseOrNull(filter)) {
+        Filter<Feature> filter = getResidualFilter();
+        if (!Filters.isFalseOrNull(filter)) {
             cursor = Cursors.filter(cursor, filter);
         }
 
+        Nearest nearest = q.getNearest();
+        if (!isNearest() && nearest != null) {
+            cursor = Cursors.nearest(cursor, nearest);
+        }
+
+        if (!isAggregated() && q.isAggregated()) {
+            cursor = Cursors.aggregate(cursor, q);
+        }
+
         Integer offset = q.getOffset();
         if (!isOffsetted() && offset != null) {
             cursor = Cursors.offset(cursor, offset);
@@ -197,6 +299,11 @@ public class QueryPlan {
             cursor = Cursors.limit(cursor, limit);
         }
 
+        if (q.isAggregated()) {
+            // aggregate results have no geometry and only the group by and aggregate properties
+            return cursor;
+        }
+
         Pair<CoordinateReferenceSystem,CoordinateReferenceSystem> reproj = q.getReproject();
         if (!isReprojected() && reproj != null) {
             cursor = Cursors.reproject(cursor, reproj.first(), reproj.second());
@@ -211,4 +318,49 @@ public class QueryPlan {
         return cursor;
     }
 
+    /**
+     * Reports which parts of the query are handled natively and which are applied in memory by
+     * {@link #apply(Cursor)}.
+     */
+    @Override
+    public String toString() {
+        StringBuilder nat = new StringBuilder(), mem = new StringBuilder();
+
+        report("bounds", !Envelopes.isNull(q.getBounds()), bounded, nat, mem);
+
+        Filter<Feature> filter = q.getFilter();
+        if (!Filters.isTrueOrNull(filter)) {
+            if (filtered) {
+                nat.append("filter ").append(filter).append(", ");
+            }
+            else if (residual != null) {
+                nat.append("filter (partially), ");
+                mem.append("filter ").append(residual).append(", ");
+            }
+            else {
+                mem.append("filter ").append(filter).append(", ");
+            }
+        }
+
+        report("nearest", q.getNearest() != null, nearest, nat, mem);
+        report("aggregates", q.isAggregated(), aggregated, nat, mem);
+        report("offset", q.getOffset() != null, offsetted, nat, mem);
+        report("limit", q.getLimit() != null, limited, nat, mem);
+        report("reproject", q.getReproject() != null, reprojected, nat, mem);
+        report("fields", !q.getFields().isEmpty(), fieldsSelected, nat, mem);
+
+        return String.format("native: [%s], in memory: [%s]", trim(nat), trim(mem));
+    }
+
+    void report(String name, boolean requested, boolean handled, StringBuilder nat, 
+        StringBuilder mem) {
+        if (requested) {
+            (handled ? nat : mem).append(name).append(", ");
+        }
+    }
+
+    String trim(StringBuilder sb) {
+        return sb.length() > 0 ? sb.substring(0, sb.length() - 2) : "";
+    }
+
 }
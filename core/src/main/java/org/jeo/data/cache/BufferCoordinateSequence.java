@@ -0,0 +1,151 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.data.cache;
+
+import java.nio.DoubleBuffer;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.impl.PackedCoordinateSequence;
+
+/**
+ * Coordinate sequence that reads ordinates directly from a shared (typically memory mapped)
+ * buffer of packed coordinates.
+ * <p>
+ * The underlying buffer is never written to, the first call to
+ * {@link #setOrdinate(int, int, double)} copies the coordinates of the sequence to the heap.
+ * </p>
+ */
+class BufferCoordinateSequence implements CoordinateSequence {
+
+    DoubleBuffer buf;
+    int start;
+    int size;
+    int dim;
+
+    double[] copy;
+
+    BufferCoordinateSequence(DoubleBuffer buf, int start, int size, int dim) {
+        this.buf = buf;
+        this.start = start;
+        this.size = size;
+        this.dim = dim;
+    }
+
+    @Override
+    public int getDimension() {
+        return dim;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public double getOrdinate(int index, int ordinateIndex) {
+        if (ordinateIndex >= dim) {
+            return Double.NaN;
+        }
+
+        int i = index * dim + ordinateIndex;
+        return copy != null ? copy[i] : buf.get(start * dim + i);
+    }
+
+    @Override
+    public double getX(int index) {
+        return getOrdinate(index, X);
+    }
+
+    @Override
+    public double getY(int index) {
+        return getOrdinate(index, Y);
+    }
+
+    @Override
+    public Coordinate getCoordinate(int i) {
+        return getCoordinateCopy(i);
+    }
+
+    @Override
+    public Coordinate getCoordinateCopy(int i) {
+        return new Coordinate(getX(i), getY(i), getOrdinate(i, Z));
+    }
+
+    @Override
+    public void getCoordinate(int index, Coordinate coord) {
+        coord.x = getX(index);
+        coord.y = getY(index);
+        coord.z = getOrdinate(index, Z);
+    }
+
+    @Override
+    public void setOrdinate(int index, int ordinateIndex, double value) {
+        if (ordinateIndex >= dim) {
+            return;
+        }
+        if (copy == null) {
+            copy = toArray();
+        }
+        copy[index * dim + ordinateIndex] = value;
+    }
+
+    @Override
+    public Coordinate[] toCoordinateArray() {
+        Coordinate[] coords = new Coordinate[size];
+        for (int i = 0; i < size; i++) {
+            coords[i] = getCoordinateCopy(i);
+        }
+        return coords;
+    }
+
+    @Override
+    public Envelope expandEnvelope(Envelope env) {
+        for (int i = 0; i < size; i++) {
+            env.expandToInclude(getX(i), getY(i));
+        }
+        return env;
+    }
+
+    @Override
+    public Object clone() {
+        return new PackedCoordinateSequence.Double(toArray(), dim);
+    }
+
+    double[] toArray() {
+        if (copy != null) {
+            return copy.clone();
+        }
+
+        double[] a = new double[size * dim];
+        DoubleBuffer b = buf.duplicate();
+        b.position(start * dim);
+        b.get(a);
+        return a;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("(");
+        for (int i = 0; i < size; i++) {
+            sb.append(getX(i)).append(" ").append(getY(i)).append(", ");
+        }
+        if (size > 0) {
+            sb.setLength(sb.length() - 2);
+        }
+        return sb.append(")").toString();
+    }
+}
@@ -0,0 +1,296 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.data.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import org.jeo.data.Cursor;
+import org.jeo.data.Cursors;
+import org.jeo.data.Disposable;
+import org.jeo.data.Query;
+import org.jeo.data.QueryPlan;
+import org.jeo.feature.Feature;
+import org.jeo.feature.Schema;
+import org.jeo.geom.Envelopes;
+import org.jeo.util.Key;
+import org.osgeo.proj4j.CoordinateReferenceSystem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * Memory mapped binary cache of a file based vector dataset.
+ * <p>
+ * On first access the source file is read in full (via {@link #read()}) and materialized into a
+ * columnar binary file made up of packed coordinate arrays, typed attribute columns with
+ * dictionary encoded strings, and an array of feature envelopes. The file is then memory mapped
+ * and used to serve {@link #cursor(Query)}, {@link #bounds()} and {@link #count(Query)} without
+ * parsing the source.
+ * </p>
+ * <p>
+ * Cache files are keyed by the path of the source file and record its length and modification
+ * time, the cache is rebuilt automatically when the source changes. Sources containing values
+ * that can't be represented (nested objects, secondary geometries, etc..) are not cached, in that
+ * case {@link #available()} returns <tt>false</tt> and the dataset should read the source
+ * directly.
+ * </p>
+ * <p>
+ * Usage:
+ * <pre><code>
+ * cache = new ColumnarCache(file, cacheDir, getName()) {
+ *     protected Cursor&lt;Feature> read() throws IOException {
+ *         return new MyCursor(file);
+ *     }
+ *     protected CoordinateReferenceSystem readCRS() throws IOException {
+ *         return parseCRS(file);
+ *     }
+ * };
+ *
+ * if (cache.available()) {
+ *   return cache.cursor(q);
+ * }
+ * </code></pre>
+ * </p>
+ */
+public abstract class ColumnarCache implements Disposable {
+
+    /** logger */
+    static Logger LOG = LoggerFactory.getLogger(ColumnarCache.class);
+
+    /**
+     * Key controlling whether a dataset should use a columnar cache.
+     */
+    public static final Key<Boolean> CACHE = new Key<Boolean>("cache", Boolean.class, false);
+
+    /**
+     * Key specifying the directory in which cache files are stored, defaults to a "jeo" directory
+     * under the system temporary directory.
+     */
+    public static final Key<File> CACHE_DIR = new Key<File>("cache_dir", File.class,
+        new File(System.getProperty("java.io.tmpdir"), "jeo"));
+
+    /**
+     * Returns the cache directory specified by a set of driver options, or <code>null</code>
+     * if the options don't enable caching.
+     */
+    public static File dir(Map<?,Object> opts) {
+        return CACHE.get(opts) ? CACHE_DIR.get(opts) : null;
+    }
+
+    File source;
+    File file;
+    String name;
+
+    ColumnarData data;
+
+    /** source length and time stamp of last failed attempt to create the cache */
+    long failedLength = -1, failedModified = -1;
+
+    /**
+     * Creates the cache.
+     *
+     * @param source The source file being cached.
+     * @param dir The directory in which to store the cache file.
+     * @param name Name of the dataset, used as the schema name for cached features.
+     */
+    protected ColumnarCache(File source, File dir, String name) {
+        this.source = source;
+        this.name = name;
+
+        String path;
+        try {
+            path = source.getCanonicalPath();
+        } catch (IOException e) {
+            path = source.getAbsolutePath();
+        }
+        file = new File(dir,
+            String.format("%s-%08x.jeoc", name, path.hashCode()));
+    }
+
+    /**
+     * Reads the entire source file, bypassing the cache.
+     */
+    protected abstract Cursor<Feature> read() throws IOException;
+
+    /**
+     * Reads the coordinate reference system of the source file, bypassing the cache.
+     */
+    protected abstract CoordinateReferenceSystem readCRS() throws IOException;
+
+    /**
+     * The cache file.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Determines if the cache can be used for the current state of the source file, creating or
+     * refreshing the cache if necessary.
+     */
+    public boolean available() {
+        try {
+            return data() != null;
+        }
+        catch(IOException e) {
+            LOG.debug("Error loading cache for " + source.getPath(), e);
+            return false;
+        }
+    }
+
+    /**
+     * The schema of the cached features.
+     */
+    public Schema schema() throws IOException {
+        return require().schema;
+    }
+
+    /**
+     * The coordinate reference system of the cached data.
+     */
+    public CoordinateReferenceSystem crs() throws IOException {
+        return require().crs;
+    }
+
+    /**
+     * The bounds of the cached data.
+     */
+    public Envelope bounds() throws IOException {
+        return new Envelope(require().bounds);
+    }
+
+    /**
+     * Counts features in the cache, without decoding any when the query has no filter.
+     */
+    public long count(Query q) throws IOException {
+        if (q.isFiltered() || q.isAggregated()) {
+            return Cursors.size(cursor(q));
+        }
+
+        ColumnarData d = require();
+        Envelope bbox = q.getBounds();
+        if (Envelopes.isNull(bbox)) {
+            return q.adjustCount(d.size);
+        }
+
+        long count = 0;
+        for (int i = 0; i < d.size; i++) {
+            if (d.intersects(i, bbox)) {
+                count++;
+            }
+        }
+        return q.adjustCount(count);
+    }
+
+    /**
+     * Returns a read cursor over the cached features.
+     */
+    public Cursor<Feature> cursor(Query q) throws IOException {
+        if (q.getMode() != Cursor.READ) {
+            throw new IOException("Cache only supports read cursors");
+        }
+
+        QueryPlan qp = new QueryPlan(q);
+
+        Envelope bbox = null;
+        if (!Envelopes.isNull(q.getBounds())) {
+            bbox = q.getBounds();
+            qp.bounded();
+        }
+
+        return qp.apply(new ColumnarCursor(require(), bbox, qp.isReusable()));
+    }
+
+    ColumnarData require() throws IOException {
+        ColumnarData d = data();
+        if (d == null) {
+            throw new IOException("Unable to cache " + source.getPath());
+        }
+        return d;
+    }
+
+    synchronized ColumnarData data() throws IOException {
+        if (data != null && data.isCurrent(source)) {
+            return data;
+        }
+
+        data = null;
+
+        long length = source.length();
+        long modified = source.lastModified();
+        if (length == failedLength && modified == failedModified) {
+            return null;
+        }
+
+        if (file.exists()) {
+            try {
+                ColumnarData d = ColumnarData.open(file);
+                if (d.isCurrent(source)) {
+                    return data = d;
+                }
+            }
+            catch(IOException e) {
+                LOG.debug("Error reading cache file " + file.getPath(), e);
+            }
+        }
+
+        File dir = file.getParentFile();
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Unable to create cache directory " + dir.getPath());
+        }
+
+        File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+        try {
+            ColumnarWriter w = new ColumnarWriter(name);
+            Cursor<Feature> c = read();
+            try {
+                while (c.hasNext()) {
+                    w.add(c.next());
+                }
+            }
+            finally {
+                c.close();
+            }
+
+            w.write(tmp, length, modified, readCRS());
+        }
+        catch(IOException e) {
+            LOG.debug("Unable to cache " + source.getPath(), e);
+            tmp.delete();
+
+            failedLength = length;
+            failedModified = modified;
+            return null;
+        }
+
+        if (!tmp.renameTo(file)) {
+            file.delete();
+            if (!tmp.renameTo(file)) {
+                tmp.delete();
+                throw new IOException("Unable to create cache file " + file.getPath());
+            }
+        }
+
+        return data = ColumnarData.open(file);
+    }
+
+    @Override
+    public synchronized void close() {
+        data = null;
+    }
+}
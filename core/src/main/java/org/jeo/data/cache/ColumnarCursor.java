@@ -0,0 +1,79 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.data.cache;
+
+import java.io.IOException;
+
+import org.jeo.data.Cursor;
+import org.jeo.feature.Feature;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * Cursor over the rows of a columnar cache, optionally constrained by a bounding box tested
+ * against the stored feature envelopes.
+ */
+class ColumnarCursor extends Cursor<Feature> {
+
+    ColumnarData data;
+    Envelope bbox;
+
+    /** feature reused for every row, null if features are not reused */
+    ColumnarFeature feature;
+
+    int row;
+    int next = -1;
+
+    ColumnarCursor(ColumnarData data, Envelope bbox, boolean reuse) {
+        this.data = data;
+        this.bbox = bbox;
+        if (reuse && data.size > 0) {
+            feature = new ColumnarFeature(data, 0);
+        }
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        if (next == -1 && data != null) {
+            while (row < data.size) {
+                int i = row++;
+                if (bbox == null || data.intersects(i, bbox)) {
+                    next = i;
+                    break;
+                }
+            }
+        }
+        return next != -1;
+    }
+
+    @Override
+    public Feature next() throws IOException {
+        if (next == -1) {
+            return null;
+        }
+
+        try {
+            return feature != null ? feature.row(next) : new ColumnarFeature(data, next);
+        }
+        finally {
+            next = -1;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        data = null;
+    }
+}
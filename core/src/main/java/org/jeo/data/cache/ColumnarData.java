@@ -0,0 +1,430 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.data.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.jeo.feature.Field;
+import org.jeo.feature.Schema;
+import org.jeo.proj.Proj;
+import org.osgeo.proj4j.CoordinateReferenceSystem;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * Read only view of a memory mapped columnar cache file.
+ * <p>
+ * The file is laid out as a header (source identity, feature count, bounds, crs, schema)
+ * followed by 8 byte aligned sections: feature envelopes, ids, geometry index, geometry
+ * structure, packed coordinates, one section per attribute column and finally the string
+ * dictionary. A footer at the end of the file holds the section offsets. All values are decoded
+ * directly from the mapped buffer, coordinates are exposed through {@link BufferCoordinateSequence}
+ * without copying.
+ * </p>
+ */
+class ColumnarData {
+
+    static final int MAGIC = 0x4A454F43;
+    static final int VERSION = 1;
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /* value tags */
+    static final byte NULL = 0;
+    static final byte INT = 1;
+    static final byte LONG = 2;
+    static final byte FLOAT = 3;
+    static final byte DOUBLE = 4;
+    static final byte BOOLEAN = 5;
+    static final byte STRING = 6;
+    static final byte DATE = 7;
+    static final byte SHORT = 8;
+    static final byte BYTE = 9;
+
+    /* column kinds, homogeneous columns use the tag of their values */
+    static final byte MIXED = 100;
+    static final byte GEOMETRY = 101;
+
+    /* geometry structure codes */
+    static final int G_POINT = 1;
+    static final int G_LINESTRING = 2;
+    static final int G_POLYGON = 3;
+    static final int G_MULTIPOINT = 4;
+    static final int G_MULTILINESTRING = 5;
+    static final int G_MULTIPOLYGON = 6;
+    static final int G_COLLECTION = 7;
+    static final int G_LINEARRING = 8;
+
+    static final GeometryFactory GEOM_FACTORY = new GeometryFactory();
+
+    long srcLength;
+    long srcModified;
+
+    int size;
+    int dim;
+    Envelope bounds;
+    CoordinateReferenceSystem crs;
+    Schema schema;
+    int geom = -1;
+
+    DoubleBuffer envelopes;
+    IntBuffer ids;
+    IntBuffer geomIndex;
+    IntBuffer geomStruct;
+    DoubleBuffer coords;
+    Column[] columns;
+
+    IntBuffer strOffsets;
+    ByteBuffer strBytes;
+    String[] strings;
+
+    /**
+     * Maps the cache file and decodes its header.
+     */
+    static ColumnarData open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel ch = raf.getChannel();
+            if (ch.size() > Integer.MAX_VALUE) {
+                throw new IOException("Cache file too large: " + file.getPath());
+            }
+            return new ColumnarData(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+        }
+        finally {
+            raf.close();
+        }
+    }
+
+    ColumnarData(ByteBuffer buf) throws IOException {
+        if (buf.getInt() != MAGIC) {
+            throw new IOException("Not a columnar cache file");
+        }
+        if (buf.getInt() != VERSION) {
+            throw new IOException("Unsupported cache version");
+        }
+
+        srcLength = buf.getLong();
+        srcModified = buf.getLong();
+        size = buf.getInt();
+        dim = buf.getInt();
+
+        // a null envelope is written as min > max, which the envelope constructor would swap
+        double minx = buf.getDouble(), maxx = buf.getDouble();
+        double miny = buf.getDouble(), maxy = buf.getDouble();
+        bounds = minx > maxx ? new Envelope() : new Envelope(minx, maxx, miny, maxy);
+
+        String srs = readString(buf);
+        crs = srs.isEmpty() ? null : Proj.crs(srs);
+
+        String name = readString(buf);
+        int nfields = buf.getInt();
+
+        List<Field> fields = new ArrayList<Field>(nfields);
+        byte[] kinds = new byte[nfields];
+        for (int i = 0; i < nfields; i++) {
+            String fname = readString(buf);
+            Class<?> type = type(readString(buf));
+            kinds[i] = buf.get();
+
+            if (kinds[i] == GEOMETRY) {
+                geom = i;
+                fields.add(new Field(fname, type, crs));
+            }
+            else {
+                fields.add(new Field(fname, type));
+            }
+        }
+        schema = new Schema(name, fields);
+
+        // footer
+        buf.position(buf.limit() - 8);
+        buf.position((int) buf.getLong());
+
+        envelopes = section(buf).asDoubleBuffer();
+        ids = section(buf).asIntBuffer();
+        geomIndex = section(buf).asIntBuffer();
+        geomStruct = section(buf).asIntBuffer();
+        coords = section(buf).asDoubleBuffer();
+
+        columns = new Column[nfields];
+        for (int i = 0; i < nfields; i++) {
+            if (kinds[i] != GEOMETRY) {
+                columns[i] = new Column(kinds[i], section(buf), size);
+            }
+        }
+
+        ByteBuffer strs = section(buf);
+        int nstrs = strs.getInt();
+        strOffsets = strs.slice().asIntBuffer();
+        strs.position(strs.position() + 4 * (nstrs + 1));
+        strBytes = strs.slice();
+        strings = new String[nstrs];
+    }
+
+    static ByteBuffer section(ByteBuffer buf) {
+        int off = (int) buf.getLong();
+        ByteBuffer b = buf.duplicate();
+        b.position(off);
+        return b.slice();
+    }
+
+    static String readString(ByteBuffer buf) {
+        byte[] b = new byte[buf.getInt()];
+        buf.get(b);
+        return new String(b, UTF8);
+    }
+
+    static Class<?> type(String name) {
+        try {
+            return Class.forName(name);
+        }
+        catch(ClassNotFoundException e) {
+            return Object.class;
+        }
+    }
+
+    /**
+     * Determines if this cache was created from the current state of the specified file.
+     */
+    boolean isCurrent(File source) {
+        return source.length() == srcLength && source.lastModified() == srcModified;
+    }
+
+    boolean intersects(int row, Envelope e) {
+        int i = row * 4;
+        double minx = envelopes.get(i);
+        if (Double.isNaN(minx)) {
+            return false;
+        }
+
+        return !(minx > e.getMaxX() || envelopes.get(i+2) < e.getMinX() ||
+            envelopes.get(i+1) > e.getMaxY() || envelopes.get(i+3) < e.getMinY());
+    }
+
+    String string(int i) {
+        if (i < 0) {
+            return null;
+        }
+
+        String s = strings[i];
+        if (s == null) {
+            int off = strOffsets.get(i);
+            byte[] b = new byte[strOffsets.get(i+1) - off];
+            ByteBuffer d = strBytes.duplicate();
+            d.position(off);
+            d.get(b);
+            strings[i] = s = new String(b, UTF8);
+        }
+        return s;
+    }
+
+    String id(int row) {
+        return string(ids.get(row));
+    }
+
+    Object value(int field, int row) {
+        if (field == geom) {
+            return geometry(row);
+        }
+        return columns[field].get(row, this);
+    }
+
+    Geometry geometry(int row) {
+        int i = geomIndex.get(row);
+        return i < 0 ? null : decode(new int[]{i});
+    }
+
+    Geometry decode(int[] pos) {
+        int type = geomStruct.get(pos[0]++);
+        switch(type) {
+        case G_POINT:
+            return GEOM_FACTORY.createPoint(sequence(pos));
+        case G_LINESTRING:
+            return GEOM_FACTORY.createLineString(sequence(pos));
+        case G_LINEARRING:
+            return GEOM_FACTORY.createLinearRing(sequence(pos));
+        case G_POLYGON:
+            return polygon(pos);
+        }
+
+        Geometry[] geoms = null;
+        int n = geomStruct.get(pos[0]++);
+        switch(type) {
+        case G_MULTIPOINT:
+            geoms = new Point[n];
+            break;
+        case G_MULTILINESTRING:
+            geoms = new LineString[n];
+            break;
+        case G_MULTIPOLYGON:
+            geoms = new Polygon[n];
+            break;
+        case G_COLLECTION:
+            geoms = new Geometry[n];
+            break;
+        default:
+            throw new IllegalStateException("Unknown geometry code: " + type);
+        }
+
+        for (int i = 0; i < n; i++) {
+            geoms[i] = decode(pos);
+        }
+
+        switch(type) {
+        case G_MULTIPOINT:
+            return GEOM_FACTORY.createMultiPoint((Point[]) geoms);
+        case G_MULTILINESTRING:
+            return GEOM_FACTORY.createMultiLineString((LineString[]) geoms);
+        case G_MULTIPOLYGON:
+            return GEOM_FACTORY.createMultiPolygon((Polygon[]) geoms);
+        default:
+            return GEOM_FACTORY.createGeometryCollection(geoms);
+        }
+    }
+
+    Polygon polygon(int[] pos) {
+        int n = geomStruct.get(pos[0]++);
+        LinearRing shell = GEOM_FACTORY.createLinearRing(sequence(pos));
+        LinearRing[] holes = new LinearRing[n-1];
+        for (int i = 0; i < holes.length; i++) {
+            holes[i] = GEOM_FACTORY.createLinearRing(sequence(pos));
+        }
+        return GEOM_FACTORY.createPolygon(shell, holes);
+    }
+
+    BufferCoordinateSequence sequence(int[] pos) {
+        int start = geomStruct.get(pos[0]++);
+        int count = geomStruct.get(pos[0]++);
+        return new BufferCoordinateSequence(coords, start, count, dim);
+    }
+
+    /**
+     * A single attribute column.
+     */
+    static class Column {
+        byte kind;
+        ByteBuffer nulls;
+        ByteBuffer bytes;
+        IntBuffer ints;
+        LongBuffer longs;
+        DoubleBuffer doubles;
+
+        Column(byte kind, ByteBuffer buf, int size) {
+            this.kind = kind;
+
+            switch(kind) {
+            case INT:
+            case LONG:
+            case DOUBLE:
+                nulls = buf.duplicate();
+                buf.position(pad((size + 7) / 8));
+                ByteBuffer vals = buf.slice();
+                if (kind == INT) {
+                    ints = vals.asIntBuffer();
+                }
+                else if (kind == LONG) {
+                    longs = vals.asLongBuffer();
+                }
+                else {
+                    doubles = vals.asDoubleBuffer();
+                }
+                break;
+            case BOOLEAN:
+                bytes = buf;
+                break;
+            case STRING:
+                ints = buf.asIntBuffer();
+                break;
+            default:
+                bytes = buf.duplicate();
+                buf.position(pad(size));
+                longs = buf.slice().asLongBuffer();
+            }
+        }
+
+        Object get(int row, ColumnarData data) {
+            switch(kind) {
+            case INT:
+                return isNull(row) ? null : Integer.valueOf(ints.get(row));
+            case LONG:
+                return isNull(row) ? null : Long.valueOf(longs.get(row));
+            case DOUBLE:
+                return isNull(row) ? null : Double.valueOf(doubles.get(row));
+            case BOOLEAN:
+                byte b = bytes.get(row);
+                return b == NULL ? null : Boolean.valueOf(b == 2);
+            case STRING:
+                return data.string(ints.get(row));
+            default:
+                return mixed(bytes.get(row), longs.get(row), data);
+            }
+        }
+
+        boolean isNull(int row) {
+            return (nulls.get(row >> 3) & (1 << (row & 7))) != 0;
+        }
+
+        Object mixed(byte tag, long val, ColumnarData data) {
+            switch(tag) {
+            case NULL:
+                return null;
+            case INT:
+                return Integer.valueOf((int) val);
+            case SHORT:
+                return Short.valueOf((short) val);
+            case BYTE:
+                return Byte.valueOf((byte) val);
+            case LONG:
+                return Long.valueOf(val);
+            case FLOAT:
+                return Float.valueOf(Float.intBitsToFloat((int) val));
+            case DOUBLE:
+                return Double.valueOf(Double.longBitsToDouble(val));
+            case BOOLEAN:
+                return Boolean.valueOf(val != 0);
+            case STRING:
+                return data.string((int) val);
+            case DATE:
+                return new Date(val);
+            default:
+                throw new IllegalStateException("Unknown value tag: " + tag);
+            }
+        }
+    }
+
+    /**
+     * Rounds a byte count up to the section alignment.
+     */
+    static int pad(int n) {
+        return (n + 7) & ~7;
+    }
+}
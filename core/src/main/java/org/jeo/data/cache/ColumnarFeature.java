@@ -0,0 +1,140 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.data.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jeo.feature.BasicFeature;
+import org.jeo.feature.Field;
+import org.jeo.feature.Schema;
+
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * Feature backed by a row of a columnar cache.
+ * <p>
+ * Attribute values are decoded lazily on first access.
+ * </p>
+ */
+class ColumnarFeature extends BasicFeature {
+
+    ColumnarFeature(ColumnarData data, int row) {
+        super(data.id(row), new RowStorage(data, row));
+    }
+
+    /**
+     * Moves the feature to another row, for cursors reusing a single feature.
+     */
+    ColumnarFeature row(int row) {
+        RowStorage rs = (RowStorage) storage;
+        rs.row = row;
+        Arrays.fill(rs.values, RowStorage.UNSET);
+
+        id = rs.data.id(row);
+        crs = null;
+        return this;
+    }
+
+    static class RowStorage extends Storage {
+
+        static final Object UNSET = new Object();
+
+        ColumnarData data;
+        int row;
+        Object[] values;
+
+        RowStorage(ColumnarData data, int row) {
+            super(data.schema);
+            this.data = data;
+            this.row = row;
+
+            values = new Object[data.schema.size()];
+            Arrays.fill(values, UNSET);
+        }
+
+        @Override
+        protected Geometry geometry() {
+            return data.geom != -1 ? (Geometry) get(data.geom) : null;
+        }
+
+        @Override
+        protected Schema buildSchema() {
+            return data.schema;
+        }
+
+        @Override
+        protected Geometry findGeometry() {
+            return geometry();
+        }
+
+        @Override
+        protected boolean has(String key) {
+            return data.schema.indexOf(key) != -1;
+        }
+
+        @Override
+        protected Object get(int index) {
+            Object val = values[index];
+            if (val == UNSET) {
+                values[index] = val = data.value(index, row);
+            }
+            return val;
+        }
+
+        @Override
+        protected Object get(String key) {
+            int i = data.schema.indexOf(key);
+            return i != -1 ? get(i) : null;
+        }
+
+        @Override
+        protected void set(int index, Object value) {
+            values[index] = value;
+        }
+
+        @Override
+        protected void put(String key, Object value) {
+            int i = data.schema.indexOf(key);
+            if (i == -1) {
+                throw new IllegalArgumentException("No such key " + key);
+            }
+            set(i, value);
+        }
+
+        @Override
+        protected List<Object> list() {
+            List<Object> list = new ArrayList<Object>(values.length);
+            for (int i = 0; i < values.length; i++) {
+                list.add(get(i));
+            }
+            return Collections.unmodifiableList(list);
+        }
+
+        @Override
+        protected Map<String, Object> map() {
+            Map<String,Object> map = new LinkedHashMap<String, Object>();
+            int i = 0;
+            for (Field f : data.schema) {
+                map.put(f.getName(), get(i++));
+            }
+            return Collections.unmodifiableMap(map);
+        }
+    }
+}
@@ -0,0 +1,547 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.data.cache;
+
+import static org.jeo.data.cache.ColumnarData.*;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jeo.feature.Feature;
+import org.jeo.feature.Field;
+import org.jeo.proj.Proj;
+import org.osgeo.proj4j.CoordinateReferenceSystem;
+
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryCollection;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.MultiLineString;
+import com.vividsolutions.jts.geom.MultiPoint;
+import com.vividsolutions.jts.geom.MultiPolygon;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * Materializes features into the layout read by {@link ColumnarData}.
+ * <p>
+ * Features are accumulated into growable primitive arrays, attribute values are recorded as a
+ * tag and a 64 bit slot per row and narrowed to a typed column on write when all values of
+ * the column share the same type.
+ * </p>
+ */
+class ColumnarWriter {
+
+    String name;
+    int size;
+    Envelope bounds = new Envelope();
+
+    double[] envs = new double[256];
+    int[] ids = new int[64];
+    int[] geomIndex = new int[64];
+
+    int[] struct = new int[256];
+    int nstruct;
+
+    double[] xy = new double[1024];
+    double[] z;
+    int ncoords;
+
+    String geomName;
+    Class<?> geomType;
+    Map<String,Column> columns = new LinkedHashMap<String, Column>();
+
+    Map<String,Integer> dict = new HashMap<String, Integer>();
+    List<String> strings = new ArrayList<String>();
+
+    ColumnarWriter(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Appends a feature.
+     *
+     * @throws IOException If the feature contains a value that can not be cached.
+     */
+    void add(Feature f) throws IOException {
+        int row = size;
+        ids = ensure(ids, row + 1);
+        ids[row] = intern(f.getId());
+
+        if (geomName == null) {
+            Field gf = f.isSchemaless() ? null : f.schema().geometry();
+            if (gf != null) {
+                geomName = gf.getName();
+                geomType = gf.getType();
+            }
+        }
+
+        for (Map.Entry<String, Object> e : f.map().entrySet()) {
+            String key = e.getKey();
+            Object val = e.getValue();
+
+            if (geomName == null && val instanceof Geometry) {
+                Column col = columns.get(key);
+                if (col != null && !col.isNull()) {
+                    throw new IOException("Field " + key + " mixes geometries and values");
+                }
+
+                geomName = key;
+                geomType = f.isSchemaless() ? val.getClass() : f.schema().field(key).getType();
+            }
+
+            if (key.equals(geomName)) {
+                // null entry marks the position of the geometry field
+                columns.put(key, null);
+                continue;
+            }
+
+            Column col = columns.get(key);
+            if (col == null) {
+                Field fld = f.schema().field(key);
+                col = new Column(fld != null ? fld.getType() : Object.class, row);
+                columns.put(key, col);
+            }
+            col.add(val, this);
+        }
+
+        for (Column col : columns.values()) {
+            if (col != null) {
+                col.fill(row + 1);
+            }
+        }
+
+        Geometry g = geomName != null ? (Geometry) f.get(geomName) : null;
+        envs = ensure(envs, (row + 1) * 4);
+        geomIndex = ensure(geomIndex, row + 1);
+        if (g != null && !g.isEmpty()) {
+            Envelope e = g.getEnvelopeInternal();
+            envs[row*4] = e.getMinX();
+            envs[row*4+1] = e.getMinY();
+            envs[row*4+2] = e.getMaxX();
+            envs[row*4+3] = e.getMaxY();
+            bounds.expandToInclude(e);
+        }
+        else {
+            Arrays.fill(envs, row*4, row*4+4, Double.NaN);
+        }
+
+        if (g != null) {
+            geomIndex[row] = nstruct;
+            encode(g);
+        }
+        else {
+            geomIndex[row] = -1;
+        }
+
+        size++;
+    }
+
+    void encode(Geometry g) throws IOException {
+        if (g instanceof Point) {
+            struct(G_POINT);
+            encode(((Point) g).getCoordinateSequence());
+        }
+        else if (g instanceof LinearRing) {
+            struct(G_LINEARRING);
+            encode(((LinearRing) g).getCoordinateSequence());
+        }
+        else if (g instanceof LineString) {
+            struct(G_LINESTRING);
+            encode(((LineString) g).getCoordinateSequence());
+        }
+        else if (g instanceof Polygon) {
+            Polygon p = (Polygon) g;
+            struct(G_POLYGON);
+            struct(p.getNumInteriorRing() + 1);
+            encode(p.getExteriorRing().getCoordinateSequence());
+            for (int i = 0; i < p.getNumInteriorRing(); i++) {
+                encode(p.getInteriorRingN(i).getCoordinateSequence());
+            }
+        }
+        else if (g instanceof GeometryCollection) {
+            struct(g instanceof MultiPoint ? G_MULTIPOINT : g instanceof MultiLineString ?
+                G_MULTILINESTRING : g instanceof MultiPolygon ? G_MULTIPOLYGON : G_COLLECTION);
+            struct(g.getNumGeometries());
+            for (int i = 0; i < g.getNumGeometries(); i++) {
+                encode(g.getGeometryN(i));
+            }
+        }
+        else {
+            throw new IOException("Unsupported geometry type: " + g.getGeometryType());
+        }
+    }
+
+    void encode(CoordinateSequence seq) {
+        int n = seq.size();
+        struct(ncoords);
+        struct(n);
+
+        xy = ensure(xy, (ncoords + n) * 2);
+        for (int i = 0; i < n; i++) {
+            int j = ncoords + i;
+            xy[j*2] = seq.getX(i);
+            xy[j*2+1] = seq.getY(i);
+
+            double zv = seq.getDimension() > 2 ? seq.getOrdinate(i, CoordinateSequence.Z) : Double.NaN;
+            if (z == null && !Double.isNaN(zv)) {
+                z = new double[xy.length / 2];
+                Arrays.fill(z, Double.NaN);
+            }
+            if (z != null) {
+                z = ensure(z, j + 1, Double.NaN);
+                z[j] = zv;
+            }
+        }
+        ncoords += n;
+    }
+
+    void struct(int val) {
+        struct = ensure(struct, nstruct + 1);
+        struct[nstruct++] = val;
+    }
+
+    int intern(String s) {
+        if (s == null) {
+            return -1;
+        }
+
+        Integer i = dict.get(s);
+        if (i == null) {
+            i = strings.size();
+            strings.add(s);
+            dict.put(s, i);
+        }
+        return i;
+    }
+
+    /**
+     * Writes the cache file.
+     *
+     * @param file The file to write.
+     * @param srcLength Length of the source file the cache was created from.
+     * @param srcModified Modification time of the source file the cache was created from.
+     * @param crs The crs of the source data, may be <code>null</code>.
+     */
+    void write(File file, long srcLength, long srcModified, CoordinateReferenceSystem crs)
+        throws IOException {
+
+        List<Long> sections = new ArrayList<Long>();
+
+        DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(file), 65536));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(srcLength);
+            out.writeLong(srcModified);
+            out.writeInt(size);
+            out.writeInt(z != null ? 3 : 2);
+
+            out.writeDouble(bounds.getMinX());
+            out.writeDouble(bounds.getMaxX());
+            out.writeDouble(bounds.getMinY());
+            out.writeDouble(bounds.getMaxY());
+
+            String srs = "";
+            if (crs != null) {
+                Integer epsg = Proj.epsgCode(crs);
+                srs = epsg != null ? "EPSG:" + epsg : Proj.toString(crs);
+            }
+            writeString(srs, out);
+            writeString(name, out);
+
+            out.writeInt(columns.size());
+            for (Map.Entry<String, Column> e : columns.entrySet()) {
+                Column col = e.getValue();
+                writeString(e.getKey(), out);
+                writeString((col != null ? col.type : geomType).getName(), out);
+                out.writeByte(col != null ? col.kind() : GEOMETRY);
+            }
+
+            section(out, sections);
+            for (int i = 0; i < size * 4; i++) {
+                out.writeDouble(envs[i]);
+            }
+
+            section(out, sections);
+            for (int i = 0; i < size; i++) {
+                out.writeInt(ids[i]);
+            }
+
+            section(out, sections);
+            for (int i = 0; i < size; i++) {
+                out.writeInt(geomIndex[i]);
+            }
+
+            section(out, sections);
+            for (int i = 0; i < nstruct; i++) {
+                out.writeInt(struct[i]);
+            }
+
+            section(out, sections);
+            for (int i = 0; i < ncoords; i++) {
+                out.writeDouble(xy[i*2]);
+                out.writeDouble(xy[i*2+1]);
+                if (z != null) {
+                    out.writeDouble(i < z.length ? z[i] : Double.NaN);
+                }
+            }
+
+            for (Column col : columns.values()) {
+                if (col != null) {
+                    section(out, sections);
+                    col.write(out, size);
+                }
+            }
+
+            section(out, sections);
+            byte[][] encoded = new byte[strings.size()][];
+            out.writeInt(encoded.length);
+
+            int off = 0;
+            out.writeInt(off);
+            for (int i = 0; i < encoded.length; i++) {
+                encoded[i] = strings.get(i).getBytes(UTF8);
+                off += encoded[i].length;
+                out.writeInt(off);
+            }
+            for (byte[] b : encoded) {
+                out.write(b);
+            }
+
+            align(out);
+            long footer = out.size();
+            for (Long l : sections) {
+                out.writeLong(l);
+            }
+            out.writeLong(footer);
+
+            if (out.size() == Integer.MAX_VALUE) {
+                throw new IOException("Cache file too large");
+            }
+            out.flush();
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    static void section(DataOutputStream out, List<Long> sections) throws IOException {
+        align(out);
+        sections.add((long) out.size());
+    }
+
+    static void align(DataOutputStream out) throws IOException {
+        while (out.size() % 8 != 0) {
+            out.writeByte(0);
+        }
+    }
+
+    static void writeString(String s, DataOutputStream out) throws IOException {
+        byte[] b = s.getBytes(UTF8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    static int[] ensure(int[] a, int n) {
+        return n > a.length ? Arrays.copyOf(a, Math.max(n, a.length * 2)) : a;
+    }
+
+    static long[] ensure(long[] a, int n) {
+        return n > a.length ? Arrays.copyOf(a, Math.max(n, a.length * 2)) : a;
+    }
+
+    static byte[] ensure(byte[] a, int n) {
+        return n > a.length ? Arrays.copyOf(a, Math.max(n, a.length * 2)) : a;
+    }
+
+    static double[] ensure(double[] a, int n) {
+        return n > a.length ? Arrays.copyOf(a, Math.max(n, a.length * 2)) : a;
+    }
+
+    static double[] ensure(double[] a, int n, double fill) {
+        if (n <= a.length) {
+            return a;
+        }
+
+        int len = a.length;
+        a = Arrays.copyOf(a, Math.max(n, len * 2));
+        Arrays.fill(a, len, a.length, fill);
+        return a;
+    }
+
+    /**
+     * Attribute column being built, values are stored as a tag and a 64 bit slot.
+     */
+    static class Column {
+        Class<?> type;
+        byte[] tags = new byte[64];
+        long[] slots = new long[64];
+        int size;
+
+        /** bit set of tags encountered */
+        int seen;
+
+        Column(Class<?> type, int rows) {
+            this.type = type;
+            fill(rows);
+        }
+
+        boolean isNull() {
+            return seen == 0;
+        }
+
+        void fill(int rows) {
+            tags = ensure(tags, rows);
+            slots = ensure(slots, rows);
+            while (size < rows) {
+                tags[size] = NULL;
+                slots[size++] = 0;
+            }
+        }
+
+        void add(Object val, ColumnarWriter w) throws IOException {
+            byte tag;
+            long slot;
+
+            if (val == null) {
+                tag = NULL;
+                slot = 0;
+            }
+            else if (val instanceof Integer) {
+                tag = INT;
+                slot = ((Integer) val).intValue();
+            }
+            else if (val instanceof Double) {
+                tag = DOUBLE;
+                slot = Double.doubleToRawLongBits((Double) val);
+            }
+            else if (val instanceof String) {
+                tag = STRING;
+                slot = w.intern((String) val);
+            }
+            else if (val instanceof Long) {
+                tag = LONG;
+                slot = (Long) val;
+            }
+            else if (val instanceof Float) {
+                tag = FLOAT;
+                slot = Float.floatToRawIntBits((Float) val);
+            }
+            else if (val instanceof Boolean) {
+                tag = BOOLEAN;
+                slot = ((Boolean) val) ? 1 : 0;
+            }
+            else if (val instanceof Short) {
+                tag = SHORT;
+                slot = (Short) val;
+            }
+            else if (val instanceof Byte) {
+                tag = BYTE;
+                slot = (Byte) val;
+            }
+            else if (val instanceof Date) {
+                tag = DATE;
+                slot = ((Date) val).getTime();
+            }
+            else {
+                throw new IOException("Unable to cache value of type " + val.getClass().getName());
+            }
+
+            if (tag != NULL) {
+                seen |= 1 << tag;
+            }
+
+            tags = ensure(tags, size + 1);
+            slots = ensure(slots, size + 1);
+            tags[size] = tag;
+            slots[size++] = slot;
+        }
+
+        byte kind() {
+            switch(seen) {
+            case 0:
+                return STRING;
+            case 1 << INT:
+                return INT;
+            case 1 << LONG:
+                return LONG;
+            case 1 << DOUBLE:
+                return DOUBLE;
+            case 1 << BOOLEAN:
+                return BOOLEAN;
+            case 1 << STRING:
+                return STRING;
+            default:
+                return MIXED;
+            }
+        }
+
+        void write(DataOutputStream out, int n) throws IOException {
+            byte kind = kind();
+            switch(kind) {
+            case INT:
+            case LONG:
+            case DOUBLE:
+                byte[] nulls = new byte[pad((n + 7) / 8)];
+                for (int i = 0; i < n; i++) {
+                    if (tags[i] == NULL) {
+                        nulls[i >> 3] |= 1 << (i & 7);
+                    }
+                }
+                out.write(nulls);
+
+                for (int i = 0; i < n; i++) {
+                    if (kind == INT) {
+                        out.writeInt((int) slots[i]);
+                    }
+                    else {
+                        out.writeLong(slots[i]);
+                    }
+                }
+                break;
+            case BOOLEAN:
+                for (int i = 0; i < n; i++) {
+                    out.writeByte(tags[i] == NULL ? NULL : (int) slots[i] + 1);
+                }
+                break;
+            case STRING:
+                for (int i = 0; i < n; i++) {
+                    out.writeInt(tags[i] == NULL ? -1 : (int) slots[i]);
+                }
+                break;
+            default:
+                out.write(tags, 0, n);
+                align(out);
+                for (int i = 0; i < n; i++) {
+                    out.writeLong(slots[i]);
+                }
+            }
+        }
+    }
+}
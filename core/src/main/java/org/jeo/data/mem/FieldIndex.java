@@ -0,0 +1,255 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.data.mem;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import org.jeo.feature.Feature;
+import org.jeo.filter.Comparison;
+import org.jeo.util.Convert;
+import org.jeo.util.Optional;
+
+/**
+ * Secondary index over the values of a field of a {@link MemVector}.
+ * <p>
+ * The index maps values to the positions of features within a {@link MemSnapshot}. A hash index
+ * answers equality lookups, a sorted index answers range lookups as well. Values are compared the
+ * same way as {@link Comparison} does, literals are converted to the type of the indexed values.
+ * <code>null</code> and NaN values are not indexed since they never match a lookup.
+ * </p>
+ * <p>
+ * An index only applies while all indexed values are of the same class. Once a value of another
+ * class is added the index is marked unusable and queries fall back to scanning.
+ * </p>
+ */
+class FieldIndex {
+
+    final String field;
+    final Map<Object,Positions> map;
+
+    /** class of indexed values */
+    Class<?> type;
+
+    /** whether the index can be used for lookups */
+    boolean usable = true;
+
+    FieldIndex(String field, boolean sorted) {
+        this.field = field;
+        this.map = sorted ? new TreeMap<Object, Positions>() : new HashMap<Object, Positions>();
+    }
+
+    /**
+     * Whether the index supports range lookups.
+     */
+    boolean isSorted() {
+        return map instanceof NavigableMap;
+    }
+
+    /**
+     * Indexes the feature at the specified position.
+     */
+    void add(int pos, Feature f) {
+        Object val = f.get(field);
+        if (!check(val)) {
+            return;
+        }
+
+        Positions p = map.get(val);
+        if (p == null) {
+            p = new Positions(1);
+            map.put(val, p);
+        }
+        p.add(pos);
+    }
+
+    /**
+     * Checks a value before it is indexed, returning <code>false</code> if it should be skipped.
+     */
+    boolean check(Object val) {
+        if (!usable || val == null || isNaN(val)) {
+            return false;
+        }
+
+        if (type == null) {
+            if (isSorted() && !(val instanceof Comparable)) {
+                usable = false;
+                return false;
+            }
+            type = val.getClass();
+        }
+        else if (type != val.getClass()) {
+            usable = false;
+            map.clear();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Converts a literal to the type of indexed values, returning <code>null</code> if not
+     * possible.
+     */
+    Object convert(Object literal) {
+        if (literal == null || type == null) {
+            return null;
+        }
+        if (type.isInstance(literal)) {
+            return literal;
+        }
+
+        Optional<?> converted = Convert.to(literal, type);
+        return converted.has() ? converted.get() : null;
+    }
+
+    /**
+     * Positions of features whose value equals the specified value, which must be of the indexed
+     * type.
+     */
+    Positions get(Object val) {
+        Positions p = map.get(val);
+        return p != null ? p : new Positions(0);
+    }
+
+    /**
+     * Positions of features matching a comparison of their value with a literal, or
+     * <code>null</code> if the comparison can't be answered by the index.
+     */
+    Positions compare(Comparison.Type op, Object literal) {
+        if (!usable) {
+            return null;
+        }
+        if (type == null) {
+            // nothing indexed
+            return map.isEmpty() && literal != null ? new Positions(0) : null;
+        }
+
+        Object val = convert(literal);
+        if (val == null) {
+            return null;
+        }
+        if (isNaN(val)) {
+            return new Positions(0);
+        }
+
+        if (op == Comparison.Type.EQUAL) {
+            return get(val);
+        }
+        if (!isSorted()) {
+            return null;
+        }
+
+        NavigableMap<Object,Positions> sorted = (NavigableMap<Object, Positions>) map;
+        switch(op) {
+        case LESS:
+            return flatten(sorted.headMap(val, false).values());
+        case LESS_OR_EQUAL:
+            return flatten(sorted.headMap(val, true).values());
+        case GREATER:
+            return flatten(sorted.tailMap(val, false).values());
+        case GREATER_OR_EQUAL:
+            return flatten(sorted.tailMap(val, true).values());
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Positions of features whose value equals one of the specified values, as compared with
+     * {@link Object#equals(Object)}, or <code>null</code> if the lookup can't be answered by the
+     * index.
+     */
+    Positions in(List<Object> values) {
+        if (!usable) {
+            return null;
+        }
+
+        Positions result = new Positions(values.size());
+        for (Object val : values) {
+            if (isNaN(val)) {
+                return null;
+            }
+            if (val != null && val.getClass() == type) {
+                result.addAll(get(val));
+            }
+        }
+        return result;
+    }
+
+    Positions flatten(Collection<Positions> all) {
+        Positions result = new Positions(all.size());
+        for (Positions p : all) {
+            result.addAll(p);
+        }
+        return result;
+    }
+
+    static boolean isNaN(Object o) {
+        return o instanceof Number && Double.isNaN(((Number)o).doubleValue());
+    }
+
+    /**
+     * Growable list of feature positions.
+     */
+    static class Positions {
+
+        int[] values;
+        int size;
+
+        Positions(int capacity) {
+            values = new int[Math.max(capacity, 1)];
+        }
+
+        int size() {
+            return size;
+        }
+
+        void add(int pos) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = pos;
+        }
+
+        void addAll(Positions other) {
+            if (size + other.size > values.length) {
+                values = Arrays.copyOf(values, Math.max(size + other.size, size * 2));
+            }
+            System.arraycopy(other.values, 0, values, size, other.size);
+            size += other.size;
+        }
+
+        /**
+         * Returns the positions in ascending order with duplicates removed.
+         */
+        int[] sorted() {
+            int[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+
+            int n = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (n == 0 || sorted[n-1] != sorted[i]) {
+                    sorted[n++] = sorted[i];
+                }
+            }
+            return n == sorted.length ? sorted : Arrays.copyOf(sorted, n);
+        }
+    }
+}
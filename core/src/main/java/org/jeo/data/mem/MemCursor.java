@@ -17,6 +17,7 @@ package org.jeo.data.mem;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import org.jeo.data.Cursor;
 import org.jeo.data.Cursors;
@@ -30,6 +31,9 @@ public class MemCursor extends Cursor<Feature> {
     Cursor<Feature> cursor;
     Feature curr;
 
+    /** feature of the dataset the current feature is a view of, in update mode */
+    Feature target;
+
     MemCursor(Mode mode, List<Feature> features, MemVector dataset) {
         super(mode);
         this.dataset = dataset;
@@ -53,6 +57,7 @@ public class MemCursor extends Cursor<Feature> {
         else {
             curr = cursor.next();
             if (mode == UPDATE) {
+                target = curr;
                 curr = new DiffFeature(curr);
             }
         }
@@ -65,14 +70,16 @@ public class MemCursor extends Cursor<Feature> {
             dataset.add(curr);
         }
         else {
-            dataset.modify((DiffFeature)curr);
+            Map<String,Object> changes = ((DiffFeature)curr).getChanged();
+            if (!changes.isEmpty()) {
+                dataset.modify(target, changes);
+            }
         }
     }
     
     @Override
     protected void doRemove() throws IOException {
-        Feature f = ((DiffFeature)curr).getDelegate();
-        dataset.remove(f);
+        dataset.delete(target);
     }
     
     @Override
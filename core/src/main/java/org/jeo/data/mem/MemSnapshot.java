@@ -0,0 +1,543 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.data.mem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jeo.data.Nearest;
+import org.jeo.data.Query;
+import org.jeo.data.QueryPlan;
+import org.jeo.data.mem.FieldIndex.Positions;
+import org.jeo.feature.Feature;
+import org.jeo.filter.Comparison;
+import org.jeo.filter.Expression;
+import org.jeo.filter.Filter;
+import org.jeo.filter.FilterCompiler;
+import org.jeo.filter.Filters;
+import org.jeo.filter.Id;
+import org.jeo.filter.In;
+import org.jeo.filter.Literal;
+import org.jeo.filter.Logic;
+import org.jeo.filter.Property;
+import org.jeo.geom.Envelopes;
+import org.jeo.geom.PackedRTree;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * Immutable version of the contents of a {@link MemVector}.
+ * <p>
+ * A snapshot holds the features of the dataset in an array along with a spatial index, an id index
+ * and the secondary field indexes, all built up front and referring to features by position in
+ * the array. Since nothing changes once the snapshot is created it can be read by any number of
+ * threads without locking.
+ * </p>
+ * <p>
+ * Writes made since the indexes were built are kept as a delta on top of them, a log of features
+ * stored at a position, <code>null</code> for removed ones. Positions past the end of the array
+ * are features added since. The log is shared with later snapshots which only ever append to it,
+ * each snapshot seeing a prefix of it. Query results are the indexed results with the delta
+ * merged in, features of the delta being matched against the query directly.
+ * </p>
+ */
+class MemSnapshot {
+
+    /** features, in insertion order */
+    final Feature[] features;
+
+    /** spatial index of feature positions */
+    final PackedRTree index;
+
+    /** id index */
+    final Map<String,Positions> ids;
+
+    /** secondary field indexes */
+    final Map<String,FieldIndex> fields;
+
+    /** delta log, positions and features written to them, and length of the log seen */
+    final int[] logPositions;
+    final Feature[] logFeatures;
+    final int logSize;
+
+    /** delta, built from the log on first use */
+    Delta delta;
+
+    MemSnapshot(List<Feature> features, Map<String,Boolean> indexes) {
+        this.features = features.toArray(new Feature[features.size()]);
+
+        index = new PackedRTree(this.features.length);
+        ids = new HashMap<String, Positions>();
+        fields = new LinkedHashMap<String, FieldIndex>();
+        for (Map.Entry<String, Boolean> e : indexes.entrySet()) {
+            fields.put(e.getKey(), new FieldIndex(e.getKey(), e.getValue()));
+        }
+
+        for (int i = 0; i < this.features.length; i++) {
+            Feature f = this.features[i];
+
+            Geometry g = f.geometry();
+            if (g != null) {
+                index.insert(g.getEnvelopeInternal(), i);
+            }
+
+            Positions p = ids.get(f.getId());
+            if (p == null) {
+                p = new Positions(1);
+                ids.put(f.getId(), p);
+            }
+            p.add(i);
+
+            for (FieldIndex idx : fields.values()) {
+                idx.add(i, f);
+            }
+        }
+
+        index.build();
+
+        logPositions = null;
+        logFeatures = null;
+        logSize = 0;
+    }
+
+    /**
+     * Creates a snapshot sharing the indexes of another, with the first <tt>logSize</tt> entries of
+     * a delta log applied.
+     */
+    MemSnapshot(MemSnapshot base, int[] logPositions, Feature[] logFeatures, int logSize) {
+        features = base.features;
+        index = base.index;
+        ids = base.ids;
+        fields = base.fields;
+
+        this.logPositions = logPositions;
+        this.logFeatures = logFeatures;
+        this.logSize = logSize;
+    }
+
+    /**
+     * Writes applied on top of the indexed features.
+     */
+    static class Delta {
+        /** indexed positions replaced, mapped to the replacement or <code>null</code> if removed */
+        final Map<Integer,Feature> changed = new HashMap<Integer, Feature>();
+
+        /** features added, in insertion order */
+        final List<Feature> added = new ArrayList<Feature>();
+
+        /** number of indexed positions removed */
+        int removed;
+
+        /** bounds of all features, computed on first use */
+        Envelope bounds;
+    }
+
+    /**
+     * The delta of the snapshot, <code>null</code> if there were no writes since the indexes
+     * were built.
+     */
+    synchronized Delta delta() {
+        if (logSize == 0) {
+            return null;
+        }
+
+        if (delta == null) {
+            Delta d = new Delta();
+            Feature[] added = new Feature[0];
+            int n = 0;
+            for (int i = 0; i < logSize; i++) {
+                int pos = logPositions[i];
+                if (pos < features.length) {
+                    d.changed.put(pos, logFeatures[i]);
+                }
+                else {
+                    int j = pos - features.length;
+                    if (j >= added.length) {
+                        added = Arrays.copyOf(added, Math.max(j + 1, added.length * 2));
+                    }
+                    added[j] = logFeatures[i];
+                    n = Math.max(n, j + 1);
+                }
+            }
+            for (int i = 0; i < n; i++) {
+                if (added[i] != null) {
+                    d.added.add(added[i]);
+                }
+            }
+            for (Feature f : d.changed.values()) {
+                if (f == null) {
+                    d.removed++;
+                }
+            }
+            delta = d;
+        }
+        return delta;
+    }
+
+    /**
+     * Number of features in the snapshot.
+     */
+    int size() {
+        Delta d = delta();
+        return d == null ? features.length : features.length - d.removed + d.added.size();
+    }
+
+    /**
+     * Bounds of the features in the snapshot.
+     */
+    Envelope bounds() {
+        Delta d = delta();
+        if (d == null) {
+            return index.bounds();
+        }
+
+        synchronized (this) {
+            if (d.bounds == null) {
+                Envelope bounds = new Envelope();
+                if (d.changed.isEmpty()) {
+                    bounds.expandToInclude(index.bounds());
+                    for (Feature f : d.added) {
+                        expand(bounds, f);
+                    }
+                }
+                else {
+                    for (Feature f : all()) {
+                        expand(bounds, f);
+                    }
+                }
+                d.bounds = bounds;
+            }
+            return d.bounds;
+        }
+    }
+
+    void expand(Envelope bounds, Feature f) {
+        Geometry g = f.geometry();
+        if (g != null) {
+            bounds.expandToInclude(g.getEnvelopeInternal());
+        }
+    }
+
+    /**
+     * All features of the snapshot.
+     */
+    List<Feature> all() {
+        Delta d = delta();
+        if (d == null) {
+            return Collections.unmodifiableList(Arrays.asList(features));
+        }
+
+        List<Feature> all = new ArrayList<Feature>(features.length - d.removed + d.added.size());
+        for (int i = 0; i < features.length; i++) {
+            if (d.changed.containsKey(i)) {
+                Feature f = d.changed.get(i);
+                if (f != null) {
+                    all.add(f);
+                }
+            }
+            else {
+                all.add(features[i]);
+            }
+        }
+        all.addAll(d.added);
+        return Collections.unmodifiableList(all);
+    }
+
+    /**
+     * Determines the features to process for a query from the indexes, updating the query plan
+     * with the parts of the query handled.
+     */
+    List<Feature> features(Query q, QueryPlan qp) {
+        Filter<Feature> filter = q.getFilter();
+        Lookup lookup = Filters.isTrueOrNull(filter) || Filters.isFalseOrNull(filter)
+            ? null : lookup(filter);
+
+        Envelope bounds = q.getBounds();
+        if (q.getNearest() != null) {
+            qp.bounded();
+            qp.filtered();
+            qp.nearest();
+            return nearest(q, lookup);
+        }
+
+        if (lookup != null) {
+            if (lookup.exact) {
+                qp.filtered();
+            }
+
+            int[] pos = lookup.positions.sorted();
+            if (Envelopes.isNull(bounds)) {
+                return get(pos, filter, null);
+            }
+
+            Positions within = new Positions(pos.length);
+            for (int i : pos) {
+                Geometry g = features[i].geometry();
+                if (g != null && bounds.intersects(g.getEnvelopeInternal())) {
+                    within.add(i);
+                }
+            }
+            qp.bounded();
+            return get(within.sorted(), filter, bounds);
+        }
+
+        if (!Envelopes.isNull(bounds)) {
+            qp.bounded();
+            return query(bounds);
+        }
+
+        return all();
+    }
+
+    /**
+     * Features whose bounds intersect the specified envelope, in insertion order.
+     */
+    List<Feature> query(Envelope bounds) {
+        final Positions p = new Positions(16);
+        index.query(bounds, new PackedRTree.Visitor() {
+            @Override
+            public boolean visit(int item) {
+                p.add(item);
+                return true;
+            }
+        });
+        return get(p.sorted(), null, bounds);
+    }
+
+    /**
+     * The features nearest to the point of a query that match its bounds and filter.
+     * <p>
+     * If the filter could be looked up in the indexes the candidates are scanned, otherwise the
+     * spatial index is traversed in order of distance until no closer feature can be found.
+     * </p>
+     */
+    List<Feature> nearest(Query q, Lookup lookup) {
+        final Nearest.Queue queue = q.getNearest().queue();
+        final Envelope bounds = Envelopes.isNull(q.getBounds()) ? null : q.getBounds();
+        final Filter<Feature> filter = Filters.isTrueOrNull(q.getFilter()) ? null :
+            FilterCompiler.compile(q.getFilter(), features.length > 0 ? features[0].schema() : null);
+
+        final Delta d = delta();
+        if (d != null) {
+            // candidates of the delta, indexed positions changed are skipped below
+            for (Feature f : d.changed.values()) {
+                if (f != null) {
+                    offer(f, bounds, filter, queue);
+                }
+            }
+            for (Feature f : d.added) {
+                offer(f, bounds, filter, queue);
+            }
+        }
+
+        if (lookup != null) {
+            for (int i : lookup.positions.sorted()) {
+                if (d == null || !d.changed.containsKey(i)) {
+                    offer(features[i], bounds, lookup.exact ? null : filter, queue);
+                }
+            }
+        }
+        else {
+            Coordinate p = q.getNearest().getPoint();
+            index.nearest(p.x, p.y, new PackedRTree.DistanceVisitor() {
+                @Override
+                public boolean visit(int item, double distance) {
+                    if (distance > queue.distance()) {
+                        return false;
+                    }
+                    if (d == null || !d.changed.containsKey(item)) {
+                        offer(features[item], bounds, filter, queue);
+                    }
+                    return true;
+                }
+            });
+        }
+        return queue.features();
+    }
+
+    void offer(Feature f, Envelope bounds, Filter<Feature> filter, Nearest.Queue queue) {
+        if (matches(f, bounds, filter)) {
+            queue.offer(f);
+        }
+    }
+
+    boolean matches(Feature f, Envelope bounds, Filter<Feature> filter) {
+        if (bounds != null) {
+            Geometry g = f.geometry();
+            if (g == null || !bounds.intersects(g.getEnvelopeInternal())) {
+                return false;
+            }
+        }
+        return filter == null || filter.apply(f);
+    }
+
+    /**
+     * The features at a set of indexed positions, in insertion order, with the delta merged in. 
+     * Features of the delta are included if they match the specified bounds and filter, either of
+     * which may be <code>null</code>.
+     */
+    List<Feature> get(int[] positions, Filter<Feature> filter, Envelope bounds) {
+        Delta d = delta();
+        if (d == null) {
+            List<Feature> list = new ArrayList<Feature>(positions.length);
+            for (int i : positions) {
+                list.add(features[i]);
+            }
+            return list;
+        }
+
+        filter = Filters.isTrueOrNull(filter) ? null :
+            FilterCompiler.compile(filter, features.length > 0 ? features[0].schema() : null);
+
+        Positions p = new Positions(positions.length + d.changed.size());
+        for (int i : positions) {
+            if (!d.changed.containsKey(i)) {
+                p.add(i);
+            }
+        }
+        for (Map.Entry<Integer, Feature> e : d.changed.entrySet()) {
+            if (e.getValue() != null && matches(e.getValue(), bounds, filter)) {
+                p.add(e.getKey());
+            }
+        }
+
+        int[] sorted = p.sorted();
+        List<Feature> list = new ArrayList<Feature>(sorted.length);
+        for (int i : sorted) {
+            Feature f = d.changed.get(i);
+            list.add(f != null ? f : features[i]);
+        }
+        for (Feature f : d.added) {
+            if (matches(f, bounds, filter)) {
+                list.add(f);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Result of looking up a filter in the indexes.
+     */
+    static class Lookup {
+        /** candidate feature positions */
+        Positions positions;
+        /** whether the candidates are exactly the features matching the filter */
+        boolean exact;
+
+        Lookup(Positions positions, boolean exact) {
+            this.positions = positions;
+            this.exact = exact;
+        }
+    }
+
+    /**
+     * Looks up the features matching a filter in the indexes, returning <code>null</code> if the
+     * indexes don't apply to the filter.
+     */
+    Lookup lookup(Filter<?> filter) {
+        if (filter instanceof Id) {
+            List<Object> vals = literals(((Id<?>) filter).getIds());
+            if (vals == null) {
+                return null;
+            }
+
+            Positions result = new Positions(vals.size());
+            for (Object val : vals) {
+                Positions p = val != null ? ids.get(val.toString()) : null;
+                if (p != null) {
+                    result.addAll(p);
+                }
+            }
+            return new Lookup(result, true);
+        }
+
+        if (filter instanceof Comparison) {
+            Comparison<?> c = (Comparison<?>) filter;
+            if (c.getLeft() instanceof Property && c.getRight() instanceof Literal) {
+                FieldIndex idx = fields.get(((Property) c.getLeft()).getProperty());
+                if (idx != null) {
+                    Positions p = idx.compare(c.getType(), c.getRight().evaluate(null));
+                    return p != null ? new Lookup(p, true) : null;
+                }
+            }
+            return null;
+        }
+
+        if (filter instanceof In) {
+            In<?> in = (In<?>) filter;
+            FieldIndex idx = fields.get(in.getProperty().getProperty());
+            List<Object> vals = literals(in.getValues());
+            if (idx == null || vals == null || in.isNegated()) {
+                return null;
+            }
+
+            Positions p = idx.in(vals);
+            return p != null ? new Lookup(p, true) : null;
+        }
+
+        if (filter instanceof Logic) {
+            Logic<?> logic = (Logic<?>) filter;
+            switch(logic.getType()) {
+            case AND:
+                // use the most selective part, the rest is filtered afterward
+                Lookup best = null;
+                for (Filter<?> f : logic.getParts()) {
+                    Lookup l = lookup(f);
+                    if (l != null && (best == null || l.positions.size() < best.positions.size())) {
+                        best = l;
+                    }
+                }
+                if (best != null && logic.getParts().size() > 1) {
+                    best.exact = false;
+                }
+                return best;
+            case OR:
+                Positions result = new Positions(logic.getParts().size());
+                boolean exact = true;
+                for (Filter<?> f : logic.getParts()) {
+                    Lookup l = lookup(f);
+                    if (l == null) {
+                        return null;
+                    }
+                    result.addAll(l.positions);
+                    exact = exact && l.exact;
+                }
+                return new Lookup(result, exact);
+            default:
+                return null;
+            }
+        }
+
+        return null;
+    }
+
+    List<Object> literals(List<Expression> exprs) {
+        List<Object> vals = new ArrayList<Object>(exprs.size());
+        for (Expression e : exprs) {
+            if (!(e instanceof Literal)) {
+                return null;
+            }
+            vals.add(e.evaluate(null));
+        }
+        return vals;
+    }
+}
@@ -29,16 +29,35 @@ import org.osgeo.proj4j.CoordinateReferenceSystem;
 
 import com.vividsolutions.jts.geom.Envelope;
 
+/**
+ * Tile dataset held in memory.
+ * <p>
+ * Only populated tiles are stored, with tile data held outside of the java heap. An optional
+ * byte budget bounds the total size of tile data, evicting the least recently read tiles once
+ * exceeded, which makes this class suitable for caching tiles of a tile set.
+ * </p>
+ */
 public class MemTileDataset implements TileDataset {
 
     String name;
     TilePyramid pyramid;
-    Tile[][][] tiles; // z, y, x
+    TileStore tiles;
 
     public MemTileDataset(String name, TilePyramid pyramid) {
+        this(name, pyramid, -1);
+    }
+
+    /**
+     * Creates a new dataset bounded by the total size of tile data.
+     *
+     * @param name The dataset name.
+     * @param pyramid The tile pyramid.
+     * @param maxBytes Maximum number of bytes of tile data, <tt>-1</tt> for no maximum.
+     */
+    public MemTileDataset(String name, TilePyramid pyramid, long maxBytes) {
         this.name = name;
         this.pyramid = pyramid;
-        tiles = new Tile[pyramid.getGrids().size()][][];
+        tiles = new TileStore(maxBytes);
     }
 
     @Override
@@ -85,50 +104,45 @@ public class MemTileDataset implements TileDataset {
     public Tile read(long z, long x, long y) throws IOException {
         TileGrid grid = pyramid.grid((int) z);
         if (grid == null) {
-            //throw new IOException(String.format("no grid for zoom level %d", z));
             return null;
         }
 
-        if (y >= grid.getHeight()) {
+        if (x < 0 || x >= grid.getWidth() || y < 0 || y >= grid.getHeight()) {
             return null;
-            //throw new IOException(String.format("y must be < %d", grid.getHeight()));
-        }
-        
-        if (x >= grid.getWidth()) {
-            return null;
-            //throw new IOException(String.format("x must be < %d", grid.getWidth()));
         }
 
-        return tiles[(int)z][(int)y][(int)x];
+        return tiles.get((int) z, (int) x, (int) y);
     }
 
     @Override
-    public Cursor<Tile> read(final long z1, final long z2, final long x1, final long x2, 
-            final long y1, final long y2) throws IOException {
+    public Cursor<Tile> read(long z1, long z2, long x1, long x2, long y1, long y2)
+        throws IOException {
+
+        final long[] keys = tiles.keys(bound(z1, 0), bound(z2, TileStore.MAX_ZOOM), bound(x1, 0),
+            bound(x2, TileStore.MAX_INDEX), bound(y1, 0), bound(y2, TileStore.MAX_INDEX));
+
         return new Cursor<Tile>() {
-            int z = (int) z1;
-            int y = (int) y1;
-            int x = (int) x1;
+            int i = 0;
             Tile next;
 
             @Override
             public boolean hasNext() throws IOException {
-                x++;
-                if (x > x2) {
-                    x = (int) x1;
-                    y++;
-                    if (y > y2) {
-                        y = (int) y1;
-                        z++;
-                    }
+                // skip over any tiles evicted since the read
+                while (next == null && i < keys.length) {
+                    next = tiles.get(keys[i++]);
                 }
-
-                return z < z2;
+                return next != null;
             }
 
             @Override
             public Tile next() throws IOException {
-                return tiles[z][y][x];
+                if (!hasNext()) {
+                    return null;
+                }
+
+                Tile t = next;
+                next = null;
+                return t;
             }
 
             @Override
@@ -137,13 +151,41 @@ public class MemTileDataset implements TileDataset {
         };
     }
 
-    public void put(int z, Tile[][] tiles) {
-        if (z > this.tiles.length) {
+    int bound(long value, int unbounded) {
+        return value < 0 ? unbounded : (int) Math.min(value, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Adds a single tile to the dataset, replacing any existing tile with the same index.
+     */
+    public void put(Tile t) {
+        TileGrid grid = pyramid.grid(t.getZ());
+        if (grid == null) {
+            throw new IllegalArgumentException(String.format("no grid at zoom %d", t.getZ()));
+        }
+        if (t.getX() < 0 || t.getX() >= grid.getWidth()
+            || t.getY() < 0 || t.getY() >= grid.getHeight()) {
             throw new IndexOutOfBoundsException(String.format(
-                "zoom level %d greater than pyramid depth %d", z, this.tiles.length)); 
+                "tile %s outside of grid dimensions %d x %d", t, grid.getWidth(), grid.getHeight()));
         }
 
+        tiles.put(t);
+    }
+
+    /**
+     * Replaces all tiles of a zoom level.
+     *
+     * @param z The zoom level.
+     * @param tiles The tiles, indexed by row and then column, <code>null</code> entries are
+     *   treated as empty.
+     */
+    public void put(int z, Tile[][] tiles) {
         TileGrid grid = pyramid.grid(z);
+        if (grid == null) {
+            throw new IndexOutOfBoundsException(String.format(
+                "zoom level %d not in pyramid", z));
+        }
+
         if (tiles.length != grid.getHeight()) {
             throw new IllegalArgumentException(String.format(
                 "number of vertical tiles  %d != grid height %d", tiles.length, grid.getHeight()));
@@ -156,8 +198,19 @@ public class MemTileDataset implements TileDataset {
             }
         }
 
-
-        this.tiles[z] = tiles;
+        this.tiles.clear(z);
+        for (int y = 0; y < tiles.length; y++) {
+            for (int x = 0; x < tiles[y].length; x++) {
+                Tile t = tiles[y][x];
+                if (t != null) {
+                    Tile u = new Tile(t);
+                    u.setZ(z);
+                    u.setX(x);
+                    u.setY(y);
+                    this.tiles.put(u);
+                }
+            }
+        }
     }
 
     @Override
@@ -15,9 +15,11 @@
 package org.jeo.data.mem;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.Iterator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -26,28 +28,97 @@ import org.jeo.data.Cursors;
 import org.jeo.data.Query;
 import org.jeo.data.QueryPlan;
 import org.jeo.data.VectorDataset;
-import org.jeo.feature.DiffFeature;
+import org.jeo.feature.BasicFeature;
 import org.jeo.feature.Feature;
-import org.jeo.feature.Field;
+import org.jeo.feature.Features;
 import org.jeo.feature.Schema;
+import org.jeo.filter.Filters;
 import org.jeo.geom.Envelopes;
+import org.jeo.geom.PackedRTree;
 import org.jeo.util.Key;
 import org.osgeo.proj4j.CoordinateReferenceSystem;
 
 import com.vividsolutions.jts.geom.Envelope;
-import com.vividsolutions.jts.geom.Geometry;
-import com.vividsolutions.jts.index.SpatialIndex;
-import com.vividsolutions.jts.index.quadtree.Quadtree;
 
+/**
+ * In memory vector dataset.
+ * <p>
+ * Features are indexed spatially and by id. Secondary indexes on attribute fields can be created
+ * with {@link #index(String, boolean)}, which are used to answer equality, <tt>IN</tt> and, for
+ * sorted indexes, range filters without scanning all features.
+ * </p>
+ * <p>
+ * The dataset is safe for use by concurrent readers and writers. Reads are served from an
+ * immutable {@link MemSnapshot} of the features and indexes, with a bulk loaded
+ * {@link PackedRTree} as spatial index. Each cursor sees the snapshot current when it was created
+ * regardless of later writes. Writes are serialized and applied immediately, each publishing a
+ * new snapshot that shares the indexes of the previous one and records the write in a delta.
+ * The indexes are rebuilt lazily, on the first read once the delta has grown past a fraction of
+ * the dataset, so that batches of writes are indexed once.
+ * </p>
+ * <p>
+ * Modifying a feature through an update cursor replaces it with a modified copy rather than
+ * changing it in place, so features obtained from earlier snapshots are unaffected. Writing or
+ * removing a feature through an update cursor fails if the feature was meanwhile replaced or
+ * removed by another writer.
+ * </p>
+ */
 public class MemVector implements VectorDataset {
 
+    /** minimum number of writes in a delta before the indexes are rebuilt */
+    static final int MIN_DELTA = 64;
+
     Schema schema;
-    List<Feature> features = new ArrayList<Feature>();
-    SpatialIndex index;
+
+    /** secondary indexes, field name to whether the index is sorted, guarded by lock */
+    Map<String,Boolean> indexes = new LinkedHashMap<String, Boolean>();
+
+    /** snapshot whose indexes are current, guarded by lock */
+    MemSnapshot base;
+
+    /** delta log of writes since base was built, guarded by lock */
+    int[] logPositions;
+    Feature[] logFeatures;
+    int logSize;
+
+    /** position of each feature, by instance, and next position to add at, guarded by lock */
+    Map<Feature,Integer> positions;
+    int next;
+
+    /** whether the indexes must be rebuilt regardless of the size of the delta */
+    volatile boolean stale;
+
+    /** current snapshot */
+    volatile MemSnapshot snapshot;
+
+    final Object lock = new Object();
 
     public MemVector(Schema schema) {
         this.schema = schema;
-        index = new Quadtree();
+        synchronized (lock) {
+            rebuild(Collections.<Feature>emptyList());
+        }
+    }
+
+    /**
+     * Creates a secondary index on a field of the dataset.
+     * <p>
+     * A hash index is used for equality and <tt>IN</tt> filters, a sorted index for range filters
+     * as well. Existing features are indexed, and the index is maintained as features are added,
+     * removed and modified.
+     * </p>
+     * @param field Name of the field to index.
+     * @param sorted Whether to create a sorted rather than a hash index.
+     */
+    public void index(String field, boolean sorted) {
+        if (schema.field(field) == null) {
+            throw new IllegalArgumentException("No such field: " + field);
+        }
+
+        synchronized (lock) {
+            indexes.put(field, sorted);
+            stale = true;
+        }
     }
 
     public Memory getDriver() {
@@ -59,7 +130,47 @@ public class MemVector implements VectorDataset {
     }
     
     List<Feature> getFeatures() {
-        return features;
+        return snapshot().all();
+    }
+
+    /**
+     * The current snapshot of the dataset, rebuilding the indexes first if enough writes have
+     * happened since they were last built.
+     */
+    MemSnapshot snapshot() {
+        MemSnapshot s = snapshot;
+        if (stale || s.logSize > Math.max(MIN_DELTA, s.features.length / 8)) {
+            synchronized (lock) {
+                compact();
+                s = snapshot;
+            }
+        }
+        return s;
+    }
+
+    /**
+     * Rebuilds the indexes from the current features, guarded by lock.
+     */
+    void compact() {
+        if (snapshot.logSize > 0 || stale) {
+            rebuild(snapshot.all());
+        }
+    }
+
+    void rebuild(List<Feature> features) {
+        base = new MemSnapshot(features, indexes);
+        positions = new IdentityHashMap<Feature, Integer>(features.size());
+        for (int i = 0; i < features.size(); i++) {
+            positions.put(features.get(i), i);
+        }
+        next = features.size();
+
+        logPositions = new int[16];
+        logFeatures = new Feature[16];
+        logSize = 0;
+
+        stale = false;
+        snapshot = base;
     }
 
     @Override
@@ -87,22 +198,7 @@ public class MemVector implements VectorDataset {
         if (schema.geometry() == null) {
             return null;
         }
-    
-        Envelope e = new Envelope();
-        e.setToNull();
-    
-        if (features.isEmpty()) {
-            return e;
-        }
-    
-        for (Feature f : features) {
-            Geometry g = f.geometry();
-            if (g != null) {
-                e.expandToInclude(g.getEnvelopeInternal());
-            }
-        }
-    
-        return e;
+        return snapshot().bounds();
     }
     
     @Override
@@ -112,70 +208,171 @@ public class MemVector implements VectorDataset {
     
     @Override
     public long count(Query q) throws IOException {
-        return Cursors.size(cursor(q));
+        QueryPlan qp = new QueryPlan(q);
+        List<Feature> features = features(q, qp);
+
+        if ((qp.isFiltered() || Filters.isTrueOrNull(q.getFilter()))
+            && (qp.isBounded() || Envelopes.isNull(q.getBounds())) && !q.isAggregated()) {
+            // matches known without iterating
+            long count = features.size();
+            if (q.getOffset() != null) {
+                count = Math.max(0, count - q.getOffset());
+            }
+            if (q.getLimit() != null) {
+                count = Math.min(count, q.getLimit());
+            }
+            return count;
+        }
+
+        return Cursors.size(qp.apply(new MemCursor(Cursor.READ, features, this)));
     }
 
     @Override
     public Cursor<Feature> cursor(Query q) throws IOException {
         QueryPlan qp = new QueryPlan(q);
+        return qp.apply(new MemCursor(q.getMode(), features(q, qp), this));
+    }
+
+    /**
+     * Determines the features to process for a query from the current snapshot, updating the query
+     * plan with the parts of the query handled.
+     */
+    List<Feature> features(Query q, QueryPlan qp) {
+        return snapshot().features(q, qp);
+    }
 
-        List<Feature> features = this.features;
-        if (!Envelopes.isNull(q.getBounds())) {
-            features = query(q.getBounds()); 
-            qp.bounded();
+    public void add(Feature f) {
+        synchronized (lock) {
+            append(f);
+            publish();
         }
+    }
 
-        return qp.apply(new MemCursor(q.getMode(), features, this));
+    /**
+     * Adds a batch of features to the dataset.
+     */
+    public void addAll(Collection<? extends Feature> fs) {
+        synchronized (lock) {
+            for (Feature f : fs) {
+                append(f);
+            }
+            publish();
+        }
     }
 
-    List<Feature> query(Envelope bounds) {
-        List<Feature> features = index.query(bounds);
-        for (Iterator<Feature> it = features.iterator(); it.hasNext(); ) {
-            Feature f = it.next();
-            if (!bounds.intersects(f.geometry().getEnvelopeInternal())) {
-                it.remove();
+    public void remove(Feature f) {
+        synchronized (lock) {
+            if (drop(f) || drop(equal(f))) {
+                publish();
             }
         }
+    }
 
-        return features;
+    /**
+     * Removes a batch of features from the dataset.
+     */
+    public void removeAll(Collection<? extends Feature> fs) {
+        synchronized (lock) {
+            for (Feature f : fs) {
+                if (!drop(f)) {
+                    // fall back to an equal feature for those not found by instance
+                    publish();
+                    drop(equal(f));
+                }
+            }
+            publish();
+        }
     }
 
-    public void add(Feature f) {
-        features.add(f);
+    /**
+     * Replaces a feature of the dataset with a copy with the specified changes applied.
+     *
+     * @throws IOException If the feature is no longer part of the dataset.
+     */
+    void modify(Feature pre, Map<String,Object> changes) throws IOException {
+        Feature post = pre.isSchemaless() ? new BasicFeature(pre.getId(), pre.map()) : 
+            Features.retype(pre, pre.schema());
+        post.setCRS(pre.getCRS());
+        for (Map.Entry<String, Object> e : changes.entrySet()) {
+            post.put(e.getKey(), e.getValue());
+        }
 
-        Geometry g = f.geometry();
-        if (g != null) {
-            index.insert(g.getEnvelopeInternal(), f);
+        synchronized (lock) {
+            Integer pos = positions.remove(pre);
+            if (pos == null) {
+                throw lost(pre);
+            }
+            positions.put(post, pos);
+            log(pos, post);
+            publish();
         }
     }
 
-    public void remove(Feature f) {
-        features.remove(f);
-
-        Geometry g = f.geometry();
-        if (g != null) {
-            index.remove(g.getEnvelopeInternal(), f);
+    /**
+     * Removes a feature of the dataset.
+     *
+     * @throws IOException If the feature is no longer part of the dataset.
+     */
+    void delete(Feature pre) throws IOException {
+        synchronized (lock) {
+            if (!drop(pre)) {
+                throw lost(pre);
+            }
+            publish();
         }
     }
 
-    void modify(DiffFeature f) {
-        Feature pre = f.getDelegate();
+    IOException lost(Feature f) {
+        return new IOException("Feature modified or removed by another writer: " + f.getId());
+    }
+
+    /**
+     * Logs the addition of a feature, guarded by lock.
+     */
+    void append(Feature f) {
+        positions.put(f, next);
+        log(next++, f);
+    }
 
-        Field geo = schema.geometry(); 
-        if (geo != null && f.getChanged().containsKey(geo.getName())) {
-            Geometry g1 = pre.geometry();
-            Geometry g2 = f.geometry();
+    /**
+     * Logs the removal of a feature, by instance, guarded by lock.
+     */
+    boolean drop(Feature f) {
+        Integer pos = f != null ? positions.remove(f) : null;
+        if (pos == null) {
+            return false;
+        }
+        log(pos, null);
+        return true;
+    }
 
-            if (g1 != null) {
-                index.remove(g1.getEnvelopeInternal(), pre);
-            }
+    /**
+     * A feature of the current snapshot equal to the specified one, guarded by lock.
+     */
+    Feature equal(Feature f) {
+        List<Feature> all = snapshot.all();
+        int i = all.indexOf(f);
+        return i != -1 ? all.get(i) : null;
+    }
 
-            if (g2 != null) {
-                index.insert(g2.getEnvelopeInternal(), pre);
-            }
+    void log(int pos, Feature f) {
+        if (logSize == logPositions.length) {
+            // copies, earlier snapshots keep reading the old arrays
+            logPositions = Arrays.copyOf(logPositions, logSize * 2);
+            logFeatures = Arrays.copyOf(logFeatures, logSize * 2);
         }
+        logPositions[logSize] = pos;
+        logFeatures[logSize] = f;
+        logSize++;
+    }
 
-        f.apply();
+    /**
+     * Publishes a snapshot with the writes logged so far, guarded by lock.
+     */
+    void publish() {
+        if (logSize != snapshot.logSize || logFeatures != snapshot.logFeatures) {
+            snapshot = new MemSnapshot(base, logPositions, logFeatures, logSize);
+        }
     }
 
     @Override
@@ -0,0 +1,345 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.data.mem;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import org.jeo.tile.Tile;
+
+/**
+ * Sparse store of tiles, keyed by tile index, with tile data held outside of the java heap.
+ * <p>
+ * Tiles are indexed by a single long made up of the zoom level in the high bits and the Morton
+ * (z-order) code of the column and row in the low bits. Only populated tiles occupy space and
+ * iterating over a range of tiles visits populated tiles in index order. Tile data is copied into
+ * direct memory on {@link #put(Tile)} and back onto the heap on {@link #get(int, int, int)}.
+ * </p>
+ * <p>
+ * Direct memory is allocated in slabs that tiles are packed into one after the other, rather than
+ * one direct buffer per tile. A slab is released once none of the tiles packed into it remain,
+ * tiles larger than a quarter of a slab get a buffer of their own.
+ * </p>
+ * <p>
+ * The store can optionally be bounded by the total number of bytes of tile data, in which case
+ * the least recently accessed tiles are evicted once the budget is exceeded.
+ * </p>
+ * <p>
+ * This class is thread safe.
+ * </p>
+ */
+class TileStore {
+
+    /** maximum zoom level, limited by the bits available for the column and row */
+    static final int MAX_ZOOM = 29;
+
+    /** maximum column and row */
+    static final int MAX_INDEX = (1 << MAX_ZOOM) - 1;
+
+    /** size of direct memory slabs */
+    static final int SLAB_SIZE = 1 << 20;
+
+    static final int Z_SHIFT = 58;
+
+    /**
+     * Computes the key for a tile index.
+     */
+    static long key(int z, int x, int y) {
+        return ((long) z << Z_SHIFT) | spread(x) | (spread(y) << 1);
+    }
+
+    static int z(long key) {
+        return (int) (key >>> Z_SHIFT);
+    }
+
+    static int x(long key) {
+        return (int) compact(key);
+    }
+
+    static int y(long key) {
+        return (int) compact(key >>> 1);
+    }
+
+    /*
+     * Spreads the low 29 bits of a value out over the even bits of a long.
+     */
+    static long spread(long v) {
+        v &= 0x1FFFFFFFL;
+        v = (v | (v << 16)) & 0x0000FFFF0000FFFFL;
+        v = (v | (v << 8)) & 0x00FF00FF00FF00FFL;
+        v = (v | (v << 4)) & 0x0F0F0F0F0F0F0F0FL;
+        v = (v | (v << 2)) & 0x3333333333333333L;
+        v = (v | (v << 1)) & 0x5555555555555555L;
+        return v;
+    }
+
+    /*
+     * Inverse of spread, collecting the even bits of a long (below the zoom level).
+     */
+    static long compact(long v) {
+        v &= 0x0155555555555555L;
+        v = (v | (v >>> 1)) & 0x3333333333333333L;
+        v = (v | (v >>> 2)) & 0x0F0F0F0F0F0F0F0FL;
+        v = (v | (v >>> 4)) & 0x00FF00FF00FF00FFL;
+        v = (v | (v >>> 8)) & 0x0000FFFF0000FFFFL;
+        v = (v | (v >>> 16)) & 0x00000000FFFFFFFFL;
+        return v;
+    }
+
+    /**
+     * Region of direct memory tiles are packed into.
+     */
+    static class Slab {
+        final ByteBuffer buf;
+
+        /** bytes of tiles still stored in the slab */
+        int live;
+
+        Slab(int size) {
+            buf = ByteBuffer.allocateDirect(size);
+        }
+    }
+
+    /**
+     * Data of a stored tile.
+     */
+    static class Slot {
+        final Slab slab;
+        final int offset, length;
+        final String mimeType;
+
+        Slot(Slab slab, int offset, int length, String mimeType) {
+            this.slab = slab;
+            this.offset = offset;
+            this.length = length;
+            this.mimeType = mimeType;
+        }
+    }
+
+    /** tiles in index order */
+    final TreeMap<Long,Slot> index = new TreeMap<Long, Slot>();
+
+    /** tiles in access order, only maintained when bounded */
+    final LinkedHashMap<Long,Slot> lru;
+
+    /** byte budget, and current bytes */
+    final long maxBytes;
+    long bytes;
+
+    /** slab new tiles are packed into */
+    Slab slab;
+
+    /**
+     * Creates an unbounded store.
+     */
+    TileStore() {
+        this(-1);
+    }
+
+    /**
+     * Creates a store bounded by the total size of tile data.
+     *
+     * @param maxBytes The maximum number of bytes of tile data, or <tt>-1</tt> for no maximum.
+     */
+    TileStore(long maxBytes) {
+        this.maxBytes = maxBytes;
+        lru = maxBytes > 0 ? new LinkedHashMap<Long, Slot>(16, 0.75f, true) : null;
+    }
+
+    /**
+     * Number of tiles in the store.
+     */
+    synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * Total bytes of tile data in the store.
+     */
+    synchronized long bytes() {
+        return bytes;
+    }
+
+    /**
+     * Returns the tile at the specified index, or <code>null</code> if no such tile is stored.
+     */
+    Tile get(int z, int x, int y) {
+        return get(key(z, x, y));
+    }
+
+    synchronized Tile get(long key) {
+        Slot s = lru != null ? lru.get(key) : index.get(key);
+        if (s == null) {
+            return null;
+        }
+
+        byte[] data = new byte[s.length];
+        ByteBuffer buf = s.slab.buf.duplicate();
+        buf.position(s.offset);
+        buf.get(data);
+        return new Tile(z(key), x(key), y(key), data, s.mimeType);
+    }
+
+    /**
+     * Stores a tile, replacing any tile previously stored at the same index.
+     */
+    void put(Tile t) {
+        int z = t.getZ(), x = t.getX(), y = t.getY();
+        if (z < 0 || z > MAX_ZOOM) {
+            throw new IllegalArgumentException(String.format(
+                "zoom level %d must be between 0 and %d", z, MAX_ZOOM));
+        }
+        if (x < 0 || y < 0 || x > MAX_INDEX || y > MAX_INDEX) {
+            throw new IllegalArgumentException(String.format("illegal tile index %s", t));
+        }
+
+        byte[] data = t.getData();
+        Slot s = allocate(data != null ? data.length : 0, t.getMimeType());
+
+        // copy outside the lock, the region is reserved for the tile
+        if (data != null) {
+            ByteBuffer buf = s.slab.buf.duplicate();
+            buf.position(s.offset);
+            buf.put(data);
+        }
+
+        put(key(z, x, y), s);
+    }
+
+    /*
+     * Reserves direct memory for a tile, packing it into the current slab when it fits.
+     */
+    synchronized Slot allocate(int length, String mimeType) {
+        if (length > SLAB_SIZE / 4) {
+            Slab own = new Slab(length);
+            own.live = length;
+            return new Slot(own, 0, length, mimeType);
+        }
+
+        if (slab == null || slab.buf.remaining() < length) {
+            slab = new Slab(SLAB_SIZE);
+        }
+
+        int offset = slab.buf.position();
+        slab.buf.position(offset + length);
+        slab.live += length;
+        return new Slot(slab, offset, length, mimeType);
+    }
+
+    synchronized void put(long key, Slot s) {
+        release(index.put(key, s));
+        if (lru != null) {
+            lru.put(key, s);
+        }
+        bytes += s.length;
+
+        if (lru != null) {
+            // evict least recently used, but never the tile just added
+            Iterator<Map.Entry<Long,Slot>> it = lru.entrySet().iterator();
+            while (bytes > maxBytes && lru.size() > 1) {
+                Map.Entry<Long,Slot> e = it.next();
+                it.remove();
+                release(index.remove(e.getKey()));
+            }
+        }
+    }
+
+    /**
+     * Removes the tile at the specified index.
+     *
+     * @return <code>true</code> if a tile was removed.
+     */
+    synchronized boolean remove(int z, int x, int y) {
+        long key = key(z, x, y);
+        if (lru != null) {
+            lru.remove(key);
+        }
+        return release(index.remove(key));
+    }
+
+    /**
+     * Removes all tiles at the specified zoom level.
+     */
+    synchronized void clear(int z) {
+        NavigableMap<Long,Slot> level = index.subMap(key(z, 0, 0), true, key(z+1, 0, 0), false);
+        for (Iterator<Map.Entry<Long,Slot>> it = level.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<Long,Slot> e = it.next();
+            if (lru != null) {
+                lru.remove(e.getKey());
+            }
+            release(e.getValue());
+            it.remove();
+        }
+    }
+
+    boolean release(Slot s) {
+        if (s != null) {
+            bytes -= s.length;
+
+            // an emptied slab is dropped, or rewound if tiles are still packed into it
+            s.slab.live -= s.length;
+            if (s.slab.live == 0 && s.slab == slab) {
+                slab.buf.clear();
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the keys of stored tiles within a range of indexes, in index order.
+     * <p>
+     * All bounds are inclusive.
+     * </p>
+     */
+    synchronized long[] keys(int z1, int z2, int x1, int x2, int y1, int y2) {
+        long[] keys = new long[16];
+        int n = 0;
+
+        // clamp to the indexes that can be encoded in a key
+        x1 = Math.max(x1, 0);
+        y1 = Math.max(y1, 0);
+        x2 = Math.min(x2, MAX_INDEX);
+        y2 = Math.min(y2, MAX_INDEX);
+        if (x1 > x2 || y1 > y2) {
+            return new long[0];
+        }
+
+        for (int z = Math.max(z1, 0); z <= Math.min(z2, MAX_ZOOM); z++) {
+            // the morton codes of the corners bound those of all tiles within the range
+            NavigableMap<Long,Slot> range =
+                index.subMap(key(z, x1, y1), true, key(z, x2, y2), true);
+
+            for (Long key : range.keySet()) {
+                int x = x(key), y = y(key);
+                if (x < x1 || x > x2 || y < y1 || y > y2) {
+                    continue;
+                }
+
+                if (n == keys.length) {
+                    keys = Arrays.copyOf(keys, n*2);
+                }
+                keys[n++] = key;
+            }
+        }
+
+        return Arrays.copyOf(keys, n);
+    }
+}
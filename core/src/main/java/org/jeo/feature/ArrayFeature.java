@@ -0,0 +1,162 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.feature;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jeo.util.Util;
+
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * Feature bound to a schema whose values are stored in an array, one element per schema field.
+ * <p>
+ * Unlike {@link BasicFeature} the value array is used directly rather than copied, which makes
+ * this implementation suitable for cursors that decode rows straight into an array.
+ * </p>
+ * <p>
+ * Usage:
+ * <pre><code>
+ * Object[] values = new Object[schema.size()];
+ * ...
+ * Feature f = new ArrayFeature(id, values, schema);
+ * </code></pre>
+ * </p>
+ */
+public class ArrayFeature extends BasicFeature {
+
+    /**
+     * Creates a feature with all values <code>null</code>.
+     *
+     * @param id The feature id, if <code>null</code> an identifier will be generated.
+     * @param schema The feature schema.
+     */
+    public ArrayFeature(String id, Schema schema) {
+        this(id, new Object[schema.size()], schema);
+    }
+
+    /**
+     * Creates a feature from an array of values.
+     * <p>
+     * The array is not copied, subsequent changes to it are reflected in the feature.
+     * </p>
+     * @param id The feature id, if <code>null</code> an identifier will be generated.
+     * @param values The feature values, one element for each field of <tt>schema</tt>.
+     * @param schema The feature schema.
+     */
+    public ArrayFeature(String id, Object[] values, Schema schema) {
+        super(id, new ArrayStorage(values, schema));
+    }
+
+    /**
+     * The underlying value array.
+     */
+    public Object[] values() {
+        return ((ArrayStorage)storage).values;
+    }
+
+    /**
+     * Changes the identifier of the feature and clears its crs, so that it can represent another
+     * row whose values are written to {@link #values()}.
+     * <p>
+     * This method is used by cursors that reuse a single feature for every row, see 
+     * {@link org.jeo.data.Query#reuse()}. The values are left as is, the caller is expected to 
+     * overwrite all of them.
+     * </p>
+     * @param id The new feature id, if <code>null</code> an identifier will be generated.
+     *
+     * @return This object.
+     */
+    public ArrayFeature reset(String id) {
+        this.id = id != null ? id : Util.uuid();
+        this.crs = null;
+        return this;
+    }
+
+    static class ArrayStorage extends Storage {
+
+        final Object[] values;
+
+        ArrayStorage(Object[] values, Schema schema) {
+            super(schema);
+            if (schema == null) {
+                throw new IllegalArgumentException("schema must not be null");
+            }
+            if (values.length != schema.size()) {
+                throw new IllegalArgumentException(String.format(
+                    "%d values specified for schema with %d fields", values.length, schema.size()));
+            }
+            this.values = values;
+        }
+
+        @Override
+        protected Schema buildSchema() {
+            return schema;
+        }
+
+        @Override
+        protected Geometry findGeometry() {
+            return null;
+        }
+
+        @Override
+        protected boolean has(String key) {
+            return schema.indexOf(key) != -1;
+        }
+
+        @Override
+        protected Object get(String key) {
+            int i = schema.indexOf(key);
+            return i != -1 ? values[i] : null;
+        }
+
+        @Override
+        protected Object get(int index) {
+            return values[index];
+        }
+
+        @Override
+        protected void put(String key, Object value) {
+            int i = schema.indexOf(key);
+            if (i == -1) {
+                throw new IllegalArgumentException("No such key " + key);
+            }
+            values[i] = value;
+        }
+
+        @Override
+        protected void set(int index, Object value) {
+            values[index] = value;
+        }
+
+        @Override
+        protected List<Object> list() {
+            return Collections.unmodifiableList(Arrays.asList(values));
+        }
+
+        @Override
+        protected Map<String, Object> map() {
+            Map<String,Object> map = new LinkedHashMap<String, Object>();
+            for (int i = 0; i < values.length; i++) {
+                map.put(schema.getFields().get(i).getName(), values[i]);
+            }
+            return map;
+        }
+    }
+}
@@ -461,11 +461,19 @@ public class BasicFeature implements Feature {
 
         @Override
         protected Object get(int index) {
+            if (!isSchemaless) {
+                // map order does not necessarily match schema order
+                return map.get(schema().getFields().get(index).getName());
+            }
             return Util.get(map, index);
         }
 
         @Override
         protected void set(int index, Object value) {
+            if (!isSchemaless) {
+                map.put(schema().getFields().get(index).getName(), value);
+                return;
+            }
             Util.set(map, index, value);
         }
 
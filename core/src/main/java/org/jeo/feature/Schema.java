@@ -14,9 +14,12 @@
  */
 package org.jeo.feature;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import org.osgeo.proj4j.CoordinateReferenceSystem;
 
@@ -39,6 +42,12 @@ public class Schema implements Iterable<Field> {
     /** list of fields */
     List<Field> fields;
 
+    /** field name to index */
+    Map<String,Integer> index;
+
+    /** derived geometry field */
+    Field geometry;
+
     /**
      * Returns a new schema builder.
      * 
@@ -68,7 +77,18 @@ public class Schema implements Iterable<Field> {
     public Schema(String name, String uri, List<Field> fields) {
         this.name = name;
         this.uri = uri;
-        this.fields = Collections.unmodifiableList(fields);
+        this.fields = Collections.unmodifiableList(new ArrayList<Field>(fields));
+
+        index = new HashMap<String, Integer>();
+        for (int i = 0; i < this.fields.size(); i++) {
+            Field f = this.fields.get(i);
+            if (!index.containsKey(f.getName())) {
+                index.put(f.getName(), i);
+            }
+            if (geometry == null && f.isGeometry()) {
+                geometry = f;
+            }
+        }
     }
 
     /**
@@ -96,13 +116,7 @@ public class Schema implements Iterable<Field> {
      * </p>
      */
     public Field geometry() {
-        //TODO: store the derived result
-        for (Field f : this) {
-            if (f.isGeometry()) {
-                return f;
-            }
-        }
-        return null;
+        return geometry;
     }
 
     /**
@@ -145,14 +159,8 @@ public class Schema implements Iterable<Field> {
      * @return The index position, or <code>-1</code>
      */
     public int indexOf(String name) {
-        //TODO: potentially add an index of name to field
-        for (int i = 0; i < fields.size(); i++) {
-            Field f = fields.get(i);
-            if (f.getName().equals(name)) {
-                return i;
-            }
-        }
-        return -1;
+        Integer i = index.get(name);
+        return i != null ? i.intValue() : -1;
     }
 
     /**
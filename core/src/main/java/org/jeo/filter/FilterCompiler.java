@@ -0,0 +1,649 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.filter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.jeo.feature.ArrayFeature;
+import org.jeo.feature.BasicFeature;
+import org.jeo.feature.Feature;
+import org.jeo.feature.Field;
+import org.jeo.feature.Schema;
+import org.jeo.util.Convert;
+import org.jeo.util.Optional;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+
+/**
+ * Compiles a filter into an equivalent filter optimized for evaluating many features of a known
+ * schema.
+ * <p>
+ * The compiled filter:
+ * <ul>
+ *   <li>binds property references to field indexes of the schema</li>
+ *   <li>converts comparison literals to the type of the field they are compared to</li>
+ *   <li>turns {@link In} and {@link Id} filters with literal values into hash lookups</li>
+ *   <li>folds constant sub expressions and sub filters</li>
+ *   <li>orders the operands of {@link Logic} filters by estimated cost, short circuiting
+ *   evaluation</li>
+ * </ul>
+ * The result of applying a compiled filter is the same as applying the original filter. Features
+ * with a schema other than the one the filter was compiled against are still handled, falling
+ * back to looking up properties by name.
+ * </p>
+ * <p>
+ * Usage:
+ * <pre><code>
+ * Filter&lt;Feature> filter = FilterCompiler.compile(CQL.parse("category = 3"), schema);
+ * </code></pre>
+ * </p>
+ */
+public class FilterCompiler extends FilterVisitor {
+
+    /**
+     * Compiles a filter against the specified schema.
+     *
+     * @param filter The filter to compile.
+     * @param schema The schema of features the filter will be applied to, may be
+     * <code>null</code>.
+     */
+    public static <T> Filter<T> compile(Filter<T> filter, Schema schema) {
+        return new FilterCompiler(schema).compile(filter);
+    }
+
+    /**
+     * Estimates the relative cost of evaluating a filter.
+     */
+    public static int cost(Filter<?> filter) {
+        if (filter instanceof All || filter instanceof None) {
+            return 0;
+        }
+        if (filter instanceof Null || filter instanceof TypeOf || filter instanceof Id) {
+            return 1;
+        }
+        if (filter instanceof Comparison) {
+            Comparison<?> c = (Comparison<?>) filter;
+            return 1 + cost(c.getLeft()) + cost(c.getRight());
+        }
+        if (filter instanceof In) {
+            return 2 + (filter instanceof HashIn ? 0 : ((In<?>)filter).getValues().size());
+        }
+        if (filter instanceof Like) {
+            return filter instanceof StringLike ? 2 : 5;
+        }
+        if (filter instanceof Logic) {
+            int cost = 0;
+            for (Filter<?> f : ((Logic<?>) filter).getParts()) {
+                cost += cost(f);
+            }
+            return cost;
+        }
+        if (filter instanceof Spatial) {
+            return ((Spatial<?>)filter).getType() == Spatial.Type.BBOX ? 3 : 10;
+        }
+        return 5;
+    }
+
+    static int cost(Expression e) {
+        if (e instanceof Literal || e instanceof Property || e instanceof Self) {
+            return 0;
+        }
+        if (e instanceof Math) {
+            return 1 + cost(((Math)e).getLeft()) + cost(((Math)e).getRight());
+        }
+        return 3;
+    }
+
+    Schema schema;
+
+    /**
+     * Creates a new compiler.
+     *
+     * @param schema The schema of features the filter will be applied to, may be
+     * <code>null</code>.
+     */
+    public FilterCompiler(Schema schema) {
+        this.schema = schema;
+    }
+
+    /**
+     * Compiles the filter.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Filter<T> compile(Filter<T> filter) {
+        return filter != null ? (Filter<T>) filter.accept(this, null) : null;
+    }
+
+    /**
+     * Compiles the expression.
+     */
+    public Expression compile(Expression expr) {
+        return expr != null ? (Expression) expr.accept(this, null) : null;
+    }
+
+    @Override
+    public Object visit(Self self, Object obj) {
+        return self;
+    }
+
+    @Override
+    public Object visit(Literal literal, Object obj) {
+        return literal;
+    }
+
+    @Override
+    public Object visit(Property property, Object obj) {
+        if (schema == null || property instanceof BoundProperty) {
+            return property;
+        }
+        return new BoundProperty(property.getProperty(), schema);
+    }
+
+    @Override
+    public Object visit(Function function, Object obj) {
+        return function;
+    }
+
+    @Override
+    public Object visit(Mixed mixed, Object obj) {
+        List<Expression> exprs = new ArrayList<Expression>();
+        for (Expression e : mixed.getExpressions()) {
+            exprs.add(compile(e));
+        }
+        return new Mixed(exprs);
+    }
+
+    @Override
+    public Object visit(Math math, Object obj) {
+        Expression left = compile(math.getLeft());
+        Expression right = compile(math.getRight());
+        Math compiled = new Math(math.getOperator(), left, right);
+
+        if (left instanceof Literal && right instanceof Literal) {
+            try {
+                return new Literal(compiled.evaluate(null));
+            }
+            catch(RuntimeException e) {
+                // leave for evaluation time
+            }
+        }
+        return compiled;
+    }
+
+    @Override
+    public Object visit(Expression expr, Object obj) {
+        return expr;
+    }
+
+    @Override
+    public Object visit(All<?> all, Object obj) {
+        return all;
+    }
+
+    @Override
+    public Object visit(None<?> none, Object obj) {
+        return none;
+    }
+
+    @Override
+    public Object visit(Id<?> id, Object obj) {
+        Set<String> ids = new HashSet<String>();
+        for (Expression e : id.getIds()) {
+            if (!(e instanceof Literal)) {
+                return id;
+            }
+
+            Object val = e.evaluate(null);
+            if (val != null) {
+                ids.add(val.toString());
+            }
+        }
+        return new HashId<Object>(id.getIds(), ids);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Object visit(Logic<?> logic, Object obj) {
+        Logic.Type type = logic.getType();
+
+        if (type == Logic.Type.NOT) {
+            Filter<?> f = compile(logic.getParts().get(0));
+            if (f instanceof All) {
+                return new None<Object>();
+            }
+            if (f instanceof None) {
+                return new All<Object>();
+            }
+            if (f instanceof Logic && ((Logic<?>) f).getType() == Logic.Type.NOT) {
+                return ((Logic<?>) f).getParts().get(0);
+            }
+            return new Logic<Object>(type, (Filter<Object>) f);
+        }
+
+        List<Filter<Object>> parts = new ArrayList<Filter<Object>>();
+        if (flatten(logic, parts)) {
+            // short circuited to a constant
+            return type == Logic.Type.AND ? new None<Object>() : new All<Object>();
+        }
+
+        if (parts.isEmpty()) {
+            return type == Logic.Type.AND ? new All<Object>() : new None<Object>();
+        }
+        if (parts.size() == 1) {
+            return parts.get(0);
+        }
+
+        // cheapest first, sort is stable so equal cost parts maintain their order
+        Collections.sort(parts, new Comparator<Filter<?>>() {
+            @Override
+            public int compare(Filter<?> f1, Filter<?> f2) {
+                return Integer.valueOf(cost(f1)).compareTo(cost(f2));
+            }
+        });
+        return new ShortCircuitLogic<Object>(type, parts);
+    }
+
+    /**
+     * Compiles the parts of a logic filter into the specified list, pulling up the parts of
+     * nested filters of the same type and removing parts that don't affect the result.
+     *
+     * @return <code>true</code> if a part forces the result of the filter.
+     */
+    @SuppressWarnings("unchecked")
+    boolean flatten(Logic<?> logic, List<Filter<Object>> parts) {
+        boolean and = logic.getType() == Logic.Type.AND;
+        for (Filter<?> part : logic.getParts()) {
+            Filter<?> f = compile(part);
+            if (f instanceof Logic && ((Logic<?>)f).getType() == logic.getType()) {
+                if (flatten((Logic<?>)f, parts)) {
+                    return true;
+                }
+                continue;
+            }
+
+            if (f instanceof All) {
+                if (!and) {
+                    return true;
+                }
+                continue;
+            }
+            if (f instanceof None) {
+                if (and) {
+                    return true;
+                }
+                continue;
+            }
+            parts.add((Filter<Object>) f);
+        }
+        return false;
+    }
+
+    @Override
+    public Object visit(Comparison<?> compare, Object obj) {
+        Expression left = compile(compare.getLeft());
+        Expression right = compile(compare.getRight());
+
+        if (left instanceof Literal && right instanceof Literal) {
+            Comparison<Object> c = new Comparison<Object>(compare.getType(), left, right);
+            try {
+                return c.apply(null) ? new All<Object>() : new None<Object>();
+            }
+            catch(RuntimeException e) {
+                // leave for evaluation time
+            }
+        }
+
+        if (left instanceof BoundProperty && right instanceof Literal) {
+            Field fld = ((BoundProperty) left).field;
+            if (fld != null && fld.getType() != null && fld.getType() != Object.class) {
+                return new TypedComparison<Object>(
+                    compare.getType(), (BoundProperty) left, (Literal) right, fld.getType());
+            }
+        }
+
+        return new Comparison<Object>(compare.getType(), left, right);
+    }
+
+    @Override
+    public Object visit(Spatial<?> spatial, Object obj) {
+        Expression left = compile(spatial.getLeft());
+        Expression right = compile(spatial.getRight());
+        Expression distance = compile(spatial.getDistance());
+
+        if (right instanceof Literal) {
+            Object val = right.evaluate(null);
+            if (spatial.getType() == Spatial.Type.BBOX && val instanceof Envelope) {
+                return new PreparedSpatial<Object>(spatial.getType(), left, right, (Envelope)val);
+            }
+            if (val instanceof Geometry) {
+                switch(spatial.getType()) {
+                case INTERSECTS:
+                case DISJOINT:
+                case BBOX:
+                    return new PreparedSpatial<Object>(spatial.getType(), left, right, (Geometry)val);
+                default:
+                }
+            }
+        }
+
+        return new Spatial<Object>(spatial.getType(), left, right, distance);
+    }
+
+    @Override
+    public Object visit(TypeOf<?> inst, Object obj) {
+        return new TypeOf<Object>(compile(inst.getExpression()), inst.getType());
+    }
+
+    @Override
+    public Object visit(In<?> in, Object obj) {
+        Property prop = (Property) compile(in.getProperty());
+
+        Set<Object> values = new HashSet<Object>();
+        for (Expression e : in.getValues()) {
+            if (!(e instanceof Literal)) {
+                return new In<Object>(prop, in.getValues(), in.isNegated());
+            }
+
+            Object val = e.evaluate(null);
+            if (val != null) {
+                values.add(val);
+            }
+        }
+        return new HashIn<Object>(prop, in.getValues(), in.isNegated(), values);
+    }
+
+    @Override
+    public Object visit(Like<?> like, Object obj) {
+        Property prop = (Property) compile(like.getProperty());
+
+        String match = (String) like.getMatch().evaluate(null);
+        if (StringLike.supports(match)) {
+            return new StringLike<Object>(prop, like.getMatch(), like.isNegated());
+        }
+        return new Like<Object>(prop, like.getMatch(), like.isNegated());
+    }
+
+    @Override
+    public Object visit(Null<?> isNull, Object obj) {
+        return new Null<Object>((Property) compile(isNull.getProp()), isNull.isNegated());
+    }
+
+    @Override
+    public Object visit(Filter<?> filter, Object obj) {
+        return filter;
+    }
+
+    /**
+     * Property bound to the index of a field in a schema.
+     * <p>
+     * The index is only used for plain {@link BasicFeature} and {@link ArrayFeature} instances of
+     * the same schema, other features fall back to a lookup by name.
+     * </p>
+     */
+    static class BoundProperty extends Property {
+
+        final Schema schema;
+        final int index;
+        final Field field;
+
+        BoundProperty(String property, Schema schema) {
+            super(property);
+            this.schema = schema;
+            this.index = schema.indexOf(property);
+            this.field = index != -1 ? schema.getFields().get(index) : null;
+        }
+
+        @Override
+        protected Object resolve(Object obj) {
+            if (obj instanceof Feature) {
+                Feature f = (Feature) obj;
+                if (indexed(f) && f.schema() == schema) {
+                    return index != -1 ? f.get(index) : null;
+                }
+                return f.get(property);
+            }
+            return super.resolve(obj);
+        }
+
+        static boolean indexed(Feature f) {
+            Class<?> clazz = f.getClass();
+            return clazz == ArrayFeature.class || (clazz == BasicFeature.class && !f.isSchemaless());
+        }
+    }
+
+    /**
+     * Comparison of a property against a literal that has been converted to the type of the
+     * property.
+     */
+    static class TypedComparison<T> extends Comparison<T> {
+
+        final Class<?> clazz;
+        final Object raw;
+        final Object converted;
+
+        TypedComparison(Type type, BoundProperty left, Literal right, Class<?> clazz) {
+            super(type, left, right);
+            this.clazz = clazz;
+            this.raw = right.evaluate(null);
+
+            Object converted = raw;
+            if (raw != null && !clazz.isInstance(raw)) {
+                Optional<?> opt = Convert.to(raw, clazz);
+                if (opt.has()) {
+                    converted = opt.get();
+                }
+            }
+            this.converted = converted;
+        }
+
+        @Override
+        public boolean apply(T obj) {
+            Object o1 = left.evaluate(obj);
+
+            // values not exactly of the field type are converted at evaluation time
+            return compare(o1, o1 != null && o1.getClass() == clazz ? converted : raw);
+        }
+    }
+
+    /**
+     * Spatial filter against a prepared literal geometry.
+     */
+    static class PreparedSpatial<T> extends Spatial<T> {
+
+        final Envelope envelope;
+        final PreparedGeometry prepared;
+
+        PreparedSpatial(Type type, Expression left, Expression right, Envelope envelope) {
+            super(type, left, right, null);
+            this.envelope = envelope;
+            this.prepared = null;
+        }
+
+        PreparedSpatial(Type type, Expression left, Expression right, Geometry geometry) {
+            super(type, left, right, null);
+            this.envelope = geometry.getEnvelopeInternal();
+            this.prepared = type != Type.BBOX ? PreparedGeometryFactory.prepare(geometry) : null;
+        }
+
+        @Override
+        public boolean apply(T obj) {
+            Object o = left.evaluate(obj);
+            if (o == null) {
+                return false;
+            }
+
+            switch(type) {
+            case BBOX:
+                return toEnvelope(o).intersects(envelope);
+            case INTERSECTS:
+                return prepared.intersects(toGeometry(o));
+            case DISJOINT:
+                return prepared.disjoint(toGeometry(o));
+            default:
+                throw new IllegalStateException();
+            }
+        }
+    }
+
+    /**
+     * In filter that looks values up in a hash set.
+     */
+    static class HashIn<T> extends In<T> {
+
+        final Set<Object> set;
+
+        HashIn(Property prop, List<? extends Expression> values, boolean not, Set<Object> set) {
+            super(prop, values, not);
+            this.set = set;
+        }
+
+        @Override
+        public boolean apply(T obj) {
+            Object val = prop.evaluate(obj);
+            return not != (val != null && set.contains(val));
+        }
+    }
+
+    /**
+     * Id filter that looks ids up in a hash set.
+     */
+    static class HashId<T> extends Id<T> {
+
+        final Set<String> set;
+
+        HashId(List<Expression> ids, Set<String> set) {
+            super(ids);
+            this.set = set;
+        }
+
+        @Override
+        public boolean apply(T obj) {
+            if (obj instanceof Feature) {
+                String id = ((Feature) obj).getId();
+                return id != null && set.contains(id);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Like filter whose pattern is a plain string with leading/trailing wildcards, matched
+     * without a regular expression.
+     */
+    static class StringLike<T> extends Like<T> {
+
+        static final Pattern PLAIN = Pattern.compile("%?[^%\\\\.\\[\\]{}()*+?^$|]*%?");
+
+        /**
+         * Determines if the match string can be evaluated without a regular expression.
+         */
+        static boolean supports(String match) {
+            return match != null && PLAIN.matcher(match).matches();
+        }
+
+        final String text;
+        final boolean prefix, suffix;
+
+        StringLike(Property prop, Expression match, boolean not) {
+            super(prop, match, not);
+
+            String m = (String) match.evaluate(null);
+            suffix = m.startsWith("%");
+            prefix = m.length() > (suffix ? 1 : 0) && m.endsWith("%");
+            text = m.substring(suffix ? 1 : 0, prefix ? m.length() - 1 : m.length());
+        }
+
+        @Override
+        public boolean apply(T obj) {
+            boolean result = false;
+            if (obj instanceof Feature) {
+                Object val = prop.evaluate(obj);
+                if (val != null) {
+                    String s = val.toString();
+                    if ((prefix || suffix) && multiline(s)) {
+                        // wildcard does not match line terminators
+                        result = pattern.matcher(s).matches();
+                    }
+                    else if (prefix && suffix) {
+                        result = s.contains(text);
+                    }
+                    else if (prefix) {
+                        result = s.startsWith(text);
+                    }
+                    else if (suffix) {
+                        result = s.endsWith(text);
+                    }
+                    else {
+                        result = s.equals(text);
+                    }
+                }
+            }
+            return not != result;
+        }
+
+        static boolean multiline(String s) {
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Logic filter that evaluates its parts in order, stopping as soon as the result is known.
+     */
+    static class ShortCircuitLogic<T> extends Logic<T> {
+
+        final Filter<T>[] array;
+
+        @SuppressWarnings("unchecked")
+        ShortCircuitLogic(Type type, List<Filter<T>> parts) {
+            super(type, parts);
+            array = parts.toArray(new Filter[parts.size()]);
+        }
+
+        @Override
+        boolean and(T obj) {
+            for (int i = 0; i < array.length; i++) {
+                if (!array[i].apply(obj)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        boolean or(T obj) {
+            for (int i = 0; i < array.length; i++) {
+                if (array[i].apply(obj)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
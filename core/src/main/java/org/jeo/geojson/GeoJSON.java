@@ -23,7 +23,9 @@ import java.util.Map;
 
 import org.jeo.data.FileVectorDriver;
 import org.jeo.data.VectorDriver;
+import org.jeo.data.cache.ColumnarCache;
 import org.jeo.feature.Schema;
+import org.jeo.util.Key;
 
 /**
  * GeoJSON format driver.
@@ -33,6 +35,10 @@ import org.jeo.feature.Schema;
  * GeoJSON.open(new File("states.json"));
  * </code></pre>
  * </p>
+ * <p>
+ * Setting the {@link ColumnarCache#CACHE} option materializes the file into a memory mapped 
+ * binary cache on first read, avoiding re-parsing the file on subsequent queries.
+ * </p>
  * 
  * @author Justin Deoliveira, OpenGeo
  */
@@ -55,6 +61,11 @@ public class GeoJSON extends FileVectorDriver<GeoJSONDataset> {
         return Arrays.asList("json");
     }
     
+    @Override
+    public List<Key<?>> getKeys() {
+        return (List) Arrays.asList(FILE, ColumnarCache.CACHE, ColumnarCache.CACHE_DIR);
+    }
+
     @Override
     public Class<GeoJSONDataset> getType() {
         return GeoJSONDataset.class;
@@ -62,7 +73,7 @@ public class GeoJSON extends FileVectorDriver<GeoJSONDataset> {
 
     @Override
     public GeoJSONDataset open(File file, Map<?, Object> opts) throws IOException {
-        return new GeoJSONDataset(file);
+        return new GeoJSONDataset(file, ColumnarCache.dir(opts));
     }
 
     @Override
@@ -22,7 +22,7 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.Writer;
-import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import org.jeo.data.Cursor;
@@ -33,6 +33,7 @@ import org.jeo.data.FileData;
 import org.jeo.data.Query;
 import org.jeo.data.QueryPlan;
 import org.jeo.data.VectorDataset;
+import org.jeo.data.cache.ColumnarCache;
 import org.jeo.feature.Feature;
 import org.jeo.feature.Field;
 import org.jeo.feature.Schema;
@@ -53,9 +54,32 @@ import com.vividsolutions.jts.geom.Geometry;
 public class GeoJSONDataset implements VectorDataset, FileData {
 
     File file;
+    ColumnarCache cache;
 
     public GeoJSONDataset(File file) {
+        this(file, null);
+    }
+
+    /**
+     * Creates the dataset backed by a {@link ColumnarCache} stored in the specified directory.
+     *
+     * @param file The GeoJSON file.
+     * @param cacheDir The cache directory, <code>null</code> to disable caching.
+     */
+    public GeoJSONDataset(File file, File cacheDir) {
         this.file = file;
+        if (cacheDir != null) {
+            cache = new ColumnarCache(file, cacheDir, getName()) {
+                @Override
+                protected Cursor<Feature> read() throws IOException {
+                    return new GeoJSONCursor(reader());
+                }
+                @Override
+                protected CoordinateReferenceSystem readCRS() throws IOException {
+                    return parseCRS();
+                }
+            };
+        }
     }
 
     @Override
@@ -65,7 +89,13 @@ public class GeoJSONDataset implements VectorDataset, FileData {
 
     @Override
     public Map<Key<?>, Object> getDriverOptions() {
-        return (Map) Collections.singletonMap(GeoJSON.FILE, file);
+        Map<Key<?>,Object> opts = new LinkedHashMap<Key<?>, Object>();
+        opts.put(GeoJSON.FILE, file);
+        if (cache != null) {
+            opts.put(ColumnarCache.CACHE, true);
+            opts.put(ColumnarCache.CACHE_DIR, cache.getFile().getParentFile());
+        }
+        return opts;
     }
 
     @Override
@@ -90,6 +120,10 @@ public class GeoJSONDataset implements VectorDataset, FileData {
 
     @Override
     public Schema schema() throws IOException {
+        if (cache != null && cache.available()) {
+            return cache.schema();
+        }
+
         Optional<Feature> f = first();
         if (f.has()) {
             Schema schema = f.get().schema();
@@ -109,6 +143,13 @@ public class GeoJSONDataset implements VectorDataset, FileData {
 
     @Override
     public CoordinateReferenceSystem crs() throws IOException {
+        if (cache != null && cache.available()) {
+            return cache.crs();
+        }
+        return parseCRS();
+    }
+
+    CoordinateReferenceSystem parseCRS() throws IOException {
         CoordinateReferenceSystem crs = null;
 
         //first scan for a crs property
@@ -133,11 +174,17 @@ public class GeoJSONDataset implements VectorDataset, FileData {
 
     @Override
     public Envelope bounds() throws IOException {
-        return Cursors.extent(cursor(new Query()));
+        if (cache != null && cache.available()) {
+            return cache.bounds();
+        }
+        return Cursors.extent(cursor(new Query().reuse()));
     }
 
     @Override
     public long count(Query q) throws IOException {
+        if (cache != null && q.getMode() == Mode.READ && cache.available()) {
+            return cache.count(q);
+        }
         return Cursors.size(cursor(q));
     }
 
@@ -153,11 +200,18 @@ public class GeoJSONDataset implements VectorDataset, FileData {
             return new GeoJSONAppendCursor(writer());
         }
 
+        if (cache != null && cache.available()) {
+            return cache.cursor(q);
+        }
+
         return new QueryPlan(q).apply(new GeoJSONCursor(reader()));
     }
 
     @Override
     public void close() {
+        if (cache != null) {
+            cache.close();
+        }
     }
 
     Optional<Feature> first() throws IOException {
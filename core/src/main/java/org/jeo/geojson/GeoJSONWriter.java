@@ -17,6 +17,7 @@ package org.jeo.geojson;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.util.Collection;
 import java.util.Map;
 
 import org.jeo.data.Cursor;
@@ -52,6 +53,11 @@ import com.vividsolutions.jts.geom.impl.CoordinateArraySequence;
  * writer.endObject();
  * </code></pre>
  * </p>
+ * <p>
+ * Coordinates are written directly to the output buffer of the encoder. Use 
+ * {@link #setPrecision(int)} to limit the number of decimal places written for coordinate 
+ * values. 
+ * </p>
  * @author Justin Deoliveira, OpenGeo
  */
 public class GeoJSONWriter extends JSONEncoder {
@@ -155,8 +161,8 @@ public class GeoJSONWriter extends JSONEncoder {
         }
 
         object()
-          .key("type").value("name")
-          .key("properties").object()
+          .escapedKey("type").value("name")
+          .escapedKey("properties").object()
             .key("name").value(crs.getName())
             .endObject()
            .endObject();
@@ -209,8 +215,8 @@ public class GeoJSONWriter extends JSONEncoder {
         }
 
         object()
-          .key("type").value("Point")
-          .key("coordinates").array()
+          .escapedKey("type").value("Point")
+          .escapedKey("coordinates").array()
               .value(p.getX())
               .value(p.getY());
         
@@ -236,8 +242,8 @@ public class GeoJSONWriter extends JSONEncoder {
         }
 
         object()
-          .key("type").value("LineString")
-          .key("coordinates").array(l.getCoordinateSequence())
+          .escapedKey("type").value("LineString")
+          .escapedKey("coordinates").array(l.getCoordinateSequence())
           .endObject();
 
         return this;
@@ -256,8 +262,8 @@ public class GeoJSONWriter extends JSONEncoder {
         }
 
         object()
-          .key("type").value("Polygon")
-          .key("coordinates").array(p)
+          .escapedKey("type").value("Polygon")
+          .escapedKey("coordinates").array(p)
           .endObject();
 
         return this;
@@ -276,8 +282,8 @@ public class GeoJSONWriter extends JSONEncoder {
         }
 
         object()
-          .key("type").value("MultiPoint")
-          .key("coordinates").array(mp.getCoordinates())
+          .escapedKey("type").value("MultiPoint")
+          .escapedKey("coordinates").array(mp.getCoordinates())
           .endObject();
 
         return this;
@@ -296,8 +302,8 @@ public class GeoJSONWriter extends JSONEncoder {
         }
 
         object()
-          .key("type").value("MultiLineString")
-          .key("coordinates");
+          .escapedKey("type").value("MultiLineString")
+          .escapedKey("coordinates");
         
         array();
         for (LineString ls : Geom.iterate(ml)) {
@@ -323,8 +329,8 @@ public class GeoJSONWriter extends JSONEncoder {
         }
 
         object()
-          .key("type").value("MultiPolygon")
-          .key("coordinates");
+          .escapedKey("type").value("MultiPolygon")
+          .escapedKey("coordinates");
 
         array();
         for (Polygon p : Geom.iterate(mp)) {
@@ -350,8 +356,8 @@ public class GeoJSONWriter extends JSONEncoder {
         }
 
         object()
-          .key("type").value("GeometryCollection")
-          .key("geometries");
+          .escapedKey("type").value("GeometryCollection")
+          .escapedKey("geometries");
 
         array();
 
@@ -383,15 +389,15 @@ public class GeoJSONWriter extends JSONEncoder {
         object();
 
         if (f.getId() != null) {
-            key("id").value(f.getId());
+            escapedKey("id").value(f.getId());
         }
 
         Geometry g = f.geometry();
         if (g != null) {
-            key("geometry").geometry(g);
+            escapedKey("geometry").geometry(g);
         }
 
-        key("properties").object();
+        escapedKey("properties").object();
         for (Map.Entry<String, Object> p : f.map().entrySet()) {
             String key = p.getKey();
             Object o = p.getValue();
@@ -402,6 +408,13 @@ public class GeoJSONWriter extends JSONEncoder {
     
                  key(key).geometry((Geometry)o);
             }
+            else if (o instanceof Collection) {
+                key(key).array();
+                for (Object v : (Collection<?>) o) {
+                    value(v);
+                }
+                endArray();
+            }
             else {
                 key(key).value(o);
             }
@@ -439,8 +452,8 @@ public class GeoJSONWriter extends JSONEncoder {
      */
     public GeoJSONWriter featureCollection() throws IOException {
         object()
-            .key("type").value("FeatureCollection")
-            .key("features").array();
+            .escapedKey("type").value("FeatureCollection")
+            .escapedKey("features").array();
         return this;
     }
 
@@ -470,6 +483,11 @@ public class GeoJSONWriter extends JSONEncoder {
         return (GeoJSONWriter) super.key(key);
     }
 
+    @Override
+    protected GeoJSONWriter escapedKey(String key) throws IOException {
+        return (GeoJSONWriter) super.escapedKey(key);
+    }
+
     @Override
     public GeoJSONWriter value(Number value) throws IOException {
         return (GeoJSONWriter) super.value(value);
@@ -510,6 +528,35 @@ public class GeoJSONWriter extends JSONEncoder {
     }
 
     GeoJSONWriter array(CoordinateSequence coordseq) throws IOException {
+        if (!isFormatted()) {
+            // write the coordinates directly
+            beginValue();
+            write('[');
+
+            int dim = coordseq.getDimension();
+            for (int i = 0; i < coordseq.size(); i++) {
+                if (i > 0) {
+                    write(',');
+                }
+                write('[');
+                number(coordseq.getOrdinate(i, 0));
+                write(',');
+                number(coordseq.getOrdinate(i, 1));
+
+                if (dim > 2) {
+                    double v = coordseq.getOrdinate(i, 2);
+                    if (!Double.isNaN(v)) {
+                        write(',');
+                        number(v);
+                    }
+                }
+                write(']');
+            }
+
+            write(']');
+            return this;
+        }
+
         array();
         
         int dim = coordseq.getDimension();
@@ -16,10 +16,10 @@ package org.jeo.geojson.parser;
 
 import java.io.IOException;
 
-import org.jeo.json.parser.ContentHandler;
+import org.jeo.json.parser.NumberHandler;
 import org.jeo.json.parser.ParseException;
 
-public abstract class BaseHandler implements ContentHandler {
+public abstract class BaseHandler implements NumberHandler {
 
     protected ParseContext context;
     protected Node node;
@@ -86,6 +86,16 @@ public abstract class BaseHandler implements ContentHandler {
         return unexpected();
     }
 
+    @Override
+    public boolean isNumbers() {
+        return false;
+    }
+
+    @Override
+    public boolean number(double value) throws ParseException, IOException {
+        return primitive(value);
+    }
+
     boolean unexpected() {
         if (context.isStrict()) {
             throw new IllegalStateException("Unexpected event " + context.toString());
@@ -15,45 +15,202 @@
 package org.jeo.geojson.parser;
 
 import java.io.IOException;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Deque;
 import java.util.List;
 
 import org.jeo.json.parser.ParseException;
 
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.impl.PackedCoordinateSequence;
+
+/**
+ * Handles the "coordinates" member of a geometry object.
+ * <p>
+ * Numbers are received unboxed (see {@link #isNumbers()}) and accumulated into a flat ordinate 
+ * buffer. Every array of positions is turned into a {@link PackedCoordinateSequence} as soon as
+ * it ends, so the value of the node is one of:
+ * <ul>
+ *   <li>a {@link CoordinateSequence} of size 1, for a single position (Point)</li>
+ *   <li>a {@link CoordinateSequence}, for an array of positions (LineString, MultiPoint)</li>
+ *   <li>a (nested) {@link List} of the above, for deeper arrays (Polygon, MultiLineString, 
+ *   MultiPolygon)</li>
+ * </ul>
+ * Empty arrays result in an empty list.
+ * </p>
+ */
 public class CoordinateHandler extends BaseHandler {
 
+    /** array kinds, determined by the first child of the array */
+    static final int UNKNOWN = 0, POSITION = 1, SEQUENCE = 2, LIST = 3;
+
+    /** maximum number of ordinates kept per position */
+    static final int STRIDE = 3;
+
     int depth = 0;
-    Deque<List> stack = new ArrayDeque<List>();
+
+    /** kind of array at each depth */
+    int[] kinds = new int[8];
+
+    /** child lists at each depth, only used for arrays of kind LIST */
+    List<List<Object>> lists = new ArrayList<List<Object>>();
+
+    /** ordinates of the sequence being read, STRIDE values per position */
+    double[] buf = new double[STRIDE * 64];
+
+    /** number of positions in the buffer */
+    int size;
+
+    /** number of ordinates read for the current position */
+    int ord;
+
+    /** dimension of the sequence being read, taken from its first position */
+    int dim;
+
+    @Override
+    public boolean isNumbers() {
+        return true;
+    }
 
     @Override
     public boolean startArray() throws ParseException, IOException {
-        stack.push(new ArrayList());
+        if (depth > 0) {
+            if (kinds[depth] == POSITION) {
+                throw new IllegalArgumentException("unexpected array in coordinate position");
+            }
+        }
+
         depth++;
+        if (depth == kinds.length) {
+            int[] tmp = new int[kinds.length * 2];
+            System.arraycopy(kinds, 0, tmp, 0, kinds.length);
+            kinds = tmp;
+        }
+        kinds[depth] = UNKNOWN;
         return true;
     }
 
     @Override
     public boolean endArray() throws ParseException, IOException {
-        depth--;
+        int kind = kinds[depth--];
 
-        List l = stack.pop();
+        Object value;
+        switch(kind) {
+        case POSITION:
+            if (ord < 2) {
+                throw new IllegalArgumentException(String.format(
+                    "expected coordinate arary of size %d but is of size %d", 2, ord));
+            }
+            if (size == 0) {
+                dim = Math.min(ord, STRIDE);
+            }
+            if (ord < STRIDE) {
+                buf[size * STRIDE + 2] = Double.NaN;
+            }
+            size++;
+            ord = 0;
 
-        if (depth == 0) {
-            node.setValue(l);
-            pop();
+            if (depth > 0) {
+                child(SEQUENCE);
+                return true;
+            }
+
+            // single position
+            value = sequence();
+            break;
+
+        case SEQUENCE:
+            value = sequence();
+            break;
+
+        case LIST:
+            value = lists.get(depth + 1);
+            lists.set(depth + 1, null);
+            break;
+
+        default:
+            value = new ArrayList<Object>();
+        }
+
+        if (depth > 0) {
+            child(LIST);
+            list(depth).add(value);
         }
         else {
-            stack.peek().add(l);
+            node.setValue(value);
+            pop();
         }
         return true;
     }
-    
+
     @Override
-    public boolean primitive(Object value) throws ParseException, IOException {
-        stack.peek().add(value);
+    public boolean number(double value) throws ParseException, IOException {
+        child(POSITION);
+
+        if (ord == 0 && (size + 1) * STRIDE > buf.length) {
+            double[] tmp = new double[buf.length * 2];
+            System.arraycopy(buf, 0, tmp, 0, buf.length);
+            buf = tmp;
+        }
+        if (ord < STRIDE) {
+            buf[size * STRIDE + ord] = value;
+        }
+        ord++;
         return true;
     }
 
+    @Override
+    public boolean primitive(Object value) throws ParseException, IOException {
+        if (value instanceof Number) {
+            return number(((Number) value).doubleValue());
+        }
+        throw new IllegalArgumentException("unexpected coordinate value: " + value);
+    }
+
+    /**
+     * Records the kind of child added to the array at the current depth.
+     */
+    void child(int kind) {
+        if (depth == 0) {
+            throw new IllegalArgumentException("expected coordinate array");
+        }
+
+        int k = kinds[depth];
+        if (k == UNKNOWN) {
+            kinds[depth] = kind;
+        }
+        else if (k != kind) {
+            throw new IllegalArgumentException("mixed content in coordinate array");
+        }
+    }
+
+    List<Object> list(int d) {
+        while (lists.size() <= d) {
+            lists.add(null);
+        }
+
+        List<Object> l = lists.get(d);
+        if (l == null) {
+            l = new ArrayList<Object>();
+            lists.set(d, l);
+        }
+        return l;
+    }
+
+    CoordinateSequence sequence() {
+        double[] ords = new double[size * dim];
+        if (dim == STRIDE) {
+            System.arraycopy(buf, 0, ords, 0, ords.length);
+        }
+        else {
+            for (int i = 0, j = 0; i < size; i++) {
+                for (int k = 0; k < dim; k++) {
+                    ords[j++] = buf[i * STRIDE + k];
+                }
+            }
+        }
+
+        CoordinateSequence seq = new PackedCoordinateSequence.Double(ords, dim);
+        size = 0;
+        return seq;
+    }
 }
@@ -20,7 +20,6 @@ import java.util.List;
 import org.jeo.geom.Geom;
 import org.jeo.json.parser.ParseException;
 
-import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.CoordinateSequence;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryCollection;
@@ -32,7 +31,6 @@ import com.vividsolutions.jts.geom.MultiPoint;
 import com.vividsolutions.jts.geom.MultiPolygon;
 import com.vividsolutions.jts.geom.Point;
 import com.vividsolutions.jts.geom.Polygon;
-import com.vividsolutions.jts.geom.impl.PackedCoordinateSequenceFactory;
 
 public class GeometryHandler extends BaseHandler {
 
@@ -53,7 +51,7 @@ public class GeometryHandler extends BaseHandler {
         }
         else {
             String type = node.consume("type", String.class).or(null);
-            List coordinates = node.consume("coordinates", List.class).or(null);
+            Object coordinates = node.consume("coordinates", Object.class).or(null);
             g = createGeometry(type, coordinates);
         }
         node.setValue(g);
@@ -89,7 +87,7 @@ public class GeometryHandler extends BaseHandler {
         return true;
     }
 
-    Geometry createGeometry(String type, List coordinates) {
+    Geometry createGeometry(String type, Object coordinates) {
         switch(Geom.Type.from(type)) {
         case POINT:
             return createPoint(coordinates);
@@ -108,40 +106,47 @@ public class GeometryHandler extends BaseHandler {
         }
     }
 
-    Point createPoint(List list) {
-        return gf.createPoint(coord(list));
+    Point createPoint(Object obj) {
+        CoordinateSequence seq = coordseq(obj);
+        if (seq.size() != 1) {
+            throw new IllegalArgumentException("expected single position for point");
+        }
+        return gf.createPoint(seq);
     }
 
-    LineString createLineString(List list) {
-        return gf.createLineString(coordseq(list));
+    LineString createLineString(Object obj) {
+        return gf.createLineString(coordseq(obj));
     }
 
-    Polygon createPolygon(List list) {
-        LinearRing shell = gf.createLinearRing(coordseq((List)ensureSize(list, 1).get(0)));
+    Polygon createPolygon(Object obj) {
+        List list = list(obj);
+        LinearRing shell = gf.createLinearRing(coordseq(ensureSize(list, 1).get(0)));
         LinearRing[] holes = list.size() > 1 ? new LinearRing[list.size()-1] : null;
 
         for (int i = 1; i < list.size(); i++) {
-            holes[i-1] = gf.createLinearRing(coordseq((List) list.get(i))); 
+            holes[i-1] = gf.createLinearRing(coordseq(list.get(i))); 
         }
         return gf.createPolygon(shell, holes);
     }
 
-    MultiPoint createMultiPoint(List list) {
-        return gf.createMultiPoint(coordseq(list));
+    MultiPoint createMultiPoint(Object obj) {
+        return gf.createMultiPoint(coordseq(obj));
     }
 
-    MultiLineString createMultiLineString(List list) {
+    MultiLineString createMultiLineString(Object obj) {
+        List list = list(obj);
         LineString[] lines =  new LineString[ensureSize(list, 1).size()];
         for (int i = 0; i < list.size(); i++) {
-            lines[i] = createLineString((List) list.get(i));
+            lines[i] = createLineString(list.get(i));
         }
         return gf.createMultiLineString(lines);
     }
 
-    MultiPolygon createMultiPolygon(List list) {
+    MultiPolygon createMultiPolygon(Object obj) {
+        List list = list(obj);
         Polygon[] polys =  new Polygon[ensureSize(list, 1).size()];
         for (int i = 0; i < list.size(); i++) {
-            polys[i] = createPolygon((List) list.get(i));
+            polys[i] = createPolygon(list.get(i));
         }
         return gf.createMultiPolygon(polys);
     }
@@ -150,43 +155,20 @@ public class GeometryHandler extends BaseHandler {
         return gf.createGeometryCollection((Geometry[])geoms.toArray(new Geometry[geoms.size()]));
     }
 
-    Coordinate coord(List list) {
-        ensureSize(list, 2);
-
-        double x = number(list.get(0));
-        double y = number(list.get(1));
-        double z = list.size() > 2 ? number(list.get(2)) : Double.NaN;
-
-        Coordinate c = new Coordinate(x, y);
-        if (!Double.isNaN(z)) {
-            c.z = z;
+    CoordinateSequence coordseq(Object obj) {
+        if (obj instanceof CoordinateSequence) {
+            return (CoordinateSequence) obj;
         }
-        return c;
-    }
-
-    CoordinateSequence coordseq(List list) {
-        ensureSize(list, 1);
-
-        int dim = ensureSize((List) list.get(0), 2).size();
-        
-        CoordinateSequence seq =
-            PackedCoordinateSequenceFactory.DOUBLE_FACTORY.create(list.size(), dim);
 
-        for (int i = 0; i < list.size(); i++) {
-            List c = (List) list.get(i);
-            seq.setOrdinate(i, 0, number(c.get(0)));
-            seq.setOrdinate(i, 1, number(c.get(1)));
-
-            if (dim > 2) {
-                seq.setOrdinate(i, 2, number(c.get(2)));
-            }
-        }
-
-        return seq;
+        ensureSize(list(obj), 1);
+        throw new IllegalArgumentException("expected array of positions");
     }
 
-    double number(Object obj) {
-        return ((Number)obj).doubleValue();
+    List list(Object obj) {
+        if (obj instanceof List) {
+            return (List) obj;
+        }
+        throw new IllegalArgumentException("expected array of coordinate arrays");
     }
 
     List ensureSize(List list, int size) {
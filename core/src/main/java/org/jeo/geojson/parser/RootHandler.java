@@ -16,10 +16,10 @@ package org.jeo.geojson.parser;
 
 import java.io.IOException;
 
-import org.jeo.json.parser.ContentHandler;
+import org.jeo.json.parser.NumberHandler;
 import org.jeo.json.parser.ParseException;
 
-public class RootHandler implements ContentHandler {
+public class RootHandler implements NumberHandler {
 
     ParseContext context;
     boolean finished;
@@ -73,11 +73,22 @@ public class RootHandler implements ContentHandler {
         return handler().primitive(value);
     }
 
+    @Override
+    public boolean isNumbers() {
+        BaseHandler h = handler();
+        return h != null && h.isNumbers();
+    }
+
+    @Override
+    public boolean number(double value) throws ParseException, IOException {
+        return handler().number(value);
+    }
+
     public boolean isFinished() {
         return finished;
     }
 
-    protected ContentHandler handler() {
+    protected BaseHandler handler() {
         return context.handlers.peek();
     }
 
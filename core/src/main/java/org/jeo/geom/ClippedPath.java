@@ -0,0 +1,387 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.geom;
+
+import java.util.Arrays;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * Coordinate path that clips another path to a rectangle.
+ * <p>
+ * Clipping is done in a single pass over the underlying path. Line segments are clipped with the
+ * Cohen-Sutherland algorithm, a line leaving and re-entering the rectangle is split into
+ * multiple parts each starting with a {@link PathStep#MOVE_TO}. Polygon rings are clipped with
+ * the Sutherland-Hodgman algorithm, pipelined across the four edges of the rectangle, such that
+ * only the vertices of the clipped ring are buffered. Rings that end up with fewer than three
+ * vertices are dropped.
+ * </p>
+ * <p>
+ * Instances are obtained via {@link CoordinatePath#create(Geometry, Envelope)}.
+ * </p>
+ */
+public class ClippedPath extends CoordinatePath {
+
+    static final int INSIDE = 0, LEFT = 1, RIGHT = 2, BOTTOM = 4, TOP = 8;
+
+    /** the path being clipped */
+    final CoordinatePath path;
+
+    /** clip rectangle */
+    final double xmin, ymin, xmax, ymax;
+
+    /** whether the path is made up of polygon rings */
+    final boolean rings;
+
+    /** queue of clipped coordinates */
+    double[] qx = new double[16], qy = new double[16];
+    PathStep[] qs = new PathStep[16];
+    int head, tail;
+
+    /** flag indicating the underlying path is exhausted */
+    boolean done;
+
+    /** line state, last coordinate, whether it is the only one of the part, pen state */
+    double px, py;
+    boolean single;
+    boolean pen;
+
+    /** ring state, clipping pipeline and clipped ring vertices */
+    Edge pipeline;
+    double[] rx = new double[16], ry = new double[16];
+    int rn;
+
+    ClippedPath(CoordinatePath path, Envelope clip, boolean rings) {
+        this.path = path;
+        this.rings = rings;
+
+        xmin = clip.getMinX();
+        ymin = clip.getMinY();
+        xmax = clip.getMaxX();
+        ymax = clip.getMaxY();
+
+        if (rings) {
+            pipeline = new Edge(LEFT, new Edge(RIGHT, new Edge(BOTTOM, new Edge(TOP, null))));
+        }
+    }
+
+    @Override
+    public Geometry getGeometry() {
+        return path.getGeometry();
+    }
+
+    @Override
+    protected PathStep doNext(Coordinate c) {
+        while (head == tail) {
+            if (done) {
+                return PathStep.STOP;
+            }
+
+            if (path.hasNext()) {
+                Coordinate d = path.next();
+                switch(path.getStep()) {
+                case MOVE_TO:
+                    end();
+                    start(d.x, d.y);
+                    break;
+                case LINE_TO:
+                    add(d.x, d.y);
+                    break;
+                case CLOSE:
+                    if (rings) {
+                        // closing coordinate is the same as the first
+                        end();
+                    }
+                    else {
+                        add(d.x, d.y);
+                    }
+                    break;
+                default:
+                }
+            }
+            else {
+                end();
+                done = true;
+            }
+        }
+
+        c.x = qx[head];
+        c.y = qy[head];
+        return qs[head++];
+    }
+
+    @Override
+    protected void doReset() {
+        path.reset();
+        head = tail = 0;
+        done = false;
+        single = pen = false;
+        rn = 0;
+        for (Edge e = pipeline; e != null; e = e.next) {
+            e.first = true;
+        }
+    }
+
+    /*
+     * Starts a new part of the path.
+     */
+    void start(double x, double y) {
+        if (rings) {
+            pipeline.push(x, y);
+        }
+        else {
+            px = x;
+            py = y;
+            single = true;
+            pen = false;
+        }
+    }
+
+    /*
+     * Adds a coordinate to the current part of the path.
+     */
+    void add(double x, double y) {
+        if (rings) {
+            pipeline.push(x, y);
+        }
+        else {
+            single = false;
+            line(px, py, x, y);
+            px = x;
+            py = y;
+        }
+    }
+
+    /*
+     * Ends the current part of the path.
+     */
+    void end() {
+        if (rings) {
+            pipeline.close();
+            if (rn >= 3) {
+                enqueue(rx[0], ry[0], PathStep.MOVE_TO);
+                for (int i = 1; i < rn; i++) {
+                    enqueue(rx[i], ry[i], PathStep.LINE_TO);
+                }
+                enqueue(rx[0], ry[0], PathStep.CLOSE);
+            }
+            rn = 0;
+        }
+        else if (single) {
+            // lone coordinate, ie a point
+            if (outcode(px, py) == INSIDE) {
+                enqueue(px, py, PathStep.MOVE_TO);
+            }
+            single = false;
+        }
+    }
+
+    /*
+     * Cohen-Sutherland clipping of a single line segment.
+     */
+    void line(double x0, double y0, double x1, double y1) {
+        int c0 = outcode(x0, y0);
+        int c1 = outcode(x1, y1);
+        boolean endInside = c1 == INSIDE;
+
+        while (true) {
+            if ((c0 | c1) == INSIDE) {
+                // accept
+                if (!pen) {
+                    enqueue(x0, y0, PathStep.MOVE_TO);
+                }
+                enqueue(x1, y1, PathStep.LINE_TO);
+                pen = endInside;
+                return;
+            }
+            if ((c0 & c1) != INSIDE) {
+                // reject
+                pen = false;
+                return;
+            }
+
+            int c = c0 != INSIDE ? c0 : c1;
+            double x, y;
+            if ((c & TOP) != 0) {
+                x = x0 + (x1 - x0) * (ymax - y0) / (y1 - y0);
+                y = ymax;
+            }
+            else if ((c & BOTTOM) != 0) {
+                x = x0 + (x1 - x0) * (ymin - y0) / (y1 - y0);
+                y = ymin;
+            }
+            else if ((c & RIGHT) != 0) {
+                y = y0 + (y1 - y0) * (xmax - x0) / (x1 - x0);
+                x = xmax;
+            }
+            else {
+                y = y0 + (y1 - y0) * (xmin - x0) / (x1 - x0);
+                x = xmin;
+            }
+
+            if (c == c0) {
+                x0 = x;
+                y0 = y;
+                c0 = outcode(x0, y0);
+            }
+            else {
+                x1 = x;
+                y1 = y;
+                c1 = outcode(x1, y1);
+            }
+        }
+    }
+
+    int outcode(double x, double y) {
+        int code = INSIDE;
+        if (x < xmin) {
+            code |= LEFT;
+        }
+        else if (x > xmax) {
+            code |= RIGHT;
+        }
+        if (y < ymin) {
+            code |= BOTTOM;
+        }
+        else if (y > ymax) {
+            code |= TOP;
+        }
+        return code;
+    }
+
+    void enqueue(double x, double y, PathStep step) {
+        if (head == tail) {
+            head = tail = 0;
+        }
+        if (tail == qs.length) {
+            int n = qs.length * 2;
+            qx = Arrays.copyOf(qx, n);
+            qy = Arrays.copyOf(qy, n);
+            qs = Arrays.copyOf(qs, n);
+        }
+        qx[tail] = x;
+        qy[tail] = y;
+        qs[tail++] = step;
+    }
+
+    /*
+     * Appends a vertex to the clipped ring.
+     */
+    void vertex(double x, double y) {
+        if (rn == rx.length) {
+            rx = Arrays.copyOf(rx, rn * 2);
+            ry = Arrays.copyOf(ry, rn * 2);
+        }
+        rx[rn] = x;
+        ry[rn++] = y;
+    }
+
+    /**
+     * Single stage of the Sutherland-Hodgman pipeline, clipping against one edge of the
+     * rectangle and passing output vertices on to the next stage.
+     */
+    class Edge {
+
+        final int side;
+        final Edge next;
+
+        /** first and previous vertex */
+        double fx, fy, sx, sy;
+        boolean first = true;
+
+        Edge(int side, Edge next) {
+            this.side = side;
+            this.next = next;
+        }
+
+        void push(double x, double y) {
+            if (first) {
+                fx = x;
+                fy = y;
+                first = false;
+            }
+            else {
+                edge(sx, sy, x, y);
+            }
+            sx = x;
+            sy = y;
+        }
+
+        void close() {
+            if (!first) {
+                edge(sx, sy, fx, fy);
+                first = true;
+            }
+            if (next != null) {
+                next.close();
+            }
+        }
+
+        void edge(double x0, double y0, double x1, double y1) {
+            boolean in0 = inside(x0, y0);
+            boolean in1 = inside(x1, y1);
+
+            if (in1) {
+                if (!in0) {
+                    intersect(x0, y0, x1, y1);
+                }
+                emit(x1, y1);
+            }
+            else if (in0) {
+                intersect(x0, y0, x1, y1);
+            }
+        }
+
+        boolean inside(double x, double y) {
+            switch(side) {
+            case LEFT:
+                return x >= xmin;
+            case RIGHT:
+                return x <= xmax;
+            case BOTTOM:
+                return y >= ymin;
+            default:
+                return y <= ymax;
+            }
+        }
+
+        void intersect(double x0, double y0, double x1, double y1) {
+            switch(side) {
+            case LEFT:
+                emit(xmin, y0 + (y1 - y0) * (xmin - x0) / (x1 - x0));
+                break;
+            case RIGHT:
+                emit(xmax, y0 + (y1 - y0) * (xmax - x0) / (x1 - x0));
+                break;
+            case BOTTOM:
+                emit(x0 + (x1 - x0) * (ymin - y0) / (y1 - y0), ymin);
+                break;
+            default:
+                emit(x0 + (x1 - x0) * (ymax - y0) / (y1 - y0), ymax);
+            }
+        }
+
+        void emit(double x, double y) {
+            if (next != null) {
+                next.push(x, y);
+            }
+            else {
+                vertex(x, y);
+            }
+        }
+    }
+}
@@ -18,9 +18,12 @@ import java.util.Iterator;
 
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.CoordinateFilter;
+import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryCollection;
 import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.MultiPolygon;
 import com.vividsolutions.jts.geom.Point;
 import com.vividsolutions.jts.geom.Polygon;
 
@@ -71,6 +74,27 @@ public abstract class CoordinatePath implements Iterator<Coordinate> {
         }
     }
 
+    /**
+     * Creates a coordinate iterator for the specified geometry clipped to a rectangle.
+     * <p>
+     * Geometries that lie completely within the clip rectangle are not clipped. Polygons and 
+     * linear rings are clipped as closed rings, all other geometries as lines and points. See
+     * {@link ClippedPath} for details. 
+     * </p>
+     * @param g The geometry.
+     * @param clip The clip rectangle.
+     */
+    public static CoordinatePath create(Geometry g, Envelope clip) {
+        CoordinatePath path = create(g);
+        if (g == null || g.isEmpty() || clip.contains(g.getEnvelopeInternal())) {
+            return path;
+        }
+
+        boolean rings = 
+            g instanceof Polygon || g instanceof MultiPolygon || g instanceof LinearRing;
+        return new ClippedPath(path, clip, rings);
+    }
+
     protected PathStep step = null;
 
     protected Coordinate prev, curr;
@@ -20,6 +20,7 @@ import com.vividsolutions.jts.geom.Polygon;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 /**
  * Utility class for {@link Envelope}.
@@ -29,6 +30,9 @@ import java.util.List;
  */
 public class Envelopes {
 
+    /** generator used when none is specified */
+    static final Random RANDOM = new Random();
+
     /**
      * Scales an envelope around its center coordinate. 
      * <p>
@@ -158,21 +162,24 @@ public class Envelopes {
      * @return The randomly generated envelope.
      */
     public static Envelope random(Envelope bbox, float res) {
+        return random(bbox, res, RANDOM);
+    }
+
+    /**
+     * Generates a random envelope at the specified resolution and constrained by
+     * the specified bounds, drawing values from the specified generator.
+     *
+     * @see #random(Envelope, float)
+     */
+    public static Envelope random(Envelope bbox, float res, Random random) {
         if (!(res > 0f && res < 1f)) {
             throw new IllegalArgumentException("res must be in range (0,1)");
         }
         double w = bbox.getWidth() * res;
         double h = bbox.getHeight() * res;
 
-        double maxx = bbox.getMaxX();
-        double maxy = bbox.getMaxY();
-
-        double x = maxx;
-        double y = maxy;
-        while ((x + w > maxx) || (y + h > maxy)) {
-            x = bbox.getMinX() + w*Math.random();
-            y = bbox.getMinY() + h*Math.random();
-        }
+        double x = bbox.getMinX() + (bbox.getWidth() - w)*random.nextDouble();
+        double y = bbox.getMinY() + (bbox.getHeight() - h)*random.nextDouble();
 
         return new Envelope(x, x+w, y, y+h);
     }
@@ -188,15 +195,28 @@ public class Envelopes {
      * @see #random(com.vividsolutions.jts.geom.Envelope, float)
      */
     public static List<Envelope> randoms(Envelope bbox, float minRes, float maxRes, int n) {
+        return randoms(bbox, minRes, maxRes, n, RANDOM);
+    }
+
+    /**
+     * Generates a set of random bounding box constrained by area and resolution, drawing values 
+     * from the specified generator. 
+     * <p>
+     * Using a generator created with a fixed seed produces the same envelopes on every call.
+     * </p>
+     * @see #randoms(Envelope, float, float, int)
+     */
+    public static List<Envelope> randoms(Envelope bbox, float minRes, float maxRes, int n, 
+        Random random) {
         List<Envelope> list = new ArrayList<Envelope>(n);
         for (int i = 0; i < n; i++) {
             float r = 0;
             do {
-                r = (float)(minRes + Math.random()*(maxRes - minRes));
+                r = (float)(minRes + random.nextDouble()*(maxRes - minRes));
             }
             while(!(r > 0 && r < 1));
 
-            list.add(random(bbox, r));
+            list.add(random(bbox, r, random));
         }
         return list;
     }
@@ -0,0 +1,494 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.geom;
+
+import java.util.Arrays;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * Static R-tree packed with the Sort-Tile-Recursive algorithm and stored in flat arrays.
+ * <p>
+ * Items are integers, typically positions in an array of objects held by the caller, inserted
+ * along with their bounds. Once all items are inserted the tree is built in one pass, after which
+ * no more items can be added. Each node is stored as four doubles for its bounds and an int for
+ * its item, or its first child for non leaf nodes, so the tree has a small fixed overhead per item
+ * and no per node objects.
+ * </p>
+ * <p>
+ * Queries pass items to a visitor rather than collecting them in a list. Bounding box queries
+ * visit exactly the items whose bounds intersect the query box, nearest queries visit items in
+ * order of distance from a point to their bounds.
+ * </p>
+ * <p>
+ * Usage:
+ * <pre><code>
+ * PackedRTree tree = new PackedRTree(features.size());
+ * for (int i = 0; i < features.size(); i++) {
+ *   tree.insert(features.get(i).geometry().getEnvelopeInternal(), i);
+ * }
+ * tree.build();
+ *
+ * tree.query(bbox, new PackedRTree.Visitor() {
+ *   public boolean visit(int item) {
+ *     ...
+ *     return true;
+ *   }
+ * });
+ * </code></pre>
+ * </p>
+ * <p>
+ * A built tree is immutable and may be queried by multiple threads concurrently.
+ * </p>
+ */
+public class PackedRTree {
+
+    /**
+     * Visitor for items matching a query.
+     */
+    public static interface Visitor {
+        /**
+         * Visits an item.
+         *
+         * @return <code>true</code> to continue the query, <code>false</code> to stop it.
+         */
+        boolean visit(int item);
+    }
+
+    /**
+     * Visitor for items of a nearest query.
+     */
+    public static interface DistanceVisitor {
+        /**
+         * Visits an item.
+         *
+         * @param item The item.
+         * @param distance Distance from the query point to the bounds of the item.
+         *
+         * @return <code>true</code> to continue the query, <code>false</code> to stop it.
+         */
+        boolean visit(int item, double distance);
+    }
+
+    /** default maximum number of children of a node */
+    public static final int DEFAULT_NODE_SIZE = 16;
+
+    final int nodeSize;
+
+    /** number of items */
+    int size;
+
+    /** node bounds, minx, miny, maxx, maxy for each node, items first */
+    double[] boxes;
+
+    /** item of leaf nodes, first child of other nodes */
+    int[] index;
+
+    /** end of each level of nodes, starting with the items */
+    int[] levels;
+
+    boolean built;
+
+    /**
+     * Creates a tree with the default node size.
+     *
+     * @param capacity The expected number of items.
+     */
+    public PackedRTree(int capacity) {
+        this(capacity, DEFAULT_NODE_SIZE);
+    }
+
+    /**
+     * Creates a tree.
+     *
+     * @param capacity The expected number of items.
+     * @param nodeSize The maximum number of children of a node.
+     */
+    public PackedRTree(int capacity, int nodeSize) {
+        if (nodeSize < 2) {
+            throw new IllegalArgumentException("node size must be at least 2");
+        }
+        this.nodeSize = nodeSize;
+
+        capacity = Math.max(capacity, 1);
+        boxes = new double[capacity * 4];
+        index = new int[capacity];
+    }
+
+    /**
+     * Number of items in the tree.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Whether the tree has been built.
+     */
+    public boolean isBuilt() {
+        return built;
+    }
+
+    /**
+     * Inserts an item, items with a null envelope are ignored.
+     *
+     * @throws IllegalStateException If the tree has already been built.
+     */
+    public void insert(Envelope e, int item) {
+        if (e == null || e.isNull()) {
+            return;
+        }
+        insert(e.getMinX(), e.getMinY(), e.getMaxX(), e.getMaxY(), item);
+    }
+
+    /**
+     * Inserts an item.
+     *
+     * @throws IllegalStateException If the tree has already been built.
+     */
+    public void insert(double minx, double miny, double maxx, double maxy, int item) {
+        if (built) {
+            throw new IllegalStateException("Tree already built");
+        }
+
+        if (size == index.length) {
+            index = Arrays.copyOf(index, size * 2);
+            boxes = Arrays.copyOf(boxes, size * 8);
+        }
+
+        int b = size * 4;
+        boxes[b] = minx;
+        boxes[b+1] = miny;
+        boxes[b+2] = maxx;
+        boxes[b+3] = maxy;
+        index[size++] = item;
+    }
+
+    /**
+     * Builds the tree from the inserted items.
+     * <p>
+     * Calling this method more than once has no effect.
+     * </p>
+     */
+    public void build() {
+        if (built) {
+            return;
+        }
+
+        // compute the number of levels and nodes
+        int nodes = size;
+        int nlevels = 1;
+        for (int n = size; n > 1 || (nlevels == 1 && n > 0); ) {
+            n = (n + nodeSize - 1) / nodeSize;
+            nodes += n;
+            nlevels++;
+        }
+
+        boxes = Arrays.copyOf(boxes, nodes * 4);
+        index = Arrays.copyOf(index, nodes);
+        levels = new int[size > 0 ? nlevels : 1];
+        levels[0] = size;
+
+        double[] keys = new double[size];
+        int[] perm = new int[size];
+        double[] tmpBoxes = new double[size * 4];
+        int[] tmpIndex = new int[size];
+
+        int start = 0, end = size;
+        for (int l = 1; l < levels.length; l++) {
+            int n = end - start;
+            int parents = (n + nodeSize - 1) / nodeSize;
+
+            // sort the level into slices by x, then each slice by y
+            for (int i = 0; i < n; i++) {
+                perm[i] = i;
+                int b = (start + i) * 4;
+                keys[i] = boxes[b] + boxes[b+2];
+            }
+            sort(perm, keys, 0, n);
+
+            int slice = (int) Math.ceil(Math.sqrt(parents)) * nodeSize;
+            for (int i = 0; i < n; i++) {
+                int b = (start + i) * 4;
+                keys[i] = boxes[b+1] + boxes[b+3];
+            }
+            for (int i = 0; i < n; i += slice) {
+                sort(perm, keys, i, Math.min(i + slice, n));
+            }
+
+            // reorder the level
+            System.arraycopy(boxes, start * 4, tmpBoxes, 0, n * 4);
+            System.arraycopy(index, start, tmpIndex, 0, n);
+            for (int i = 0; i < n; i++) {
+                System.arraycopy(tmpBoxes, perm[i] * 4, boxes, (start + i) * 4, 4);
+                index[start + i] = tmpIndex[perm[i]];
+            }
+
+            // pack consecutive runs of nodes into parents
+            for (int p = 0; p < parents; p++) {
+                int first = start + p * nodeSize;
+                int last = Math.min(first + nodeSize, end);
+
+                int b = (end + p) * 4;
+                boxes[b] = Double.POSITIVE_INFINITY;
+                boxes[b+1] = Double.POSITIVE_INFINITY;
+                boxes[b+2] = Double.NEGATIVE_INFINITY;
+                boxes[b+3] = Double.NEGATIVE_INFINITY;
+                for (int c = first; c < last; c++) {
+                    int cb = c * 4;
+                    boxes[b] = Math.min(boxes[b], boxes[cb]);
+                    boxes[b+1] = Math.min(boxes[b+1], boxes[cb+1]);
+                    boxes[b+2] = Math.max(boxes[b+2], boxes[cb+2]);
+                    boxes[b+3] = Math.max(boxes[b+3], boxes[cb+3]);
+                }
+                index[end + p] = first;
+            }
+
+            start = end;
+            end = end + parents;
+            levels[l] = end;
+        }
+
+        built = true;
+    }
+
+    /**
+     * The bounds of all items in the tree, a null envelope if the tree is empty.
+     */
+    public Envelope bounds() {
+        checkBuilt();
+
+        if (size == 0) {
+            return new Envelope();
+        }
+
+        int b = (levels[levels.length-1] - 1) * 4;
+        return new Envelope(boxes[b], boxes[b+2], boxes[b+1], boxes[b+3]);
+    }
+
+    /**
+     * Visits the items whose bounds intersect an envelope.
+     */
+    public void query(Envelope e, Visitor visitor) {
+        if (e == null || e.isNull()) {
+            return;
+        }
+        query(e.getMinX(), e.getMinY(), e.getMaxX(), e.getMaxY(), visitor);
+    }
+
+    /**
+     * Visits the items whose bounds intersect a box.
+     */
+    public void query(double minx, double miny, double maxx, double maxy, Visitor visitor) {
+        checkBuilt();
+        if (size == 0) {
+            return;
+        }
+
+        // depth first, each stack entry a node whose children are to be visited
+        int[] stack = new int[levels.length * nodeSize];
+        int top = 0;
+        stack[top++] = levels[levels.length-1] - 1;
+
+        while (top > 0) {
+            int node = stack[--top];
+            int first = index[node];
+            int last = Math.min(first + nodeSize, levelEnd(first));
+
+            for (int c = first; c < last; c++) {
+                int b = c * 4;
+                if (boxes[b] > maxx || boxes[b+1] > maxy || boxes[b+2] < minx || boxes[b+3] < miny) {
+                    continue;
+                }
+
+                if (c < size) {
+                    if (!visitor.visit(index[c])) {
+                        return;
+                    }
+                }
+                else {
+                    stack[top++] = c;
+                }
+            }
+        }
+    }
+
+    /**
+     * Visits items in order of increasing distance from a point to their bounds, until the visitor
+     * stops the query.
+     */
+    public void nearest(double x, double y, DistanceVisitor visitor) {
+        checkBuilt();
+        if (size == 0) {
+            return;
+        }
+
+        Queue queue = new Queue();
+        queue.push(levels[levels.length-1] - 1, 0);
+
+        while (queue.size > 0) {
+            double dist = queue.peekDistance();
+            int node = queue.pop();
+
+            if (node < size) {
+                if (!visitor.visit(index[node], Math.sqrt(dist))) {
+                    return;
+                }
+                continue;
+            }
+
+            int first = index[node];
+            int last = Math.min(first + nodeSize, levelEnd(first));
+            for (int c = first; c < last; c++) {
+                queue.push(c, distance(c, x, y));
+            }
+        }
+    }
+
+    /**
+     * Squared distance from a point to the bounds of a node.
+     */
+    double distance(int node, double x, double y) {
+        int b = node * 4;
+        double dx = Math.max(Math.max(boxes[b] - x, x - boxes[b+2]), 0);
+        double dy = Math.max(Math.max(boxes[b+1] - y, y - boxes[b+3]), 0);
+        return dx*dx + dy*dy;
+    }
+
+    /**
+     * End of the level containing the specified node.
+     */
+    int levelEnd(int node) {
+        for (int l = 0; l < levels.length; l++) {
+            if (node < levels[l]) {
+                return levels[l];
+            }
+        }
+        return levels[levels.length-1];
+    }
+
+    void checkBuilt() {
+        if (!built) {
+            throw new IllegalStateException("Tree not built");
+        }
+    }
+
+    /**
+     * Sorts a range of a permutation by the keys of its elements.
+     */
+    static void sort(int[] perm, double[] keys, int from, int to) {
+        while (to - from > 16) {
+            // median of three pivot
+            int mid = (from + to) >>> 1;
+            double a = keys[perm[from]], b = keys[perm[mid]], c = keys[perm[to-1]];
+            double pivot = a < b ? (b < c ? b : (a < c ? c : a)) : (a < c ? a : (b < c ? c : b));
+
+            int i = from, j = to - 1;
+            while (i <= j) {
+                while (keys[perm[i]] < pivot) i++;
+                while (keys[perm[j]] > pivot) j--;
+                if (i <= j) {
+                    int t = perm[i]; perm[i] = perm[j]; perm[j] = t;
+                    i++;
+                    j--;
+                }
+            }
+
+            // recurse into the smaller half
+            if (j - from < to - i) {
+                sort(perm, keys, from, j + 1);
+                from = i;
+            }
+            else {
+                sort(perm, keys, i, to);
+                to = j + 1;
+            }
+        }
+
+        for (int i = from + 1; i < to; i++) {
+            int p = perm[i];
+            double k = keys[p];
+            int j = i - 1;
+            while (j >= from && keys[perm[j]] > k) {
+                perm[j+1] = perm[j];
+                j--;
+            }
+            perm[j+1] = p;
+        }
+    }
+
+    /**
+     * Binary min heap of nodes keyed by distance.
+     */
+    static class Queue {
+        int[] nodes = new int[64];
+        double[] dists = new double[64];
+        int size;
+
+        void push(int node, double dist) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+                dists = Arrays.copyOf(dists, size * 2);
+            }
+
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >> 1;
+                if (dists[parent] <= dist) {
+                    break;
+                }
+                nodes[i] = nodes[parent];
+                dists[i] = dists[parent];
+                i = parent;
+            }
+            nodes[i] = node;
+            dists[i] = dist;
+        }
+
+        double peekDistance() {
+            return dists[0];
+        }
+
+        int pop() {
+            int top = nodes[0];
+
+            size--;
+            if (size > 0) {
+                int node = nodes[size];
+                double dist = dists[size];
+
+                int i = 0;
+                while (true) {
+                    int child = 2 * i + 1;
+                    if (child >= size) {
+                        break;
+                    }
+                    if (child + 1 < size && dists[child+1] < dists[child]) {
+                        child++;
+                    }
+                    if (dists[child] >= dist) {
+                        break;
+                    }
+                    nodes[i] = nodes[child];
+                    dists[i] = dists[child];
+                    i = child;
+                }
+                nodes[i] = node;
+                dists[i] = dist;
+            }
+            return top;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.image;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Encodes a rendered image to an output stream.
+ * <p>
+ * Instances are obtained from {@link ImageEncoders#create(java.util.Map)}.
+ * </p>
+ */
+public interface ImageEncoder {
+
+    /**
+     * The mime type of the encoded image.
+     */
+    String getMimeType();
+
+    /**
+     * Encodes an image.
+     *
+     * @param img The image to encode.
+     * @param out The output to write to, this method does not close it.
+     */
+    void encode(BufferedImage img, OutputStream out) throws IOException;
+}
@@ -0,0 +1,90 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.image;
+
+import java.util.Map;
+
+import org.jeo.image.PNGEncoder.Filter;
+import org.jeo.util.Key;
+
+/**
+ * Image encoder utility class.
+ * <p>
+ * Renderers obtain their encoder with {@link #create(Map)} from the rendering options, using the
+ * keys declared by this class.
+ * </p>
+ */
+public class ImageEncoders {
+
+    /**
+     * Format of the image to encode, a format name or mime type.
+     * <p>
+     * The format "png8" is short hand for png with a 256 color palette.
+     * </p>
+     */
+    public static final Key<String> IMAGE_FORMAT =
+        new Key<String>("image-format", String.class, "png");
+
+    /**
+     * Amount of compression, from 0 (fastest) to 1 (smallest).
+     * <p>
+     * For png this maps to the deflate level, other formats pass it through to writers that
+     * support explicit compression.
+     * </p>
+     */
+    public static final Key<Float> COMPRESSION = new Key<Float>("compression", Float.class);
+
+    /**
+     * Row filter used when encoding png, one of the {@link PNGEncoder.Filter} names.
+     */
+    public static final Key<String> PNG_FILTER = new Key<String>("png-filter", String.class);
+
+    /**
+     * Maximum number of palette colors when encoding png, the image is quantized if it contains
+     * more colors. Unset or 0 encodes full color images.
+     */
+    public static final Key<Integer> PALETTE = new Key<Integer>("palette", Integer.class, 0);
+
+    /**
+     * Creates the encoder for a set of rendering options.
+     *
+     * @throws IllegalArgumentException If the format is not supported.
+     */
+    public static ImageEncoder create(Map<?,Object> opts) {
+        String format = IMAGE_FORMAT.get(opts).toLowerCase();
+        if (format.startsWith("image/")) {
+            format = format.substring("image/".length());
+        }
+
+        Float compression = COMPRESSION.get(opts);
+
+        if ("png".equals(format) || "png8".equals(format)) {
+            int colors = PALETTE.get(opts);
+            if ("png8".equals(format) && colors == 0) {
+                colors = 256;
+            }
+
+            int level = compression != null ?
+                Math.round(Math.max(0f, Math.min(1f, compression)) * 9) : PNGEncoder.DEFAULT_LEVEL;
+
+            String filter = PNG_FILTER.get(opts);
+            return new PNGEncoder(level,
+                filter != null ? Filter.valueOf(filter.toUpperCase()) : PNGEncoder.DEFAULT_FILTER,
+                colors);
+        }
+
+        return new ImageIOEncoder(format, compression);
+    }
+}
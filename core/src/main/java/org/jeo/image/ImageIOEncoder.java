@@ -0,0 +1,101 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.image;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Encodes images with an ImageIO image writer.
+ */
+public class ImageIOEncoder implements ImageEncoder {
+
+    final String format;
+    final Float compression;
+
+    /**
+     * Creates the encoder.
+     *
+     * @param format The ImageIO format name.
+     * @param compression Amount of compression from 0 to 1, or <code>null</code> for the writer
+     *   default.
+     *
+     * @throws IllegalArgumentException If no writer is available for the format.
+     */
+    public ImageIOEncoder(String format, Float compression) {
+        if (!ImageIO.getImageWritersByFormatName(format).hasNext()) {
+            throw new IllegalArgumentException("No image writer for format: " + format);
+        }
+        this.format = format;
+        this.compression = compression;
+    }
+
+    @Override
+    public String getMimeType() {
+        Iterator<ImageWriter> it = ImageIO.getImageWritersByFormatName(format);
+        String[] mimeTypes = it.next().getOriginatingProvider().getMIMETypes();
+        return mimeTypes != null && mimeTypes.length > 0 ? mimeTypes[0] : "image/" + format;
+    }
+
+    @Override
+    public void encode(BufferedImage img, OutputStream out) throws IOException {
+        ImageWriter w = ImageIO.getImageWritersByFormatName(format).next();
+
+        BufferedImage image = img;
+        if (image.getColorModel().hasAlpha() && !supportsAlpha(w, img)) {
+            // flatten onto an opaque image
+            image = new BufferedImage(img.getWidth(), img.getHeight(), BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = image.createGraphics();
+            g.drawImage(img, 0, 0, null);
+            g.dispose();
+        }
+
+        ImageWriteParam p = w.getDefaultWriteParam();
+        if (compression != null && p.canWriteCompressed()) {
+            p.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            if (p.getCompressionType() == null && p.getCompressionTypes() != null) {
+                p.setCompressionType(p.getCompressionTypes()[0]);
+            }
+            p.setCompressionQuality(1f - Math.max(0f, Math.min(1f, compression)));
+        }
+
+        ImageOutputStream ios = ImageIO.createImageOutputStream(out);
+        try {
+            w.setOutput(ios);
+            w.write(null, new IIOImage(image, null, null), p);
+        }
+        finally {
+            w.dispose();
+            ios.close();
+        }
+    }
+
+    boolean supportsAlpha(ImageWriter w, BufferedImage img) {
+        // jpeg writers claim to handle alpha but produce images most readers can't display
+        if (format.toLowerCase().startsWith("jp")) {
+            return false;
+        }
+        return w.getOriginatingProvider().canEncodeImage(img);
+    }
+}
@@ -0,0 +1,449 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.image;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Fast PNG encoder.
+ * <p>
+ * Images are encoded as 8 bit truecolor, with an alpha channel only when the image has
+ * transparent pixels, or when a palette size is specified as indexed color with the smallest
+ * bit depth that fits the palette, quantizing the image if necessary. The deflate level and the
+ * row filter are configurable.
+ * </p>
+ * <p>
+ * Images consisting of a single color, such as empty tiles, are encoded as a one color palette
+ * image regardless of settings and the result is cached.
+ * </p>
+ */
+public class PNGEncoder implements ImageEncoder {
+
+    /**
+     * PNG row filters.
+     */
+    public static enum Filter {
+        NONE, SUB, UP, AVERAGE, PAETH,
+        /** picks the filter for each row that minimizes the sum of the filtered bytes */
+        ADAPTIVE;
+    }
+
+    /** default deflate level */
+    public static final int DEFAULT_LEVEL = 4;
+
+    /** default row filter */
+    public static final Filter DEFAULT_FILTER = Filter.SUB;
+
+    static final byte[] SIGNATURE = {(byte)137, 80, 78, 71, 13, 10, 26, 10};
+
+    static final int COLOR_TRUECOLOR = 2;
+    static final int COLOR_INDEXED = 3;
+    static final int COLOR_TRUECOLOR_ALPHA = 6;
+
+    /** maximum size of an IDAT chunk */
+    static final int CHUNK_SIZE = 32768;
+
+    /** encoded single color images */
+    static final int SOLID_CACHE_SIZE = 64;
+    static final Map<String,byte[]> SOLID = new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String,byte[]> eldest) {
+            return size() > SOLID_CACHE_SIZE;
+        }
+    };
+
+    final int level;
+    final Filter filter;
+    final int colors;
+
+    /**
+     * Creates an encoder with default settings, producing full color images.
+     */
+    public PNGEncoder() {
+        this(DEFAULT_LEVEL, DEFAULT_FILTER, 0);
+    }
+
+    /**
+     * Creates the encoder.
+     *
+     * @param level The deflate level, 0 to 9.
+     * @param filter The row filter.
+     * @param colors Maximum number of palette colors between 2 and 256, or 0 for full color.
+     */
+    public PNGEncoder(int level, Filter filter, int colors) {
+        if (level < 0 || level > 9) {
+            throw new IllegalArgumentException("deflate level must be between 0 and 9");
+        }
+        if (colors != 0 && (colors < 2 || colors > 256)) {
+            throw new IllegalArgumentException("palette size must be between 2 and 256");
+        }
+        this.level = level;
+        this.filter = filter;
+        this.colors = colors;
+    }
+
+    @Override
+    public String getMimeType() {
+        return "image/png";
+    }
+
+    @Override
+    public void encode(BufferedImage img, OutputStream out) throws IOException {
+        int w = img.getWidth(), h = img.getHeight();
+        int[] argb = pixels(img);
+
+        // short circuit single color images
+        long solid = solid(argb);
+        if (solid != -1) {
+            out.write(solid(w, h, (int) solid));
+            return;
+        }
+
+        if (colors > 0) {
+            Quantizer.Palette p = Quantizer.quantize(argb, colors);
+            encodeIndexed(w, h, p, level, out);
+        }
+        else {
+            encodeTruecolor(w, h, argb, out);
+        }
+    }
+
+    /*
+     * Obtains the pixels of an image, directly from the raster if possible.
+     */
+    int[] pixels(BufferedImage img) {
+        int w = img.getWidth(), h = img.getHeight();
+        if (img.getType() == BufferedImage.TYPE_INT_ARGB) {
+            Raster r = img.getRaster();
+            int[] data = ((DataBufferInt) r.getDataBuffer()).getData();
+            if (data.length == w * h && r.getSampleModelTranslateX() == 0
+                && r.getSampleModelTranslateY() == 0) {
+                return data;
+            }
+        }
+        return img.getRGB(0, 0, w, h, null, 0, w);
+    }
+
+    /*
+     * Returns the color of a single color image, or -1.
+     */
+    static long solid(int[] argb) {
+        if (argb.length == 0) {
+            return -1;
+        }
+
+        int c = Quantizer.normalize(argb[0]);
+        for (int i = 1; i < argb.length; i++) {
+            if (argb[i] != c && Quantizer.normalize(argb[i]) != c) {
+                return -1;
+            }
+        }
+        return c & 0xFFFFFFFFL;
+    }
+
+    static byte[] solid(int w, int h, int color) throws IOException {
+        String key = w + "x" + h + "#" + Integer.toHexString(color);
+        synchronized (SOLID) {
+            byte[] png = SOLID.get(key);
+            if (png != null) {
+                return png;
+            }
+        }
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        encodeIndexed(w, h, new Quantizer.Palette(new int[]{color}, new byte[w*h]), 9, bout);
+        byte[] png = bout.toByteArray();
+
+        synchronized (SOLID) {
+            SOLID.put(key, png);
+        }
+        return png;
+    }
+
+    static void encodeIndexed(int w, int h, Quantizer.Palette p, int level, OutputStream out)
+        throws IOException {
+
+        // order transparent entries first so the transparency chunk can be short
+        int n = p.colors.length;
+        int[] order = new int[n];
+        int[] remap = new int[n];
+        int k = 0, transparent = 0;
+        for (int i = 0; i < n; i++) {
+            if ((p.colors[i] >>> 24) != 0xFF) {
+                order[k++] = i;
+                transparent++;
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            if ((p.colors[i] >>> 24) == 0xFF) {
+                order[k++] = i;
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            remap[order[i]] = i;
+        }
+
+        int depth = n <= 2 ? 1 : n <= 4 ? 2 : n <= 16 ? 4 : 8;
+
+        DataOutputStream data = new DataOutputStream(out);
+        data.write(SIGNATURE);
+        header(w, h, depth, COLOR_INDEXED, data);
+
+        byte[] plte = new byte[n * 3];
+        for (int i = 0; i < n; i++) {
+            int c = p.colors[order[i]];
+            plte[i*3] = (byte) (c >>> 16);
+            plte[i*3+1] = (byte) (c >>> 8);
+            plte[i*3+2] = (byte) c;
+        }
+        chunk("PLTE", plte, plte.length, data);
+
+        if (transparent > 0) {
+            byte[] trns = new byte[transparent];
+            for (int i = 0; i < transparent; i++) {
+                trns[i] = (byte) (p.colors[order[i]] >>> 24);
+            }
+            chunk("tRNS", trns, trns.length, data);
+        }
+
+        Deflater deflater = new Deflater(level);
+        try {
+            DeflaterOutputStream z =
+                new DeflaterOutputStream(new IDATOutputStream(data), deflater, CHUNK_SIZE);
+
+            // palette images are best left unfiltered
+            int perByte = 8 / depth;
+            byte[] row = new byte[1 + (w + perByte - 1) / perByte];
+            for (int y = 0; y < h; y++) {
+                java.util.Arrays.fill(row, (byte) 0);
+                for (int x = 0; x < w; x++) {
+                    int idx = remap[p.indexes[y*w + x] & 0xFF];
+                    int shift = 8 - depth * (x % perByte + 1);
+                    row[1 + x / perByte] |= idx << shift;
+                }
+                z.write(row);
+            }
+            z.finish();
+            z.flush();
+        }
+        finally {
+            deflater.end();
+        }
+
+        chunk("IEND", new byte[0], 0, data);
+        data.flush();
+    }
+
+    void encodeTruecolor(int w, int h, int[] argb, OutputStream out) throws IOException {
+        boolean alpha = false;
+        for (int i = 0; i < argb.length && !alpha; i++) {
+            alpha = (argb[i] >>> 24) != 0xFF;
+        }
+        int bpp = alpha ? 4 : 3;
+
+        DataOutputStream data = new DataOutputStream(out);
+        data.write(SIGNATURE);
+        header(w, h, 8, alpha ? COLOR_TRUECOLOR_ALPHA : COLOR_TRUECOLOR, data);
+
+        Deflater deflater = new Deflater(level);
+        if (filter != Filter.NONE) {
+            deflater.setStrategy(Deflater.FILTERED);
+        }
+
+        try {
+            DeflaterOutputStream z =
+                new DeflaterOutputStream(new IDATOutputStream(data), deflater, CHUNK_SIZE);
+
+            int len = w * bpp;
+            byte[] prev = new byte[len], cur = new byte[len];
+            byte[] row = new byte[1 + len], best = new byte[1 + len];
+
+            for (int y = 0; y < h; y++) {
+                for (int x = 0, i = y * w, j = 0; x < w; x++, i++) {
+                    int c = argb[i];
+                    if (alpha && (c >>> 24) == 0) {
+                        c = 0;
+                    }
+                    cur[j++] = (byte) (c >>> 16);
+                    cur[j++] = (byte) (c >>> 8);
+                    cur[j++] = (byte) c;
+                    if (alpha) {
+                        cur[j++] = (byte) (c >>> 24);
+                    }
+                }
+
+                if (filter == Filter.ADAPTIVE) {
+                    long min = Long.MAX_VALUE;
+                    for (Filter f : Filter.values()) {
+                        if (f == Filter.ADAPTIVE) {
+                            continue;
+                        }
+                        long sum = filter(f, cur, prev, bpp, row);
+                        if (sum < min) {
+                            min = sum;
+                            byte[] tmp = best;
+                            best = row;
+                            row = tmp;
+                        }
+                    }
+                    z.write(best);
+                }
+                else {
+                    filter(filter, cur, prev, bpp, row);
+                    z.write(row);
+                }
+
+                byte[] tmp = prev;
+                prev = cur;
+                cur = tmp;
+            }
+            z.finish();
+            z.flush();
+        }
+        finally {
+            deflater.end();
+        }
+
+        chunk("IEND", new byte[0], 0, data);
+        data.flush();
+    }
+
+    /*
+     * Filters a row, writing the filter type and filtered bytes, returning the sum of absolute
+     * values of the filtered bytes.
+     */
+    static long filter(Filter f, byte[] cur, byte[] prev, int bpp, byte[] row) {
+        long sum = 0;
+        row[0] = (byte) f.ordinal();
+        for (int i = 0; i < cur.length; i++) {
+            int x = cur[i] & 0xFF;
+            int a = i >= bpp ? cur[i-bpp] & 0xFF : 0;
+            int b = prev[i] & 0xFF;
+
+            int v;
+            switch(f) {
+            case SUB:
+                v = x - a;
+                break;
+            case UP:
+                v = x - b;
+                break;
+            case AVERAGE:
+                v = x - ((a + b) >>> 1);
+                break;
+            case PAETH:
+                int c = i >= bpp ? prev[i-bpp] & 0xFF : 0;
+                v = x - paeth(a, b, c);
+                break;
+            default:
+                v = x;
+            }
+
+            row[i+1] = (byte) v;
+            sum += Math.abs((byte) v);
+        }
+        return sum;
+    }
+
+    static int paeth(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a), pb = Math.abs(p - b), pc = Math.abs(p - c);
+        return pa <= pb && pa <= pc ? a : pb <= pc ? b : c;
+    }
+
+    static void header(int w, int h, int depth, int colorType, DataOutputStream out)
+        throws IOException {
+        byte[] ihdr = new byte[13];
+        ihdr[0] = (byte) (w >>> 24);
+        ihdr[1] = (byte) (w >>> 16);
+        ihdr[2] = (byte) (w >>> 8);
+        ihdr[3] = (byte) w;
+        ihdr[4] = (byte) (h >>> 24);
+        ihdr[5] = (byte) (h >>> 16);
+        ihdr[6] = (byte) (h >>> 8);
+        ihdr[7] = (byte) h;
+        ihdr[8] = (byte) depth;
+        ihdr[9] = (byte) colorType;
+        // compression, filter and interlace methods all 0
+        chunk("IHDR", ihdr, ihdr.length, out);
+    }
+
+    static void chunk(String type, byte[] data, int len, DataOutputStream out) throws IOException {
+        byte[] t = type.getBytes("US-ASCII");
+
+        CRC32 crc = new CRC32();
+        crc.update(t);
+        crc.update(data, 0, len);
+
+        out.writeInt(len);
+        out.write(t);
+        out.write(data, 0, len);
+        out.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * Buffers compressed data into IDAT chunks.
+     */
+    static class IDATOutputStream extends OutputStream {
+        final DataOutputStream out;
+        final byte[] buf = new byte[CHUNK_SIZE];
+        int n;
+
+        IDATOutputStream(DataOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (n == buf.length) {
+                flush();
+            }
+            buf[n++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (n == buf.length) {
+                    flush();
+                }
+                int m = Math.min(len, buf.length - n);
+                System.arraycopy(b, off, buf, n, m);
+                n += m;
+                off += m;
+                len -= m;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (n > 0) {
+                chunk("IDAT", buf, n, out);
+                n = 0;
+            }
+        }
+    }
+}
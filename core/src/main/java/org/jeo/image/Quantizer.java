@@ -0,0 +1,270 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.image;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reduces an image to a color palette.
+ * <p>
+ * Images with no more distinct colors than the palette size are mapped exactly. Otherwise colors
+ * are grouped into a histogram with 4 bits per ARGB channel and the histogram is divided with the
+ * median cut algorithm, each palette entry being the pixel weighted mean of the colors in its box.
+ * Fully transparent pixels are all mapped to transparent black.
+ * </p>
+ */
+class Quantizer {
+
+    /**
+     * Palette and per pixel palette indexes.
+     */
+    static class Palette {
+        final int[] colors;
+        final byte[] indexes;
+
+        Palette(int[] colors, byte[] indexes) {
+            this.colors = colors;
+            this.indexes = indexes;
+        }
+    }
+
+    /**
+     * Box of histogram entries, a range of the ordered histogram slots.
+     */
+    static class Box {
+        int lo, hi;
+        int count;
+        int channel, range;
+
+        Box(int lo, int hi) {
+            this.lo = lo;
+            this.hi = hi;
+        }
+    }
+
+    static int normalize(int argb) {
+        return (argb >>> 24) == 0 ? 0 : argb;
+    }
+
+    static int bucket(int argb) {
+        return ((argb >>> 16) & 0xF000) | ((argb >>> 12) & 0x0F00) | ((argb >>> 8) & 0x00F0)
+            | ((argb >>> 4) & 0x000F);
+    }
+
+    static int channel(int bucket, int c) {
+        return (bucket >>> (12 - c * 4)) & 0xF;
+    }
+
+    /**
+     * Quantizes the pixels of an image.
+     *
+     * @param argb The image pixels.
+     * @param maxColors Maximum number of palette entries, at most 256.
+     */
+    static Palette quantize(int[] argb, int maxColors) {
+        Palette p = exact(argb, maxColors);
+        return p != null ? p : medianCut(argb, maxColors);
+    }
+
+    /*
+     * Maps the image exactly, returning null if it has more than the maximum colors.
+     */
+    static Palette exact(int[] argb, int maxColors) {
+        Map<Integer,Integer> map = new HashMap<Integer, Integer>();
+        int[] colors = new int[maxColors];
+        byte[] indexes = new byte[argb.length];
+
+        int last = 0, lastIndex = -1;
+        for (int i = 0; i < argb.length; i++) {
+            int c = normalize(argb[i]);
+            if (c != last || lastIndex == -1) {
+                Integer idx = map.get(c);
+                if (idx == null) {
+                    if (map.size() == maxColors) {
+                        return null;
+                    }
+                    idx = map.size();
+                    map.put(c, idx);
+                    colors[idx] = c;
+                }
+                last = c;
+                lastIndex = idx;
+            }
+            indexes[i] = (byte) lastIndex;
+        }
+
+        int[] palette = new int[map.size()];
+        System.arraycopy(colors, 0, palette, 0, palette.length);
+        return new Palette(palette, indexes);
+    }
+
+    static Palette medianCut(int[] argb, int maxColors) {
+        // histogram
+        int[] counts = new int[1 << 16];
+        for (int i = 0; i < argb.length; i++) {
+            counts[bucket(normalize(argb[i]))]++;
+        }
+
+        // compact the used buckets into slots, reusing the histogram to map bucket to slot
+        int n = 0;
+        for (int b = 0; b < counts.length; b++) {
+            if (counts[b] > 0) {
+                n++;
+            }
+        }
+        int[] keys = new int[n];
+        int[] weights = new int[n];
+        for (int b = 0, s = 0; b < counts.length; b++) {
+            if (counts[b] > 0) {
+                keys[s] = b;
+                weights[s] = counts[b];
+                counts[b] = s++;
+            }
+        }
+
+        // channel sums for each slot
+        long[] sums = new long[n * 4];
+        for (int i = 0; i < argb.length; i++) {
+            int c = normalize(argb[i]);
+            int s = counts[bucket(c)] * 4;
+            sums[s] += c >>> 24;
+            sums[s+1] += (c >>> 16) & 0xFF;
+            sums[s+2] += (c >>> 8) & 0xFF;
+            sums[s+3] += c & 0xFF;
+        }
+
+        // order of slots, boxes are ranges of it
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+
+        List<Box> boxes = new ArrayList<Box>();
+        boxes.add(measure(new Box(0, n), order, keys, weights));
+
+        while (boxes.size() < maxColors) {
+            Box split = null;
+            long best = 0;
+            for (Box b : boxes) {
+                long score = (long) b.count * b.range;
+                if (b.range > 0 && score > best) {
+                    best = score;
+                    split = b;
+                }
+            }
+            if (split == null) {
+                break;
+            }
+
+            int mid = split(split, order, keys, weights);
+            Box upper = new Box(mid, split.hi);
+            split.hi = mid;
+            measure(split, order, keys, weights);
+            boxes.add(measure(upper, order, keys, weights));
+        }
+
+        // palette entries and slot to palette mapping
+        int[] palette = new int[boxes.size()];
+        int[] slotIndex = new int[n];
+        for (int i = 0; i < boxes.size(); i++) {
+            Box b = boxes.get(i);
+            long a = 0, r = 0, g = 0, bl = 0;
+            for (int j = b.lo; j < b.hi; j++) {
+                int s = order[j];
+                a += sums[s*4];
+                r += sums[s*4+1];
+                g += sums[s*4+2];
+                bl += sums[s*4+3];
+                slotIndex[s] = i;
+            }
+
+            long c = b.count;
+            palette[i] = (int) ((a + c/2) / c) << 24 | (int) ((r + c/2) / c) << 16
+                | (int) ((g + c/2) / c) << 8 | (int) ((bl + c/2) / c);
+        }
+
+        byte[] indexes = new byte[argb.length];
+        for (int i = 0; i < argb.length; i++) {
+            indexes[i] = (byte) slotIndex[counts[bucket(normalize(argb[i]))]];
+        }
+        return new Palette(palette, indexes);
+    }
+
+    /*
+     * Computes the pixel count and the channel with the widest range of a box.
+     */
+    static Box measure(Box box, int[] order, int[] keys, int[] weights) {
+        int[] min = {15, 15, 15, 15};
+        int[] max = {0, 0, 0, 0};
+
+        box.count = 0;
+        for (int i = box.lo; i < box.hi; i++) {
+            int k = keys[order[i]];
+            box.count += weights[order[i]];
+            for (int c = 0; c < 4; c++) {
+                int v = channel(k, c);
+                min[c] = Math.min(min[c], v);
+                max[c] = Math.max(max[c], v);
+            }
+        }
+
+        box.range = -1;
+        for (int c = 0; c < 4; c++) {
+            if (max[c] - min[c] > box.range) {
+                box.range = max[c] - min[c];
+                box.channel = c;
+            }
+        }
+        return box;
+    }
+
+    /*
+     * Sorts a box along its widest channel and returns the position of the weighted median.
+     */
+    static int split(Box box, int[] order, int[] keys, int[] weights) {
+        // counting sort on the 4 bit channel value
+        int[] start = new int[17];
+        for (int i = box.lo; i < box.hi; i++) {
+            start[channel(keys[order[i]], box.channel) + 1]++;
+        }
+        for (int v = 0; v < 16; v++) {
+            start[v+1] += start[v];
+        }
+
+        int[] sorted = new int[box.hi - box.lo];
+        for (int i = box.lo; i < box.hi; i++) {
+            sorted[start[channel(keys[order[i]], box.channel)]++] = order[i];
+        }
+        System.arraycopy(sorted, 0, order, box.lo, sorted.length);
+
+        // split at the median, but always after a change of value so both halves are distinct
+        int half = box.count / 2, sum = 0;
+        int mid = box.lo + 1;
+        for (int i = box.lo; i < box.hi - 1; i++) {
+            sum += weights[order[i]];
+            int v = channel(keys[order[i]], box.channel);
+            if (v != channel(keys[order[i+1]], box.channel)) {
+                mid = i + 1;
+                if (sum >= half) {
+                    break;
+                }
+            }
+        }
+        return mid;
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * Image encoding for renderers.
+ */
+package org.jeo.image;
\ No newline at end of file
@@ -0,0 +1,143 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.java2d;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Pool of ARGB images reused across rendering requests.
+ * <p>
+ * Images are pooled by size, keeping a bounded number of idle images for each size. The total 
+ * number of bytes of idle images is bounded as well, the images of the least recently used sizes
+ * being dropped first. Images are cleared to fully transparent when acquired.
+ * </p>
+ * <p>
+ * This class is thread safe.
+ * </p>
+ */
+class ImagePool {
+
+    /** default number of idle images kept per size */
+    static final int DEFAULT_MAX_IDLE = 4;
+
+    /** default number of bytes of idle images kept */
+    static final long DEFAULT_MAX_BYTES = 32 * 1024 * 1024;
+
+    static final ImagePool INSTANCE = new ImagePool(DEFAULT_MAX_IDLE, DEFAULT_MAX_BYTES);
+
+    /**
+     * The shared pool instance.
+     */
+    static ImagePool get() {
+        return INSTANCE;
+    }
+
+    final int maxIdle;
+    final long maxBytes;
+
+    /** idle images by size, in least recently used order, guarded by this */
+    final LinkedHashMap<Long,ArrayDeque<BufferedImage>> idle = 
+        new LinkedHashMap<Long, ArrayDeque<BufferedImage>>(16, 0.75f, true);
+    long bytes;
+
+    ImagePool(int maxIdle, long maxBytes) {
+        this.maxIdle = maxIdle;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Obtains a cleared image of the specified size, creating one if none is idle.
+     */
+    BufferedImage acquire(int width, int height) {
+        BufferedImage img = null;
+        synchronized (this) {
+            ArrayDeque<BufferedImage> q = idle.get(key(width, height));
+            if (q != null) {
+                img = q.poll();
+                if (img != null) {
+                    bytes -= bytes(img);
+                }
+            }
+        }
+
+        if (img == null) {
+            return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        }
+
+        Arrays.fill(((DataBufferInt) img.getRaster().getDataBuffer()).getData(), 0);
+        return img;
+    }
+
+    /**
+     * Returns an image to the pool.
+     */
+    synchronized void release(BufferedImage img) {
+        if (img.getType() != BufferedImage.TYPE_INT_ARGB || bytes(img) > maxBytes) {
+            return;
+        }
+
+        Long key = key(img.getWidth(), img.getHeight());
+        ArrayDeque<BufferedImage> q = idle.get(key);
+        if (q == null) {
+            q = new ArrayDeque<BufferedImage>(maxIdle);
+            idle.put(key, q);
+        }
+        if (q.size() >= maxIdle || q.contains(img)) {
+            return;
+        }
+        q.push(img);
+        bytes += bytes(img);
+
+        // drop images of the least recently used sizes
+        Iterator<ArrayDeque<BufferedImage>> it = idle.values().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            ArrayDeque<BufferedImage> lru = it.next();
+            while (bytes > maxBytes && !lru.isEmpty()) {
+                bytes -= bytes(lru.removeLast());
+            }
+            if (lru.isEmpty()) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Number of bytes of idle images.
+     */
+    synchronized long bytes() {
+        return bytes;
+    }
+
+    /**
+     * Number of idle images of the specified size.
+     */
+    synchronized int idle(int width, int height) {
+        ArrayDeque<BufferedImage> q = idle.get(key(width, height));
+        return q != null ? q.size() : 0;
+    }
+
+    static long bytes(BufferedImage img) {
+        return img.getWidth() * (long) img.getHeight() * 4;
+    }
+
+    static long key(int width, int height) {
+        return ((long) width << 32) | height;
+    }
+}
@@ -0,0 +1,83 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.java2d;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.jeo.image.ImageEncoders;
+import org.jeo.map.View;
+import org.jeo.map.render.RendererFactory;
+import org.jeo.util.Key;
+
+/**
+ * Java2D renderer factory.
+ * <p>
+ * The factory produces png and jpeg images without any dependency beyond the JDK. Being bundled 
+ * with core it is only the default renderer for these formats, 
+ * {@link org.jeo.map.render.Renderers#listForFormat(String)} lists any other renderer installed 
+ * for a format, such as the GeoTools one, before it. It can always be selected explicitly by its
+ * name or "j2d" alias.
+ * </p>
+ */
+public class Java2D implements RendererFactory<Java2DRenderer> {
+
+    /**
+     * Key specifying directly an image to render into.
+     * <p>
+     * When not specified the renderer obtains an image from a shared pool.
+     * </p>
+     */
+    public static final Key<BufferedImage> IMAGE = new Key<BufferedImage>("image", BufferedImage.class);
+
+    /**
+     * Format of the final image to encode, see {@link ImageEncoders#IMAGE_FORMAT}.
+     */
+    public static final Key<String> IMAGE_FORMAT = ImageEncoders.IMAGE_FORMAT;
+
+    /**
+     * Amount of compression when encoding the image, see {@link ImageEncoders#COMPRESSION}.
+     */
+    public static final Key<Float> COMPRESSION = ImageEncoders.COMPRESSION;
+
+    /**
+     * Whether to antialias geometries and text.
+     */
+    public static final Key<Boolean> ANTIALIAS =
+        new Key<Boolean>("antialias", Boolean.class, true);
+
+    @Override
+    public String getName() {
+        return "Java2D";
+    }
+
+    @Override
+    public List<String> getAliases() {
+        return Arrays.asList("j2d");
+    }
+
+    @Override
+    public List<String> getFormats() {
+        return Arrays.asList("png", "image/png", "png8", "jpeg", "image/jpeg");
+    }
+
+    @Override
+    public Java2DRenderer create(View view, Map<?, Object> opts) {
+        BufferedImage img = IMAGE.get(opts);
+        return img != null ? new Java2DRenderer(img) : new Java2DRenderer();
+    }
+}
@@ -0,0 +1,603 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.java2d;
+
+import static org.jeo.map.CartoCSS.*;
+
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Stroke;
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.font.TextLayout;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.geom.RectangularShape;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.jeo.feature.Feature;
+import org.jeo.filter.Expression;
+import org.jeo.filter.Literal;
+import org.jeo.geom.CoordinatePath;
+import org.jeo.image.ImageEncoders;
+import org.jeo.map.RGB;
+import org.jeo.map.Rule;
+import org.jeo.map.View;
+import org.jeo.map.render.BaseRenderer;
+import org.jeo.map.render.Label;
+import org.jeo.map.render.LabelIndex;
+import org.jeo.map.render.Labeller;
+import org.jeo.map.render.ViewTransformFilter;
+import org.jeo.util.Rect;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * Renderer producing raster images with Java2D.
+ * <p>
+ * Geometries are drawn directly from a generalized {@link CoordinatePath} in screen space into a
+ * single reused path object. Strokes, paints and composites are derived once for each rule whose
+ * properties do not depend on feature attributes, rather than once for each feature. Unless an
+ * image is specified with {@link Java2D#IMAGE} the image rendered into is obtained from a shared
+ * pool and returned to it on {@link #close()}.
+ * </p>
+ */
+public class Java2DRenderer extends BaseRenderer implements Labeller {
+
+    static final Logger LOG = LoggerFactory.getLogger(Java2DRenderer.class);
+
+    static enum Kind {
+        POINT, LINE, POLYGON;
+    }
+
+    /**
+     * Drawing state derived from a rule.
+     */
+    static class Symbolizer {
+        Color fill;
+        Composite fillComp;
+
+        Color line;
+        Composite lineComp;
+        Stroke stroke;
+
+        RectangularShape marker;
+        float markerWidth, markerHeight;
+    }
+
+    /**
+     * Text state of a label.
+     */
+    static class Text {
+        Font font;
+        float x, y;
+        Color fill;
+        Color halo;
+        float haloRadius;
+    }
+
+    static final HashMap<String,Integer> COMP_OPS = new HashMap<String, Integer>();
+    static {
+        COMP_OPS.put("clear", AlphaComposite.CLEAR);
+        COMP_OPS.put("src", AlphaComposite.SRC);
+        COMP_OPS.put("dst", AlphaComposite.DST);
+        COMP_OPS.put("src-over", AlphaComposite.SRC_OVER);
+        COMP_OPS.put("dst-over", AlphaComposite.DST_OVER);
+        COMP_OPS.put("src-in", AlphaComposite.SRC_IN);
+        COMP_OPS.put("dst-in", AlphaComposite.DST_IN);
+        COMP_OPS.put("src-out", AlphaComposite.SRC_OUT);
+        COMP_OPS.put("dst-out", AlphaComposite.DST_OUT);
+        COMP_OPS.put("src-atop", AlphaComposite.SRC_ATOP);
+        COMP_OPS.put("dst-atop", AlphaComposite.DST_ATOP);
+        COMP_OPS.put("xor", AlphaComposite.XOR);
+    }
+
+    /**
+     * image to render to, and whether it came from the pool
+     */
+    BufferedImage img;
+    boolean pooled;
+
+    /**
+     * graphics context
+     */
+    Graphics2D g;
+
+    /**
+     * reused screen path
+     */
+    final Path2D.Double path = new Path2D.Double(Path2D.WIND_EVEN_ODD);
+
+    /**
+     * symbolizers of rules with constant properties, indexed by kind
+     */
+    final Map<Rule,Symbolizer[]> symbolizers = new IdentityHashMap<Rule, Symbolizer[]>();
+    final Map<Rule,Boolean> constant = new IdentityHashMap<Rule, Boolean>();
+
+    /**
+     * Creates a renderer that renders into a pooled image.
+     */
+    public Java2DRenderer() {
+    }
+
+    /**
+     * Creates a renderer that renders into the specified image.
+     */
+    public Java2DRenderer(BufferedImage img) {
+        this.img = img;
+    }
+
+    /**
+     * The image being rendered to.
+     */
+    public BufferedImage getImage() {
+        return img;
+    }
+
+    @Override
+    protected boolean canRenderVectors() {
+        return true;
+    }
+
+    @Override
+    protected boolean canRenderRasters() {
+        return true;
+    }
+
+    @Override
+    protected boolean canRenderTiles() {
+        return true;
+    }
+
+    @Override
+    public void init(View view, java.util.Map<?, Object> opts) {
+        super.init(view, opts);
+
+        if (img == null) {
+            img = ImagePool.get().acquire(view.getWidth(), view.getHeight());
+            pooled = true;
+        }
+
+        g = img.createGraphics();
+        if (Java2D.ANTIALIAS.get(opts)) {
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setRenderingHint(
+                RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        }
+    }
+
+    @Override
+    protected Labeller createLabeller() {
+        return this;
+    }
+
+    @Override
+    public void close() {
+        if (g != null) {
+            g.dispose();
+            g = null;
+        }
+        if (pooled && img != null) {
+            ImagePool.get().release(img);
+            img = null;
+        }
+    }
+
+    @Override
+    protected void onFinish() throws IOException {
+        if (output != null) {
+            encode(output);
+        }
+    }
+
+    void encode(OutputStream out) throws IOException {
+        ImageEncoders.create(opts).encode(img, out);
+    }
+
+    @Override
+    protected void drawBackground(RGB color) {
+        g.setComposite(AlphaComposite.Src);
+        g.setColor(color(color));
+        g.fillRect(0, 0, img.getWidth(), img.getHeight());
+        g.setComposite(AlphaComposite.SrcOver);
+    }
+
+    @Override
+    protected void drawPoint(Feature f, Rule rule, Geometry point) {
+        Symbolizer sym = symbolizer(Kind.POINT, f, rule);
+
+        if (sym.fill != null || sym.line != null) {
+            ViewTransformFilter vtf = toScreenTransform();
+            RectangularShape marker = sym.marker;
+            float w = sym.markerWidth, h = sym.markerHeight;
+
+            for (int i = 0; i < point.getNumGeometries(); i++) {
+                Coordinate c = vtf.apply(new Coordinate(point.getGeometryN(i).getCoordinate()));
+                marker.setFrame(c.x - w/2, c.y - h/2, w, h);
+
+                if (sym.fill != null) {
+                    g.setComposite(sym.fillComp);
+                    g.setColor(sym.fill);
+                    g.fill(marker);
+                }
+                if (sym.line != null) {
+                    g.setComposite(sym.lineComp);
+                    g.setColor(sym.line);
+                    g.setStroke(sym.stroke);
+                    g.draw(marker);
+                }
+            }
+        }
+
+        label(f, rule, point);
+    }
+
+    @Override
+    protected void drawLine(Feature f, Rule rule, Geometry line) {
+        Symbolizer sym = symbolizer(Kind.LINE, f, rule);
+        if (sym.line != null) {
+            g.setComposite(sym.lineComp);
+            g.setColor(sym.line);
+            g.setStroke(sym.stroke);
+            g.draw(path(line));
+        }
+
+        label(f, rule, line);
+    }
+
+    @Override
+    protected void drawPolygon(Feature f, Rule rule, Geometry poly) {
+        Symbolizer sym = symbolizer(Kind.POLYGON, f, rule);
+        if (sym.fill != null || sym.line != null) {
+            Path2D shape = path(poly);
+            if (sym.fill != null) {
+                g.setComposite(sym.fillComp);
+                g.setColor(sym.fill);
+                g.fill(shape);
+            }
+            if (sym.line != null) {
+                g.setComposite(sym.lineComp);
+                g.setColor(sym.line);
+                g.setStroke(sym.stroke);
+                g.draw(shape);
+            }
+        }
+
+        label(f, rule, poly);
+    }
+
+    /*
+     * Builds the clipped screen path of a geometry into the reused path object.
+     */
+    Path2D path(Geometry geom) {
+        path.reset();
+
+        CoordinatePath cp = clippedPath(geom).generalize(view.iscaleX(),view.iscaleY())
+            .transform(toScreenTransform());
+        while (cp.hasNext()) {
+            Coordinate c = cp.next();
+            switch(cp.getStep()) {
+            case MOVE_TO:
+                path.moveTo(c.x, c.y);
+                break;
+            case LINE_TO:
+                path.lineTo(c.x, c.y);
+                break;
+            case CLOSE:
+                path.closePath();
+                break;
+            default:
+            }
+        }
+        return path;
+    }
+
+    Symbolizer symbolizer(Kind kind, Feature f, Rule rule) {
+        if (!constant(rule)) {
+            return symbolizer(kind, f, rule, new Symbolizer());
+        }
+
+        Symbolizer[] syms = symbolizers.get(rule);
+        if (syms == null) {
+            syms = new Symbolizer[Kind.values().length];
+            symbolizers.put(rule, syms);
+        }
+
+        Symbolizer sym = syms[kind.ordinal()];
+        if (sym == null) {
+            sym = symbolizer(kind, f, rule, new Symbolizer());
+            syms[kind.ordinal()] = sym;
+        }
+        return sym;
+    }
+
+    Symbolizer symbolizer(Kind kind, Feature f, Rule rule, Symbolizer sym) {
+        switch(kind) {
+        case POINT:
+            marker(sym, f, rule);
+            break;
+        case LINE:
+            line(sym, f, rule, RGB.black);
+            break;
+        case POLYGON:
+            polygon(sym, f, rule);
+            line(sym, f, rule, null);
+            break;
+        }
+        return sym;
+    }
+
+    void marker(Symbolizer sym, Feature f, Rule rule) {
+        float width = rule.number(f, MARKER_WIDTH, 10f);
+        sym.markerWidth = width;
+        sym.markerHeight = rule.number(f, MARKER_HEIGHT, width);
+        sym.marker = marker(rule.string(f, MARKER_TYPE, "circle"));
+
+        sym.fillComp = sym.lineComp = comp(rule.string(f, MARKER_COMP_OP, "src-over"));
+
+        RGB fill = rule.color(f, MARKER_FILL, null);
+        if (fill != null) {
+            sym.fill = color(fill.alpha(rule.number(f, MARKER_FILL_OPACITY, 1f)));
+        }
+
+        RGB line = rule.color(f, MARKER_LINE_COLOR, null);
+        if (line != null) {
+            sym.line = color(line.alpha(rule.number(f, MARKER_LINE_OPACITY, 1f)));
+            sym.stroke = new BasicStroke(rule.number(f, MARKER_LINE_WIDTH, 1f));
+        }
+    }
+
+    void polygon(Symbolizer sym, Feature f, Rule rule) {
+        RGB fill = rule.color(f, POLYGON_FILL, null);
+        if (fill != null) {
+            sym.fill = color(fill.alpha(rule.number(f, POLYGON_OPACITY, 1f)));
+            sym.fillComp = comp(rule.string(f, POLYGON_COMP_OP, "src-over"));
+        }
+    }
+
+    void line(Symbolizer sym, Feature f, Rule rule, RGB defColor) {
+        RGB color = rule.color(f, LINE_COLOR, defColor);
+        if (color == null) {
+            return;
+        }
+
+        sym.line = color(color.alpha(rule.number(f, LINE_OPACITY, 1f)));
+        sym.lineComp = comp(rule.string(f, LINE_COMP_OP, "src-over"));
+        sym.stroke = stroke(f, rule);
+    }
+
+    Stroke stroke(Feature f, Rule rule) {
+        float width = rule.number(f, LINE_WIDTH, 1f);
+        int join = join(rule.string(f, LINE_JOIN, "miter"));
+        int cap = cap(rule.string(f, LINE_CAP, "butt"));
+
+        float[] dash = dash(rule.numbers(f, LINE_DASHARRAY, (Float[])null));
+        if (dash != null && dash.length > 0) {
+            float offset = rule.number(f, LINE_DASH_OFFSET, 0f);
+            return new BasicStroke(width, cap, join, 10f, dash, offset);
+        }
+        return new BasicStroke(width, cap, join);
+    }
+
+    /*
+     * Determines if none of the rule properties depend on the feature being rendered.
+     */
+    boolean constant(Rule rule) {
+        Boolean c = constant.get(rule);
+        if (c == null) {
+            c = true;
+            for (Object val : rule.properties().values()) {
+                if (val instanceof Expression && !(val instanceof Literal)) {
+                    c = false;
+                    break;
+                }
+            }
+            constant.put(rule, c);
+        }
+        return c;
+    }
+
+    RectangularShape marker(String type) {
+        String t = type.toLowerCase();
+        if ("rect".equals(t) || "square".equals(t)) {
+            return new Rectangle2D.Double();
+        }
+        if (!"circle".equals(t) && !"ellipse".equals(t)) {
+            LOG.debug("unsupported marker type: " + type + " falling back to 'circle'");
+        }
+        return new Ellipse2D.Double();
+    }
+
+    Composite comp(String compOp) {
+        Integer op = COMP_OPS.get(compOp.toLowerCase());
+        if (op == null) {
+            LOG.debug("unsupported composition: " + compOp + " falling back to 'src-over'");
+            return AlphaComposite.SrcOver;
+        }
+        return AlphaComposite.getInstance(op);
+    }
+
+    Color color(RGB rgb) {
+        return new Color(rgb.getRed(), rgb.getGreen(), rgb.getBlue(), rgb.getAlpha());
+    }
+
+    int cap(String cap) {
+        String c = cap.toLowerCase();
+        return "round".equals(c) ? BasicStroke.CAP_ROUND :
+            "square".equals(c) ? BasicStroke.CAP_SQUARE : BasicStroke.CAP_BUTT;
+    }
+
+    int join(String join) {
+        String j = join.toLowerCase();
+        return "round".equals(j) ? BasicStroke.JOIN_ROUND :
+            "bevel".equals(j) ? BasicStroke.JOIN_BEVEL : BasicStroke.JOIN_MITER;
+    }
+
+    float[] dash(Float[] dash) {
+        if (dash == null) {
+            return null;
+        }
+
+        float[] prim = new float[dash.length];
+        for (int i = 0; i < prim.length; i++) {
+            prim[i] = dash[i].floatValue();
+        }
+        return prim;
+    }
+
+    void label(Feature f, Rule rule, Geometry geom) {
+        String text = rule.eval(f, TEXT_NAME, String.class);
+        if (text == null) {
+            return;
+        }
+
+        Geometry anchor = geom.getDimension() == 0 ? geom.getGeometryN(0) : geom.getInteriorPoint();
+        if (anchor.isEmpty()) {
+            return;
+        }
+
+        Label l = new Label(text, rule, f, geom);
+        l.setAnchor(toScreenTransform().apply(new Coordinate(anchor.getCoordinate())));
+        insertLabel(l);
+    }
+
+    @Override
+    public boolean layout(Label label, LabelIndex labels) {
+        Feature f = label.getFeature();
+        Rule rule = label.getRule();
+
+        Text text = new Text();
+        text.font = new Font(rule.string(f, TEXT_FACE_NAME, Font.SANS_SERIF), Font.PLAIN,
+            rule.number(f, TEXT_SIZE, 10));
+
+        RGB fill = rule.color(f, TEXT_FILL, RGB.black);
+        text.fill = color(fill.alpha(rule.number(f, TEXT_OPACITY, 1f)));
+
+        text.haloRadius = rule.number(f, TEXT_HALO_RADIUS, 0f);
+        if (text.haloRadius > 0) {
+            text.halo = color(rule.color(f, TEXT_HALO_FILL, RGB.white));
+        }
+
+        FontMetrics fm = g.getFontMetrics(text.font);
+        float width = fm.stringWidth(label.getText());
+
+        Coordinate anchor = label.anchor();
+        text.x = (float) anchor.x + rule.number(f, TEXT_DX, 0f);
+        text.y = (float) anchor.y + rule.number(f, TEXT_DY, 0f);
+
+        String align = rule.string(f, TEXT_ALIGN, "middle").toLowerCase();
+        if ("middle".equals(align) || "center".equals(align)) {
+            text.x -= width / 2f;
+        }
+        else if ("end".equals(align) || "right".equals(align)) {
+            text.x -= width;
+        }
+
+        float r = text.haloRadius;
+        Envelope bbox = new Envelope(text.x - r, text.x + width + r,
+            text.y - fm.getAscent() - r, text.y + fm.getDescent() + r);
+        label.setBounds(bbox);
+        label.put(Text.class, text);
+
+        if (!view.window().envelope().contains(bbox)) {
+            return false;
+        }
+
+        return labels.insert(label);
+    }
+
+    @Override
+    public void render(Label label) {
+        Text text = label.get(Text.class, Text.class);
+
+        g.setComposite(AlphaComposite.SrcOver);
+        if (text.halo != null) {
+            TextLayout layout = new TextLayout(label.getText(), text.font, g.getFontRenderContext());
+            java.awt.Shape outline = layout.getOutline(
+                AffineTransform.getTranslateInstance(text.x, text.y));
+
+            g.setColor(text.halo);
+            g.setStroke(new BasicStroke(
+                text.haloRadius * 2, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+            g.draw(outline);
+        }
+
+        g.setFont(text.font);
+        g.setColor(text.fill);
+        g.drawString(label.getText(), text.x, text.y);
+    }
+
+    ByteBuffer toHeap(ByteBuffer buf) {
+        if (buf.isDirect() || !buf.hasArray()) {
+            ByteBuffer tmp = ByteBuffer.allocate(buf.capacity());
+            tmp.order(buf.order());
+            buf.rewind();
+            tmp.put(buf);
+            tmp.flip();
+            buf = tmp;
+        }
+        return buf;
+    }
+
+    @Override
+    protected void drawRasterGray(ByteBuffer gray, Rect pos, Rule rule) throws IOException {
+        gray = toHeap(gray);
+        WritableRaster raster = Raster.createBandedRaster(
+            new DataBufferByte(gray.array(), gray.capacity()), pos.width(), pos.height(),
+            pos.width(), new int[]{0}, new int[]{0}, null);
+
+        ColorModel cm = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_GRAY),
+            false, false, Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+        g.setComposite(AlphaComposite.SrcOver);
+        g.drawImage(new BufferedImage(cm, raster, false, null), pos.left, pos.top, null);
+    }
+
+    @Override
+    protected void drawRasterRGBA(ByteBuffer rgba, Rect pos, Rule rule) throws IOException {
+        rgba = toHeap(rgba);
+        WritableRaster raster = Raster.createInterleavedRaster(
+            new DataBufferByte(rgba.array(), rgba.capacity()), pos.width(), pos.height(),
+            pos.width() * 4, 4, new int[]{0,1,2,3}, null);
+
+        ColorModel cm = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB),
+            true, false, Transparency.TRANSLUCENT, DataBuffer.TYPE_BYTE);
+        g.setComposite(AlphaComposite.SrcOver);
+        g.drawImage(new BufferedImage(cm, raster, false, null), pos.left, pos.top, null);
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * Java2D Rendering.
+ */
+package org.jeo.java2d;
\ No newline at end of file
@@ -18,15 +18,72 @@ import java.io.IOException;
 import java.io.Writer;
 import java.util.ArrayDeque;
 
-import org.jeo.json.JSONValue;
-
+/**
+ * Streaming JSON encoder.
+ * <p>
+ * Output is accumulated in an internal buffer and written to the underlying writer in large
+ * chunks. The buffer is written out whenever a top level object or array is completed, and on
+ * calls to {@link #flush()} and {@link #getWriter()}.
+ * </p>
+ * <p>
+ * Double values are by default written in the shortest form that round trips back to the same
+ * value. A fixed number of decimal places can be specified with {@link #setPrecision(int)}.
+ * </p>
+ */
 public class JSONEncoder {
 
+    /**
+     * size of output buffer
+     */
+    static final int BUFFER_SIZE = 8192;
+
+    /**
+     * maximum number of decimal places, see {@link #setPrecision(int)}
+     */
+    public static final int MAX_PRECISION = 17;
+
+    /**
+     * powers of ten exactly representable as doubles
+     */
+    static final double[] POW10 = new double[MAX_PRECISION + 1];
+
+    /**
+     * powers of ten as longs
+     */
+    static final long[] LONG_POW10 = new long[MAX_PRECISION + 1];
+
+    static {
+        long l = 1;
+        for (int i = 0; i < POW10.length; i++) {
+            POW10[i] = l;
+            LONG_POW10[i] = l;
+            l *= 10;
+        }
+    }
+
+    /**
+     * largest integer that can be represented exactly by a double
+     */
+    static final double MAX_EXACT = 9007199254740992d;
+
+    static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
     /**
      * output
      */
     final Writer out;
 
+    /**
+     * output buffer
+     */
+    final char[] buf = new char[BUFFER_SIZE];
+    int pos = 0;
+
+    /**
+     * number of decimal places for double values, -1 means shortest representation
+     */
+    int precision = -1;
+
     /**
      * object stack
      */
@@ -61,11 +118,44 @@ public class JSONEncoder {
 
     /**
      * The underlying writer.
+     * <p>
+     * Any buffered output is written to the writer before it is returned.
+     * </p>
      */
     public Writer getWriter() {
+        try {
+            drain();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
         return out;
     }
 
+    /**
+     * The number of decimal places used when encoding double values, or <tt>-1</tt> if values
+     * are encoded with the shortest representation that uniquely identifies them.
+     */
+    public int getPrecision() {
+        return precision;
+    }
+
+    /**
+     * Sets the number of decimal places used when encoding double values.
+     * <p>
+     * Values are rounded to the specified number of places and trailing zeros are dropped.
+     * Specifying <tt>-1</tt> (the default) encodes values with the shortest representation that
+     * uniquely identifies them. This setting applies to {@link #value(double)}, values passed as
+     * {@link Number} objects are always encoded in full.
+     * </p>
+     */
+    public void setPrecision(int precision) {
+        if (precision < -1 || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("precision must be in range [-1,"
+                + MAX_PRECISION + "]");
+        }
+        this.precision = precision;
+    }
+
     /*
      * Helper to generate an indentation chunk.
      */
@@ -88,7 +178,7 @@ public class JSONEncoder {
             if (t instanceof Arr) {
                 Arr a = (Arr) t;
                 if (a.size > 0) {
-                    out.write(',');
+                    write(',');
                 }
             }
             else {
@@ -102,7 +192,7 @@ public class JSONEncoder {
 
         stack.push(new Obj());
 
-        out.write('{');
+        write('{');
 
         return this;
     }
@@ -118,7 +208,7 @@ public class JSONEncoder {
             if (t instanceof Arr) {
                 Arr a = (Arr) t;
                 if (a.size > 0) {
-                    out.write(',');
+                    write(',');
                 }
             }
             else if (t instanceof Obj) {
@@ -132,7 +222,7 @@ public class JSONEncoder {
 
         stack.push(new Arr());
 
-        out.write('[');
+        write('[');
 
         return this;
     }
@@ -145,8 +235,39 @@ public class JSONEncoder {
      * @return This encoder.
      */
     public JSONEncoder key(String key) throws IOException {
+        startKey();
+        write('"');
+        escape(key);
+        write("\":");
+        write(space);
+        return this;
+    }
+
+    /**
+     * Starts an object property whose key requires no escaping.
+     * <p>
+     * This method is intended for subclasses writing constant keys and skips the escaping done
+     * by {@link #key(String)}.
+     * </p>
+     * @param key The key/name of the property, already escaped.
+     *
+     * @return This encoder.
+     */
+    protected JSONEncoder escapedKey(String key) throws IOException {
+        startKey();
+        write('"');
+        write(key);
+        write("\":");
+        write(space);
+        return this;
+    }
+
+    /*
+     * Validates state and writes the separator/newline preceding a key.
+     */
+    void startKey() throws IOException {
         Thing t = peek();
-        
+
         if (!(t instanceof Obj)) {
             throw new IllegalStateException("no object");
         }
@@ -158,15 +279,10 @@ public class JSONEncoder {
 
         o.key = true;
         if (o.size > 0) {
-            out.write(',');
+            write(',');
         }
 
         newline();
-        out.write("\"");
-        out.write(JSONValue.escape(key));
-        out.write("\":");
-        out.write(space);
-        return this;
     }
 
     /**
@@ -182,23 +298,51 @@ public class JSONEncoder {
         if (value != null) {
             // check for double nan/infinte
             if (value instanceof Double || value instanceof Float) {
-                Double val = value.doubleValue();
-                if (val.isInfinite() || val.isNaN()) {
+                double val = value.doubleValue();
+                if (Double.isInfinite(val) || Double.isNaN(val)) {
                     value = null;
                 }
             }
         }
 
+        if (value instanceof Double) {
+            beginValue();
+            shortest(value.doubleValue());
+            return this;
+        }
+        if (value instanceof Integer || value instanceof Long || value instanceof Short
+            || value instanceof Byte) {
+            return value(value.longValue());
+        }
+
         return doValue(value != null ? value.toString() : null);
 
     }
 
+    /**
+     * Specifies a double value, encoded according to {@link #getPrecision()}.
+     *
+     * @param value The value.
+     *
+     * @return This encoder.
+     */
     public JSONEncoder value(double value) throws IOException {
-        return doValue(Double.toString(value));
+        beginValue();
+        number(value);
+        return this;
     }
 
+    /**
+     * Specifies a long value.
+     *
+     * @param value The value.
+     *
+     * @return This encoder.
+     */
     public JSONEncoder value(long value) throws IOException {
-        return doValue(Long.toString(value));
+        beginValue();
+        integer(value);
+        return this;
     }
 
     /**
@@ -237,13 +381,35 @@ public class JSONEncoder {
      * @return This encoder.
      */
     public JSONEncoder value(String value) throws IOException {
-        return doValue(value != null ? "\""+JSONValue.escape(value)+"\"" : null);
+        if (value == null) {
+            return doValue(null);
+        }
+
+        beginValue();
+        write('"');
+        escape(value);
+        write('"');
+        return this;
     }
 
     /*
      * Helper to write out an already encoded value.
      */
     JSONEncoder doValue(String encoded) throws IOException {
+        beginValue();
+        write(encoded != null ? encoded : "null");
+        return this;
+    }
+
+    /**
+     * Updates encoder state for a value about to be written, writing any separator that should
+     * precede it.
+     * <p>
+     * Subclasses that encode values directly with the <tt>write</tt> methods must call this
+     * method before writing a value.
+     * </p>
+     */
+    protected void beginValue() throws IOException {
         Thing t = peek();
         if (t == null) {
             throw new IllegalStateException("no object");
@@ -252,7 +418,7 @@ public class JSONEncoder {
         if (t instanceof Arr) {
             Arr a = (Arr) t;
             if (a.size > 0) {
-                out.write(',');
+                write(',');
             }
 
             newline();
@@ -266,13 +432,6 @@ public class JSONEncoder {
             o.key = false;
             o.size++;
         }
-
-        if (encoded == null) {
-            encoded = "null";
-        }
-
-        out.write(encoded);
-        return this;
     }
 
     /**
@@ -306,7 +465,10 @@ public class JSONEncoder {
             o.key = false;
         }
 
-        out.write('}');
+        write('}');
+        if (stack.isEmpty()) {
+            drain();
+        }
         return this;
     }
 
@@ -338,23 +500,260 @@ public class JSONEncoder {
             o.key = false;
         }
 
-        out.write("]");
+        write(']');
+        if (stack.isEmpty()) {
+            drain();
+        }
         return this;
     }
 
+    /**
+     * Writes out any buffered output and flushes the underlying writer.
+     *
+     * @return This encoder.
+     */
     public JSONEncoder flush() throws IOException {
+        drain();
         out.flush();
         return this;
     }
 
+    /**
+     * Determines if the encoder is formatting output with newlines and indentation.
+     */
+    protected boolean isFormatted() {
+        return !"".equals(indent);
+    }
+
+    /**
+     * Writes a single character to the output buffer.
+     */
+    protected void write(char c) throws IOException {
+        if (pos == buf.length) {
+            drain();
+        }
+        buf[pos++] = c;
+    }
+
+    /**
+     * Writes a string, as is, to the output buffer.
+     */
+    protected void write(String s) throws IOException {
+        int len = s.length();
+        if (len > buf.length - pos) {
+            drain();
+            if (len > buf.length) {
+                out.write(s);
+                return;
+            }
+        }
+        s.getChars(0, len, buf, pos);
+        pos += len;
+    }
+
+    /**
+     * Writes a double value to the output buffer, encoded according to {@link #getPrecision()}.
+     * <p>
+     * Infinite and NaN values are written with {@link Double#toString(double)}. 
+     * </p>
+     */
+    protected void number(double d) throws IOException {
+        if (precision < 0 || !fixed(d, precision)) {
+            shortest(d);
+        }
+    }
+
+    /*
+     * Writes the shortest decimal representation of a double that parses back to the same 
+     * value. Values in the range for which Double.toString() doesn't use scientific notation are
+     * encoded directly into the buffer, all others fall back to Double.toString().
+     */
+    void shortest(double d) throws IOException {
+        double abs = Math.abs(d);
+        if (abs >= 1e-3 && abs < 1e7) {
+            for (int p = 0; p < POW10.length; p++) {
+                double s = abs * POW10[p];
+                if (s >= MAX_EXACT) {
+                    break;
+                }
+
+                long r = Math.round(s);
+                if (r / POW10[p] == abs) {
+                    decimal(d < 0, r, p, true);
+                    return;
+                }
+            }
+        }
+
+        write(Double.toString(d));
+    }
+
+    /*
+     * Writes a double rounded to a fixed number of decimal places, returning false if the value
+     * can't be represented exactly in that many places.
+     */
+    boolean fixed(double d, int p) throws IOException {
+        if (Double.isNaN(d) || Double.isInfinite(d)) {
+            return false;
+        }
+
+        double s = Math.abs(d) * POW10[p];
+        if (s >= MAX_EXACT) {
+            return false;
+        }
+
+        long r = Math.round(s);
+        if (r == 0) {
+            write('0');
+            return true;
+        }
+
+        // strip trailing zeros
+        while (p > 0 && r % 10 == 0) {
+            r /= 10;
+            p--;
+        }
+
+        decimal(d < 0, r, p, false);
+        return true;
+    }
+
+    /*
+     * Writes the decimal value r * 10^-p.
+     */
+    void decimal(boolean neg, long r, int p, boolean forceFraction) throws IOException {
+        if (buf.length - pos < 48) {
+            drain();
+        }
+
+        if (neg) {
+            buf[pos++] = '-';
+        }
+
+        long div = LONG_POW10[p];
+        digits(r / div);
+
+        if (p > 0) {
+            buf[pos++] = '.';
+
+            // zero padded fraction
+            long frac = r % div;
+            int end = pos + p;
+            for (int i = end - 1; i >= pos; i--) {
+                buf[i] = (char) ('0' + (frac % 10));
+                frac /= 10;
+            }
+            pos = end;
+        }
+        else if (forceFraction) {
+            buf[pos++] = '.';
+            buf[pos++] = '0';
+        }
+    }
+
+    /*
+     * Writes a long value.
+     */
+    void integer(long l) throws IOException {
+        if (l == Long.MIN_VALUE) {
+            write(Long.toString(l));
+            return;
+        }
+
+        if (buf.length - pos < 20) {
+            drain();
+        }
+        if (l < 0) {
+            buf[pos++] = '-';
+            l = -l;
+        }
+        digits(l);
+    }
+
+    /*
+     * Writes the digits of a non negative long directly into the buffer, caller must ensure
+     * there is room.
+     */
+    void digits(long l) {
+        int n = 1;
+        for (long x = l; x >= 10; x /= 10) {
+            n++;
+        }
+
+        int end = pos + n;
+        for (int i = end - 1; i >= pos; i--) {
+            buf[i] = (char) ('0' + (l % 10));
+            l /= 10;
+        }
+        pos = end;
+    }
+
+    /*
+     * Writes an escaped string to the output buffer.
+     */
+    void escape(String s) throws IOException {
+        int len = s.length();
+        for (int i = 0; i < len; i++) {
+            char ch = s.charAt(i);
+            switch(ch) {
+            case '"':
+                write('\\'); write('"');
+                break;
+            case '\\':
+                write('\\'); write('\\');
+                break;
+            case '\b':
+                write('\\'); write('b');
+                break;
+            case '\f':
+                write('\\'); write('f');
+                break;
+            case '\n':
+                write('\\'); write('n');
+                break;
+            case '\r':
+                write('\\'); write('r');
+                break;
+            case '\t':
+                write('\\'); write('t');
+                break;
+            case '/':
+                write('\\'); write('/');
+                break;
+            default:
+                if (ch <= '\u001F' || (ch >= '\u007F' && ch <= '\u009F') 
+                    || (ch >= '\u2000' && ch <= '\u20FF')) {
+                    write('\\'); write('u');
+                    write(HEX[(ch >> 12) & 0xF]);
+                    write(HEX[(ch >> 8) & 0xF]);
+                    write(HEX[(ch >> 4) & 0xF]);
+                    write(HEX[ch & 0xF]);
+                }
+                else {
+                    write(ch);
+                }
+            }
+        }
+    }
+
+    /*
+     * Writes out the buffer to the underlying writer.
+     */
+    void drain() throws IOException {
+        if (pos > 0) {
+            out.write(buf, 0, pos);
+            pos = 0;
+        }
+    }
+
     /*
      * Moves output to the next line and indents. A no-op if formatting not active. 
      */
     void newline() throws IOException {
-        out.write(newline);
+        write(newline);
         if (!"".equals(indent)) {
             for (int i = 0; i < stack.size(); i++) {
-                out.write(indent);
+                write(indent);
             }
         }
     }
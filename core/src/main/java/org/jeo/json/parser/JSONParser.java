@@ -280,11 +280,26 @@ public class JSONParser {
 	}
 	
 	private void nextToken() throws ParseException, IOException{
+		lexer.rawNumbers = false;
 		token = lexer.yylex();
 		if(token == null)
 			token = new Yytoken(Yytoken.TYPE_EOF, null);
 	}
 	
+	private void nextToken(ContentHandler contentHandler) throws ParseException, IOException{
+		lexer.rawNumbers = contentHandler instanceof NumberHandler 
+			&& ((NumberHandler)contentHandler).isNumbers();
+		token = lexer.yylex();
+		if(token == null)
+			token = new Yytoken(Yytoken.TYPE_EOF, null);
+	}
+
+	private boolean primitive(ContentHandler contentHandler) throws ParseException, IOException{
+		if(token == Yylex.NUMBER)
+			return ((NumberHandler)contentHandler).number(lexer.number());
+		return contentHandler.primitive(token.value);
+	}
+	
 	private Map createObjectContainer(ContainerFactory containerFactory){
 		if(containerFactory == null)
 			return new JSONObject();
@@ -360,23 +375,23 @@ public class JSONParser {
 				switch(status){
 				case S_INIT:
 					contentHandler.startJSON();
-					nextToken();
+					nextToken(contentHandler);
 					switch(token.type){
 					case Yytoken.TYPE_VALUE:
 						status=S_IN_FINISHED_VALUE;
-						statusStack.addFirst(new Integer(status));
-						if(!contentHandler.primitive(token.value))
+						statusStack.addFirst(Integer.valueOf(status));
+						if(!primitive(contentHandler))
 							return;
 						break;
 					case Yytoken.TYPE_LEFT_BRACE:
 						status=S_IN_OBJECT;
-						statusStack.addFirst(new Integer(status));
+						statusStack.addFirst(Integer.valueOf(status));
 						if(!contentHandler.startObject())
 							return;
 						break;
 					case Yytoken.TYPE_LEFT_SQUARE:
 						status=S_IN_ARRAY;
-						statusStack.addFirst(new Integer(status));
+						statusStack.addFirst(Integer.valueOf(status));
 						if(!contentHandler.startArray())
 							return;
 						break;
@@ -386,7 +401,7 @@ public class JSONParser {
 					break;
 					
 				case S_IN_FINISHED_VALUE:
-					nextToken();
+					nextToken(contentHandler);
 					if(token.type==Yytoken.TYPE_EOF){
 						contentHandler.endJSON();
 						status = S_END;
@@ -398,7 +413,7 @@ public class JSONParser {
 					}
 			
 				case S_IN_OBJECT:
-					nextToken();
+					nextToken(contentHandler);
 					switch(token.type){
 					case Yytoken.TYPE_COMMA:
 						break;
@@ -406,7 +421,7 @@ public class JSONParser {
 						if(token.value instanceof String){
 							String key=(String)token.value;
 							status=S_PASSED_PAIR_KEY;
-							statusStack.addFirst(new Integer(status));
+							statusStack.addFirst(Integer.valueOf(status));
 							if(!contentHandler.startObjectEntry(key))
 								return;
 						}
@@ -432,31 +447,31 @@ public class JSONParser {
 					break;
 					
 				case S_PASSED_PAIR_KEY:
-					nextToken();
+					nextToken(contentHandler);
 					switch(token.type){
 					case Yytoken.TYPE_COLON:
 						break;
 					case Yytoken.TYPE_VALUE:
 						statusStack.removeFirst();
 						status=peekStatus(statusStack);
-						if(!contentHandler.primitive(token.value))
+						if(!primitive(contentHandler))
 							return;
 						if(!contentHandler.endObjectEntry())
 							return;
 						break;
 					case Yytoken.TYPE_LEFT_SQUARE:
 						statusStack.removeFirst();
-						statusStack.addFirst(new Integer(S_IN_PAIR_VALUE));
+						statusStack.addFirst(Integer.valueOf(S_IN_PAIR_VALUE));
 						status=S_IN_ARRAY;
-						statusStack.addFirst(new Integer(status));
+						statusStack.addFirst(Integer.valueOf(status));
 						if(!contentHandler.startArray())
 							return;
 						break;
 					case Yytoken.TYPE_LEFT_BRACE:
 						statusStack.removeFirst();
-						statusStack.addFirst(new Integer(S_IN_PAIR_VALUE));
+						statusStack.addFirst(Integer.valueOf(S_IN_PAIR_VALUE));
 						status=S_IN_OBJECT;
-						statusStack.addFirst(new Integer(status));
+						statusStack.addFirst(Integer.valueOf(status));
 						if(!contentHandler.startObject())
 							return;
 						break;
@@ -477,12 +492,12 @@ public class JSONParser {
 					break;
 					
 				case S_IN_ARRAY:
-					nextToken();
+					nextToken(contentHandler);
 					switch(token.type){
 					case Yytoken.TYPE_COMMA:
 						break;
 					case Yytoken.TYPE_VALUE:
-						if(!contentHandler.primitive(token.value))
+						if(!primitive(contentHandler))
 							return;
 						break;
 					case Yytoken.TYPE_RIGHT_SQUARE:
@@ -498,13 +513,13 @@ public class JSONParser {
 						break;
 					case Yytoken.TYPE_LEFT_BRACE:
 						status=S_IN_OBJECT;
-						statusStack.addFirst(new Integer(status));
+						statusStack.addFirst(Integer.valueOf(status));
 						if(!contentHandler.startObject())
 							return;
 						break;
 					case Yytoken.TYPE_LEFT_SQUARE:
 						status=S_IN_ARRAY;
-						statusStack.addFirst(new Integer(status));
+						statusStack.addFirst(Integer.valueOf(status));
 						if(!contentHandler.startArray())
 							return;
 						break;
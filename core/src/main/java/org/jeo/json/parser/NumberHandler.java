@@ -0,0 +1,44 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.json.parser;
+
+import java.io.IOException;
+
+/**
+ * Extension of {@link ContentHandler} that receives numeric values as primitive doubles.
+ * <p>
+ * While {@link #isNumbers()} returns <code>true</code> the parser reads numbers directly from the
+ * lexer buffer and reports them via {@link #number(double)} rather than boxing them and calling
+ * {@link #primitive(Object)}. This avoids the allocation of a string and a boxed value for every
+ * number, which matters for large numeric arrays such as GeoJSON coordinates.
+ * </p>
+ */
+public interface NumberHandler extends ContentHandler {
+
+    /**
+     * Determines if the next value should be reported with {@link #number(double)}.
+     * <p>
+     * This method is called before every token is read so should be inexpensive.
+     * </p>
+     */
+    boolean isNumbers();
+
+    /**
+     * Receive notification of a numeric value.
+     *
+     * @return false if the handler wants to stop parsing after return.
+     */
+    boolean number(double value) throws ParseException, IOException;
+}
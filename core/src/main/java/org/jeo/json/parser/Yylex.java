@@ -280,10 +280,100 @@ class Yylex {
   /* user code: */
 private StringBuffer sb=new StringBuffer();
 
+/* shared tokens for punctuation and numbers, avoiding an allocation per token */
+static final Yytoken LEFT_BRACE=new Yytoken(Yytoken.TYPE_LEFT_BRACE,null);
+static final Yytoken RIGHT_BRACE=new Yytoken(Yytoken.TYPE_RIGHT_BRACE,null);
+static final Yytoken LEFT_SQUARE=new Yytoken(Yytoken.TYPE_LEFT_SQUARE,null);
+static final Yytoken RIGHT_SQUARE=new Yytoken(Yytoken.TYPE_RIGHT_SQUARE,null);
+static final Yytoken COMMA=new Yytoken(Yytoken.TYPE_COMMA,null);
+static final Yytoken COLON=new Yytoken(Yytoken.TYPE_COLON,null);
+static final Yytoken NUMBER=new Yytoken(Yytoken.TYPE_VALUE,null);
+
+/* when set numbers are returned as the NUMBER token with the value available from number() */
+boolean rawNumbers;
+double number;
+
 int getPosition(){
 	return yychar;
 }
 
+double number(){
+	return number;
+}
+
+/* powers of ten exactly representable as a double */
+private static final double[] POW10={1e0,1e1,1e2,1e3,1e4,1e5,1e6,1e7,1e8,1e9,1e10,1e11,
+	1e12,1e13,1e14,1e15,1e16,1e17,1e18,1e19,1e20,1e21,1e22};
+
+/**
+ * Parses the matched number directly from the buffer. Numbers with at most 15 significant digits
+ * and a small exponent are computed exactly with a single multiplication or division, anything 
+ * else falls back to Double.parseDouble().
+ */
+double yydouble(){
+	int i=zzStartRead, end=zzMarkedPos;
+	boolean neg=false;
+	if(zzBuffer[i]=='-'){
+		neg=true;
+		i++;
+	}
+
+	long m=0;
+	int digits=0, scale=0;
+	for(;i<end && zzBuffer[i]>='0' && zzBuffer[i]<='9';i++){
+		if(m!=0 || zzBuffer[i]!='0'){
+			digits++;
+		}
+		m=m*10+(zzBuffer[i]-'0');
+		if(digits>15){
+			return Double.parseDouble(yytext());
+		}
+	}
+	if(i<end && zzBuffer[i]=='.'){
+		for(i++;i<end && zzBuffer[i]>='0' && zzBuffer[i]<='9';i++){
+			if(m!=0 || zzBuffer[i]!='0'){
+				digits++;
+			}
+			m=m*10+(zzBuffer[i]-'0');
+			scale--;
+			if(digits>15){
+				return Double.parseDouble(yytext());
+			}
+		}
+	}
+	if(i<end && (zzBuffer[i]=='e' || zzBuffer[i]=='E')){
+		i++;
+		boolean eneg=false;
+		if(zzBuffer[i]=='-' || zzBuffer[i]=='+'){
+			eneg=zzBuffer[i]=='-';
+			i++;
+		}
+		int e=0;
+		for(;i<end;i++){
+			e=e*10+(zzBuffer[i]-'0');
+			if(e>1000){
+				return Double.parseDouble(yytext());
+			}
+		}
+		scale+=eneg?-e:e;
+	}
+
+	double d=m;
+	if(scale<0){
+		if(scale<-22){
+			return Double.parseDouble(yytext());
+		}
+		d=d/POW10[-scale];
+	}
+	else if(scale>0){
+		if(scale>22){
+			return Double.parseDouble(yytext());
+		}
+		d=d*POW10[scale];
+	}
+	return neg?-d:d;
+}
+
 
 
   /**
@@ -597,7 +687,7 @@ int getPosition(){
           }
         case 27: break;
         case 6: 
-          { return new Yytoken(Yytoken.TYPE_RIGHT_BRACE,null);
+          { return RIGHT_BRACE;
           }
         case 28: break;
         case 23: 
@@ -617,7 +707,7 @@ int getPosition(){
           }
         case 32: break;
         case 21: 
-          { Double val=Double.valueOf(yytext()); return new Yytoken(Yytoken.TYPE_VALUE, val);
+          { if(rawNumbers){number=yydouble(); return NUMBER;} Double val=Double.valueOf(yytext()); return new Yytoken(Yytoken.TYPE_VALUE, val);
           }
         case 33: break;
         case 1: 
@@ -625,7 +715,7 @@ int getPosition(){
           }
         case 34: break;
         case 8: 
-          { return new Yytoken(Yytoken.TYPE_RIGHT_SQUARE,null);
+          { return RIGHT_SQUARE;
           }
         case 35: break;
         case 19: 
@@ -637,7 +727,7 @@ int getPosition(){
           }
         case 37: break;
         case 10: 
-          { return new Yytoken(Yytoken.TYPE_COLON,null);
+          { return COLON;
           }
         case 38: break;
         case 14: 
@@ -645,7 +735,7 @@ int getPosition(){
           }
         case 39: break;
         case 5: 
-          { return new Yytoken(Yytoken.TYPE_LEFT_BRACE,null);
+          { return LEFT_BRACE;
           }
         case 40: break;
         case 17: 
@@ -667,11 +757,11 @@ int getPosition(){
           }
         case 43: break;
         case 7: 
-          { return new Yytoken(Yytoken.TYPE_LEFT_SQUARE,null);
+          { return LEFT_SQUARE;
           }
         case 44: break;
         case 2: 
-          { Long val=Long.valueOf(yytext()); return new Yytoken(Yytoken.TYPE_VALUE, val);
+          { if(rawNumbers){number=yydouble(); return NUMBER;} Long val=Long.valueOf(yytext()); return new Yytoken(Yytoken.TYPE_VALUE, val);
           }
         case 45: break;
         case 18: 
@@ -679,7 +769,7 @@ int getPosition(){
           }
         case 46: break;
         case 9: 
-          { return new Yytoken(Yytoken.TYPE_COMMA,null);
+          { return COMMA;
           }
         case 47: break;
         case 3: 
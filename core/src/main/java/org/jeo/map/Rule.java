@@ -48,6 +48,11 @@ public class Rule {
      */
     List<Selector> selectors = new ArrayList<Selector>();
 
+    /**
+     * whether modifications are counted, see {@link RuleList#watch()}
+     */
+    boolean watched;
+
     public Map<String, Object> properties() {
         if (props == null) {
             return Collections.emptyMap();
@@ -80,6 +85,7 @@ public class Rule {
 
     public void put(String key, Object val) {
         props().put(key,  val);
+        RuleList.modified(watched);
     }
 
     public void putAll(Map<String, Object> map) {
@@ -88,10 +94,24 @@ public class Rule {
         }
 
         props().putAll(map);
+        RuleList.modified(watched);
     }
 
     public void add(Rule rule) {
         parts.add(rule);
+        RuleList.modified(watched);
+    }
+
+    void watch() {
+        watched = true;
+        for (Selector s : selectors) {
+            s.watched = true;
+        }
+        for (Rule r : parts) {
+            if (r != this) {
+                r.watch();
+            }
+        }
     }
 
     public <T> T eval(String key, Class<T> clazz) {
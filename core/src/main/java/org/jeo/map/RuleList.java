@@ -18,6 +18,7 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jeo.feature.Feature;
 
@@ -47,6 +48,55 @@ public class RuleList extends ArrayList<Rule> {
         super(rules);
     }
 
+    /**
+     * Count of modifications to watched rule lists, rules and selectors.
+     */
+    static final AtomicInteger MODS = new AtomicInteger();
+
+    /**
+     * Records a modification of a rule list, rule or selector, if it is watched.
+     */
+    static void modified(boolean watched) {
+        if (watched) {
+            MODS.incrementAndGet();
+        }
+    }
+
+    /** whether modifications of the list are counted */
+    boolean watched;
+
+    /**
+     * Watches the list, the rules it contains and their nested rules and selectors for
+     * modifications, so that they change the {@link #version()}.
+     */
+    void watch() {
+        watched = true;
+        for (Rule r : this) {
+            r.watch();
+        }
+    }
+
+    /**
+     * Version of the list, used to detect changes by clients caching transformations of it.
+     * <p>
+     * The version changes when the list is structurally modified, when a rule is replaced and, 
+     * once the list is {@link #watch() watched}, when a rule, nested rule or selector in it is 
+     * modified through its mutators. Changes made directly to the collections returned by
+     * {@link Rule#properties()}, {@link Rule#getSelectors()} or {@link Selector#getClasses()}
+     * are not tracked.
+     * </p>
+     */
+    long version() {
+        return ((long) MODS.get() << 32) | (modCount & 0xffffffffL);
+    }
+
+    @Override
+    public Rule set(int index, Rule element) {
+        Rule old = super.set(index, element);
+        modified(watched);
+        return old;
+    }
+
     /**
      * The first rule, or <code>null</code> if the list is empty.
      */
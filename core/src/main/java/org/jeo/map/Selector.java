@@ -28,6 +28,9 @@ public class Selector {
     boolean wildcard = false;
     List<String> classes = new ArrayList<String>();
     Filter<Object> filter;
+
+    /** whether modifications are counted, see {@link RuleList#watch()} */
+    boolean watched;
     
     public String getId() {
         return id;
@@ -35,6 +38,7 @@ public class Selector {
     
     public void setId(String id) {
         this.id = id;
+        RuleList.modified(watched);
     }
     
     public String getName() {
@@ -43,6 +47,7 @@ public class Selector {
     
     public void setName(String name) {
         this.name = name;
+        RuleList.modified(watched);
     }
     
     public String getAttachment() {
@@ -51,6 +56,7 @@ public class Selector {
     
     public void setAttachment(String attachment) {
         this.attachment = attachment;
+        RuleList.modified(watched);
     }
 
     public boolean isWildcard() {
@@ -59,6 +65,7 @@ public class Selector {
 
     public void setWildcard(boolean wildcard) {
         this.wildcard = wildcard;
+        RuleList.modified(watched);
     }
 
     public List<String> getClasses() {
@@ -71,6 +78,7 @@ public class Selector {
     
     public void setFilter(Filter<Object> filter) {
         this.filter = filter;
+        RuleList.modified(watched);
     }
     
     public Selector merge(Selector other) {
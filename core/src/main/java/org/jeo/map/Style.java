@@ -15,6 +15,9 @@
 package org.jeo.map;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Defines the rules used to symbolize a map.
@@ -47,6 +50,12 @@ public class Style {
 
     RuleList rules = new RuleList();
 
+    /** maximum number of layers whose rules are cached */
+    static final int MAX_CACHED_LAYERS = 64;
+
+    /** per layer rules, keyed by layer id */
+    ConcurrentMap<String,LayerRules> layerRules = new ConcurrentHashMap<String, LayerRules>();
+
     /**
      * The rules making up the style.
      */
@@ -54,6 +63,54 @@ public class Style {
         return rules;
     }
 
+    /**
+     * Returns the flattened rules that apply to a layer.
+     * <p>
+     * This method returns the same as 
+     * <code>getRules().selectById(layer, true).flatten()</code> but the result is computed 
+     * once and cached until the rules of the style, or the rules they are composed of, are 
+     * modified. The returned list is shared and must not be modified.
+     * </p>
+     * @param layer The layer id.
+     */
+    public RuleList layerRules(String layer) {
+        return layer(layer).flat;
+    }
+
+    /**
+     * Returns the flattened rules that apply to a layer grouped by z (attachment) order.
+     * <p>
+     * This method returns the same as <code>layerRules(layer).zgroup()</code>, cached in the same
+     * way as {@link #layerRules(String)}. The returned lists are shared and must not be modified.
+     * </p>
+     * @param layer The layer id.
+     */
+    public List<RuleList> layerGroups(String layer) {
+        return layer(layer).groups;
+    }
+
+    LayerRules layer(String layer) {
+        long version = rules.version();
+        if (layer == null) {
+            return new LayerRules(version, rules.selectById(layer, true).flatten());
+        }
+
+        LayerRules lr = layerRules.get(layer);
+        if (lr == null || lr.version != version) {
+            if (lr != null || layerRules.size() >= MAX_CACHED_LAYERS) {
+                // the rules changed, or too many layers, drop entries that are stale or for 
+                // layers no longer rendered
+                layerRules.clear();
+            }
+
+            // count modifications of the rules from now on
+            rules.watch();
+            lr = new LayerRules(version, rules.selectById(layer, true).flatten());
+            layerRules.put(layer, lr);
+        }
+        return lr;
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
@@ -62,4 +119,16 @@ public class Style {
         }
         return sb.toString();
     }
+
+    static class LayerRules {
+        final long version;
+        final RuleList flat;
+        final List<RuleList> groups;
+
+        LayerRules(long version, RuleList flat) {
+            this.version = version;
+            this.flat = flat;
+            this.groups = flat.zgroup();
+        }
+    }
 }
@@ -19,16 +19,24 @@ import static org.jeo.map.CartoCSS.*;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.jeo.data.*;
 import org.jeo.feature.Feature;
 import org.jeo.filter.Filter;
-import org.jeo.geom.Envelopes;
+import org.jeo.geom.CoordinatePath;
 import org.jeo.geom.Geom;
 import org.jeo.map.*;
 import org.jeo.proj.Proj;
 import org.jeo.raster.*;
+import org.jeo.tile.Tile;
+import org.jeo.tile.TileCover;
+import org.jeo.tile.TileGrid;
+import org.jeo.tile.TilePyramid;
+import org.jeo.tile.TilePyramid.Origin;
 import org.jeo.util.Function;
 import org.jeo.util.Rect;
 import org.osgeo.proj4j.CoordinateReferenceSystem;
@@ -37,6 +45,8 @@ import org.slf4j.LoggerFactory;
 
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.MultiPoint;
+import com.vividsolutions.jts.geom.Point;
 
 /**
  * Base class for renderers.
@@ -46,15 +56,39 @@ public abstract class BaseRenderer implements Renderer {
 
     static final Logger LOG = LoggerFactory.getLogger(BaseRenderer.class);
 
+    /**
+     * buffer in pixels added to the view bounds when clipping geometries
+     */
+    static final double CLIP_BUFFER = 2;
+
+    /**
+     * Style property controlling how lines and polygons smaller than a pixel are rendered, one of
+     * "draw" (the default) to draw them as is, "pixel" to draw them as a single pixel, only once 
+     * per pixel and rule unless the rule has text or marker symbolizers, or "skip" to not draw 
+     * them at all.
+     */
+    public static final String SUBPIXEL_MODE = "subpixel-mode";
+
+    /**
+     * Style property specifying the size in pixels under which lines and polygons are considered
+     * small, defaults to 1.
+     */
+    public static final String SUBPIXEL_SIZE = "subpixel-size";
+
     protected View view;
-    protected java.util.Map<?, Object> opts;
+    protected Map<?, Object> opts;
 
     protected LabelIndex labels = new LabelIndex();
     protected Labeller labeller;
 
     protected OutputStream output;
 
-    public void init(View view, java.util.Map<?,Object> opts) {
+    /**
+     * clip bounds of the feature being drawn
+     */
+    Envelope clip;
+
+    public void init(View view, Map<?,Object> opts) {
         this.view = view;
         this.opts = opts;
 
@@ -89,18 +123,19 @@ public abstract class BaseRenderer implements Renderer {
             Dataset data = l.getData();
             Filter<Feature> filter = l.getFilter();
 
-            RuleList rules =
-                view.getMap().getStyle().getRules().selectById(l.getName(), true).flatten();
-
-            for (RuleList ruleList : rules.zgroup()) {
-                if (data instanceof VectorDataset) {
-                    render((VectorDataset)data, ruleList, filter);
-                }
-                else if (data instanceof RasterDataset) {
-                    render((RasterDataset)data, ruleList);
-                }
-                else if (data instanceof TileDataset) {
-                    render((TileDataset)data, rules);
+            Style style = view.getMap().getStyle();
+            if (data instanceof TileDataset) {
+                // tiles are composited once with the collapsed rules of all groups
+                render((TileDataset)data, style.layerRules(l.getName()));
+            }
+            else {
+                for (RuleList ruleList : style.layerGroups(l.getName())) {
+                    if (data instanceof VectorDataset) {
+                        render((VectorDataset)data, ruleList, filter);
+                    }
+                    else if (data instanceof RasterDataset) {
+                        render((RasterDataset)data, ruleList);
+                    }
                 }
             }
 
@@ -121,7 +156,7 @@ public abstract class BaseRenderer implements Renderer {
             return;
         }
 
-        Map map = view.getMap();
+        org.jeo.map.Map map = view.getMap();
         Rule rule = rules.collapse();
         RGB bgColor = rule.color(map, BACKGROUND_COLOR, null);
         if (bgColor != null) {
@@ -172,16 +207,82 @@ public abstract class BaseRenderer implements Renderer {
         // and whatever the styling rules and query need
         q.computeFields(rules);
 
+        // features matching the same rules share a single collapsed rule
+        Map<RuleKey,Rule> collapsed = new HashMap<RuleKey, Rule>();
+
+        SubPixelCuller culler = SubPixelCuller.create(view, rules.collapse());
+
         for (Feature f : data.cursor(q)) {
+            Geometry g = f.geometry();
+            if (g == null) {
+                continue;
+            }
+
+            boolean small = culler != null && culler.isSmall(g);
+            if (small && culler.skips()) {
+                continue;
+            }
+
             RuleList rs = rules.match(f);
             if (rs.isEmpty()) {
                 continue;
             }
 
-            Rule r = rules.match(f).collapse();
-            if (r != null) {
-                draw(f, r);
+            RuleKey key = new RuleKey(rs);
+            Rule r = collapsed.get(key);
+            if (r == null) {
+                r = rs.collapse();
+                collapsed.put(key, r);
             }
+
+            if (small) {
+                g = culler.collapse(g, r);
+                if (g == null) {
+                    continue;
+                }
+            }
+            draw(f, r, g);
+        }
+    }
+
+    /**
+     * Key for a list of matched rules, comparing the rules by identity.
+     */
+    static class RuleKey {
+        final Rule[] rules;
+        final int hash;
+
+        RuleKey(RuleList rules) {
+            this.rules = rules.toArray(new Rule[rules.size()]);
+
+            int h = 1;
+            for (Rule r : this.rules) {
+                h = 31 * h + System.identityHashCode(r);
+            }
+            hash = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof RuleKey)) {
+                return false;
+            }
+
+            Rule[] other = ((RuleKey) obj).rules;
+            if (other.length != rules.length) {
+                return false;
+            }
+            for (int i = 0; i < rules.length; i++) {
+                if (other[i] != rules[i]) {
+                    return false;
+                }
+            }
+            return true;
         }
     }
 
@@ -335,9 +436,138 @@ public abstract class BaseRenderer implements Renderer {
 
     void render(TileDataset data, RuleList rules) throws IOException {
         if (!canRenderTiles()) {
-            throw new UnsupportedOperationException("renderer does not render vector data");
+            throw new UnsupportedOperationException("renderer does not render tile data");
+        }
+
+        TilePyramid pyr = data.pyramid();
+
+        // view bounds in tile space, and the resolution to match a tile grid with
+        Envelope bbox = reproject(null, view.getBounds(), data);
+        double resx = bbox.getWidth() / view.getWidth();
+        double resy = bbox.getHeight() / view.getHeight();
+
+        bbox = bbox.intersection(pyr.getBounds());
+        if (bbox.isNull()) {
+            return;
+        }
+
+        TileCover cov = pyr.cover(bbox, resx, resy);
+        if (cov == null) {
+            return;
+        }
+
+        TileGrid grid = cov.getGrid();
+        int z = grid.getZ();
+        int x0 = Math.max(0, cov.getX0()), x1 = Math.min(grid.getWidth()-1, cov.getX1());
+        int y0 = Math.max(0, cov.getY0()), y1 = Math.min(grid.getHeight()-1, cov.getY1());
+        if (x0 > x1 || y0 > y1) {
+            return;
+        }
+
+        // cover is relative to a bottom left origin, map the range to the pyramid origin
+        Tile a = pyr.realign(new Tile(z, x0, y0), Origin.BOTTOM_LEFT);
+        Tile b = pyr.realign(new Tile(z, x1, y1), Origin.BOTTOM_LEFT);
+
+        List<Tile> tiles = new ArrayList<Tile>();
+        Cursor<Tile> c = data.read(z, z, Math.min(a.getX(), b.getX()), Math.max(a.getX(), b.getX()),
+            Math.min(a.getY(), b.getY()), Math.max(a.getY(), b.getY()));
+        try {
+            while (c.hasNext()) {
+                Tile t = c.next();
+                if (t != null && t.getData() != null) {
+                    tiles.add(t);
+                }
+            }
+        }
+        finally {
+            c.close();
+        }
+
+        if (tiles.isEmpty()) {
+            return;
+        }
+
+        List<TileDecoder.Image> images = TileDecoder.get().decode(tileCacheKey(data), tiles);
+
+        // composite the tiles into a single view sized raster
+        Rule rule = rules.collapse();
+        float opacity = rule.number(null, "raster-opacity", 1f);
+
+        int width = view.getWidth(), height = view.getHeight();
+        ByteBuffer rgba = ByteBuffer.allocate(width * height * 4);
+
+        boolean reproject = data.crs() != null && view.getCRS() != null
+            && !Proj.equal(view.getCRS(), data.crs());
+        for (int i = 0; i < tiles.size(); i++) {
+            TileDecoder.Image img = images.get(i);
+            if (img == null) {
+                continue;
+            }
+
+            Envelope tb = pyr.bounds(tiles.get(i));
+            if (reproject) {
+                // tiles are placed, not warped
+                tb = Proj.reproject(tb, data.crs(), view.getCRS());
+            }
+            composite(img, tb, opacity, rgba);
+        }
+
+        drawRasterRGBA(rgba, new Rect(0, 0, width, height), rule);
+    }
+
+    /*
+     * Key identifying a tile set in the shared decoded tile cache.
+     */
+    String tileCacheKey(TileDataset data) {
+        Map<?,Object> opts = data.getDriverOptions();
+        Object id = opts == null || opts.isEmpty() ? System.identityHashCode(data) : opts;
+        return data.getDriver().getName() + ":" + id + ":" + data.getName();
+    }
+
+    /*
+     * Draws a decoded tile into the view raster, resampling with nearest neighbour when the tile
+     * and view resolutions differ.
+     */
+    void composite(TileDecoder.Image img, Envelope tb, float opacity, ByteBuffer rgba) {
+        int width = view.getWidth(), height = view.getHeight();
+        Envelope vb = view.getBounds();
+        double scx = width / vb.getWidth(), scy = height / vb.getHeight();
+
+        // screen position of the tile
+        double left = (tb.getMinX() - vb.getMinX()) * scx;
+        double top = (vb.getMaxY() - tb.getMaxY()) * scy;
+        double right = (tb.getMaxX() - vb.getMinX()) * scx;
+        double bottom = (vb.getMaxY() - tb.getMinY()) * scy;
+
+        // pixels whose centers fall within the tile, so that adjacent tiles neither overlap nor
+        // leave gaps
+        int i0 = Math.max(0, (int) Math.ceil(left - 0.5));
+        int i1 = Math.min(width, (int) Math.ceil(right - 0.5));
+        int j0 = Math.max(0, (int) Math.ceil(top - 0.5));
+        int j1 = Math.min(height, (int) Math.ceil(bottom - 0.5));
+        if (i0 >= i1 || j0 >= j1) {
+            return;
+        }
+
+        double u = img.width / (right - left);
+        double v = img.height / (bottom - top);
+
+        int[] cols = new int[i1 - i0];
+        for (int i = i0; i < i1; i++) {
+            cols[i-i0] = Math.min(img.width-1, Math.max(0, (int) ((i + 0.5 - left) * u)));
+        }
+
+        for (int j = j0; j < j1; j++) {
+            int row = Math.min(img.height-1, Math.max(0, (int) ((j + 0.5 - top) * v))) * img.width;
+            int p = (j * width + i0) * 4;
+            for (int i = 0; i < cols.length; i++, p += 4) {
+                int argb = img.argb[row + cols[i]];
+                rgba.put(p, (byte) (argb >> 16));
+                rgba.put(p+1, (byte) (argb >> 8));
+                rgba.put(p+2, (byte) argb);
+                rgba.put(p+3, (byte) ((argb >>> 24) * opacity));
+            }
         }
-        throw new UnsupportedOperationException("TODO: implement");
     }
 
     void renderLabels() throws IOException {
@@ -349,14 +579,9 @@ public abstract class BaseRenderer implements Renderer {
         }
     }
 
-    void draw(Feature f, Rule rule) throws IOException {
-        Geometry g = f.geometry();
-        if (g == null) {
-            return;
-        }
-
-        //g = clipGeometry(g);
-        if (g.isEmpty()) {
+    void draw(Feature f, Rule rule, Geometry g) throws IOException {
+        clip = clipBounds(f, rule);
+        if (g.isEmpty() || !clip.intersects(g.getEnvelopeInternal())) {
             return;
         }
 
@@ -379,12 +604,34 @@ public abstract class BaseRenderer implements Renderer {
     }
 
     /**
-     * Clips a geometry to the view bounds before rendering.
+     * Computes the rectangle that geometries of a feature are clipped to before rendering.
+     * <p>
+     * The view bounds are expanded by half the line width of the rule plus a small buffer so that
+     * strokes along clipped edges fall outside of the view.
+     * </p>
      */
-    protected Geometry clipGeometry(Geometry g) {
-        // TODO: doing a full intersection is sub-optimal, look at a more efficient clipping 
-        // algorithm, like cohen-sutherland
-        return g.intersection(Envelopes.toPolygon(view.getBounds()));
+    protected Envelope clipBounds(Feature f, Rule rule) {
+        double buf = rule.number(f, LINE_WIDTH, 1f) / 2.0 + CLIP_BUFFER;
+
+        Envelope clip = new Envelope(view.getBounds());
+        clip.expandBy(buf * view.iscaleX(), buf * view.iscaleY());
+        return clip;
+    }
+
+    /**
+     * Creates a path over a geometry clipped to the bounds of the feature being drawn.
+     * <p>
+     * Lines and polygons are clipped in world coordinates while the path is iterated, so 
+     * subclasses can generalize, transform and draw the result without any intermediate 
+     * geometries being created. Geometries completely within the bounds are not clipped, points 
+     * are never clipped.
+     * </p>
+     */
+    protected CoordinatePath clippedPath(Geometry g) {
+        if (clip == null || g instanceof Point || g instanceof MultiPoint) {
+            return CoordinatePath.create(g);
+        }
+        return CoordinatePath.create(g, clip);
     }
 
     /**
@@ -17,6 +17,7 @@ package org.jeo.map.render;
 import static org.jeo.map.CartoCSS.*;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 
 import org.jeo.data.VectorDataset;
@@ -25,22 +26,97 @@ import org.jeo.feature.BasicFeature;
 import org.jeo.feature.Feature;
 import org.jeo.feature.Schema;
 
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.Polygon;
-import com.vividsolutions.jts.index.quadtree.Quadtree;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
 
 /**
  * Stores {@link Label} objects in a spatial index dealing with label overlapping.
+ * <p>
+ * Labels are indexed in a uniform grid over screen space, each label registered with every cell
+ * its bounds touch, so that finding candidate overlaps only visits the labels in nearby cells.
+ * Labels with no explicit shape, or whose shape is a rectangle, are tested for overlap by
+ * comparing bounds. Only when one of the labels has a non rectangular shape, such as a rotated
+ * or curved label, are the shapes compared, using a prepared geometry cached with the label.
+ * </p>
  *
  * @author Justin Deoliveira, OpenGeo
- *
- * TODO: use prepared geometries for overlap computation
  */
 public class LabelIndex {
 
-    Quadtree idx;
+    /** default size of a grid cell, in screen units */
+    static final double CELL_SIZE = 64;
+
+    /**
+     * Indexed label along with cached state used for overlap tests.
+     */
+    static class Entry {
+        final Label label;
+        final Envelope bounds;
+        final Comparable priority;
+
+        /** whether the label shape is its bounds */
+        final boolean rect;
+        PreparedGeometry prepared;
+
+        boolean removed;
+        int visit;
+
+        Entry(Label label) {
+            this.label = label;
+            this.priority = label.priority();
+
+            Geometry shape = label.shape;
+            Envelope bbox = label.bounds();
+            bounds = bbox != null ? bbox : shape.getEnvelopeInternal();
+            rect = shape == null || (shape.isRectangle()
+                && shape.getEnvelopeInternal().equals(bounds));
+        }
+
+        PreparedGeometry prepared() {
+            if (prepared == null) {
+                prepared = PreparedGeometryFactory.prepare(label.shape());
+            }
+            return prepared;
+        }
+
+        boolean intersects(Entry other) {
+            if (!bounds.intersects(other.bounds)) {
+                return false;
+            }
+            if (rect && other.rect) {
+                return true;
+            }
+
+            // prepare the non rectangular one
+            return rect ? other.prepared().intersects(label.shape())
+                : prepared().intersects(other.label.shape());
+        }
+    }
+
+    final double cellSize;
+
+    /** grid cells, keyed by packed cell column and row */
+    final HashMap<Long,List<Entry>> cells = new HashMap<Long, List<Entry>>();
+
+    /** all entries in insertion order, including removed ones until compacted */
+    List<Entry> entries = new ArrayList<Entry>();
+    int removed;
+
+    /** visit counter, used to visit each entry once per query */
+    int visit;
 
     public LabelIndex() {
-        idx = new Quadtree();
+        this(CELL_SIZE);
+    }
+
+    /**
+     * Creates an index with the specified grid cell size.
+     */
+    public LabelIndex(double cellSize) {
+        this.cellSize = cellSize;
     }
 
     /**
@@ -48,15 +124,43 @@ public class LabelIndex {
      */
     public List<Label> query(Label label) {
         List<Label> labels = new ArrayList<Label>();
-        for (Label close : (List<Label>)idx.query(label.bounds())) {
-            if (close.shape().intersects(label.shape())) {
-                labels.add(close);
-            }
+        for (Entry e : query(new Entry(label))) {
+            labels.add(e.label);
         }
-
         return labels;
     }
 
+    List<Entry> query(Entry entry) {
+        List<Entry> overlaps = new ArrayList<Entry>();
+
+        Envelope b = entry.bounds;
+        int x0 = cell(b.getMinX()), x1 = cell(b.getMaxX());
+        int y0 = cell(b.getMinY()), y1 = cell(b.getMaxY());
+
+        int v = ++visit;
+        for (int x = x0; x <= x1; x++) {
+            for (int y = y0; y <= y1; y++) {
+                List<Entry> cell = cells.get(key(x, y));
+                if (cell == null) {
+                    continue;
+                }
+
+                for (int i = 0; i < cell.size(); i++) {
+                    Entry e = cell.get(i);
+                    if (e.visit == v) {
+                        continue;
+                    }
+                    e.visit = v;
+
+                    if (e.intersects(entry)) {
+                        overlaps.add(e);
+                    }
+                }
+            }
+        }
+        return overlaps;
+    }
+
     /**
      * Inserts a label into the index taking into account overlapping labels.
      * <p>
@@ -70,35 +174,88 @@ public class LabelIndex {
      * @return True if the label was added to the index, otherwise false.
      */
     public boolean insert(Label label) {
-        boolean add = true;
+        Entry entry = new Entry(label);
 
         if (!allowOverlap(label)) {
-            for (Label overlap : query(label)) {
+            List<Entry> overlaps = query(entry);
+            for (Entry overlap : overlaps) {
                 // conflict, examine priority
-                if (label.priority().compareTo(overlap.priority()) > 0) {
-                    // kick out existing label
-                    idx.remove(overlap.bounds(), overlap);
+                if (entry.priority.compareTo(overlap.priority) <= 0) {
+                    // existing label wins, ignore this one
+                    return false;
+                }
+            }
+
+            // kick out existing labels
+            for (Entry overlap : overlaps) {
+                remove(overlap);
+            }
+        }
+
+        add(entry);
+        return true;
+    }
+
+    void add(Entry e) {
+        Envelope b = e.bounds;
+        for (int x = cell(b.getMinX()); x <= cell(b.getMaxX()); x++) {
+            for (int y = cell(b.getMinY()); y <= cell(b.getMaxY()); y++) {
+                Long key = key(x, y);
+                List<Entry> cell = cells.get(key);
+                if (cell == null) {
+                    cell = new ArrayList<Entry>(4);
+                    cells.put(key, cell);
                 }
-                else {
-                    // existing label one, ignore this one
-                    add = false;
-                    break;
+                cell.add(e);
+            }
+        }
+        entries.add(e);
+    }
+
+    void remove(Entry e) {
+        Envelope b = e.bounds;
+        for (int x = cell(b.getMinX()); x <= cell(b.getMaxX()); x++) {
+            for (int y = cell(b.getMinY()); y <= cell(b.getMaxY()); y++) {
+                List<Entry> cell = cells.get(key(x, y));
+                if (cell != null) {
+                    cell.remove(e);
                 }
             }
         }
 
-        if (add) {
-            idx.insert(label.bounds(), label);
+        e.removed = true;
+        if (++removed > entries.size() / 2) {
+            // compact
+            List<Entry> live = new ArrayList<Entry>(entries.size() - removed);
+            for (Entry f : entries) {
+                if (!f.removed) {
+                    live.add(f);
+                }
+            }
+            entries = live;
+            removed = 0;
         }
+    }
 
-        return add;
+    int cell(double ord) {
+        return (int) Math.floor(ord / cellSize);
+    }
+
+    static long key(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
     }
 
     /**
-     * Returns all the labels in the index.
+     * Returns all the labels in the index, in the order they were inserted.
      */
     public Iterable<Label> all() {
-        return idx.queryAll();
+        List<Label> all = new ArrayList<Label>(entries.size() - removed);
+        for (Entry e : entries) {
+            if (!e.removed) {
+                all.add(e.label);
+            }
+        }
+        return all;
     }
 
     /**
@@ -111,12 +268,14 @@ public class LabelIndex {
     public VectorDataset features() {
         MemVector mem = new MemVector(Schema.build("labels")
             .field("geometry", Polygon.class).field("text", String.class).schema());
+        List<Feature> features = new ArrayList<Feature>();
         for (Label l : all()) {
             Feature f = new BasicFeature(null, mem.schema());
             f.put(l.shape());
             f.put("text", l.getText());
-            mem.add(f);
+            features.add(f);
         }
+        mem.addAll(features);
 
         return mem;
     }
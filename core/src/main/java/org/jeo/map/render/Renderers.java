@@ -21,7 +21,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.jeo.java2d.Java2D;
 import org.jeo.map.View;
+import org.jeo.svg.SVG;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -139,7 +141,12 @@ public class Renderers {
 
     /**
      * Lists all renderer factories in the specified registry that can produce the specified format.
-     *
+     * <p>
+     * The renderers bundled with core ({@link Java2D} and {@link SVG}) are listed after all 
+     * others, regardless of the order the registry returns them in. Clients that pick the first 
+     * factory thus get the renderer of an installed extension (for instance the GeoTools renderer
+     * for "png") when there is one, and fall back to the core renderer otherwise.
+     * </p>
      * @param format The name of the format.
      * @param reg The registry of renderers.
      *
@@ -148,17 +155,24 @@ public class Renderers {
     public static Iterator<RendererFactory<?>> listForFormat(String format, RendererRegistry reg) {
         reg = reg != null ? reg : REGISTRY;
         List<RendererFactory<?>> factories = new ArrayList<RendererFactory<?>>();
+        List<RendererFactory<?>> builtin = new ArrayList<RendererFactory<?>>();
         for (Iterator<RendererFactory<?>> it = reg.list(); it.hasNext(); ) {
             RendererFactory<?> rf = it.next();
             for (String supportedFormat : rf.getFormats()) {
                 if (supportedFormat.equalsIgnoreCase(format)) {
-                    factories.add(rf);
+                    (isBuiltin(rf) ? builtin : factories).add(rf);
+                    break;
                 }
             }
         }
+        factories.addAll(builtin);
         return factories.iterator();
     }
 
+    static boolean isBuiltin(RendererFactory<?> rf) {
+        return rf.getClass() == Java2D.class || rf.getClass() == SVG.class;
+    }
+
     /**
      * Creates a new renderer from name, view, and options.
      *
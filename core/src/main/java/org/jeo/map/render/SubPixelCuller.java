@@ -0,0 +1,190 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.map.render;
+
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.jeo.map.Rule;
+import org.jeo.map.View;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+/**
+ * Culls line and polygon features that are smaller than a pixel in the view.
+ * <p>
+ * Depending on the mode small features are either skipped entirely or collapsed to a geometry
+ * covering the single pixel containing the feature center. In the latter case only the first
+ * feature hitting a pixel is drawn for a given rule, unless the rule has text or marker 
+ * symbolizers in which case features are drawn as is.
+ * </p>
+ * <p>
+ * Culling is disabled by default.
+ * </p>
+ */
+class SubPixelCuller {
+
+    /**
+     * Culling mode, specified with the {@link BaseRenderer#SUBPIXEL_MODE} style property.
+     */
+    static enum Mode {
+        /** draw small features as is */
+        DRAW,
+        /** don't draw small features */
+        SKIP,
+        /** draw small features as a single pixel */
+        PIXEL;
+    }
+
+    /**
+     * Creates the culler for a layer, returning <code>null</code> if culling is disabled.
+     *
+     * @param view The view being rendered.
+     * @param rule The collapsed rule of the layer.
+     */
+    static SubPixelCuller create(View view, Rule rule) {
+        String mode = rule.string(null, BaseRenderer.SUBPIXEL_MODE, Mode.DRAW.name());
+        Mode m;
+        try {
+            m = Mode.valueOf(mode.toUpperCase(Locale.ROOT));
+        }
+        catch(IllegalArgumentException e) {
+            BaseRenderer.LOG.warn("unsupported subpixel mode: " + mode + " falling back to 'draw'");
+            return null;
+        }
+
+        double size = rule.number(null, BaseRenderer.SUBPIXEL_SIZE, 1d);
+        if (m == Mode.DRAW || size <= 0) {
+            return null;
+        }
+        return new SubPixelCuller(view, m, size);
+    }
+
+    final Mode mode;
+
+    final double minx, maxy;
+    final double resx, resy;
+    final double maxWidth, maxHeight;
+    final int width, height;
+
+    /** pixels drawn, per rule */
+    final Map<Rule,BitSet> drawn = new IdentityHashMap<Rule, BitSet>();
+
+    /** whether features may be collapsed, per rule */
+    final Map<Rule,Boolean> collapses = new IdentityHashMap<Rule, Boolean>();
+
+    SubPixelCuller(View view, Mode mode, double size) {
+        this.mode = mode;
+
+        Envelope b = view.getBounds();
+        minx = b.getMinX();
+        maxy = b.getMaxY();
+        resx = view.iscaleX();
+        resy = view.iscaleY();
+        width = view.getWidth();
+        height = view.getHeight();
+
+        maxWidth = size * resx;
+        maxHeight = size * resy;
+    }
+
+    /**
+     * Determines if a geometry falls below the size threshold, points are never culled.
+     */
+    boolean isSmall(Geometry g) {
+        if (g == null || g.getDimension() == 0) {
+            return false;
+        }
+
+        Envelope e = g.getEnvelopeInternal();
+        return e.getWidth() < maxWidth && e.getHeight() < maxHeight;
+    }
+
+    /**
+     * Determines if small features are skipped outright.
+     */
+    boolean skips() {
+        return mode == Mode.SKIP;
+    }
+
+    /**
+     * Determines if small features drawn with a rule may be collapsed, which is not the case for
+     * rules with text or marker symbolizers since every label and marker should be drawn.
+     */
+    boolean collapses(Rule rule) {
+        Boolean c = collapses.get(rule);
+        if (c == null) {
+            c = true;
+            for (String key : rule.properties().keySet()) {
+                if (key.startsWith("text-") || key.startsWith("marker-") 
+                    || key.startsWith("shield-")) {
+                    c = false;
+                    break;
+                }
+            }
+            collapses.put(rule, c);
+        }
+        return c;
+    }
+
+    /**
+     * Collapses a small geometry to a single pixel, returning <code>null</code> if the pixel was
+     * already drawn with the same rule. The geometry is returned as is if the rule does not allow
+     * collapsing.
+     */
+    Geometry collapse(Geometry g, Rule rule) {
+        if (!collapses(rule)) {
+            return g;
+        }
+
+        Envelope e = g.getEnvelopeInternal();
+
+        long i = (long) Math.floor((e.centre().x - minx) / resx);
+        long j = (long) Math.floor((maxy - e.centre().y) / resy);
+
+        if (i >= 0 && i < width && j >= 0 && j < height) {
+            BitSet pixels = drawn.get(rule);
+            if (pixels == null) {
+                pixels = new BitSet(width * height);
+                drawn.put(rule, pixels);
+            }
+
+            int p = (int) (j * width + i);
+            if (pixels.get(p)) {
+                return null;
+            }
+            pixels.set(p);
+        }
+
+        // geometry of the same dimension covering the pixel
+        double x0 = minx + i * resx, x1 = x0 + resx;
+        double y1 = maxy - j * resy, y0 = y1 - resy;
+
+        GeometryFactory gf = g.getFactory();
+        if (g.getDimension() == 1) {
+            double y = (y0 + y1) / 2;
+            return gf.createLineString(new Coordinate[]{new Coordinate(x0, y), new Coordinate(x1, y)});
+        }
+
+        return gf.createPolygon(gf.createLinearRing(new Coordinate[]{new Coordinate(x0, y0),
+            new Coordinate(x1, y0), new Coordinate(x1, y1), new Coordinate(x0, y1),
+            new Coordinate(x0, y0)}), null);
+    }
+}
@@ -0,0 +1,215 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.map.render;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import org.jeo.tile.Tile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decodes image tiles into pixels.
+ * <p>
+ * Tiles are decoded in parallel on a bounded pool of daemon threads. Decoded tiles are kept in a
+ * least recently used cache, bounded by the number of bytes of decoded pixels, which is shared
+ * across rendering requests via {@link #get()}. Cache keys are the tile set and tile index, a
+ * cached tile is decoded again only when the length of the encoded tile data differs.
+ * </p>
+ */
+class TileDecoder {
+
+    static final Logger LOG = LoggerFactory.getLogger(TileDecoder.class);
+
+    /** default size of the decoded tile cache */
+    static final long DEFAULT_CACHE_SIZE = 64 * 1024 * 1024;
+
+    static TileDecoder INSTANCE;
+
+    /**
+     * The shared decoder instance.
+     */
+    static synchronized TileDecoder get() {
+        if (INSTANCE == null) {
+            INSTANCE = new TileDecoder(Runtime.getRuntime().availableProcessors(),
+                DEFAULT_CACHE_SIZE);
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Decoded tile pixels, packed ARGB values in row major order.
+     */
+    static class Image {
+        final int width, height;
+        final int[] argb;
+
+        /** length of the encoded tile data */
+        int source = -1;
+
+        Image(int width, int height, int[] argb) {
+            this.width = width;
+            this.height = height;
+            this.argb = argb;
+        }
+
+        long bytes() {
+            return argb.length * 4l;
+        }
+    }
+
+    final ExecutorService exec;
+
+    final LinkedHashMap<String,Image> cache = new LinkedHashMap<String, Image>(16, 0.75f, true);
+    final long maxBytes;
+    long bytes;
+
+    TileDecoder(int threads, long maxBytes) {
+        this.maxBytes = maxBytes;
+
+        final AtomicInteger count = new AtomicInteger();
+        exec = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "jeo-tile-decoder-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Decodes a set of tiles.
+     *
+     * @param prefix Prefix for cache keys, identifying the tile set.
+     * @param tiles The tiles to decode.
+     *
+     * @return The decoded tiles, in the same order as the input tiles. Entries are
+     *   <code>null</code> for tiles that could not be decoded.
+     */
+    List<Image> decode(String prefix, List<Tile> tiles) throws IOException {
+        List<Image> images = new ArrayList<Image>(tiles.size());
+        List<Future<Image>> futures = new ArrayList<Future<Image>>(tiles.size());
+
+        for (Tile t : tiles) {
+            final String key = key(prefix, t);
+            final byte[] data = t.getData();
+
+            Image img = cached(key);
+            if (img != null && img.source != data.length) {
+                img = null;
+            }
+            images.add(img);
+            futures.add(img != null ? null : exec.submit(new Callable<Image>() {
+                @Override
+                public Image call() throws Exception {
+                    Image img = decode(data);
+                    if (img != null) {
+                        img.source = data.length;
+                        cache(key, img);
+                    }
+                    return img;
+                }
+            }));
+        }
+
+        for (int i = 0; i < futures.size(); i++) {
+            Future<Image> f = futures.get(i);
+            if (f == null) {
+                continue;
+            }
+
+            try {
+                images.set(i, f.get());
+            }
+            catch(InterruptedException e) {
+                cancel(futures);
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+            catch(ExecutionException e) {
+                LOG.debug("Error decoding tile " + tiles.get(i), e.getCause());
+            }
+        }
+
+        return images;
+    }
+
+    Image decode(byte[] data) throws IOException {
+        BufferedImage img = ImageIO.read(new ByteArrayInputStream(data));
+        if (img == null) {
+            LOG.debug("Unable to decode tile, no image reader for tile data");
+            return null;
+        }
+
+        int w = img.getWidth(), h = img.getHeight();
+        return new Image(w, h, img.getRGB(0, 0, w, h, null, 0, w));
+    }
+
+    synchronized Image cached(String key) {
+        return cache.get(key);
+    }
+
+    synchronized void cache(String key, Image img) {
+        if (img.bytes() > maxBytes) {
+            return;
+        }
+
+        Image old = cache.put(key, img);
+        if (old != null) {
+            bytes -= old.bytes();
+        }
+        bytes += img.bytes();
+
+        Iterator<Image> it = cache.values().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            bytes -= it.next().bytes();
+            it.remove();
+        }
+    }
+
+    synchronized void clear() {
+        cache.clear();
+        bytes = 0;
+    }
+
+    void cancel(List<Future<Image>> futures) {
+        for (Future<Image> f : futures) {
+            if (f != null) {
+                f.cancel(true);
+            }
+        }
+    }
+
+    String key(String prefix, Tile t) {
+        return new StringBuilder(prefix).append("/").append(t.getZ()).append("/")
+            .append(t.getX()).append("/").append(t.getY()).toString();
+    }
+}
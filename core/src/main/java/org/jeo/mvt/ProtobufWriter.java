@@ -0,0 +1,169 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.mvt;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Minimal protocol buffer writer, encoding fields into a growable byte array.
+ */
+class ProtobufWriter {
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /** wire types */
+    static final int VARINT = 0, FIXED64 = 1, BYTES = 2, FIXED32 = 5;
+
+    byte[] buf;
+    int pos;
+
+    ProtobufWriter() {
+        this(256);
+    }
+
+    ProtobufWriter(int size) {
+        buf = new byte[size];
+    }
+
+    /**
+     * Number of bytes written.
+     */
+    int size() {
+        return pos;
+    }
+
+    /**
+     * Clears the writer for reuse.
+     */
+    void reset() {
+        pos = 0;
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buf, pos);
+    }
+
+    void tag(int field, int type) {
+        varint((field << 3) | type);
+    }
+
+    void varint(long v) {
+        ensure(10);
+        while ((v & ~0x7FL) != 0) {
+            buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        buf[pos++] = (byte) v;
+    }
+
+    void uint(int field, long v) {
+        tag(field, VARINT);
+        varint(v);
+    }
+
+    void sint(int field, long v) {
+        tag(field, VARINT);
+        varint(zigzag(v));
+    }
+
+    void bool(int field, boolean v) {
+        tag(field, VARINT);
+        varint(v ? 1 : 0);
+    }
+
+    void fixed32(int field, float v) {
+        tag(field, FIXED32);
+        int bits = Float.floatToIntBits(v);
+        ensure(4);
+        for (int i = 0; i < 4; i++) {
+            buf[pos++] = (byte) (bits >>> (8*i));
+        }
+    }
+
+    void fixed64(int field, double v) {
+        tag(field, FIXED64);
+        long bits = Double.doubleToLongBits(v);
+        ensure(8);
+        for (int i = 0; i < 8; i++) {
+            buf[pos++] = (byte) (bits >>> (8*i));
+        }
+    }
+
+    void string(int field, String s) {
+        byte[] b = s.getBytes(UTF8);
+        tag(field, BYTES);
+        varint(b.length);
+        bytes(b, 0, b.length);
+    }
+
+    /**
+     * Writes an embedded message.
+     */
+    void message(int field, ProtobufWriter msg) {
+        tag(field, BYTES);
+        varint(msg.pos);
+        bytes(msg.buf, 0, msg.pos);
+    }
+
+    /**
+     * Writes a packed repeated field of unsigned values.
+     */
+    void packed(int field, int[] values, int n) {
+        int len = 0;
+        for (int i = 0; i < n; i++) {
+            len += size(values[i]);
+        }
+
+        tag(field, BYTES);
+        varint(len);
+        for (int i = 0; i < n; i++) {
+            varint(values[i] & 0xFFFFFFFFL);
+        }
+    }
+
+    void bytes(byte[] b, int off, int len) {
+        ensure(len);
+        System.arraycopy(b, off, buf, pos, len);
+        pos += len;
+    }
+
+    void ensure(int n) {
+        if (pos + n > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + n));
+        }
+    }
+
+    static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    static int zigzag(int v) {
+        return (v << 1) ^ (v >> 31);
+    }
+
+    /*
+     * Number of bytes needed to encode an unsigned value as a varint.
+     */
+    static int size(int v) {
+        long l = v & 0xFFFFFFFFL;
+        int n = 1;
+        while ((l & ~0x7FL) != 0) {
+            l >>>= 7;
+            n++;
+        }
+        return n;
+    }
+}
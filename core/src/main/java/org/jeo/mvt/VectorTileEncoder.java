@@ -0,0 +1,765 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.mvt;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jeo.data.Cursor;
+import org.jeo.data.Query;
+import org.jeo.data.VectorDataset;
+import org.jeo.feature.Feature;
+import org.jeo.feature.Field;
+import org.jeo.feature.Schema;
+import org.jeo.geom.CoordinatePath;
+import org.jeo.geom.CoordinatePath.PathStep;
+import org.jeo.geom.Envelopes;
+import org.jeo.geom.Geom;
+import org.jeo.proj.Proj;
+import org.jeo.tile.Tile;
+import org.jeo.tile.TileCover;
+import org.jeo.tile.TileGrid;
+import org.jeo.tile.TilePyramid;
+import org.jeo.tile.TilePyramid.Origin;
+import org.osgeo.proj4j.CoordinateReferenceSystem;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * Encodes vector data as <a href="https://github.com/mapbox/vector-tile-spec">Mapbox Vector
+ * Tiles</a>.
+ * <p>
+ * Features intersecting a tile are clipped to the tile bounds (plus a buffer), quantized to
+ * integer tile coordinates in the range [0, extent), simplified by dropping vertices closer
+ * than a tolerance to the previous vertex, and encoded as a single layer named after the
+ * dataset. Attributes are restricted to the fields specified by the query, or all non geometry
+ * fields when the query specifies none.
+ * </p>
+ * <p>
+ * Example:
+ * <pre><code>
+ * VectorDataset data = ...;
+ * VectorTileEncoder enc = new VectorTileEncoder(VectorTileEncoder.webMercator(14));
+ *
+ * byte[] pbf = enc.encode(new Tile(3, 4, 2), data, new Query().fields("name"));
+ * </code></pre>
+ * </p>
+ */
+public class VectorTileEncoder {
+
+    /**
+     * Mime type of encoded tiles.
+     */
+    public static final String MIME_TYPE = "application/x-protobuf";
+
+    /** geometry commands */
+    static final int MOVE_TO = 1, LINE_TO = 2, CLOSE_PATH = 7;
+
+    /** geometry types */
+    static final int POINT = 1, LINESTRING = 2, POLYGON = 3;
+
+    /** half the width of the spherical mercator world */
+    static final double MERCATOR_EXTENT = 20037508.342789244;
+
+    /**
+     * Creates the spherical mercator tile pyramid used by common web mapping clients, with a top
+     * left origin and grid dimensions of 2^z x 2^z.
+     *
+     * @param maxZoom The maximum zoom level of the pyramid.
+     */
+    public static TilePyramid webMercator(int maxZoom) {
+        double m = MERCATOR_EXTENT;
+        return TilePyramid.build().crs(Proj.EPSG_900913).bounds(-m, -m, m, m)
+            .tileSize(256, 256).origin(Origin.TOP_LEFT).grids(maxZoom+1).pyramid();
+    }
+
+    TilePyramid pyramid;
+    int extent = 4096;
+    int buffer = 64;
+    double tolerance = 1;
+
+    /**
+     * Creates a new encoder.
+     *
+     * @param pyramid The tile pyramid defining tile bounds and the crs of encoded geometries.
+     */
+    public VectorTileEncoder(TilePyramid pyramid) {
+        this.pyramid = pyramid;
+    }
+
+    /**
+     * The tile pyramid.
+     */
+    public TilePyramid getPyramid() {
+        return pyramid;
+    }
+
+    /**
+     * The size of a tile in tile coordinates, defaults to 4096.
+     */
+    public int getExtent() {
+        return extent;
+    }
+
+    /**
+     * Sets the size of a tile in tile coordinates.
+     *
+     * @throws IllegalArgumentException If the extent is not positive.
+     */
+    public void setExtent(int extent) {
+        if (extent <= 0) {
+            throw new IllegalArgumentException("extent must be positive: " + extent);
+        }
+        this.extent = extent;
+    }
+
+    /**
+     * The buffer around a tile, in tile coordinates, that geometries are clipped to. Defaults to
+     * 64.
+     */
+    public int getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Sets the buffer around a tile that geometries are clipped to.
+     *
+     * @throws IllegalArgumentException If the buffer is negative.
+     */
+    public void setBuffer(int buffer) {
+        if (buffer < 0) {
+            throw new IllegalArgumentException("buffer must not be negative: " + buffer);
+        }
+        this.buffer = buffer;
+    }
+
+    /**
+     * The simplification tolerance, in tile coordinates, defaults to 1.
+     * <p>
+     * Vertices whose horizontal and vertical distance from the previous vertex are both less
+     * than the tolerance are dropped.
+     * </p>
+     */
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    /**
+     * Sets the simplification tolerance.
+     */
+    public void setTolerance(double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Encodes the features of a dataset that intersect a tile.
+     *
+     * @param tile The tile index, relative to the origin of the pyramid.
+     * @param data The dataset.
+     * @param query Query specifying the fields and filter of features to encode, may be
+     *   <code>null</code>.
+     *
+     * @return The encoded tile, an empty array if no features intersect the tile.
+     */
+    public byte[] encode(Tile tile, VectorDataset data, Query query) throws IOException {
+        if (query == null) {
+            query = new Query();
+        }
+
+        Envelope bounds = pyramid.bounds(tile);
+        Envelope clip = new Envelope(bounds);
+        clip.expandBy(bounds.getWidth() * buffer / extent, bounds.getHeight() * buffer / extent);
+
+        LayerEncoder layer = new LayerEncoder(data.getName(), bounds, clip);
+        List<String> fields = fields(data.schema(), query);
+
+        Cursor<Feature> c = data.cursor(query(data, query, clip));
+        try {
+            while (c.hasNext()) {
+                layer.feature(c.next(), fields);
+            }
+        }
+        finally {
+            c.close();
+        }
+
+        if (layer.count == 0) {
+            return new byte[0];
+        }
+
+        ProtobufWriter tw = layer.finish();
+        ProtobufWriter pbf = new ProtobufWriter(tw.size() + 8);
+        pbf.message(3, tw);
+        return pbf.toByteArray();
+    }
+
+    /**
+     * Encodes all tiles covering a dataset within a range of zoom levels.
+     * <p>
+     * Tiles are encoded lazily as the returned cursor is iterated. Tiles containing no features
+     * are skipped.
+     * </p>
+     * @param data The dataset.
+     * @param query Query specifying the fields, filter and bounds of features to encode, may be
+     *   <code>null</code>.
+     * @param minZoom The minimum zoom level, inclusive.
+     * @param maxZoom The maximum zoom level, inclusive.
+     *
+     * @return Cursor of encoded tiles.
+     */
+    public Cursor<Tile> encode(VectorDataset data, Query query, int minZoom, int maxZoom)
+        throws IOException {
+
+        if (query == null) {
+            query = new Query();
+        }
+
+        // determine the area to seed, in pyramid coordinates
+        Envelope bounds = data.bounds();
+        if (!Envelopes.isNull(query.getBounds())) {
+            bounds = bounds.intersection(query.getBounds());
+        }
+
+        CoordinateReferenceSystem crs = data.crs();
+        if (crs != null && pyramid.getCRS() != null && !Proj.equal(crs, pyramid.getCRS())) {
+            bounds = Proj.reproject(bounds, crs, pyramid.getCRS());
+        }
+        bounds = bounds.intersection(pyramid.getBounds());
+
+        List<TileCover> covers = new ArrayList<TileCover>();
+        if (!bounds.isNull()) {
+            for (TileGrid grid : pyramid.getGrids()) {
+                if (grid.getZ() >= minZoom && grid.getZ() <= maxZoom) {
+                    TileCover cov = pyramid.cover(bounds, grid);
+                    if (cov != null) {
+                        covers.add(cov);
+                    }
+                }
+            }
+        }
+
+        return new TileCursor(data, query, covers);
+    }
+
+    /*
+     * Builds the query against the dataset for features within the clip bounds.
+     */
+    Query query(VectorDataset data, Query query, Envelope clip) throws IOException {
+        // features are encoded as they are read and never retained
+        Query q = new Query().reuse();
+
+        if (!query.getFields().isEmpty()) {
+            List<String> fields = new ArrayList<String>(query.getFields());
+
+            // always want the geometry
+            Schema schema = data.schema();
+            Field geom = schema != null ? schema.geometry() : null;
+            if (geom != null && !fields.contains(geom.getName())) {
+                fields.add(geom.getName());
+            }
+            q.fields(fields);
+        }
+        if (query.getFilter() != null) {
+            q.filter(query.getFilter());
+        }
+
+        // reproject if necessary
+        Envelope bbox = clip;
+        CoordinateReferenceSystem crs = data.crs();
+        if (crs != null && pyramid.getCRS() != null && !Proj.equal(crs, pyramid.getCRS())) {
+            q.reproject(pyramid.getCRS());
+            bbox = Proj.reproject(bbox, pyramid.getCRS(), crs);
+        }
+
+        return q.bounds(bbox);
+    }
+
+    /*
+     * Determines the names of attributes to encode.
+     */
+    List<String> fields(Schema schema, Query query) {
+        List<String> fields = new ArrayList<String>();
+        if (!query.getFields().isEmpty()) {
+            for (String f : query.getFields()) {
+                Field fld = schema != null ? schema.field(f) : null;
+                if (fld == null || !fld.isGeometry()) {
+                    fields.add(f);
+                }
+            }
+        }
+        else if (schema != null) {
+            for (Field f : schema) {
+                if (!f.isGeometry()) {
+                    fields.add(f.getName());
+                }
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * Encodes a single layer of a tile.
+     */
+    class LayerEncoder {
+
+        /** world to tile transform */
+        final double minx, maxy, sx, sy;
+
+        /** clip rectangle in world coordinates */
+        final Envelope clip;
+
+        /** layer and feature messages */
+        final ProtobufWriter layer = new ProtobufWriter(4096);
+        final ProtobufWriter feature = new ProtobufWriter();
+
+        /** key and value tables */
+        final Map<String,Integer> keys = new LinkedHashMap<String, Integer>();
+        final Map<Object,Integer> values = new LinkedHashMap<Object, Integer>();
+
+        /** feature tags */
+        int[] tags = new int[16];
+
+        /** geometry commands, and command cursor position */
+        int[] cmd = new int[256];
+        int n;
+        int cx, cy;
+
+        /** vertices of the current part */
+        int[] xs = new int[256], ys = new int[256];
+        int np;
+
+        /** last vertex dropped by simplification */
+        int lx, ly;
+        boolean dropped;
+
+        int count = 0;
+
+        LayerEncoder(String name, Envelope bounds, Envelope clip) {
+            this.clip = clip;
+
+            minx = bounds.getMinX();
+            maxy = bounds.getMaxY();
+            sx = extent / bounds.getWidth();
+            sy = extent / bounds.getHeight();
+
+            layer.uint(15, 2);
+            layer.string(1, name);
+        }
+
+        void feature(Feature f, List<String> fields) {
+            Geometry g = f.geometry();
+            if (g == null || g.isEmpty()) {
+                return;
+            }
+
+            n = 0;
+            cx = cy = 0;
+
+            int type = geometry(g);
+            if (type == 0 || n == 0) {
+                return;
+            }
+
+            feature.reset();
+
+            Long id = id(f);
+            if (id != null) {
+                feature.uint(1, id);
+            }
+
+            int nt = 0;
+            for (String fld : fields) {
+                Object v = f.get(fld);
+                if (v == null || v instanceof Geometry) {
+                    continue;
+                }
+
+                if (nt + 2 > tags.length) {
+                    tags = Arrays.copyOf(tags, tags.length * 2);
+                }
+                tags[nt++] = index(keys, fld);
+                tags[nt++] = index(values, value(v));
+            }
+            if (nt > 0) {
+                feature.packed(2, tags, nt);
+            }
+
+            feature.uint(3, type);
+            feature.packed(4, cmd, n);
+
+            layer.message(2, feature);
+            count++;
+        }
+
+        ProtobufWriter finish() {
+            for (String key : keys.keySet()) {
+                layer.string(3, key);
+            }
+
+            ProtobufWriter vw = new ProtobufWriter(16);
+            for (Object v : values.keySet()) {
+                vw.reset();
+                if (v instanceof String) {
+                    vw.string(1, (String) v);
+                }
+                else if (v instanceof Float) {
+                    vw.fixed32(2, (Float) v);
+                }
+                else if (v instanceof Double) {
+                    vw.fixed64(3, (Double) v);
+                }
+                else if (v instanceof Long) {
+                    long l = (Long) v;
+                    if (l < 0) {
+                        vw.sint(6, l);
+                    }
+                    else {
+                        vw.uint(5, l);
+                    }
+                }
+                else if (v instanceof Boolean) {
+                    vw.bool(7, (Boolean) v);
+                }
+                layer.message(4, vw);
+            }
+
+            layer.uint(5, extent);
+            return layer;
+        }
+
+        /*
+         * Encodes geometry commands, returning the geometry type.
+         */
+        int geometry(Geometry g) {
+            switch(Geom.Type.from(g)) {
+            case POINT:
+            case MULTIPOINT:
+                points(g);
+                return POINT;
+            case LINESTRING:
+            case MULTILINESTRING:
+                for (int i = 0; i < g.getNumGeometries(); i++) {
+                    line((LineString) g.getGeometryN(i));
+                }
+                return LINESTRING;
+            case POLYGON:
+            case MULTIPOLYGON:
+                for (int i = 0; i < g.getNumGeometries(); i++) {
+                    polygon((Polygon) g.getGeometryN(i));
+                }
+                return POLYGON;
+            default:
+                return 0;
+            }
+        }
+
+        void points(Geometry g) {
+            np = 0;
+            CoordinatePath path = CoordinatePath.create(g, clip);
+            while (path.hasNext()) {
+                Coordinate c = path.next();
+                add(x(c.x), y(c.y));
+            }
+
+            if (np > 0) {
+                command(MOVE_TO, np);
+                for (int i = 0; i < np; i++) {
+                    delta(xs[i], ys[i]);
+                }
+            }
+        }
+
+        void line(LineString line) {
+            np = 0;
+            CoordinatePath path = CoordinatePath.create(line, clip);
+            while (path.hasNext()) {
+                Coordinate c = path.next();
+                if (path.getStep() == PathStep.MOVE_TO) {
+                    endLine();
+                }
+                vertex(c.x, c.y);
+            }
+            endLine();
+        }
+
+        void endLine() {
+            endPart();
+            if (np >= 2) {
+                command(MOVE_TO, 1);
+                delta(xs[0], ys[0]);
+                command(LINE_TO, np-1);
+                for (int i = 1; i < np; i++) {
+                    delta(xs[i], ys[i]);
+                }
+            }
+            np = 0;
+        }
+
+        void polygon(Polygon p) {
+            if (!ring(p.getExteriorRing(), true)) {
+                return;
+            }
+            for (int i = 0; i < p.getNumInteriorRing(); i++) {
+                ring(p.getInteriorRingN(i), false);
+            }
+        }
+
+        boolean ring(LineString ring, boolean exterior) {
+            np = 0;
+            CoordinatePath path = CoordinatePath.create(ring, clip);
+            while (path.hasNext()) {
+                Coordinate c = path.next();
+                vertex(c.x, c.y);
+            }
+            endPart();
+
+            // closing vertex is implied
+            if (np > 1 && xs[0] == xs[np-1] && ys[0] == ys[np-1]) {
+                np--;
+            }
+            if (np < 3) {
+                return false;
+            }
+
+            long area = 0;
+            for (int i = 0; i < np; i++) {
+                int j = (i + 1) % np;
+                area += (long) xs[i] * ys[j] - (long) xs[j] * ys[i];
+            }
+            if (area == 0) {
+                return false;
+            }
+
+            // exterior rings must have positive area, interior negative
+            if (exterior ? area < 0 : area > 0) {
+                reverse();
+            }
+
+            command(MOVE_TO, 1);
+            delta(xs[0], ys[0]);
+            command(LINE_TO, np-1);
+            for (int i = 1; i < np; i++) {
+                delta(xs[i], ys[i]);
+            }
+            command(CLOSE_PATH, 1);
+            return true;
+        }
+
+        /*
+         * Adds a vertex to the current part, quantizing and simplifying.
+         */
+        void vertex(double x, double y) {
+            int qx = x(x), qy = y(y);
+            if (np > 0 && Math.abs(qx - xs[np-1]) < tolerance
+                && Math.abs(qy - ys[np-1]) < tolerance) {
+                lx = qx;
+                ly = qy;
+                dropped = true;
+                return;
+            }
+
+            add(qx, qy);
+            dropped = false;
+        }
+
+        /*
+         * Ends the current part, ensuring the last vertex is kept.
+         */
+        void endPart() {
+            if (dropped && np > 0 && (lx != xs[np-1] || ly != ys[np-1])) {
+                add(lx, ly);
+            }
+            dropped = false;
+        }
+
+        void add(int x, int y) {
+            if (np == xs.length) {
+                xs = Arrays.copyOf(xs, np * 2);
+                ys = Arrays.copyOf(ys, np * 2);
+            }
+            xs[np] = x;
+            ys[np++] = y;
+        }
+
+        void reverse() {
+            for (int i = 0, j = np - 1; i < j; i++, j--) {
+                int t = xs[i]; xs[i] = xs[j]; xs[j] = t;
+                t = ys[i]; ys[i] = ys[j]; ys[j] = t;
+            }
+        }
+
+        void command(int id, int count) {
+            append((id & 0x7) | (count << 3));
+        }
+
+        void delta(int x, int y) {
+            append(ProtobufWriter.zigzag(x - cx));
+            append(ProtobufWriter.zigzag(y - cy));
+            cx = x;
+            cy = y;
+        }
+
+        void append(int i) {
+            if (n == cmd.length) {
+                cmd = Arrays.copyOf(cmd, n * 2);
+            }
+            cmd[n++] = i;
+        }
+
+        int x(double x) {
+            return (int) Math.round((x - minx) * sx);
+        }
+
+        int y(double y) {
+            return (int) Math.round((maxy - y) * sy);
+        }
+
+        <T> int index(Map<T,Integer> table, T key) {
+            Integer i = table.get(key);
+            if (i == null) {
+                i = table.size();
+                table.put(key, i);
+            }
+            return i;
+        }
+
+        Long id(Feature f) {
+            String id = f.getId();
+            if (id != null) {
+                try {
+                    long l = Long.parseLong(id);
+                    if (l >= 0) {
+                        return l;
+                    }
+                }
+                catch(NumberFormatException e) {
+                }
+            }
+            return null;
+        }
+
+        Object value(Object v) {
+            if (v instanceof Integer || v instanceof Long || v instanceof Short
+                || v instanceof Byte) {
+                return ((Number) v).longValue();
+            }
+            if (v instanceof Float || v instanceof Double || v instanceof Boolean
+                || v instanceof String) {
+                return v;
+            }
+            if (v instanceof Number) {
+                return ((Number) v).doubleValue();
+            }
+            return v.toString();
+        }
+    }
+
+    /**
+     * Cursor encoding the tiles of a set of tile covers.
+     */
+    class TileCursor extends Cursor<Tile> {
+
+        VectorDataset data;
+        Query query;
+        List<TileCover> covers;
+
+        /** current cover and tile index, relative to a bottom left origin */
+        int i = -1;
+        int x0, x1, y1, x, y;
+        int z;
+
+        Tile next;
+
+        TileCursor(VectorDataset data, Query query, List<TileCover> covers) {
+            this.data = data;
+            this.query = query;
+            this.covers = covers;
+        }
+
+        @Override
+        public boolean hasNext() throws IOException {
+            while (next == null) {
+                if (!advance()) {
+                    return false;
+                }
+
+                Tile t = new Tile(z, x, y);
+                if (pyramid.getOrigin() != Origin.BOTTOM_LEFT) {
+                    // flipping an axis is symmetric, so realigning to bottom left maps a bottom
+                    // left index to the pyramid origin
+                    t = pyramid.realign(t, Origin.BOTTOM_LEFT);
+                }
+
+                byte[] pbf = VectorTileEncoder.this.encode(t, data, query);
+                if (pbf.length > 0) {
+                    t.setData(pbf);
+                    t.setMimeType(MIME_TYPE);
+                    next = t;
+                }
+            }
+            return true;
+        }
+
+        boolean advance() {
+            if (i >= 0 && ++x <= x1) {
+                return true;
+            }
+            if (i >= 0 && ++y <= y1) {
+                x = x0;
+                return true;
+            }
+
+            while (++i < covers.size()) {
+                TileCover cov = covers.get(i);
+                TileGrid grid = cov.getGrid();
+
+                z = grid.getZ();
+                x0 = Math.max(0, cov.getX0());
+                x1 = Math.min(grid.getWidth() - 1, cov.getX1());
+                y1 = Math.min(grid.getHeight() - 1, cov.getY1());
+                x = x0;
+                y = Math.max(0, cov.getY0());
+
+                if (x <= x1 && y <= y1) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public Tile next() throws IOException {
+            if (next == null && !hasNext()) {
+                return null;
+            }
+
+            Tile t = next;
+            next = null;
+            return t;
+        }
+
+        @Override
+        public void close() throws IOException {
+        }
+    }
+}
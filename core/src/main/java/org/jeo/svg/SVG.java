@@ -16,6 +16,7 @@ package org.jeo.svg;
 
 import org.jeo.map.View;
 import org.jeo.map.render.RendererFactory;
+import org.jeo.util.Key;
 
 import java.util.Arrays;
 import java.util.Collections;
@@ -27,6 +28,16 @@ import java.util.Map;
  */
 public class SVG implements RendererFactory<SVGRenderer> {
 
+    /**
+     * Number of decimal places to write screen coordinates with.
+     */
+    public static final Key<Integer> PRECISION = new Key<Integer>("precision", Integer.class, 1);
+
+    /**
+     * Whether to gzip compress the output, producing an <tt>.svgz</tt> document.
+     */
+    public static final Key<Boolean> COMPRESS = new Key<Boolean>("compress", Boolean.class, false);
+
     @Override
     public String getName() {
         return "SVG";
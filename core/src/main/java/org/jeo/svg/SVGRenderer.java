@@ -17,7 +17,6 @@ package org.jeo.svg;
 import static org.jeo.map.CartoCSS.*;
 
 import java.io.IOException;
-import java.util.Properties;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -39,10 +38,13 @@ import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
 import org.jeo.map.render.ViewTransformFilter;
-import org.jeo.util.XMLWriter;
 
 /**
  * Renderer producing Scalable Vector Graphics (SVG) output.
+ * <p>
+ * The document is streamed directly to the output, see {@link SVG#PRECISION} and
+ * {@link SVG#COMPRESS} for options controlling the encoding.
+ * </p>
  */
 public class SVGRenderer extends BaseRenderer implements Labeller {
 
@@ -55,16 +57,11 @@ public class SVGRenderer extends BaseRenderer implements Labeller {
 
     static enum TextAnchor { start,  middle, end };
 
-    final XMLWriter xml;
-
-    public SVGRenderer() {
-        xml = new XMLWriter();
-    }
+    SVGWriter xml;
+    int indent;
 
     public SVGRenderer indent(int size) {
-        if (size > 0) {
-            xml.indent(size);
-        }
+        indent = size;
         return this;
     }
 
@@ -84,36 +81,28 @@ public class SVGRenderer extends BaseRenderer implements Labeller {
     }
 
     @Override
-    protected void onStart() {
-        try {
-            xml.init(output);
-            xml.start("svg", "width", view.getWidth(), "height", view.getHeight(),
-                "zoomAndPan", "magnify", 
-                "xmlns", URI, "version", VERSION, "baseProfile", PROFILE);
-
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
+    protected void onStart() throws IOException {
+        xml = new SVGWriter(SVG.PRECISION.get(opts)).indent(indent);
+        xml.init(output, SVG.COMPRESS.get(opts));
+        xml.start("svg", "width", view.getWidth(), "height", view.getHeight(),
+            "zoomAndPan", "magnify", 
+            "xmlns", URI, "version", VERSION, "baseProfile", PROFILE);
     }
 
     @Override
-    protected void onFinish() {
-        try {
-            xml.end("svg");
-            xml.close();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+    protected void onFinish() throws IOException {
+        xml.end("svg");
+        xml.close();
     }
 
     @Override
-    protected void drawBackground(RGB color) {
+    protected void drawBackground(RGB color) throws IOException {
         xml.start("rect", "width", "100%", "height", "100%", "fill", color.rgbhex(),
             "fill-opacity", color.getOpacity()).end("rect");
     }
 
     @Override
-    protected void drawPoint(Feature f, Rule rule, Geometry p) {
+    protected void drawPoint(Feature f, Rule rule, Geometry p) throws IOException {
         String shape = rule.string(f, MARKER_TYPE, "circle");
         float width = rule.number(f, MARKER_WIDTH, 10f);
         float height = rule.number(f, MARKER_HEIGHT, width);
@@ -140,7 +129,7 @@ public class SVGRenderer extends BaseRenderer implements Labeller {
     }
 
     @Override
-    protected void drawLine(Feature f, Rule rule, Geometry line) {
+    protected void drawLine(Feature f, Rule rule, Geometry line) throws IOException {
         // line color + width 
         Stroke stroke = stroke(f, rule, RGB.black);
         drawPath(path(line), null, stroke);
@@ -150,7 +139,7 @@ public class SVGRenderer extends BaseRenderer implements Labeller {
     }
 
     @Override
-    protected void drawPolygon(Feature f, Rule rule, Geometry poly) {
+    protected void drawPolygon(Feature f, Rule rule, Geometry poly) throws IOException {
         RGB polyFill = rule.color(f, POLYGON_FILL, null);
         if (polyFill != null) {
             polyFill = polyFill.alpha(rule.number(f, POLYGON_OPACITY, 1f));
@@ -160,7 +149,8 @@ public class SVGRenderer extends BaseRenderer implements Labeller {
         drawPath(path(poly), polyFill, s);
     }
 
-    void drawSimpleShape(Coordinate c, String type, float width, float height, RGB fill, RGB stroke) {
+    void drawSimpleShape(Coordinate c, String type, float width, float height, RGB fill, RGB stroke)
+        throws IOException {
         Shape shape = shape(type);
 
         type = shape.name().toLowerCase();
@@ -199,28 +189,12 @@ public class SVGRenderer extends BaseRenderer implements Labeller {
         xml.emptyElement(type);
     }
 
-    void drawPath(CoordinatePath path, RGB fill, Stroke stroke) {
+    void drawPath(CoordinatePath path, RGB fill, Stroke stroke) throws IOException {
 
         applyStroke(stroke);
         xml.atts("fill", fill != null ? fill.rgbhex() : "none");
 
-        StringBuilder d = new StringBuilder();
-        while(path.hasNext()) {
-            Coordinate c = path.next();
-            switch(path.getStep()) {
-            case MOVE_TO:
-                d.append("M ").append(c.x).append(" ").append(c.y).append(" ");
-                break;
-            case LINE_TO:
-                d.append("L ").append(c.x).append(" ").append(c.y).append(" ");
-                break;
-            case CLOSE:
-                d.append("Z ");
-            case STOP:
-            }
-        }
-
-        xml.emptyElement("path", "d", d.toString(), "focusable", "true");
+        xml.path(path, "focusable", "true");
     }
 
     String toString(float[] array) {
@@ -237,7 +211,7 @@ public class SVGRenderer extends BaseRenderer implements Labeller {
     }
 
     CoordinatePath path(Geometry g) {
-        return CoordinatePath.create(g).generalize(view.iscaleX(),view.iscaleY())
+        return clippedPath(g).generalize(view.iscaleX(),view.iscaleY())
             .transform(toScreenTransform());
     }
 
@@ -501,6 +475,15 @@ public class SVGRenderer extends BaseRenderer implements Labeller {
 
     @Override
     public void render(Label label) {
+        try {
+            render(label, label.get(Text.class, Text.class));
+        }
+        catch(IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    void render(Label label, Text text) throws IOException {
         if (debugLabels()) {
             Envelope box = label.bounds();
             xml.emptyElement("rect", "fill", "none", "stroke", "black", "x", box.getMinX(),
@@ -509,7 +492,6 @@ public class SVGRenderer extends BaseRenderer implements Labeller {
         }
 
         Coordinate a = label.anchor();
-        Text text = label.get(Text.class, Text.class);
         Font font = text.font;
 
         xml.element("text", label.getText(), "x", a.x, "y", a.y, "font-family", font.family,
@@ -0,0 +1,356 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.svg;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.jeo.geom.CoordinatePath;
+
+import com.vividsolutions.jts.geom.Coordinate;
+
+/**
+ * Streams an SVG document directly to an output stream.
+ * <p>
+ * Path data is written straight to the output as it is read from a {@link CoordinatePath}, using
+ * coordinates rounded to a fixed number of decimal places, relative commands and implicit command
+ * repeats. <tt>Double</tt> attribute values are written with the same precision, other values
+ * with {@link String#valueOf(Object)}. Output can optionally be gzip compressed, producing an
+ * <tt>.svgz</tt> document.
+ * </p>
+ */
+class SVGWriter implements Closeable {
+
+    final int precision;
+    final double scale;
+
+    OutputStream out;
+    GZIPOutputStream gzip;
+    Writer w;
+
+    /** pending attributes */
+    final List<Object> atts = new ArrayList<Object>();
+
+    /** indent size, 0 for none */
+    int indent;
+
+    /** current depth, and whether the current element has been closed with a '>' */
+    int depth;
+    boolean open;
+    boolean children;
+
+    /**
+     * Creates a new writer.
+     *
+     * @param precision Number of decimal places for coordinates.
+     */
+    SVGWriter(int precision) {
+        if (precision < 0) {
+            throw new IllegalArgumentException("precision must be non negative");
+        }
+        this.precision = precision;
+        this.scale = Math.pow(10, precision);
+    }
+
+    /**
+     * Turns on indentation, must be called prior to {@link #init(OutputStream, boolean)}.
+     */
+    SVGWriter indent(int size) {
+        indent = size;
+        return this;
+    }
+
+    /**
+     * Initializes the writer, and writes the xml declaration.
+     *
+     * @param output The output to write to, this writer will not close it.
+     * @param compress Whether to gzip compress the output.
+     */
+    SVGWriter init(OutputStream output, boolean compress) throws IOException {
+        out = output;
+        if (compress) {
+            out = gzip = new GZIPOutputStream(output, 8192);
+        }
+        w = new BufferedWriter(new OutputStreamWriter(out, "utf-8"), 8192);
+        w.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+        return this;
+    }
+
+    /**
+     * Adds attributes to be written with the next element.
+     */
+    SVGWriter atts(Object... kv) {
+        if (kv.length % 2 != 0) {
+            throw new IllegalArgumentException("non even number of key value pairs");
+        }
+        for (int i = 0; i < kv.length; i += 2) {
+            if (kv[i] != null) {
+                atts.add(kv[i]);
+                atts.add(kv[i+1]);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Starts an element, writing out any pending attributes.
+     */
+    SVGWriter start(String name, Object... kv) throws IOException {
+        open(name, kv);
+        return this;
+    }
+
+    /**
+     * Writes an element with optional text content.
+     */
+    SVGWriter element(String name, Object text, Object... kv) throws IOException {
+        open(name, kv);
+        if (text != null) {
+            closeStart();
+            escape(text.toString(), false);
+            children = true;
+        }
+        return end(name, false);
+    }
+
+    /**
+     * Writes an element with no content.
+     */
+    SVGWriter emptyElement(String name, Object... kv) throws IOException {
+        return element(name, null, kv);
+    }
+
+    /**
+     * Ends the current element.
+     */
+    SVGWriter end(String name) throws IOException {
+        return end(name, true);
+    }
+
+    /**
+     * Writes a path element, streaming the path data into the <tt>d</tt> attribute.
+     */
+    SVGWriter path(CoordinatePath path, Object... kv) throws IOException {
+        open("path", kv);
+        w.write(" d=\"");
+
+        // work in integer units of the precision, relative offsets are computed from rounded
+        // values so errors don't accumulate
+        long x = 0, y = 0, sx = 0, sy = 0;
+        char last = 0;
+
+        while (path.hasNext()) {
+            Coordinate c = path.next();
+            switch(path.getStep()) {
+            case MOVE_TO: {
+                long px = Math.round(c.x * scale), py = Math.round(c.y * scale);
+                w.write('m');
+                pair(px - x, py - y, true);
+                x = sx = px;
+                y = sy = py;
+                last = 'm';
+                break;
+            }
+            case LINE_TO: {
+                long px = Math.round(c.x * scale), py = Math.round(c.y * scale);
+                if (px == x && py == y) {
+                    // rounds to the same point, skip it
+                    break;
+                }
+
+                // pairs following a move or line are implicit line segments
+                boolean cmd = last != 'm' && last != 'l';
+                if (cmd) {
+                    w.write('l');
+                }
+                pair(px - x, py - y, cmd);
+                x = px;
+                y = py;
+                last = 'l';
+                break;
+            }
+            case CLOSE:
+                w.write('z');
+                x = sx;
+                y = sy;
+                last = 'z';
+                break;
+            default:
+            }
+        }
+
+        w.write('"');
+        return end("path", false);
+    }
+
+    void pair(long dx, long dy, boolean first) throws IOException {
+        if (!first && dx >= 0) {
+            w.write(' ');
+        }
+        number(dx);
+        if (dy >= 0) {
+            w.write(' ');
+        }
+        number(dy);
+    }
+
+    /**
+     * Writes a value in units of the precision as a decimal number, without trailing zeros.
+     */
+    void number(long v) throws IOException {
+        if (v < 0) {
+            w.write('-');
+            v = -v;
+        }
+        if (precision == 0) {
+            w.write(Long.toString(v));
+            return;
+        }
+
+        long div = (long) scale;
+        w.write(Long.toString(v / div));
+
+        long frac = v % div;
+        if (frac != 0) {
+            int digits = precision;
+            while (frac % 10 == 0) {
+                frac /= 10;
+                digits--;
+            }
+
+            w.write('.');
+            String s = Long.toString(frac);
+            for (int i = s.length(); i < digits; i++) {
+                w.write('0');
+            }
+            w.write(s);
+        }
+    }
+
+    void open(String name, Object... kv) throws IOException {
+        atts(kv);
+
+        closeStart();
+        if (depth > 0) {
+            children = true;
+        }
+        newline();
+
+        w.write('<');
+        w.write(name);
+        for (int i = 0; i < atts.size(); i += 2) {
+            w.write(' ');
+            w.write(atts.get(i).toString());
+            w.write("=\"");
+            value(atts.get(i+1));
+            w.write('"');
+        }
+        atts.clear();
+
+        open = true;
+        children = false;
+        depth++;
+    }
+
+    SVGWriter end(String name, boolean indent) throws IOException {
+        depth--;
+        if (open) {
+            w.write("/>");
+            open = false;
+        }
+        else {
+            if (indent && children) {
+                newline();
+            }
+            w.write("</");
+            w.write(name);
+            w.write('>');
+        }
+        children = true;
+        return this;
+    }
+
+    void closeStart() throws IOException {
+        if (open) {
+            w.write('>');
+            open = false;
+        }
+    }
+
+    void newline() throws IOException {
+        if (indent > 0) {
+            w.write('\n');
+            for (int i = 0; i < depth * indent; i++) {
+                w.write(' ');
+            }
+        }
+    }
+
+    void value(Object v) throws IOException {
+        if (v instanceof Double) {
+            number(Math.round(((Double) v).doubleValue() * scale));
+        }
+        else {
+            escape(String.valueOf(v), true);
+        }
+    }
+
+    void escape(String s, boolean att) throws IOException {
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            switch(ch) {
+            case '&':
+                w.write("&amp;");
+                break;
+            case '<':
+                w.write("&lt;");
+                break;
+            case '>':
+                w.write("&gt;");
+                break;
+            case '"':
+                if (att) {
+                    w.write("&quot;");
+                    break;
+                }
+            default:
+                w.write(ch);
+            }
+        }
+    }
+
+    /**
+     * Flushes the document, finishing compression if enabled, without closing the underlying
+     * output stream.
+     */
+    @Override
+    public void close() throws IOException {
+        if (indent > 0) {
+            w.write('\n');
+        }
+        w.flush();
+        if (gzip != null) {
+            gzip.finish();
+        }
+        out.flush();
+    }
+}
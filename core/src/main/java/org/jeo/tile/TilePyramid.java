@@ -193,7 +193,7 @@ public class TilePyramid {
             x = b.getMinX() + dx*t.getX();
             break;
         default:
-            x = b.getMinX() + dx*(w - t.getX());
+            x = b.getMinX() + dx*(w - t.getX() - 1);
         }
 
         switch(origin) {
@@ -202,10 +202,10 @@ public class TilePyramid {
             y = b.getMinY() + dy*t.getY();
             break;
         default:
-            y = b.getMinY() + dy*(h - t.getY());
+            y = b.getMinY() + dy*(h - t.getY() - 1);
         }
 
-        return new Envelope(x, x+dx, y, y+dx);
+        return new Envelope(x, x+dx, y, y+dy);
     }
 
     /**
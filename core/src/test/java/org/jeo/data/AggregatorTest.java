@@ -0,0 +1,262 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jeo.TestData;
+import org.jeo.feature.BasicFeature;
+import org.jeo.feature.Feature;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AggregatorTest {
+
+    VectorDataset states;
+
+    @Before
+    public void setUp() {
+        states = TestData.states();
+    }
+
+    @Test
+    public void testAggregate() throws Exception {
+        Query q = new Query().aggregate(Aggregate.count(), Aggregate.sum("SAMP_POP"),
+            Aggregate.min("STATE_NAME"), Aggregate.max("P_MALE"), Aggregate.mean("SAMP_POP"));
+
+        List<Feature> result = read(states.cursor(q));
+        assertEquals(1, result.size());
+
+        long count = 0;
+        double sum = 0, max = 0;
+        String min = null;
+        for (Feature f : read(states.cursor(new Query()))) {
+            count++;
+            sum += ((Number) f.get("SAMP_POP")).doubleValue();
+            max = Math.max(max, ((Number) f.get("P_MALE")).doubleValue());
+
+            String name = (String) f.get("STATE_NAME");
+            min = min == null || name.compareTo(min) < 0 ? name : min;
+        }
+
+        Feature f = result.get(0);
+        assertEquals(count, f.get("count"));
+        assertEquals(sum, (Double) f.get("sum_SAMP_POP"), 1e-6);
+        assertEquals(min, f.get("min_STATE_NAME"));
+        assertEquals(max, (Double) f.get("max_P_MALE"), 1e-9);
+        assertEquals(sum / count, (Double) f.get("mean_SAMP_POP"), 1e-6);
+        assertEquals(1, states.count(q));
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        Query q = new Query().filter("SAMP_POP < 0")
+            .aggregate(Aggregate.count(), Aggregate.sum("SAMP_POP"), Aggregate.max("P_MALE"));
+
+        Feature f = read(states.cursor(q)).get(0);
+        assertEquals(0l, f.get("count"));
+        assertNull(f.get("sum_SAMP_POP"));
+        assertNull(f.get("max_P_MALE"));
+
+        q.groupBy("STATE_ABBR");
+        assertTrue(read(states.cursor(q)).isEmpty());
+    }
+
+    @Test
+    public void testGroupBy() throws Exception {
+        Query q = new Query().aggregate(Aggregate.count(), Aggregate.sum("SAMP_POP"))
+            .groupBy("P_MALE_GT").filter("SAMP_POP > 100000");
+
+        // group by a derived property
+        MemGroups groups = new MemGroups();
+        List<Feature> features = new ArrayList<Feature>();
+        for (Feature f : read(states.cursor(new Query().filter("SAMP_POP > 100000")))) {
+            boolean gt = ((Number) f.get("P_MALE")).doubleValue() > 0.49;
+            Map<String,Object> values = new HashMap<String, Object>(f.map());
+            values.put("P_MALE_GT", gt);
+            features.add(new BasicFeature(f.getId(), values));
+            groups.add(gt, ((Number) f.get("SAMP_POP")).doubleValue());
+        }
+
+        List<Feature> result = read(new QueryPlan(q).apply(Cursors.create(features)));
+        assertEquals(2, result.size());
+        for (int i = 0; i < 2; i++) {
+            Feature f = result.get(i);
+            assertEquals(i == 1, f.get("P_MALE_GT"));
+            assertEquals(groups.counts[i], f.get("count"));
+            assertEquals(groups.sums[i], (Double) f.get("sum_SAMP_POP"), 1e-6);
+        }
+
+        // offset and limit apply to the groups
+        q.offset(1).limit(5);
+        result = read(new QueryPlan(q).apply(Cursors.create(features)));
+        assertEquals(1, result.size());
+        assertEquals(true, result.get(0).get("P_MALE_GT"));
+    }
+
+    @Test
+    public void testDistinct() throws Exception {
+        Query q = new Query().groupBy("STATE_ABBR");
+        List<Feature> result = read(states.cursor(q));
+        assertEquals(states.count(new Query()), result.size());
+        assertEquals(states.count(new Query()), states.count(q));
+
+        String last = null;
+        for (Feature f : result) {
+            assertEquals(1, f.map().size());
+            String abbr = (String) f.get("STATE_ABBR");
+            assertTrue(last == null || last.compareTo(abbr) < 0);
+            last = abbr;
+        }
+    }
+
+    @Test
+    public void testHistogram() throws Exception {
+        Aggregate h = Aggregate.histogram("P_MALE", 0.47, 0.51, 4);
+        Feature f = read(states.cursor(new Query().aggregate(h))).get(0);
+
+        long[] expected = new long[4];
+        for (Feature g : read(states.cursor(new Query()))) {
+            double v = ((Number) g.get("P_MALE")).doubleValue();
+            if (v >= 0.47 && v <= 0.51) {
+                expected[Math.min((int) ((v - 0.47) / 0.01), 3)]++;
+            }
+        }
+
+        List<Long> actual = (List<Long>) f.get("histogram_P_MALE");
+        assertEquals(4, actual.size());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(expected[i], actual.get(i).longValue());
+        }
+    }
+
+    @Test
+    public void testBins() {
+        Aggregate h = Aggregate.histogram("x", 0, 1, 10);
+        assertEquals(0, h.bin(0));
+        assertEquals(3, h.bin(0.3));
+        assertEquals(9, h.bin(0.95));
+        assertEquals(9, h.bin(1));
+        assertEquals(-1, h.bin(-0.01));
+        assertEquals(-1, h.bin(1.01));
+        assertEquals(-1, h.bin(Double.NaN));
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, h.bin(h.edge(i)));
+        }
+    }
+
+    @Test
+    public void testMerge() throws Exception {
+        Query q = new Query().aggregate(Aggregate.count(), Aggregate.sum("SAMP_POP"),
+            Aggregate.min("P_MALE"), Aggregate.max("P_MALE"), Aggregate.mean("P_FEMALE"),
+            Aggregate.histogram("P_MALE", 0.47, 0.51, 4)).groupBy("STATE_ABBR");
+        List<Feature> features = read(states.cursor(new Query()));
+
+        Aggregator whole = new Aggregator(q);
+        for (Feature f : features) {
+            whole.add(f);
+        }
+
+        // split in 3 parts aggregated separately
+        Aggregator[] parts = new Aggregator[3];
+        for (int i = 0; i < parts.length; i++) {
+            parts[i] = new Aggregator(q);
+        }
+        for (int i = 0; i < features.size(); i++) {
+            parts[i % 3].add(features.get(i));
+        }
+        Aggregator merged = parts[0].merge(parts[1]).merge(parts[2]);
+
+        List<Feature> expected = whole.features();
+        List<Feature> actual = merged.features();
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertValues(expected.get(i), actual.get(i));
+        }
+
+        q.groupBy();
+        Aggregator all = new Aggregator(q).add(Cursors.create(features.subList(0, 10)))
+            .merge(new Aggregator(q).add(Cursors.create(features.subList(10, features.size()))));
+        assertValues(new Aggregator(q).add(Cursors.create(features)).features().get(0),
+            all.features().get(0));
+    }
+
+    @Test
+    public void testParse() {
+        assertEquals(Aggregate.count(), Aggregate.parse("count"));
+        assertEquals(Aggregate.count(), Aggregate.parse("COUNT(*)"));
+        assertEquals(Aggregate.count("x"), Aggregate.parse("count(x)"));
+        assertEquals(Aggregate.sum("x"), Aggregate.parse(" sum( x ) "));
+        assertEquals(Aggregate.mean("x"), Aggregate.parse("mean(x)"));
+        assertEquals(Aggregate.histogram("x", 0, 10, 5),
+            Aggregate.parse("histogram(x, 0, 10, 5)"));
+
+        for (String invalid : Arrays.asList("foo(x)", "sum", "sum(x, 1)", "histogram(x,0,1)",
+            "histogram(x,1,0,5)", "count(")) {
+            try {
+                Aggregate.parse(invalid);
+                throw new AssertionError("expected failure for " + invalid);
+            }
+            catch(IllegalArgumentException e) {
+            }
+        }
+    }
+
+    void assertValues(Feature expected, Feature actual) {
+        assertEquals(expected.map().keySet(), actual.map().keySet());
+        for (String key : expected.map().keySet()) {
+            Object e = expected.get(key), a = actual.get(key);
+            if (e instanceof Double) {
+                // summation order differs between parts
+                assertEquals((Double) e, (Double) a, 1e-9);
+            }
+            else {
+                assertEquals(e, a);
+            }
+        }
+    }
+
+    List<Feature> read(Cursor<Feature> c) throws Exception {
+        List<Feature> list = new ArrayList<Feature>();
+        try {
+            for (Feature f : c) {
+                list.add(f);
+            }
+        }
+        finally {
+            c.close();
+        }
+        return list;
+    }
+
+    static class MemGroups {
+        long[] counts = new long[2];
+        double[] sums = new double[2];
+
+        void add(boolean gt, double value) {
+            counts[gt ? 1 : 0]++;
+            sums[gt ? 1 : 0] += value;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jeo.TestData;
+import org.jeo.feature.BasicFeature;
+import org.jeo.feature.Feature;
+import org.jeo.geom.Geom;
+import org.jeo.proj.Proj;
+import org.junit.Test;
+import org.osgeo.proj4j.CoordinateReferenceSystem;
+
+import com.vividsolutions.jts.geom.Geometry;
+
+public class CursorsTest {
+
+    @Test
+    public void testSelectFields() throws Exception {
+        VectorDataset states = TestData.states();
+        Feature f = Cursors.first(states.cursor(new Query()));
+        Feature g = Cursors.first(Cursors.selectFields(
+            states.cursor(new Query()), Arrays.asList("SAMP_POP", "STATE_NAME")));
+
+        // fields in schema order
+        assertEquals(Arrays.asList("STATE_NAME", "SAMP_POP"),
+            Arrays.asList(g.schema().getFields().get(0).getName(),
+                g.schema().getFields().get(1).getName()));
+        assertEquals(Arrays.asList(f.get("STATE_NAME"), f.get("SAMP_POP")), g.list());
+        assertEquals(f.get("SAMP_POP"), g.get(1));
+        assertEquals(2, g.map().size());
+        assertEquals(f.get("STATE_NAME"), g.map().get("STATE_NAME"));
+
+        assertTrue(g.has("STATE_NAME"));
+        assertFalse(g.has("STATE_ABBR"));
+        assertNull(g.get("STATE_ABBR"));
+        assertNull(g.geometry());
+        assertFalse(g.isSchemaless());
+        assertEquals(f.getId(), g.getId());
+
+        // values are read from the underlying feature
+        g.put("STATE_NAME", "foo");
+        assertEquals("foo", f.get("STATE_NAME"));
+        try {
+            g.put("STATE_ABBR", "foo");
+            throw new AssertionError("put of unselected field should fail");
+        }
+        catch(IllegalArgumentException e) {
+        }
+
+        g = Cursors.first(Cursors.selectFields(
+            states.cursor(new Query()), Arrays.asList("geometry", "STATE_NAME")));
+        assertSame(f.geometry(), g.geometry());
+    }
+
+    @Test
+    public void testSelectFieldsSchemaless() throws Exception {
+        Map<String,Object> values = new LinkedHashMap<String, Object>();
+        values.put("name", "foo");
+        values.put("geom", Geom.point(1, 2));
+        values.put("count", 12);
+
+        Feature f = new BasicFeature("1", values);
+        Feature g = Cursors.first(Cursors.selectFields(
+            Cursors.single(f), Arrays.asList("geom", "count")));
+
+        assertTrue(g.isSchemaless());
+        assertTrue(g.has("count"));
+        assertFalse(g.has("name"));
+        assertEquals(12, g.get("count"));
+        assertSame(values.get("geom"), g.geometry());
+        assertEquals(2, g.schema().size());
+        assertEquals(2, g.map().size());
+        assertEquals(Integer.class, g.schema().field("count").getType());
+    }
+
+    @Test
+    public void testReproject() throws Exception {
+        VectorDataset states = TestData.states();
+        CoordinateReferenceSystem to = Proj.crs("epsg:3005");
+
+        Feature f = Cursors.first(states.cursor(new Query()));
+        Feature g = Cursors.first(Cursors.reproject(states.cursor(new Query()), Proj.EPSG_4326, to));
+
+        Geometry expected = Proj.reproject(f.geometry(), Proj.EPSG_4326, to);
+        assertTrue(expected.equalsExact(g.geometry(), 1e-6));
+
+        // reprojected once
+        assertSame(g.geometry(), g.geometry());
+        assertSame(g.geometry(), g.get("geometry"));
+        assertSame(g.geometry(), g.get(f.schema().indexOf("geometry")));
+
+        List<Object> list = g.list();
+        assertEquals(f.list().size(), list.size());
+        assertSame(g.geometry(), list.get(f.schema().indexOf("geometry")));
+        assertEquals(f.get("STATE_NAME"), list.get(f.schema().indexOf("STATE_NAME")));
+
+        Map<String,Object> map = g.map();
+        assertEquals(f.map().keySet(), map.keySet());
+        assertSame(g.geometry(), map.get("geometry"));
+        for (Map.Entry<String, Object> e : map.entrySet()) {
+            if (e.getValue() instanceof Geometry) {
+                assertSame(g.geometry(), e.getValue());
+            }
+            else {
+                assertEquals(f.get(e.getKey()), e.getValue());
+            }
+        }
+
+        // copies, modifiable without affecting the feature
+        list.set(0, null);
+        map.put("STATE_NAME", "foo");
+        assertNotNull(g.get(0));
+        assertEquals(f.get("STATE_NAME"), g.get("STATE_NAME"));
+    }
+}
@@ -15,6 +15,7 @@
 package org.jeo.data;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -23,28 +24,36 @@ import static org.easymock.classextension.EasyMock.*;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.io.FileUtils;
 import org.easymock.IAnswer;
 import org.jeo.Tests;
+import org.jeo.data.mem.MemVector;
+import org.jeo.data.mem.MemWorkspace;
+import org.jeo.feature.SchemaBuilder;
 import org.jeo.filter.Filters;
 import org.jeo.geojson.GeoJSON;
 import org.jeo.geojson.GeoJSONDataset;
 import org.jeo.json.JSONObject;
 import org.jeo.json.JSONValue;
 import org.jeo.map.Style;
+import org.jeo.map.StyleBuilder;
 import org.jeo.util.Util;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.google.common.base.Charsets;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
 import com.google.common.io.Files;
+import com.vividsolutions.jts.geom.Envelope;
 
 public class DirectoryRepositoryTest {
 
@@ -220,6 +229,124 @@ public class DirectoryRepositoryTest {
         assertNotNull(repo.get("baz", Object.class));
     }
 
+    @Test
+    public void testMetadataCache() throws Exception {
+        File foo = new File(repo.getDirectory(), "foo.json");
+        Files.write("{\"type\": \"FeatureCollection\", \"features\": [{\"type\": \"Feature\", "
+            + "\"geometry\": {\"type\": \"Point\", \"coordinates\": [1, 2]}, "
+            + "\"properties\": {\"name\": \"one\"}}]}", foo, Charsets.UTF_8);
+
+        File cacheFile = new File(Tests.newTmpDir("dir", "meta"), "meta.json");
+        repo.setMetadataCache(new MetadataCache(cacheFile));
+        assertNull(repo.metadata("foo"));
+
+        repo.query(Filters.all());
+        for (int i = 0; i < 50 && repo.metadata("foo") == null; i++) {
+            Thread.sleep(100);
+        }
+
+        List<MetadataCache.Entry> entries = repo.metadata("foo");
+        assertNotNull(entries);
+        assertEquals(1, entries.size());
+        assertEquals(1, entries.get(0).getCount());
+        assertEquals(new Envelope(1, 1, 2, 2), entries.get(0).getBounds());
+        assertNotNull(entries.get(0).getSchema().field("name"));
+
+        Workspace ws = repo.get("foo", Workspace.class);
+        assertTrue(ws instanceof MetadataWorkspace);
+
+        Handle<Dataset> h = ws.list().iterator().next();
+        assertEquals(new Envelope(1, 1, 2, 2), h.getBounds());
+        assertNull(((MetadataWorkspace) ws).ws);
+
+        assertNotNull(ws.get("foo"));
+        ws.close();
+
+        // reload from disk
+        repo.getMetadataCache().close();
+        repo.setMetadataCache(new MetadataCache(cacheFile));
+        assertNotNull(repo.metadata("foo"));
+
+        // modifying the file invalidates the entry
+        foo.setLastModified(foo.lastModified() + 10000);
+        assertNull(repo.metadata("foo"));
+        assertTrue(repo.get("foo", Workspace.class) instanceof SingleWorkspace);
+    }
+
+    @Test
+    public void testMetadataCacheSave() throws Exception {
+        final AtomicBoolean closed = new AtomicBoolean();
+        MemVector data = new MemVector(
+            new SchemaBuilder("foo").field("name", String.class).schema()) {
+            @Override
+            public void close() {
+                closed.set(true);
+            }
+        };
+
+        File cacheFile = new File(Tests.newTmpDir("dir", "meta"), "meta.json");
+        MetadataCache cache = new MetadataCache(cacheFile);
+        List<File> files = Collections.emptyList();
+
+        // another background computation still pending, saving is deferred
+        cache.pending.add("bar");
+        cache.put("foo", files, new MemWorkspace(data));
+        assertTrue(closed.get());
+        assertNotNull(cache.get("foo", files));
+        assertFalse(cacheFile.exists());
+
+        cache.close();
+        assertTrue(cacheFile.exists());
+        assertNotNull(new MetadataCache(cacheFile).get("foo", files));
+    }
+
+    @Test
+    public void testStyleCache() throws Exception {
+        final Driver<Style> d = new FileDriver<Style>() {
+            @Override
+            public String getName() {
+                return "css";
+            }
+            @Override
+            public Class<Style> getType() {
+                return Style.class;
+            }
+            @Override
+            protected Style open(File file, Map<?, Object> opts) throws IOException {
+                // one rule per line
+                StyleBuilder sb = Style.build();
+                for (String line : Files.readLines(file, Charsets.UTF_8)) {
+                    sb.rule().select(line).set("line-color", "black").endRule();
+                }
+                return sb.style();
+            }
+        };
+
+        DirectoryRepository repo2 = new DirectoryRepository(repo.getDirectory(), 
+            new DriverRegistry() {
+                @Override
+                public Iterator<Driver<?>> list() {
+                    return (Iterator) Iterators.singletonIterator(d);
+                }
+            }, "css"
+        );
+
+        File css = new File(repo2.getDirectory(), "baz.css");
+        Files.write("#foo", css, Charsets.UTF_8);
+
+        Style style = repo2.get("baz", Style.class);
+        assertNotNull(style);
+        assertTrue(style == repo2.get("baz", Style.class));
+
+        Files.write("#foo\n#bar", css, Charsets.UTF_8);
+        css.setLastModified(css.lastModified() + 10000);
+
+        Style updated = repo2.get("baz", Style.class);
+        assertTrue(style != updated);
+        assertEquals(2, updated.getRules().size());
+        repo2.close();
+    }
+
     void writeMetaFile(JSONObject meta, String name) throws IOException {
         FileWriter fw = new FileWriter(new File(repo.getDirectory(), name));
         JSONValue.writeJSONString(meta, fw);
@@ -14,12 +14,22 @@
  */
 package org.jeo.data;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+
+import org.jeo.feature.BasicFeature;
+import org.jeo.feature.Feature;
 import org.jeo.feature.Schema;
 import org.jeo.feature.SchemaBuilder;
+import org.jeo.filter.Filter;
+import org.jeo.filter.cql.CQL;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
 public class QueryTest {
 
     @Test
@@ -32,4 +42,73 @@ public class QueryTest {
         assertEquals("pp", fields.get(1));
     }
 
+    @Test
+    public void testNearest() throws Exception {
+        GeometryFactory gf = new GeometryFactory();
+        List<Feature> features = new ArrayList<Feature>();
+        for (int i = 0; i < 10; i++) {
+            Feature f = new BasicFeature(String.valueOf(i));
+            f.put("geometry", gf.createPoint(new Coordinate(i % 5, 0)));
+            features.add(f);
+        }
+        features.add(new BasicFeature("none"));
+
+        Query q = new Query().nearest(new Coordinate(2.1, 0), 4);
+        assertEquals(Arrays.asList("2", "7", "3", "8"), ids(q, features));
+        assertEquals(4, q.adjustCount(features.size()));
+
+        q.offset(1).limit(2);
+        assertEquals(Arrays.asList("7", "3"), ids(q, features));
+        assertEquals(2, q.adjustCount(features.size()));
+
+        q = new Query().nearest(new Coordinate(0, 0), 20);
+        assertEquals(10, ids(q, features).size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNearestInvalid() {
+        new Query().nearest(new Coordinate(0, 0), 0);
+    }
+
+    @Test
+    public void testResidualFilter() throws Exception {
+        List<Feature> features = new ArrayList<Feature>();
+        for (int i = 0; i < 10; i++) {
+            Feature f = new BasicFeature(String.valueOf(i));
+            f.put("x", i);
+            f.put("y", i % 2);
+            features.add(f);
+        }
+
+        // features read natively already match x > 4
+        Query q = new Query().filter("x > 4 AND y = 1").limit(2);
+        QueryPlan qp = new QueryPlan(q);
+        assertEquals(q.getFilter(), qp.getResidualFilter());
+
+        Filter<Feature> residual = CQL.parse("y = 1");
+        qp.filtered(residual);
+        assertFalse(qp.isFiltered());
+        assertEquals(residual, qp.getResidualFilter());
+        assertEquals("native: [filter (partially)], in memory: [filter " + residual + ", limit]",
+            qp.toString());
+
+        List<String> ids = new ArrayList<String>();
+        for (Feature f : qp.apply(Cursors.create(features))) {
+            ids.add(f.getId());
+        }
+        assertEquals(Arrays.asList("1", "3"), ids);
+
+        qp = new QueryPlan(q);
+        qp.filtered(null);
+        assertTrue(qp.isFiltered());
+        assertNull(qp.getResidualFilter());
+    }
+
+    List<String> ids(Query q, List<Feature> features) throws Exception {
+        List<String> ids = new ArrayList<String>();
+        for (Feature f : new QueryPlan(q).apply(Cursors.create(features))) {
+            ids.add(f.getId());
+        }
+        return ids;
+    }
 }
@@ -17,6 +17,8 @@ package org.jeo.data;
 import static org.junit.Assert.*;
 
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
 
@@ -189,6 +191,41 @@ public abstract class VectorApiTestBase {
         assertCount(49, data, "MISSING > 5 OR P_MALE IS NOT NULL");
     }
 
+    @Test
+    public void testCursorReuse() throws Exception {
+        for (Query q : new Query[]{new Query(), new Query().filter("SAMP_POP > 1000000"),
+            new Query().fields("STATE_NAME", "SAMP_POP").limit(10)}) {
+
+            Map<String,Map<String,Object>> expected = new HashMap<String, Map<String,Object>>();
+            for (Feature f : data.cursor(q)) {
+                expected.put(f.getId(), f.map());
+            }
+
+            Cursor<Feature> cursor = Cursors.checkReuse(data.cursor(q.reuse()));
+            try {
+                Feature last = null;
+                while (cursor.hasNext()) {
+                    Feature f = cursor.next();
+                    assertEquals(expected.remove(f.getId()), f.map());
+
+                    if (last != null) {
+                        try {
+                            last.get("STATE_NAME");
+                            fail("feature used after call to next()");
+                        }
+                        catch(IllegalStateException e) {
+                        }
+                    }
+                    last = f;
+                }
+            }
+            finally {
+                cursor.close();
+            }
+            assertTrue(expected.isEmpty());
+        }
+    }
+
     @Test
     public void testFeature() throws Exception {
         Cursor<Feature> cursor = data.cursor(new Query());
@@ -0,0 +1,32 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.data.mem;
+
+import org.jeo.TestData;
+import org.jeo.data.VectorApiTestBase;
+import org.jeo.data.VectorDataset;
+
+public class MemVectorIndexedApiTest extends VectorApiTestBase {
+
+    @Override
+    protected VectorDataset createVectorData() {
+        MemVector mem = (MemVector) TestData.states();
+        mem.index("STATE_NAME", false);
+        mem.index("STATE_ABBR", true);
+        mem.index("SAMP_POP", true);
+        return mem;
+    }
+
+}
@@ -0,0 +1,349 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.data.mem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jeo.TestData;
+import org.jeo.data.Cursor;
+import org.jeo.data.Cursors;
+import org.jeo.data.Query;
+import org.jeo.data.QueryPlan;
+import org.jeo.feature.Feature;
+import org.jeo.feature.Features;
+import org.jeo.filter.cql.CQL;
+import org.jeo.geom.PackedRTree;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+
+public class MemVectorTest {
+
+    MemVector plain;
+    MemVector indexed;
+
+    @Before
+    public void setUp() {
+        plain = (MemVector) TestData.states();
+
+        indexed = (MemVector) TestData.states();
+        indexed.index("STATE_NAME", false);
+        indexed.index("SAMP_POP", true);
+        indexed.index("P_MALE", true);
+    }
+
+    @Test
+    public void testLookup() throws Exception {
+        for (String cql : Arrays.asList("STATE_NAME = 'Texas'", "STATE_NAME = 'Foo'",
+            "SAMP_POP > 2000000", "SAMP_POP <= 100000", "SAMP_POP >= '300000'",
+            "STATE_NAME IN ('Texas', 'Ohio', 'Utah')", "P_MALE < 0.48",
+            "SAMP_POP > 200000 AND P_MALE > P_FEMALE", "SAMP_POP < 100000 OR STATE_NAME = 'Ohio'",
+            "SAMP_POP < 100000 OR STATE_ABBR = 'OH'")) {
+            Query q = new Query().filter(cql);
+            assertEquals(cql, ids(plain.cursor(q)), ids(indexed.cursor(q)));
+            assertEquals(cql, plain.count(q), indexed.count(q));
+        }
+    }
+
+    @Test
+    public void testPlan() throws Exception {
+        assertTrue(plan("STATE_NAME = 'Texas'").isFiltered());
+        assertTrue(plan("SAMP_POP > 2000000").isFiltered());
+        assertTrue(plan("STATE_NAME IN ('Texas', 'Ohio')").isFiltered());
+        assertTrue(plan("STATE_NAME = 'Texas' OR SAMP_POP > 2000000").isFiltered());
+
+        // hash index doesn't do ranges
+        assertFalse(plan("STATE_NAME > 'Texas'").isFiltered());
+        // narrowed by the index, rest of filter applied afterward
+        assertFalse(plan("SAMP_POP > 2000000 AND P_MALE > P_FEMALE").isFiltered());
+        assertFalse(plan("SAMP_POP > 2000000 OR STATE_ABBR = 'OH'").isFiltered());
+    }
+
+    @Test
+    public void testId() throws Exception {
+        Feature f = Cursors.first(plain.cursor(new Query().filter("STATE_NAME = 'Texas'")));
+        Query q = new Query().filter(String.format("IN ('%s')", f.getId()));
+
+        QueryPlan qp = new QueryPlan(q);
+        assertEquals(Arrays.asList(f), plain.features(q, qp));
+        assertTrue(qp.isFiltered());
+    }
+
+    @Test
+    public void testBoundsAndLimit() throws Exception {
+        Envelope bbox = new Envelope(-106.649513, -93.507217, 25.845198, 36.493877);
+        Query q = new Query().bounds(bbox).filter("SAMP_POP > 100000");
+        // spatial index lookups are not in insertion order
+        assertEquals(new HashSet<String>(ids(plain.cursor(q))),
+            new HashSet<String>(ids(indexed.cursor(q))));
+        assertEquals(plain.count(q), indexed.count(q));
+
+        q = new Query().filter("SAMP_POP > 100000").offset(2).limit(5);
+        assertEquals(ids(plain.cursor(q)), ids(indexed.cursor(q)));
+        assertEquals(5, indexed.count(q));
+    }
+
+    @Test
+    public void testNearest() throws Exception {
+        Envelope bbox = new Envelope(-106.649513, -93.507217, 25.845198, 36.493877);
+        for (Coordinate p : Arrays.asList(new Coordinate(-97, 31), new Coordinate(-120, 45),
+            new Coordinate(-60, 10))) {
+            for (int k : Arrays.asList(1, 5, 100)) {
+                for (Query q : Arrays.asList(new Query(), new Query().bounds(bbox),
+                    new Query().filter("SAMP_POP > 2000000"), new Query().filter("P_MALE > P_FEMALE"),
+                    new Query().filter("SAMP_POP > 200000 AND P_MALE > P_FEMALE"),
+                    new Query().offset(1).limit(3))) {
+                    q.nearest(p, k);
+
+                    List<String> expected = ids(new QueryPlan(q).apply(
+                        Cursors.create(plain.getFeatures())));
+                    assertEquals(q.toString(), expected, ids(plain.cursor(q)));
+                    assertEquals(q.toString(), expected, ids(indexed.cursor(q)));
+                    assertEquals(q.toString(), expected.size(), indexed.count(q));
+                }
+            }
+        }
+
+        Query q = new Query().nearest(new Coordinate(-97, 31), 1);
+        assertEquals(Arrays.asList("Texas"), ids(indexed.cursor(q)));
+
+        QueryPlan qp = new QueryPlan(q);
+        indexed.features(q, qp);
+        assertTrue(qp.isNearest());
+    }
+
+    @Test
+    public void testModify() throws Exception {
+        Cursor<Feature> c = indexed.cursor(new Query().update().filter("STATE_NAME = 'Texas'"));
+        Feature f = c.next();
+        f.put("STATE_NAME", "Lone Star");
+        f.put("SAMP_POP", 1);
+        c.write();
+        c.close();
+
+        assertEquals(0, indexed.count(new Query().filter("STATE_NAME = 'Texas'")));
+        assertEquals(1, indexed.count(new Query().filter("STATE_NAME = 'Lone Star'")));
+        assertEquals(1, indexed.count(new Query().filter("SAMP_POP < 2")));
+
+        c = indexed.cursor(new Query().update().filter("STATE_NAME = 'Lone Star'"));
+        c.next();
+        c.remove();
+        c.close();
+
+        assertEquals(0, indexed.count(new Query().filter("STATE_NAME = 'Lone Star'")));
+        assertEquals(0, indexed.count(new Query().filter("SAMP_POP < 2")));
+        assertEquals(48, indexed.count(new Query()));
+    }
+
+    @Test
+    public void testLostUpdate() throws Exception {
+        Cursor<Feature> c = indexed.cursor(new Query().update().filter("STATE_NAME = 'Texas'"));
+        Feature f = c.next();
+
+        // another writer removes the feature first
+        indexed.remove(Cursors.first(indexed.cursor(
+            new Query().filter("STATE_NAME = 'Texas'"))));
+
+        f.put("SAMP_POP", 1);
+        try {
+            c.write();
+            fail("lost update not reported");
+        }
+        catch(IOException e) {
+        }
+        c.close();
+
+        assertEquals(0, indexed.count(new Query().filter("SAMP_POP = 1")));
+        assertEquals(48, indexed.count(new Query()));
+    }
+
+    @Test
+    public void testDelta() throws Exception {
+        PackedRTree index = indexed.snapshot().index;
+
+        Cursor<Feature> c = indexed.cursor(new Query().update().filter("STATE_NAME = 'Ohio'"));
+        Feature f = c.next();
+        f.put("SAMP_POP", 1);
+        c.write();
+        c.close();
+
+        Feature tx = Cursors.first(indexed.cursor(new Query().filter("STATE_NAME = 'Texas'")));
+        indexed.remove(tx);
+
+        Feature copy = Features.retype(tx, tx.schema());
+        copy.put("STATE_NAME", "Texas Two");
+        indexed.add(copy);
+
+        // small writes don't rebuild the indexes
+        assertSame(index, indexed.snapshot().index);
+        assertEquals(49, indexed.count(new Query()));
+
+        Envelope bbox = new Envelope(-106.649513, -93.507217, 25.845198, 36.493877);
+        for (Query q : Arrays.asList(new Query().filter("SAMP_POP < 100000"),
+            new Query().filter("STATE_NAME IN ('Texas', 'Texas Two', 'Ohio')"),
+            new Query().filter("SAMP_POP = 1 OR STATE_NAME = 'Texas Two'"),
+            new Query().bounds(bbox), new Query().bounds(bbox).filter("SAMP_POP > 100000"),
+            new Query().nearest(new Coordinate(-97, 31), 3),
+            new Query().nearest(new Coordinate(-97, 31), 3).filter("SAMP_POP > 100000"))) {
+            List<String> expected = ids(new QueryPlan(q).apply(
+                Cursors.create(indexed.getFeatures())));
+            List<String> actual = ids(indexed.cursor(q));
+            if (q.getNearest() == null) {
+                Collections.sort(expected);
+                Collections.sort(actual);
+            }
+            assertEquals(q.toString(), expected, actual);
+            assertEquals(q.toString(), expected.size(), indexed.count(q));
+        }
+        assertEquals(plain.bounds(), indexed.bounds());
+
+        // enough writes rebuild them
+        for (int i = 0; i < MemVector.MIN_DELTA; i++) {
+            indexed.add(Features.retype(tx, tx.schema()));
+        }
+        assertNotSame(index, indexed.snapshot().index);
+        assertEquals(0, indexed.snapshot().logSize);
+        assertEquals(49 + MemVector.MIN_DELTA, indexed.count(new Query()));
+    }
+
+    @Test
+    public void testMixedTypes() throws Exception {
+        assertTrue(indexed.snapshot().fields.get("SAMP_POP").usable);
+
+        Feature f = Cursors.first(indexed.cursor(new Query().filter("STATE_NAME = 'Texas'")));
+        indexed.remove(f);
+        f.put("SAMP_POP", 1.5);
+        indexed.add(f);
+        assertEquals(1, indexed.count(new Query().filter(CQL.parse("SAMP_POP < 2"))));
+
+        // rebuild the indexes
+        indexed.index("SAMP_POP", true);
+        FieldIndex idx = indexed.snapshot().fields.get("SAMP_POP");
+        assertFalse(idx.usable);
+        assertNull(idx.compare(org.jeo.filter.Comparison.Type.LESS, 2));
+        assertEquals(1, indexed.count(new Query().filter(CQL.parse("SAMP_POP < 2"))));
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        Cursor<Feature> c = indexed.cursor(new Query().filter("SAMP_POP > 2000000"));
+        long count = indexed.count(new Query().filter("SAMP_POP > 2000000"));
+
+        Cursor<Feature> u = indexed.cursor(new Query().update());
+        for (Feature f : u) {
+            if ("Texas".equals(f.get("STATE_NAME"))) {
+                u.remove();
+            }
+            else {
+                f.put("SAMP_POP", 1);
+                u.write();
+            }
+        }
+        u.close();
+
+        // open cursor sees the features as they were when it was created
+        assertEquals(count, Cursors.size(c));
+        assertEquals(0, indexed.count(new Query().filter("SAMP_POP > 2000000")));
+        assertEquals(48, indexed.count(new Query().filter("SAMP_POP = 1")));
+    }
+
+    @Test
+    public void testConcurrent() throws Exception {
+        final List<Feature> features = new ArrayList<Feature>(indexed.getFeatures());
+        final int n = features.size();
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+
+        // writer alternately removes and adds back all features, readers must always see a
+        // consistent count
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 20; i++) {
+                    for (Feature f : features.subList(0, n / 2)) {
+                        indexed.remove(f);
+                    }
+                    indexed.removeAll(features.subList(n / 2, n));
+                    indexed.addAll(features);
+                }
+            }
+        };
+
+        List<Thread> readers = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++) {
+            readers.add(new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < 200; j++) {
+                            Cursor<Feature> c = indexed.cursor(new Query().filter("SAMP_POP > 0"));
+                            int size = Cursors.size(c);
+                            long count = indexed.count(new Query());
+                            if (size < 0 || size > n || count < 0 || count > n) {
+                                throw new IllegalStateException(size + ", " + count);
+                            }
+                        }
+                    }
+                    catch(Throwable t) {
+                        error.set(t);
+                    }
+                }
+            });
+        }
+
+        writer.start();
+        for (Thread t : readers) {
+            t.start();
+        }
+        writer.join();
+        for (Thread t : readers) {
+            t.join();
+        }
+
+        assertNull(error.get());
+        assertEquals(n, indexed.count(new Query()));
+        assertEquals(ids(plain.cursor(new Query())), ids(indexed.cursor(new Query())));
+    }
+
+    QueryPlan plan(String cql) throws Exception {
+        Query q = new Query().filter(cql);
+        QueryPlan qp = new QueryPlan(q);
+        indexed.features(q, qp);
+        return qp;
+    }
+
+    List<String> ids(Cursor<Feature> c) throws Exception {
+        List<String> ids = new ArrayList<String>();
+        for (Feature f : c) {
+            ids.add((String) f.get("STATE_NAME"));
+        }
+        return ids;
+    }
+}
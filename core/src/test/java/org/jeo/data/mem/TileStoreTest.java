@@ -0,0 +1,198 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.data.mem;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jeo.data.Cursor;
+import org.jeo.tile.Tile;
+import org.jeo.tile.TilePyramid;
+import org.junit.Test;
+
+public class TileStoreTest {
+
+    @Test
+    public void testKey() {
+        int[][] idx = {{0, 0, 0}, {1, 1, 0}, {14, 16383, 9876}, {29, (1<<29)-1, (1<<29)-1}};
+        for (int[] i : idx) {
+            long key = TileStore.key(i[0], i[1], i[2]);
+            assertTrue(key >= 0);
+            assertEquals(i[0], TileStore.z(key));
+            assertEquals(i[1], TileStore.x(key));
+            assertEquals(i[2], TileStore.y(key));
+        }
+
+        // zoom level major, morton order within a level
+        assertTrue(TileStore.key(1, 1, 1) < TileStore.key(2, 0, 0));
+        assertTrue(TileStore.key(2, 1, 0) < TileStore.key(2, 0, 1));
+        assertTrue(TileStore.key(2, 1, 1) < TileStore.key(2, 2, 0));
+    }
+
+    @Test
+    public void testGetPut() {
+        TileStore store = new TileStore();
+        store.put(tile(3, 4, 5, 10));
+
+        Tile t = store.get(3, 4, 5);
+        assertNotNull(t);
+        assertEquals(Integer.valueOf(4), t.getX());
+        assertEquals("image/png", t.getMimeType());
+        assertArrayEquals(data(10), t.getData());
+        assertNull(store.get(3, 5, 4));
+
+        store.put(tile(3, 4, 5, 20));
+        assertEquals(1, store.size());
+        assertEquals(20, store.bytes());
+
+        assertTrue(store.remove(3, 4, 5));
+        assertFalse(store.remove(3, 4, 5));
+        assertEquals(0, store.bytes());
+    }
+
+    @Test
+    public void testKeys() {
+        TileStore store = new TileStore();
+        for (int x = 0; x < 8; x++) {
+            for (int y = 0; y < 8; y++) {
+                store.put(tile(3, x, y, 1));
+            }
+        }
+        store.put(tile(4, 2, 2, 1));
+
+        long[] keys = store.keys(3, 3, 2, 4, 1, 2);
+        assertEquals(6, keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            int x = TileStore.x(keys[i]), y = TileStore.y(keys[i]);
+            assertTrue(x >= 2 && x <= 4 && y >= 1 && y <= 2);
+            if (i > 0) {
+                assertTrue(keys[i-1] < keys[i]);
+            }
+        }
+
+        assertEquals(65, store.keys(0, TileStore.MAX_ZOOM, 0, 100, 0, 100).length);
+
+        store.clear(3);
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void testEvict() {
+        TileStore store = new TileStore(25);
+        store.put(tile(1, 0, 0, 10));
+        store.put(tile(1, 1, 0, 10));
+
+        // touch the first
+        assertNotNull(store.get(1, 0, 0));
+
+        store.put(tile(1, 0, 1, 10));
+        assertEquals(2, store.size());
+        assertEquals(20, store.bytes());
+        assertNotNull(store.get(1, 0, 0));
+        assertNull(store.get(1, 1, 0));
+
+        // a single tile larger than the budget is kept
+        store.put(tile(1, 1, 1, 30));
+        assertEquals(1, store.size());
+        assertNotNull(store.get(1, 1, 1));
+    }
+
+    @Test
+    public void testHighZoom() throws Exception {
+        TilePyramid p = TilePyramid.build().grid(1, 1).grids(18).pyramid();
+        MemTileDataset mem = new MemTileDataset("foo", p);
+
+        mem.put(tile(17, 100000, 70000, 5));
+        mem.put(tile(17, 100001, 70000, 5));
+        mem.put(tile(16, 50000, 35000, 5));
+
+        assertNotNull(mem.read(17, 100000, 70000));
+        assertNull(mem.read(17, 100000, 70001));
+
+        List<Tile> tiles = new ArrayList<Tile>();
+        Cursor<Tile> c = mem.read(17, 17, -1, -1, -1, -1);
+        for (Tile t : c) {
+            tiles.add(t);
+        }
+        assertEquals(2, tiles.size());
+        assertEquals(Integer.valueOf(100000), tiles.get(0).getX());
+        assertEquals(Integer.valueOf(100001), tiles.get(1).getX());
+
+        c = mem.read(-1, -1, -1, -1, -1, -1);
+        int n = 0;
+        while (c.hasNext()) {
+            assertNotNull(c.next());
+            n++;
+        }
+        assertEquals(3, n);
+
+        // ranges beyond the indexes a key can hold
+        tiles.clear();
+        c = mem.read(17, 17, 0, 1L << 29, 0, 1L << 40);
+        for (Tile t : c) {
+            tiles.add(t);
+        }
+        assertEquals(2, tiles.size());
+        assertFalse(mem.read(17, 17, 1L << 29, -1, 0, -1).hasNext());
+    }
+
+    @Test
+    public void testSlabs() {
+        TileStore store = new TileStore();
+        int n = TileStore.SLAB_SIZE / 1000 + 1;
+        for (int i = 0; i < n; i++) {
+            store.put(tile(10, i, 0, 1000));
+        }
+        store.put(tile(10, 0, 1, TileStore.SLAB_SIZE));
+
+        // packed into two slabs, the large tile in its own buffer
+        TileStore.Slab first = store.index.get(TileStore.key(10, 0, 0)).slab;
+        assertSame(first, store.index.get(TileStore.key(10, n-2, 0)).slab);
+        assertNotSame(first, store.slab);
+        assertNotSame(store.slab, store.index.get(TileStore.key(10, 0, 1)).slab);
+
+        for (int i = 0; i < n; i++) {
+            assertArrayEquals(data(1000), store.get(10, i, 0).getData());
+        }
+        assertArrayEquals(data(TileStore.SLAB_SIZE), store.get(10, 0, 1).getData());
+        assertEquals(n * 1000 + TileStore.SLAB_SIZE, store.bytes());
+
+        // emptying the current slab rewinds it
+        store.remove(10, n-1, 0);
+        assertEquals(0, store.slab.buf.position());
+        assertEquals((n-1) * 1000, first.live);
+    }
+
+    Tile tile(int z, int x, int y, int size) {
+        return new Tile(z, x, y, data(size), "image/png");
+    }
+
+    byte[] data(int size) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) i;
+        }
+        return data;
+    }
+}
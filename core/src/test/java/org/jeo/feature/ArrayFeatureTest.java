@@ -0,0 +1,74 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.feature;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.jeo.geom.Geom;
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Point;
+
+public class ArrayFeatureTest {
+
+    Schema schema = Schema.build("widgets").fields("name:String,cost:Double,geom:Point").schema();
+
+    @Test
+    public void testGet() {
+        Point p = Geom.point(0, 0);
+        Object[] values = new Object[]{"bomb", 1.99, p};
+        ArrayFeature f = new ArrayFeature("1", values, schema);
+
+        assertEquals("bomb", f.get("name"));
+        assertEquals(1.99, f.get(1));
+        assertNull(f.get("blah"));
+        assertTrue(f.has("cost"));
+        assertFalse(f.has("blah"));
+        assertEquals(p, f.geometry());
+        assertEquals(Arrays.asList(values), f.list());
+        assertEquals(Arrays.asList("name", "cost", "geom"),
+            Arrays.asList(f.map().keySet().toArray()));
+
+        // values are not copied
+        values[0] = "dynamite";
+        assertEquals("dynamite", f.get("name"));
+    }
+
+    @Test
+    public void testPut() {
+        ArrayFeature f = new ArrayFeature(null, schema);
+        assertNotNull(f.getId());
+        assertNull(f.get("name"));
+
+        f.put("name", "bomb");
+        f.put(Geom.point(1, 1));
+        assertEquals("bomb", f.values()[0]);
+        assertEquals(Geom.point(1, 1), f.values()[2]);
+
+        try {
+            f.put("blah", 1);
+            fail();
+        }
+        catch(IllegalArgumentException expected) {
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongSize() {
+        new ArrayFeature("1", new Object[]{"bomb"}, schema);
+    }
+}
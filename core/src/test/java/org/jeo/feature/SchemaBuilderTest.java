@@ -49,4 +49,21 @@ public class SchemaBuilderTest {
         assertEquals(schema.field("sp"), selected.fields.get(0));
         assertEquals(schema.field("pp"), selected.fields.get(1));
     }
+
+    @Test
+    public void testIndex() {
+        SchemaBuilder sb = new SchemaBuilder("widgets").field("sp", String.class)
+            .field("pp", Point.class, "epsg:4326").field("ip", Integer.class);
+        Schema schema = sb.schema();
+
+        assertEquals(0, schema.indexOf("sp"));
+        assertEquals(2, schema.indexOf("ip"));
+        assertEquals(-1, schema.indexOf("blah"));
+        assertEquals("pp", schema.geometry().getName());
+
+        // further changes to the builder don't affect the built schema
+        sb.field("dp", Double.class);
+        assertEquals(3, schema.size());
+        assertEquals(-1, schema.indexOf("dp"));
+    }
 }
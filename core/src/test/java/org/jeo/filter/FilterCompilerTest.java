@@ -0,0 +1,128 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jeo.feature.BasicFeature;
+import org.jeo.feature.Feature;
+import org.jeo.feature.Features;
+import org.jeo.feature.Schema;
+import org.jeo.filter.cql.CQL;
+import org.jeo.geom.GeomBuilder;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Point;
+
+public class FilterCompilerTest {
+
+    Schema schema;
+    List<Feature> features;
+
+    @Before
+    public void setUp() {
+        schema = Schema.build("widgets").field("geom", Point.class).field("name", String.class)
+            .field("cost", Double.class).field("count", Integer.class).schema();
+
+        GeomBuilder gb = new GeomBuilder();
+        features = new ArrayList<Feature>();
+        for (int i = 0; i < 20; i++) {
+            features.add(Features.create(String.valueOf(i), schema, gb.point(i, i).toPoint(),
+                i % 5 == 0 ? null : "widget" + i, i * 1.5, i));
+        }
+    }
+
+    @Test
+    public void testEquivalent() throws Exception {
+        for (String cql : Arrays.asList("count = 3", "count < 5", "count >= 10.5", "3 < count",
+            "cost > 6", "cost = 3", "name = 'widget3'", "count <> 2", "count IN (1, 2, 3)",
+            "count NOT IN (1, 2, 3)", "name IN ('widget1', 'widget7')", "name LIKE 'widget1%'",
+            "name LIKE '%1'", "name LIKE '%dget1%'", "name LIKE 'w.*3'", "name IS NULL",
+            "name IS NOT NULL", "count > 2 AND cost < 20 AND name IS NOT NULL",
+            "count < 2 OR count > 18 OR name = 'widget10'", "NOT (count < 10)",
+            "count + 1 = 5", "foo = 1", "BBOX(geom, 0, 0, 5, 5)",
+            "INTERSECTS(geom, POLYGON((0 0, 10 0, 10 10, 0 10, 0 0)))",
+            "DISJOINT(geom, POLYGON((0 0, 10 0, 10 10, 0 10, 0 0)))",
+            "IN ('1', '4', '100')")) {
+            assertEquivalent(CQL.parse(cql));
+        }
+    }
+
+    @Test
+    public void testConvertLiteral() {
+        Filter<Feature> f = FilterCompiler.compile(new Comparison<Feature>(
+            Comparison.Type.EQUAL, new Property("count"), new Literal("4")), schema);
+        assertTrue(f instanceof FilterCompiler.TypedComparison);
+        assertEquals(4, ((FilterCompiler.TypedComparison<?>)f).converted);
+        assertEquivalent(f);
+    }
+
+    @Test
+    public void testConstantFolding() throws Exception {
+        assertTrue(FilterCompiler.compile(CQL.parse("1 = 1"), schema) instanceof All);
+        assertTrue(FilterCompiler.compile(CQL.parse("1 = 2"), schema) instanceof None);
+        assertTrue(FilterCompiler.compile(CQL.parse("1 = 2 AND count = 3"), schema) instanceof None);
+        assertTrue(FilterCompiler.compile(CQL.parse("1 = 1 OR count = 3"), schema) instanceof All);
+        assertTrue(FilterCompiler.compile(CQL.parse("NOT (1 = 2)"), schema) instanceof All);
+
+        Filter<?> f = FilterCompiler.compile(CQL.parse("1 = 1 AND count = 3"), schema);
+        assertTrue(f instanceof Comparison);
+
+        f = FilterCompiler.compile(CQL.parse("count + (2 * 3) = 9"), schema);
+        assertTrue(((Comparison<?>)f).getLeft() instanceof Math);
+        assertTrue(((Math)((Comparison<?>)f).getLeft()).getRight() instanceof Literal);
+    }
+
+    @Test
+    public void testReorder() throws Exception {
+        Filter<?> f = FilterCompiler.compile(CQL.parse(
+            "INTERSECTS(geom, POINT(1 1)) AND name LIKE 'w.*' AND count = 1"), schema);
+        assertTrue(f instanceof Logic);
+
+        List<? extends Filter<?>> parts = ((Logic<?>)f).getParts();
+        assertEquals(3, parts.size());
+        assertTrue(parts.get(0) instanceof Comparison);
+        assertTrue(parts.get(1) instanceof Like);
+        assertTrue(parts.get(2) instanceof Spatial);
+    }
+
+    @Test
+    public void testOtherSchema() throws Exception {
+        Filter<Feature> f = FilterCompiler.compile(CQL.parse("count = 3 AND name = 'foo'"), schema);
+
+        Map<String,Object> map = new LinkedHashMap<String, Object>();
+        map.put("name", "foo");
+        map.put("count", 3);
+        assertTrue(f.apply(new BasicFeature(null, map)));
+
+        // map ordered differently than the schema
+        assertTrue(f.apply(new BasicFeature(null, map, schema)));
+    }
+
+    void assertEquivalent(Filter<Feature> filter) {
+        Filter<Feature> compiled = FilterCompiler.compile(filter, schema);
+        for (Feature f : features) {
+            assertEquals(filter + " " + f, filter.apply(f), compiled.apply(f));
+        }
+    }
+}
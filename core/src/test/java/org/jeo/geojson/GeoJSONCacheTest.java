@@ -0,0 +1,124 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.geojson;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.util.Map;
+
+import org.jeo.Tests;
+import org.jeo.data.Cursors;
+import org.jeo.data.Query;
+import org.jeo.data.VectorApiTestBase;
+import org.jeo.data.VectorDataset;
+import org.jeo.feature.BasicFeature;
+import org.jeo.feature.Feature;
+import org.jeo.geom.Geom;
+import org.jeo.util.Util;
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.Polygon;
+
+public class GeoJSONCacheTest extends VectorApiTestBase {
+
+    File dir;
+
+    @Override
+    protected VectorDataset createVectorData() throws Exception {
+        dir = Tests.unzip(getClass().getResourceAsStream("states.zip"), Tests.newTmpDir());
+        return new GeoJSON().open((Map) Util.map("file", new File(dir, "states.json"), 
+            "cache", true, "cache_dir", new File(dir, "cache")));
+    }
+
+    @Test
+    public void testCacheFile() throws Exception {
+        GeoJSONDataset data = GeoJSON.open(new File(dir, "states.json"));
+
+        GeoJSONDataset cached = new GeoJSONDataset(data.getFile(), new File(dir, "cache"));
+        assertEquals(data.count(new Query()), cached.count(new Query()));
+        assertTrue(cached.cache.getFile().exists());
+
+        Feature f1 = Cursors.first(data.cursor(new Query().filter("STATE_ABBR = 'TX'")));
+        Feature f2 = Cursors.first(cached.cursor(new Query().filter("STATE_ABBR = 'TX'")));
+        assertEquals(f1.getId(), f2.getId());
+        assertEquals(f1.get("STATE_NAME"), f2.get("STATE_NAME"));
+        assertEquals(f1.get("SAMP_POP"), f2.get("SAMP_POP"));
+        assertTrue(f1.geometry().equalsExact(f2.geometry()));
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        File file = new File(dir, "small.json");
+        write(file, Geom.point(1, 2));
+
+        GeoJSONDataset data = new GeoJSONDataset(file, new File(dir, "cache"));
+        assertEquals(1, data.count(new Query()));
+        assertEquals(1, data.bounds().getMinX(), 0.1);
+
+        // ensure the modification time changes
+        write(file, Geom.point(3, 4), Geom.polygon(10,10, 10,20, 20,20, 20,10, 10,10));
+        file.setLastModified(file.lastModified() + 10000);
+
+        assertEquals(2, data.count(new Query()));
+        assertEquals(3, data.bounds().getMinX(), 0.1);
+        assertTrue(Cursors.first(data.cursor(new Query().filter("name = 'f1'"))).geometry()
+            instanceof Polygon);
+    }
+
+    @Test
+    public void testNoGeometry() throws Exception {
+        File file = new File(dir, "empty.json");
+        write(file);
+
+        GeoJSONDataset data = new GeoJSONDataset(file, new File(dir, "cache"));
+        assertEquals(0, data.count(new Query()));
+        assertTrue(data.bounds().isNull());
+        assertTrue(data.cache.getFile().exists());
+
+        // features without geometry
+        write(file, null, null);
+        file.setLastModified(file.lastModified() + 10000);
+
+        data = new GeoJSONDataset(file, new File(dir, "cache"));
+        assertEquals(2, data.count(new Query()));
+        assertTrue(data.bounds().isNull());
+        assertTrue(data.cache.getFile().exists());
+    }
+
+    void write(File file, Geometry... geoms) throws Exception {
+        Writer out = new FileWriter(file);
+        try {
+            GeoJSONWriter w = new GeoJSONWriter(out);
+            w.featureCollection();
+            for (int i = 0; i < geoms.length; i++) {
+                Feature f = new BasicFeature("f" + i);
+                if (geoms[i] != null) {
+                    f.put("geometry", geoms[i]);
+                }
+                f.put("name", "f" + i);
+                w.feature(f);
+            }
+            w.endFeatureCollection();
+            w.flush();
+        }
+        finally {
+            out.close();
+        }
+    }
+}
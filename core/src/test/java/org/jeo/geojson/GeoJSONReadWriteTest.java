@@ -41,6 +41,7 @@ import com.vividsolutions.jts.geom.MultiPoint;
 import com.vividsolutions.jts.geom.MultiPolygon;
 import com.vividsolutions.jts.geom.Point;
 import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.geom.impl.PackedCoordinateSequence;
 
 public class GeoJSONReadWriteTest {
 
@@ -64,6 +65,28 @@ public class GeoJSONReadWriteTest {
         assertTrue(point3d().equals(reader.point(point3dText())));
     }
 
+    @Test
+    public void testParseNumbers() throws Exception {
+        String[] nums = {"0", "-0.5", "12", "1.25e3", "-7.5E-4", "123.456789012345", 
+            "0.1234567890123456789", "1e300", "-2.5e-310", "179.99999999999997"};
+        for (String n : nums) {
+            Point p = reader.point(String.format("{\"type\": \"Point\", \"coordinates\": [%s, %s]}", n, n));
+            assertEquals(n, Double.parseDouble(n), p.getX(), 0);
+            assertEquals(n, Double.parseDouble(n), p.getY(), 0);
+        }
+    }
+
+    @Test
+    public void testParsePackedCoordinates() throws Exception {
+        LineString l = reader.lineString(lineText());
+        assertTrue(l.getCoordinateSequence() instanceof PackedCoordinateSequence);
+        assertEquals(2, l.getCoordinateSequence().getDimension());
+
+        Polygon p = reader.polygon(polygonText3d());
+        assertTrue(p.getExteriorRing().getCoordinateSequence() instanceof PackedCoordinateSequence);
+        assertEquals(3, p.getExteriorRing().getCoordinateSequence().getDimension());
+    }
+
     @Test
     public void testEncodePoint() throws Exception {
         assertEquals(pointText(), toString(writer.point(point())));
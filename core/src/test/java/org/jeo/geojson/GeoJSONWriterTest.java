@@ -18,6 +18,7 @@ import static org.junit.Assert.*;
 
 import java.io.IOException;
 import java.io.StringWriter;
+import java.util.Random;
 
 import org.jeo.geom.Geom;
 import org.jeo.json.JSONArray;
@@ -121,6 +122,80 @@ public class GeoJSONWriterTest {
         assertEquals(0, ((JSONObject)obj.get("bar")).size());
     }
 
+    @Test
+    public void testNumbers() throws Exception {
+        w.array();
+        w.value(1d).value(-2.5).value(0.1).value(1234567.891).value(1e-7).value(1e21)
+         .value(Math.PI).value(12L).value((Number) Double.valueOf(0.3))
+         .value((Number) Double.NaN).value((Number) Integer.valueOf(-7));
+        w.endArray();
+
+        assertEquals("[1.0,-2.5,0.1,1234567.891,1.0E-7,1.0E21,3.141592653589793,12,0.3,null,-7]",
+            string());
+    }
+
+    @Test
+    public void testShortestRoundTrip() throws Exception {
+        Random r = new Random(0);
+
+        w.array();
+        double[] values = new double[1000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (r.nextDouble() - 0.5) * Math.pow(10, r.nextInt(10) - 2);
+            w.value(values[i]);
+        }
+        w.endArray();
+
+        JSONArray arr = (JSONArray) JSONValue.parse(string());
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(values[i], ((Number) arr.get(i)).doubleValue(), 0);
+        }
+    }
+
+    @Test
+    public void testPrecision() throws Exception {
+        w.setPrecision(3);
+        w.lineString(Geom.lineString(1.23456, -2.0001, 100.5, 0.0004));
+
+        assertEquals("{\"type\":\"LineString\",\"coordinates\":[[1.235,-2],[100.5,0]]}", 
+            string());
+    }
+
+    @Test
+    public void testCoordinates() throws Exception {
+        w.multiLineString(Geom.build().points(1, 2, 3, 4).lineString().points(5.5, 6, 7, 8)
+            .lineString().toMultiLineString());
+
+        assertEquals("{\"type\":\"MultiLineString\",\"coordinates\":" 
+            + "[[[1.0,2.0],[3.0,4.0]],[[5.5,6.0],[7.0,8.0]]]}", string());
+    }
+
+    @Test
+    public void testEscape() throws Exception {
+        w.object().key("a\"b").value("c/d\\e\n\u0001\u2028").endObject();
+        assertEquals("{\"a\\\"b\":\"c\\/d\\\\e\\n\\u0001\\u2028\"}", string());
+
+        JSONObject obj = (JSONObject) JSONValue.parse(string());
+        assertEquals("c/d\\e\n\u0001\u2028", obj.get("a\"b"));
+    }
+
+    @Test
+    public void testLargeOutput() throws Exception {
+        StringWriter out = new StringWriter();
+        GeoJSONWriter w = new GeoJSONWriter(out);
+        w.object().key("features").array();
+        for (int i = 0; i < 10000; i++) {
+            w.value("feature " + i);
+        }
+
+        // buffer is written out once filled
+        assertTrue(out.getBuffer().length() > 0);
+
+        w.endArray().endObject();
+        JSONObject obj = (JSONObject) JSONValue.parse(out.toString());
+        assertEquals(10000, ((JSONArray)obj.get("features")).size());
+    }
+
     String string() {
         return w.getWriter().toString();
     }
@@ -27,6 +27,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.GeometryCollection;
 import com.vividsolutions.jts.geom.LineString;
 import com.vividsolutions.jts.geom.MultiPoint;
@@ -146,6 +147,45 @@ public class CoordinatePathTest {
         
     }
 
+    @Test
+    public void testClipLineString() {
+        LineString l = gb.points(-5,5, 5,5, 5,15, 8,15, 8,5, 15,5).toLineString();
+        CoordinatePath li = CoordinatePath.create(l, new Envelope(0, 10, 0, 10));
+
+        assertTrue(li instanceof ClippedPath);
+        assertSequence(li, 0,5,MOVE_TO, 5,5,LINE_TO, 5,10,LINE_TO, 8,10,MOVE_TO, 8,5,LINE_TO, 
+            10,5,LINE_TO);
+        li.reset();
+        assertSequence(li, 0,5,MOVE_TO, 5,5,LINE_TO, 5,10,LINE_TO, 8,10,MOVE_TO, 8,5,LINE_TO, 
+            10,5,LINE_TO);
+    }
+
+    @Test
+    public void testClipPolygon() {
+        Polygon p = gb.points(-5,-5, 5,-5, 5,5, -5,5, -5,-5).ring()
+            .points(20,20, 30,20, 30,30, 20,20).ring().toPolygon();
+        CoordinatePath pi = CoordinatePath.create(p, new Envelope(0, 10, 0, 10));
+
+        assertSequence(pi, 5,5,MOVE_TO, 0,5,LINE_TO, 0,0,LINE_TO, 5,0,LINE_TO, 5,5,CLOSE);
+    }
+
+    @Test
+    public void testClipMultiPoint() {
+        MultiPoint mp = gb.points(1,1, 20,20, 3,3).toMultiPoint();
+        CoordinatePath mpi = CoordinatePath.create(mp, new Envelope(0, 10, 0, 10));
+
+        assertSequence(mpi, 1,1,MOVE_TO, 3,3,MOVE_TO);
+    }
+
+    @Test
+    public void testClipContained() {
+        LineString l = gb.points(1,2,3,4,5,6).toLineString();
+        CoordinatePath li = CoordinatePath.create(l, new Envelope(0, 10, 0, 10));
+
+        assertFalse(li instanceof ClippedPath);
+        assertSequence(li, 1,2,MOVE_TO, 3,4,LINE_TO, 5,6,LINE_TO);
+    }
+
     void assertSequence(CoordinatePath it, Object...seq) {
         if (seq.length % 3 != 0) {
             throw new IllegalArgumentException();
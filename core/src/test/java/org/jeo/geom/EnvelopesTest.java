@@ -16,6 +16,9 @@ package org.jeo.geom;
 
 import static org.junit.Assert.*;
 
+import java.util.List;
+import java.util.Random;
+
 import org.junit.Test;
 
 import com.vividsolutions.jts.geom.Envelope;
@@ -54,4 +57,25 @@ public class EnvelopesTest {
         assertEquals(0.5f, r.getWidth() / e.getWidth(), 0.1);
         assertEquals(0.5f, r.getHeight() / e.getHeight(), 0.1);
     }
+
+    @Test
+    public void testRandomsSeeded() {
+        Envelope e = new Envelope(0,10,0,10);
+        List<Envelope> a = Envelopes.randoms(e, 0.1f, 0.5f, 10, new Random(42));
+        List<Envelope> b = Envelopes.randoms(e, 0.1f, 0.5f, 10, new Random(42));
+
+        assertEquals(10, a.size());
+        assertEquals(a, b);
+        for (Envelope r : a) {
+            assertTrue(e.contains(r));
+        }
+
+        // spread over the whole envelope
+        Envelope extent = new Envelope();
+        for (Envelope r : Envelopes.randoms(e, 0.01f, 0.02f, 100, new Random(42))) {
+            extent.expandToInclude(r);
+        }
+        assertTrue(extent.getWidth() > 5);
+        assertTrue(extent.getHeight() > 5);
+    }
 }
@@ -0,0 +1,168 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.geom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+public class PackedRTreeTest {
+
+    static final Envelope WORLD = new Envelope(-180, 180, -90, 90);
+
+    @Test
+    public void testQuery() {
+        Random random = new Random(1);
+        for (int n : Arrays.asList(1, 2, 15, 16, 17, 256, 1000)) {
+            List<Envelope> boxes = Envelopes.randoms(WORLD, 0.001f, 0.05f, n, random);
+            PackedRTree tree = tree(boxes);
+            assertEquals(n, tree.size());
+
+            for (Envelope q : Envelopes.randoms(WORLD, 0.01f, 0.5f, 50, random)) {
+                assertEquals(brute(boxes, q), query(tree, q));
+            }
+            assertEquals(n, query(tree, WORLD).size());
+        }
+    }
+
+    @Test
+    public void testBounds() {
+        List<Envelope> boxes = Envelopes.randoms(WORLD, 0.001f, 0.05f, 100, new Random(2));
+        Envelope expected = new Envelope();
+        for (Envelope e : boxes) {
+            expected.expandToInclude(e);
+        }
+        assertEquals(expected, tree(boxes).bounds());
+    }
+
+    @Test
+    public void testEmpty() {
+        PackedRTree tree = new PackedRTree(0);
+        tree.insert(new Envelope(), 0);
+        tree.build();
+
+        assertEquals(0, tree.size());
+        assertTrue(tree.bounds().isNull());
+        assertTrue(query(tree, WORLD).isEmpty());
+        assertTrue(nearest(tree, 0, 0, 10).isEmpty());
+    }
+
+    @Test
+    public void testStop() {
+        PackedRTree tree = tree(Envelopes.randoms(WORLD, 0.001f, 0.05f, 500, new Random(3)));
+
+        final int[] count = new int[1];
+        tree.query(WORLD, new PackedRTree.Visitor() {
+            @Override
+            public boolean visit(int item) {
+                return ++count[0] < 10;
+            }
+        });
+        assertEquals(10, count[0]);
+    }
+
+    @Test
+    public void testNearest() {
+        Random random = new Random(4);
+        List<Envelope> boxes = Envelopes.randoms(WORLD, 0.001f, 0.05f, 1000, random);
+        PackedRTree tree = tree(boxes);
+
+        for (int i = 0; i < 20; i++) {
+            double x = random.nextDouble() * 360 - 180;
+            double y = random.nextDouble() * 180 - 90;
+
+            List<Double> expected = new ArrayList<Double>();
+            for (Envelope e : boxes) {
+                expected.add(e.distance(new Envelope(x, x, y, y)));
+            }
+            Collections.sort(expected);
+
+            List<Double> actual = new ArrayList<Double>();
+            for (int item : nearest(tree, x, y, 25)) {
+                actual.add(boxes.get(item).distance(new Envelope(x, x, y, y)));
+            }
+
+            assertEquals(25, actual.size());
+            for (int j = 0; j < actual.size(); j++) {
+                assertEquals(expected.get(j), actual.get(j), 1e-9);
+            }
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testInsertAfterBuild() {
+        PackedRTree tree = tree(Arrays.asList(new Envelope(0, 1, 0, 1)));
+        tree.insert(new Envelope(1, 2, 1, 2), 1);
+    }
+
+    PackedRTree tree(List<Envelope> boxes) {
+        PackedRTree tree = new PackedRTree(boxes.size());
+        for (int i = 0; i < boxes.size(); i++) {
+            tree.insert(boxes.get(i), i);
+        }
+        tree.build();
+        return tree;
+    }
+
+    Set<Integer> brute(List<Envelope> boxes, Envelope q) {
+        Set<Integer> result = new TreeSet<Integer>();
+        for (int i = 0; i < boxes.size(); i++) {
+            if (boxes.get(i).intersects(q)) {
+                result.add(i);
+            }
+        }
+        return result;
+    }
+
+    Set<Integer> query(PackedRTree tree, Envelope q) {
+        final Set<Integer> result = new TreeSet<Integer>();
+        tree.query(q, new PackedRTree.Visitor() {
+            @Override
+            public boolean visit(int item) {
+                assertTrue(result.add(item));
+                return true;
+            }
+        });
+        return result;
+    }
+
+    List<Integer> nearest(PackedRTree tree, double x, double y, final int k) {
+        final List<Integer> result = new ArrayList<Integer>();
+        tree.nearest(x, y, new PackedRTree.DistanceVisitor() {
+            double last = 0;
+
+            @Override
+            public boolean visit(int item, double distance) {
+                assertTrue(distance >= last);
+                last = distance;
+
+                result.add(item);
+                return result.size() < k;
+            }
+        });
+        return result;
+    }
+}
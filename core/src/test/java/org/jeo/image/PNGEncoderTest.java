@@ -0,0 +1,200 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.image;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.imageio.ImageIO;
+
+import org.jeo.image.PNGEncoder.Filter;
+import org.junit.Test;
+
+public class PNGEncoderTest {
+
+    @Test
+    public void testFilters() throws Exception {
+        BufferedImage img = image();
+        for (Filter f : Filter.values()) {
+            BufferedImage read = roundTrip(new PNGEncoder(PNGEncoder.DEFAULT_LEVEL, f, 0), img);
+            assertImage(img, read);
+        }
+    }
+
+    @Test
+    public void testOpaque() throws Exception {
+        BufferedImage img = new BufferedImage(20, 20, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = img.createGraphics();
+        g.setColor(Color.red);
+        g.fillRect(0, 0, 10, 20);
+        g.setColor(Color.blue);
+        g.fillRect(10, 0, 10, 20);
+        g.dispose();
+
+        BufferedImage read = roundTrip(new PNGEncoder(), img);
+        assertTrue(!read.getColorModel().hasAlpha());
+        assertImage(img, read);
+    }
+
+    @Test
+    public void testExactPalette() throws Exception {
+        BufferedImage img = image();
+
+        BufferedImage read = roundTrip(new PNGEncoder(9, Filter.NONE, 256), img);
+        assertTrue(read.getColorModel() instanceof IndexColorModel);
+        assertImage(img, read);
+    }
+
+    @Test
+    public void testBitDepth() throws Exception {
+        BufferedImage img = new BufferedImage(17, 3, BufferedImage.TYPE_INT_ARGB);
+        int[] colors = {0xffff0000, 0xff00ff00, 0x800000ff};
+        for (int x = 0; x < img.getWidth(); x++) {
+            for (int y = 0; y < img.getHeight(); y++) {
+                img.setRGB(x, y, colors[(x + y) % colors.length]);
+            }
+        }
+
+        BufferedImage read = roundTrip(new PNGEncoder(PNGEncoder.DEFAULT_LEVEL, Filter.NONE, 16), img);
+        assertEquals(2, read.getColorModel().getPixelSize());
+        assertImage(img, read);
+    }
+
+    @Test
+    public void testQuantize() throws Exception {
+        BufferedImage img = new BufferedImage(256, 64, BufferedImage.TYPE_INT_ARGB);
+        for (int x = 0; x < 256; x++) {
+            for (int y = 0; y < 64; y++) {
+                img.setRGB(x, y, 0xff000000 | x << 16 | (y * 4) << 8 | (255 - x));
+            }
+        }
+
+        BufferedImage read = roundTrip(new PNGEncoder(PNGEncoder.DEFAULT_LEVEL, Filter.NONE, 64), img);
+        assertTrue(read.getColorModel() instanceof IndexColorModel);
+
+        Set<Integer> colors = new HashSet<Integer>();
+        for (int x = 0; x < 256; x++) {
+            for (int y = 0; y < 64; y++) {
+                int a = img.getRGB(x, y), b = read.getRGB(x, y);
+                colors.add(b);
+                for (int s = 0; s < 32; s += 8) {
+                    int d = Math.abs(((a >>> s) & 0xff) - ((b >>> s) & 0xff));
+                    assertTrue("channel error " + d + " at " + x + "," + y, d <= 48);
+                }
+            }
+        }
+        assertTrue(colors.size() <= 64);
+    }
+
+    @Test
+    public void testSolid() throws Exception {
+        BufferedImage empty = new BufferedImage(256, 256, BufferedImage.TYPE_INT_ARGB);
+
+        PNGEncoder enc = new PNGEncoder();
+        byte[] png = encode(enc, empty);
+        assertTrue(png.length < 200);
+
+        BufferedImage read = ImageIO.read(new ByteArrayInputStream(png));
+        assertEquals(256, read.getWidth());
+        assertEquals(0, read.getRGB(100, 100) >>> 24);
+
+        BufferedImage solid = new BufferedImage(256, 256, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = solid.createGraphics();
+        g.setColor(Color.green);
+        g.fillRect(0, 0, 256, 256);
+        g.dispose();
+
+        read = roundTrip(enc, solid);
+        assertImage(solid, read);
+
+        // cached
+        synchronized (PNGEncoder.SOLID) {
+            assertTrue(PNGEncoder.SOLID.containsKey("256x256#0"));
+        }
+    }
+
+    @Test
+    public void testEncoders() throws Exception {
+        Map<Object,Object> opts = new HashMap<Object, Object>();
+        assertTrue(ImageEncoders.create(opts) instanceof PNGEncoder);
+
+        opts.put(ImageEncoders.IMAGE_FORMAT, "image/png8");
+        opts.put(ImageEncoders.COMPRESSION, 1f);
+        opts.put(ImageEncoders.PNG_FILTER, "paeth");
+
+        PNGEncoder png = (PNGEncoder) ImageEncoders.create(opts);
+        assertEquals(256, png.colors);
+        assertEquals(9, png.level);
+        assertEquals(Filter.PAETH, png.filter);
+
+        opts.put(ImageEncoders.IMAGE_FORMAT, "jpeg");
+        ImageEncoder jpeg = ImageEncoders.create(opts);
+        assertEquals("image/jpeg", jpeg.getMimeType());
+
+        BufferedImage read =
+            ImageIO.read(new ByteArrayInputStream(encode(jpeg, image())));
+        assertTrue(!read.getColorModel().hasAlpha());
+    }
+
+    BufferedImage image() {
+        BufferedImage img = new BufferedImage(50, 40, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = img.createGraphics();
+        g.setColor(Color.red);
+        g.fillRect(5, 5, 20, 20);
+        g.setColor(new Color(0, 0, 255, 128));
+        g.fillOval(15, 10, 30, 25);
+        g.setColor(Color.black);
+        g.drawLine(0, 39, 49, 0);
+        g.dispose();
+        return img;
+    }
+
+    BufferedImage roundTrip(ImageEncoder enc, BufferedImage img) throws Exception {
+        return ImageIO.read(new ByteArrayInputStream(encode(enc, img)));
+    }
+
+    byte[] encode(ImageEncoder enc, BufferedImage img) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        enc.encode(img, out);
+        return out.toByteArray();
+    }
+
+    void assertImage(BufferedImage expected, BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        for (int x = 0; x < expected.getWidth(); x++) {
+            for (int y = 0; y < expected.getHeight(); y++) {
+                int e = expected.getRGB(x, y), a = actual.getRGB(x, y);
+                if ((e >>> 24) == 0) {
+                    assertEquals(0, a >>> 24);
+                }
+                else {
+                    assertEquals("pixel " + x + "," + y, e, a);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,266 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.java2d;
+
+import static org.jeo.map.CartoCSS.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+
+import org.jeo.data.mem.MemVector;
+import org.jeo.feature.Features;
+import org.jeo.feature.Schema;
+import org.jeo.feature.SchemaBuilder;
+import org.jeo.filter.Property;
+import org.jeo.map.Map;
+import org.jeo.map.RGB;
+import org.jeo.map.Style;
+import org.jeo.map.View;
+import org.jeo.map.render.RendererFactory;
+import org.jeo.map.render.RendererRegistry;
+import org.jeo.map.render.Renderers;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.WKTReader;
+
+public class Java2DRendererTest {
+
+    MemVector data;
+
+    @Before
+    public void setUp() throws Exception {
+        Schema schema = new SchemaBuilder("widgets").field("geom", Geometry.class)
+            .field("name", String.class).field("color", String.class).schema();
+
+        data = new MemVector(schema);
+        data.add(Features.create("1", schema,
+            geom("POLYGON((10 10, 40 10, 40 40, 10 40, 10 10))"), "one", "red"));
+        data.add(Features.create("2", schema,
+            geom("POLYGON((60 10, 90 10, 90 40, 60 40, 60 10))"), "two", "blue"));
+        data.add(Features.create("3", schema, geom("LINESTRING(0 80, 100 80)"), "three", "red"));
+        data.add(Features.create("4", schema, geom("POINT(50 60)"), "four", "red"));
+    }
+
+    @Test
+    public void testRender() throws Exception {
+        Style style = Style.build().select("*")
+            .set(POLYGON_FILL, RGB.green).set(LINE_COLOR, RGB.blue).set(LINE_WIDTH, 3)
+            .set(MARKER_FILL, RGB.red).set(MARKER_WIDTH, 10)
+            .style();
+
+        BufferedImage img = render(style, new HashMap<Object, Object>());
+
+        assertPixel(img, 25, 75, RGB.green);
+        assertPixel(img, 75, 75, RGB.green);
+        assertPixel(img, 50, 20, RGB.blue);
+        assertPixel(img, 50, 40, RGB.red);
+
+        // polygon outline
+        assertPixel(img, 25, 90, RGB.blue);
+
+        // nothing drawn outside
+        assertEquals(0, img.getRGB(5, 5) >>> 24);
+    }
+
+    @Test
+    public void testAttributeStyle() throws Exception {
+        Style style = Style.build().select("*")
+            .set(POLYGON_FILL, new Property("color")).style();
+
+        BufferedImage img = render(style, new HashMap<Object, Object>());
+        assertPixel(img, 25, 75, RGB.red);
+        assertPixel(img, 75, 75, RGB.blue);
+    }
+
+    @Test
+    public void testSymbolizerCache() throws Exception {
+        Style style = Style.build().select("*").set(POLYGON_FILL, RGB.green).style();
+
+        Java2DRenderer r = new Java2DRenderer();
+        r.init(view(style), null);
+        r.render((OutputStream) null);
+
+        assertEquals(1, r.symbolizers.size());
+        Java2DRenderer.Symbolizer[] syms = r.symbolizers.values().iterator().next();
+        assertNotNull(syms[Java2DRenderer.Kind.POLYGON.ordinal()]);
+        assertNotNull(syms[Java2DRenderer.Kind.LINE.ordinal()]);
+        r.close();
+
+        style = Style.build().select("*").set(POLYGON_FILL, new Property("color")).style();
+        r = new Java2DRenderer();
+        r.init(view(style), null);
+        r.render((OutputStream) null);
+        assertTrue(r.symbolizers.isEmpty());
+        r.close();
+    }
+
+    @Test
+    public void testLabels() throws Exception {
+        Style style = Style.build().select("*").set(LINE_COLOR, RGB.black)
+            .set(TEXT_NAME, new Property("name")).set(TEXT_FILL, RGB.blue).set(TEXT_SIZE, 20)
+            .style();
+
+        BufferedImage img = render(style, new HashMap<Object, Object>());
+
+        int n = 0;
+        for (int x = 0; x < img.getWidth(); x++) {
+            for (int y = 0; y < img.getHeight(); y++) {
+                if ((img.getRGB(x, y) & 0xffffff) == 0xff) {
+                    n++;
+                }
+            }
+        }
+        assertTrue(n > 0);
+    }
+
+    @Test
+    public void testEncode() throws Exception {
+        Style style = Style.build().select("*").set(POLYGON_FILL, RGB.green).style();
+
+        java.util.Map<Object,Object> opts = new HashMap<Object, Object>();
+        opts.put(Java2D.COMPRESSION, 1f);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Java2DRenderer r = (Java2DRenderer) Renderers.create("j2d", view(style), opts);
+        r.init(view(style), opts);
+        r.render(out);
+        r.close();
+
+        BufferedImage img = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(100, img.getWidth());
+        assertPixel(img, 25, 75, RGB.green);
+
+        opts.put(Java2D.IMAGE_FORMAT, "jpeg");
+        out = new ByteArrayOutputStream();
+        r = new Java2DRenderer();
+        r.init(view(style), opts);
+        r.render(out);
+        r.close();
+
+        img = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+        assertFalse(img.getColorModel().hasAlpha());
+    }
+
+    @Test
+    public void testClip() throws Exception {
+        Style style = Style.build().select("*").set(LINE_COLOR, RGB.blue).set(LINE_WIDTH, 1)
+            .style();
+
+        Java2DRenderer r = new Java2DRenderer(
+            new BufferedImage(100, 100, BufferedImage.TYPE_INT_ARGB));
+        r.init(view(style), null);
+        r.render((OutputStream) null);
+
+        // path of the last feature drawn, clipped to the view plus the buffer
+        Rectangle2D box = r.path(geom("LINESTRING(-1000 50, 1000 50)")).getBounds2D();
+        assertTrue(box.getMinX() >= -5 && box.getMaxX() <= 105);
+        assertEquals(50, box.getMinY(), 0.1);
+        r.close();
+    }
+
+    @Test
+    public void testFormatPriority() throws Exception {
+        final RendererFactory<?> other = new Java2D() {
+            @Override
+            public String getName() {
+                return "other";
+            }
+        };
+        RendererRegistry reg = new RendererRegistry() {
+            @Override
+            public Iterator<RendererFactory<?>> list() {
+                return Arrays.<RendererFactory<?>>asList(new Java2D(), other).iterator();
+            }
+        };
+
+        Iterator<RendererFactory<?>> it = Renderers.listForFormat("image/png", reg);
+        assertSame(other, it.next());
+        assertTrue(it.next() instanceof Java2D);
+        assertFalse(it.hasNext());
+    }
+
+    @Test
+    public void testPool() throws Exception {
+        ImagePool pool = new ImagePool(1, 1024);
+        BufferedImage img = pool.acquire(10, 10);
+        img.setRGB(1, 1, 0xffffffff);
+        pool.release(img);
+        pool.release(img);
+        assertEquals(1, pool.idle(10, 10));
+
+        BufferedImage again = pool.acquire(10, 10);
+        assertSame(img, again);
+        assertEquals(0, again.getRGB(1, 1));
+        assertEquals(0, pool.idle(10, 10));
+
+        assertEquals(20, pool.acquire(20, 10).getWidth());
+
+        // bounded by bytes across sizes, least recently used sizes dropped first
+        pool.release(new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB));
+        pool.release(new BufferedImage(10, 12, BufferedImage.TYPE_INT_ARGB));
+        assertEquals(880, pool.bytes());
+        pool.release(new BufferedImage(10, 11, BufferedImage.TYPE_INT_ARGB));
+        assertEquals(0, pool.idle(10, 10));
+        assertEquals(1, pool.idle(10, 12));
+        assertEquals(1, pool.idle(10, 11));
+        assertEquals(920, pool.bytes());
+
+        pool.release(new BufferedImage(20, 20, BufferedImage.TYPE_INT_ARGB));
+        assertEquals(0, pool.idle(20, 20));
+    }
+
+    BufferedImage render(Style style, java.util.Map<Object,Object> opts) throws Exception {
+        BufferedImage img = new BufferedImage(100, 100, BufferedImage.TYPE_INT_ARGB);
+        opts.put(Java2D.ANTIALIAS, false);
+
+        Java2DRenderer r = new Java2DRenderer(img);
+        r.init(view(style), opts);
+        r.render((OutputStream) null);
+        r.close();
+        return img;
+    }
+
+    View view(Style style) {
+        return Map.build().layer("widgets", data).style(style).bounds(0, 0, 100, 100)
+            .size(100, 100).view();
+    }
+
+    void assertPixel(BufferedImage img, int x, int y, RGB color) {
+        int argb = img.getRGB(x, y);
+        assertEquals(color.getRed(), (argb >> 16) & 0xff);
+        assertEquals(color.getGreen(), (argb >> 8) & 0xff);
+        assertEquals(color.getBlue(), argb & 0xff);
+        assertEquals(255, argb >>> 24);
+    }
+
+    Geometry geom(String wkt) throws Exception {
+        return new WKTReader().read(wkt);
+    }
+}
@@ -0,0 +1,107 @@
+/* Copyright 2013 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class StyleTest {
+
+    @Test
+    public void testLayerRules() {
+        Style style = new StyleBuilder()
+            .rule().select("*").set("line-color", "gray").endRule()
+            .rule().select("#widgets").set("line-color", "#123").endRule()
+            .rule().select("#widgets").select("::glow").set("line-width", 3).endRule()
+            .rule().select("#gadgets").set("line-color", "#456").endRule()
+            .style();
+
+        RuleList rules = style.layerRules("widgets");
+        assertEquals(style.getRules().selectById("widgets", true).flatten(), rules);
+        assertSame(rules, style.layerRules("widgets"));
+        assertEquals(3, rules.size());
+
+        assertEquals(2, style.layerGroups("widgets").size());
+        assertSame(style.layerGroups("widgets"), style.layerGroups("widgets"));
+
+        assertEquals(2, style.layerRules("gadgets").size());
+    }
+
+    @Test
+    public void testLayerRulesModified() {
+        Style style = new StyleBuilder()
+            .rule().select("#widgets").set("line-color", "#123").endRule()
+            .style();
+
+        RuleList rules = style.layerRules("widgets");
+        assertEquals(1, rules.size());
+
+        style.getRules().addAll(new StyleBuilder()
+            .rule().select("*").set("line-width", 2).endRule().style().getRules());
+
+        assertNotSame(rules, style.layerRules("widgets"));
+        assertEquals(2, style.layerRules("widgets").size());
+
+        // replaced rule
+        style.getRules().set(1, new StyleBuilder()
+            .rule().select("#gadgets").set("line-width", 3).endRule().style().getRules().get(0));
+        assertEquals(1, style.layerRules("widgets").size());
+
+        // property modified in place
+        style.getRules().get(0).put("line-color", "#456");
+        assertEquals("#456", style.layerRules("widgets").get(0).get("line-color"));
+
+        // nested rule
+        Rule nested = new StyleBuilder().rule().select("#widgets").set("line-width", 4).endRule()
+            .style().getRules().get(0);
+        style.getRules().get(0).add(nested);
+        assertEquals(style.getRules().selectById("widgets", true).flatten(),
+            style.layerRules("widgets"));
+    }
+
+    @Test
+    public void testLayerRulesUnrelatedModified() {
+        Style style = new StyleBuilder()
+            .rule().select("#widgets").set("line-color", "#123").endRule()
+            .style();
+
+        RuleList rules = style.layerRules("widgets");
+
+        // rules not part of the style, and rules created while selecting, leave the cache intact
+        new StyleBuilder().rule().select("#widgets").set("line-width", 2).endRule().style();
+        style.getRules().selectById("widgets", true).flatten();
+        assertSame(rules, style.layerRules("widgets"));
+
+        // selector modified in place
+        style.getRules().get(0).getSelectors().get(0).setId("gadgets");
+        assertTrue(style.layerRules("widgets").isEmpty());
+    }
+
+    @Test
+    public void testLayerRulesBounded() {
+        Style style = new StyleBuilder()
+            .rule().select("*").set("line-color", "#123").endRule()
+            .style();
+
+        for (int i = 0; i < Style.MAX_CACHED_LAYERS * 2; i++) {
+            style.layerRules("layer" + i);
+        }
+        assertTrue(style.layerRules.size() <= Style.MAX_CACHED_LAYERS);
+    }
+}
@@ -0,0 +1,175 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.map.render;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.jeo.map.CartoCSS;
+import org.jeo.map.Rule;
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.util.AffineTransformation;
+
+public class LabelIndexTest {
+
+    @Test
+    public void testOverlap() {
+        LabelIndex idx = new LabelIndex();
+        assertTrue(idx.insert(label(0, 0, 50, 10, 1)));
+        assertTrue(idx.insert(label(60, 0, 110, 10, 1)));
+
+        // overlaps the first, same priority
+        assertFalse(idx.insert(label(40, 5, 90, 15, 1)));
+        assertEquals(2, size(idx));
+
+        assertEquals(2, idx.query(label(40, 5, 90, 15, 1)).size());
+        assertEquals(0, idx.query(label(0, 20, 10, 30, 1)).size());
+    }
+
+    @Test
+    public void testAllowOverlap() {
+        LabelIndex idx = new LabelIndex();
+        assertTrue(idx.insert(label(0, 0, 50, 10, 1)));
+
+        Label l = label(10, 0, 60, 10, 1);
+        l.getRule().put(CartoCSS.TEXT_ALLOW_OVERLAP, true);
+        assertTrue(idx.insert(l));
+        assertEquals(2, size(idx));
+    }
+
+    @Test
+    public void testPriority() {
+        LabelIndex idx = new LabelIndex();
+        assertTrue(idx.insert(label(0, 0, 50, 10, 1)));
+        assertTrue(idx.insert(label(60, 0, 110, 10, 3)));
+
+        // beats the first but not the second, nothing should change
+        assertFalse(idx.insert(label(40, 5, 90, 15, 2)));
+        assertEquals(2, size(idx));
+
+        // beats both
+        Label l = label(40, 5, 90, 15, 4);
+        assertTrue(idx.insert(l));
+        assertEquals(1, size(idx));
+        assertTrue(idx.all().iterator().next() == l);
+
+        // space freed up by the evicted labels
+        assertTrue(idx.insert(label(0, 0, 30, 4, 1)));
+    }
+
+    @Test
+    public void testShape() {
+        LabelIndex idx = new LabelIndex();
+
+        // diagonal label, bounds of (0,0,100,100)
+        assertTrue(idx.insert(rotated(50, 50, 120, 10, Math.PI / 4)));
+
+        // in the corner of the bounds but clear of the rotated shape
+        assertTrue(idx.insert(label(0, 80, 20, 100, 1)));
+        assertFalse(idx.insert(label(45, 45, 55, 55, 1)));
+
+        // rotated against rotated
+        assertTrue(idx.insert(rotated(80, 20, 30, 10, -Math.PI / 4)));
+        assertFalse(idx.insert(rotated(55, 45, 30, 10, -Math.PI / 4)));
+        assertEquals(3, size(idx));
+    }
+
+    @Test
+    public void testCellBoundaries() {
+        LabelIndex idx = new LabelIndex();
+        assertTrue(idx.insert(label(-100, -100, 300, -90, 1)));
+        assertFalse(idx.insert(label(250, -95, 260, -80, 1)));
+        assertFalse(idx.insert(label(-80, -200, -70, 0, 1)));
+        assertTrue(idx.insert(label(-80, -50, -70, 0, 1)));
+    }
+
+    @Test
+    public void testBruteForce() {
+        Random r = new Random(1);
+        LabelIndex idx = new LabelIndex();
+        List<Label> expected = new ArrayList<Label>();
+
+        for (int i = 0; i < 5000; i++) {
+            double x = r.nextDouble() * 2000, y = r.nextDouble() * 2000;
+            Label l = r.nextInt(4) == 0
+                ? rotated(x, y, 20 + r.nextDouble() * 100, 10, r.nextDouble() * Math.PI)
+                : label(x, y, x + 20 + r.nextDouble() * 100, y + 10, r.nextInt(5));
+
+            List<Label> overlaps = new ArrayList<Label>();
+            for (Label e : expected) {
+                if (e.shape().intersects(l.shape())) {
+                    overlaps.add(e);
+                }
+            }
+            assertEquals(overlaps.size(), idx.query(l).size());
+
+            boolean add = true;
+            for (Label e : overlaps) {
+                if (l.priority().compareTo(e.priority()) <= 0) {
+                    add = false;
+                }
+            }
+            if (add) {
+                expected.removeAll(overlaps);
+                expected.add(l);
+            }
+
+            assertEquals(add, idx.insert(l));
+        }
+
+        List<Label> actual = new ArrayList<Label>();
+        for (Label l : idx.all()) {
+            actual.add(l);
+        }
+        assertEquals(expected, actual);
+    }
+
+    int size(LabelIndex idx) {
+        int size = 0;
+        for (@SuppressWarnings("unused") Label l : idx.all()) {
+            size++;
+        }
+        return size;
+    }
+
+    Label label(double x1, double y1, double x2, double y2, int priority) {
+        Rule rule = new Rule();
+        rule.put("text-priority", priority);
+
+        Label l = new Label("foo", rule, null, null);
+        l.setBounds(new Envelope(x1, x2, y1, y2));
+        return l;
+    }
+
+    Label rotated(double x, double y, double w, double h, double angle) {
+        Geometry rect = new GeometryFactory().toGeometry(
+            new Envelope(x - w/2, x + w/2, y - h/2, y + h/2));
+        Geometry shape = AffineTransformation.rotationInstance(angle, x, y).transform(rect);
+
+        Label l = label(0, 0, 0, 0, 1);
+        l.setBounds(shape.getEnvelopeInternal());
+        l.setShape(shape);
+        return l;
+    }
+}
@@ -0,0 +1,200 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.map.render;
+
+import static org.jeo.map.CartoCSS.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.jeo.data.mem.MemVector;
+import org.jeo.feature.Feature;
+import org.jeo.feature.Features;
+import org.jeo.feature.Schema;
+import org.jeo.feature.SchemaBuilder;
+import org.jeo.map.RGB;
+import org.jeo.map.Rule;
+import org.jeo.map.Style;
+import org.jeo.map.View;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.WKTReader;
+
+public class SubPixelCullerTest {
+
+    MemVector data;
+
+    @Before
+    public void setUp() throws Exception {
+        Schema schema = new SchemaBuilder("widgets").field("geom", Geometry.class)
+            .field("name", String.class).schema();
+
+        // view is 100x100 pixels over 0,0 1000,1000 so a pixel is 10 units wide
+        data = new MemVector(schema);
+        add("1", "POLYGON((100 100, 400 100, 400 400, 100 400, 100 100))", "one");
+        add("2", "POLYGON((501 501, 502 501, 502 502, 501 502, 501 501))", "two");
+        add("3", "POLYGON((503 503, 504 503, 504 504, 503 504, 503 503))", "three");
+        add("4", "LINESTRING(701 701, 702 702)", "four");
+        add("5", "POINT(800 800)", "five");
+    }
+
+    @Test
+    public void testDefault() throws Exception {
+        CapturingRenderer r = render(Style.build().select("*").set(POLYGON_FILL, RGB.red).style());
+        assertEquals(3, r.polygons.size());
+
+        // unknown mode falls back to drawing
+        r = render(Style.build().select("*").set(POLYGON_FILL, RGB.red)
+            .set(BaseRenderer.SUBPIXEL_MODE, "bogus").style());
+        assertEquals(3, r.polygons.size());
+    }
+
+    @Test
+    public void testPixel() throws Exception {
+        CapturingRenderer r = render(Style.build().select("*").set(POLYGON_FILL, RGB.red)
+            .set(BaseRenderer.SUBPIXEL_MODE, "pixel").style());
+
+        // the two small polygons share a pixel
+        assertEquals(2, r.polygons.size());
+        assertEquals(1, r.lines.size());
+        assertEquals(1, r.points.size());
+
+        Envelope e = r.polygons.get(1).getEnvelopeInternal();
+        assertEquals(new Envelope(500, 510, 500, 510), e);
+
+        e = r.lines.get(0).getEnvelopeInternal();
+        assertEquals(10, e.getWidth(), 1e-9);
+        assertTrue(e.contains(701, 705));
+    }
+
+    @Test
+    public void testSkip() throws Exception {
+        CapturingRenderer r = render(Style.build().select("*").set(POLYGON_FILL, RGB.red)
+            .set(BaseRenderer.SUBPIXEL_MODE, "skip").style());
+
+        assertEquals(1, r.polygons.size());
+        assertEquals(0, r.lines.size());
+        assertEquals(1, r.points.size());
+    }
+
+    @Test
+    public void testDraw() throws Exception {
+        CapturingRenderer r = render(Style.build().select("*").set(POLYGON_FILL, RGB.red)
+            .set(BaseRenderer.SUBPIXEL_MODE, "draw").style());
+
+        assertEquals(3, r.polygons.size());
+        assertEquals(1, r.lines.size());
+        assertEquals(new Envelope(501, 502, 501, 502), r.polygons.get(1).getEnvelopeInternal());
+    }
+
+    @Test
+    public void testSize() throws Exception {
+        // threshold larger than the big polygon
+        CapturingRenderer r = render(Style.build().select("*").set(POLYGON_FILL, RGB.red)
+            .set(BaseRenderer.SUBPIXEL_MODE, "skip").set(BaseRenderer.SUBPIXEL_SIZE, 40).style());
+
+        assertEquals(0, r.polygons.size());
+        assertEquals(1, r.points.size());
+    }
+
+    @Test
+    public void testPerRule() throws Exception {
+        // features with different rules in the same pixel are drawn once per rule
+        Style style = Style.build()
+            .rule().select("*").filter("name = 'two'").set(POLYGON_FILL, RGB.red)
+                .set(BaseRenderer.SUBPIXEL_MODE, "pixel").endRule()
+            .rule().select("*").filter("name = 'three'").set(POLYGON_FILL, RGB.blue).endRule()
+            .style();
+
+        CapturingRenderer r = render(style);
+        assertEquals(2, r.polygons.size());
+    }
+
+    @Test
+    public void testLabelsNotCollapsed() throws Exception {
+        // every feature labelled, even when sharing a pixel
+        CapturingRenderer r = render(Style.build().select("*").set(POLYGON_FILL, RGB.red)
+            .set(TEXT_NAME, "[name]").set(BaseRenderer.SUBPIXEL_MODE, "PIXEL").style());
+
+        assertEquals(3, r.polygons.size());
+        assertEquals(new Envelope(501, 502, 501, 502), r.polygons.get(1).getEnvelopeInternal());
+    }
+
+    CapturingRenderer render(Style style) throws IOException {
+        View view = org.jeo.map.Map.build().layer("widgets", data).style(style)
+            .bounds(0, 0, 1000, 1000).size(100, 100).view();
+
+        CapturingRenderer r = new CapturingRenderer();
+        r.init(view, new HashMap<Object, Object>());
+        r.render(null);
+        return r;
+    }
+
+    void add(String id, String wkt, String name) throws Exception {
+        data.add(Features.create(id, data.schema(), new WKTReader().read(wkt), name));
+    }
+
+    static class CapturingRenderer extends BaseRenderer {
+
+        List<Geometry> points = new ArrayList<Geometry>();
+        List<Geometry> lines = new ArrayList<Geometry>();
+        List<Geometry> polygons = new ArrayList<Geometry>();
+
+        @Override
+        protected boolean canRenderVectors() {
+            return true;
+        }
+
+        @Override
+        protected boolean canRenderRasters() {
+            return false;
+        }
+
+        @Override
+        protected boolean canRenderTiles() {
+            return false;
+        }
+
+        @Override
+        protected void drawBackground(RGB color) {
+        }
+
+        @Override
+        protected void drawPoint(Feature f, Rule rule, Geometry point) {
+            points.add(point);
+        }
+
+        @Override
+        protected void drawLine(Feature f, Rule rule, Geometry line) {
+            lines.add(line);
+        }
+
+        @Override
+        protected void drawPolygon(Feature f, Rule rule, Geometry poly) {
+            polygons.add(poly);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
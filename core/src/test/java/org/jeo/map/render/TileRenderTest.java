@@ -0,0 +1,191 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.map.render;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import org.jeo.data.Cursor;
+import org.jeo.data.mem.MemTileDataset;
+import org.jeo.map.RGB;
+import org.jeo.map.Rule;
+import org.jeo.map.Style;
+import org.jeo.map.View;
+import org.jeo.tile.Tile;
+import org.jeo.tile.TilePyramid;
+import org.jeo.tile.TilePyramid.Origin;
+import org.jeo.util.Rect;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TileRenderTest {
+
+    MemTileDataset data;
+
+    @Before
+    public void setUp() throws Exception {
+        TilePyramid p = TilePyramid.build().origin(Origin.TOP_LEFT).grid(2, 1).grid(4, 2).pyramid();
+        data = new MemTileDataset("tiles", p);
+        data.put(new Tile(0, 0, 0, png(Color.RED), "image/png"));
+        data.put(new Tile(0, 1, 0, png(Color.BLUE), "image/png"));
+
+        // zoom 1, top left green and bottom left white
+        data.put(new Tile(1, 0, 0, png(Color.GREEN), "image/png"));
+        data.put(new Tile(1, 0, 1, png(Color.WHITE), "image/png"));
+    }
+
+    @Test
+    public void testRender() throws Exception {
+        CapturingRenderer r = render(512, 256, -180, -90, 180, 90);
+        assertNotNull(r.raster);
+        assertEquals(new Rect(0, 0, 512, 256), r.pos);
+
+        assertPixel(r, 10, 10, Color.RED);
+        assertPixel(r, 255, 255, Color.RED);
+        assertPixel(r, 256, 0, Color.BLUE);
+        assertPixel(r, 511, 128, Color.BLUE);
+    }
+
+    @Test
+    public void testResample() throws Exception {
+        // half the resolution of zoom 0
+        CapturingRenderer r = render(256, 128, -180, -90, 180, 90);
+        assertPixel(r, 10, 10, Color.RED);
+        assertPixel(r, 127, 127, Color.RED);
+        assertPixel(r, 128, 0, Color.BLUE);
+    }
+
+    @Test
+    public void testZoom() throws Exception {
+        // west half of the world at zoom 1 resolution
+        CapturingRenderer r = render(512, 512, -180, -90, 0, 90);
+        assertPixel(r, 10, 10, Color.GREEN);
+        assertPixel(r, 255, 255, Color.GREEN);
+        assertPixel(r, 10, 300, Color.WHITE);
+
+        // no tile in the east half
+        assertEquals(0, r.raster.get((10 * 512 + 300) * 4 + 3));
+    }
+
+    @Test
+    public void testRenderOnce() throws Exception {
+        final AtomicInteger reads = new AtomicInteger();
+        MemTileDataset counting = new MemTileDataset("tiles", data.pyramid()) {
+            @Override
+            public Cursor<Tile> read(long z1, long z2, long x1, long x2, long y1, long y2)
+                throws IOException {
+                reads.incrementAndGet();
+                return super.read(z1, z2, x1, x2, y1, y2);
+            }
+        };
+        counting.put(new Tile(0, 0, 0, png(Color.RED), "image/png"));
+
+        // two attachments, two z groups
+        Style style = Style.build().select("#tiles").set("raster-opacity", 1).endRule()
+            .rule().select("#tiles").select("::glow").set("raster-opacity", 1).endRule().style();
+        assertEquals(2, style.layerGroups("tiles").size());
+
+        View view = org.jeo.map.Map.build().layer("tiles", counting).style(style)
+            .bounds(-180, -90, 180, 90).size(512, 256).view();
+
+        CapturingRenderer r = new CapturingRenderer();
+        r.init(view, new HashMap<Object, Object>());
+        r.render(new ByteArrayOutputStream());
+
+        assertEquals(1, reads.get());
+        assertEquals(1, r.draws);
+        assertPixel(r, 10, 10, Color.RED);
+    }
+
+    CapturingRenderer render(int width, int height, double x1, double y1, double x2, double y2)
+        throws IOException {
+        View view = org.jeo.map.Map.build().layer("tiles", data)
+            .style(Style.build().select("#tiles").set("raster-opacity", 1).endRule().style())
+            .bounds(x1, y1, x2, y2).size(width, height).view();
+
+        CapturingRenderer r = new CapturingRenderer();
+        r.init(view, new HashMap<Object, Object>());
+        r.render(new ByteArrayOutputStream());
+        return r;
+    }
+
+    void assertPixel(CapturingRenderer r, int x, int y, Color c) {
+        int p = (y * r.pos.width() + x) * 4;
+        assertEquals(c.getRed(), r.raster.get(p) & 0xff);
+        assertEquals(c.getGreen(), r.raster.get(p+1) & 0xff);
+        assertEquals(c.getBlue(), r.raster.get(p+2) & 0xff);
+        assertEquals(255, r.raster.get(p+3) & 0xff);
+    }
+
+    byte[] png(Color color) throws IOException {
+        BufferedImage img = new BufferedImage(256, 256, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = img.createGraphics();
+        g.setColor(color);
+        g.fillRect(0, 0, 256, 256);
+        g.dispose();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(img, "png", out);
+        return out.toByteArray();
+    }
+
+    static class CapturingRenderer extends BaseRenderer {
+
+        ByteBuffer raster;
+        Rect pos;
+        int draws;
+
+        @Override
+        protected boolean canRenderVectors() {
+            return false;
+        }
+
+        @Override
+        protected boolean canRenderRasters() {
+            return false;
+        }
+
+        @Override
+        protected boolean canRenderTiles() {
+            return true;
+        }
+
+        @Override
+        protected void drawBackground(RGB color) throws IOException {
+        }
+
+        @Override
+        protected void drawRasterRGBA(ByteBuffer raster, Rect pos, Rule rule) throws IOException {
+            this.raster = raster;
+            this.pos = pos;
+            draws++;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,312 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.mvt;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jeo.data.Cursor;
+import org.jeo.data.Query;
+import org.jeo.data.mem.MemVector;
+import org.jeo.feature.Features;
+import org.jeo.feature.Schema;
+import org.jeo.feature.SchemaBuilder;
+import org.jeo.tile.Tile;
+import org.jeo.tile.TilePyramid;
+import org.jeo.tile.TilePyramid.Origin;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.WKTReader;
+
+public class VectorTileEncoderTest {
+
+    MemVector data;
+    VectorTileEncoder encoder;
+
+    @Before
+    public void setUp() throws Exception {
+        Schema schema = new SchemaBuilder("widgets").field("geom", Geometry.class, "epsg:4326")
+            .field("name", String.class).field("count", Integer.class).schema();
+
+        data = new MemVector(schema);
+        data.add(Features.create("1", schema, geom("POINT(10 90)"), "one", 1));
+        data.add(Features.create("2", schema, geom("LINESTRING(10 90, 40 60)"), "two", -2));
+        data.add(Features.create("3", schema,
+            geom("POLYGON((60 10, 90 10, 90 40, 60 40, 60 10))"), "three", 3));
+
+        TilePyramid pyramid = TilePyramid.build().crs("epsg:4326").bounds(0, 0, 100, 100)
+            .tileSize(256, 256).origin(Origin.TOP_LEFT).grid(0, 1, 1).grid(1, 2, 2).pyramid();
+
+        encoder = new VectorTileEncoder(pyramid);
+        encoder.setExtent(100);
+        encoder.setBuffer(0);
+    }
+
+    @Test
+    public void testLayer() throws Exception {
+        Map<Integer,List<Object>> layer = layer(encoder.encode(new Tile(0, 0, 0), data, null));
+
+        assertEquals("widgets", string(layer.get(1).get(0)));
+        assertEquals(2l, layer.get(15).get(0));
+        assertEquals(100l, layer.get(5).get(0));
+        assertEquals(3, layer.get(2).size());
+
+        List<Object> keys = layer.get(3);
+        assertEquals(2, keys.size());
+        assertEquals("name", string(keys.get(0)));
+        assertEquals("count", string(keys.get(1)));
+
+        // strings, unsigned and zigzag encoded signed integers
+        List<Object> values = new ArrayList<Object>();
+        for (Object o : layer.get(4)) {
+            Map<Integer,List<Object>> v = message(o);
+            Object val = v.values().iterator().next().get(0);
+            values.add(v.containsKey(1) ? string(val) : val);
+        }
+        assertEquals(6, values.size());
+        assertTrue(values.contains("one"));
+        assertTrue(values.contains(1l));
+        assertTrue(values.contains(3l));
+    }
+
+    @Test
+    public void testPoint() throws Exception {
+        Map<Integer,List<Object>> f = feature(encoder.encode(new Tile(0, 0, 0), data, null), 1);
+        assertEquals(1l, f.get(3).get(0));
+        assertEquals(4, packed(f.get(2).get(0)).length);
+
+        // move to (10,10), y axis flipped
+        assertArrayEquals(new int[]{9, 20, 20}, packed(f.get(4).get(0)));
+    }
+
+    @Test
+    public void testLineString() throws Exception {
+        Map<Integer,List<Object>> f = feature(encoder.encode(new Tile(0, 0, 0), data, null), 2);
+        assertEquals(2l, f.get(3).get(0));
+
+        // move to (10,10), line to (40,40)
+        assertArrayEquals(new int[]{9, 20, 20, 10, 60, 60}, packed(f.get(4).get(0)));
+    }
+
+    @Test
+    public void testPolygon() throws Exception {
+        Map<Integer,List<Object>> f = feature(encoder.encode(new Tile(0, 0, 0), data, null), 3);
+        assertEquals(3l, f.get(3).get(0));
+
+        int[] cmd = packed(f.get(4).get(0));
+        assertEquals(9, cmd[0]);
+        assertEquals((3 << 3) | 2, cmd[3]);
+        assertEquals(15, cmd[cmd.length-1]);
+
+        // exterior ring must have positive area in tile coordinates
+        assertTrue(area(cmd) > 0);
+    }
+
+    @Test
+    public void testClip() throws Exception {
+        // top left tile only intersects the point and the line
+        Map<Integer,List<Object>> layer = layer(encoder.encode(new Tile(1, 0, 0), data, null));
+        assertEquals(2, layer.get(2).size());
+
+        // tile coordinates scaled by two, move to (20,20), line to (80,80)
+        Map<Integer,List<Object>> f = feature(layer, 2);
+        assertArrayEquals(new int[]{9, 40, 40, 10, 120, 120}, packed(f.get(4).get(0)));
+
+        // bottom left tile intersects nothing
+        assertEquals(0, encoder.encode(new Tile(1, 0, 1), data, null).length);
+    }
+
+    @Test
+    public void testFields() throws Exception {
+        Map<Integer,List<Object>> layer =
+            layer(encoder.encode(new Tile(0, 0, 0), data, new Query().fields("count")));
+        assertEquals(1, layer.get(3).size());
+        assertEquals("count", string(layer.get(3).get(0)));
+        assertEquals(3, layer.get(2).size());
+    }
+
+    @Test
+    public void testTiles() throws Exception {
+        Cursor<Tile> c = encoder.encode(data, null, 0, 1);
+        List<Tile> tiles = new ArrayList<Tile>();
+        for (Tile t : c) {
+            tiles.add(t);
+        }
+
+        // one at zoom 0, top left and bottom right at zoom 1
+        assertEquals(3, tiles.size());
+        assertEquals(Integer.valueOf(0), tiles.get(0).getZ());
+        for (Tile t : tiles) {
+            assertEquals(VectorTileEncoder.MIME_TYPE, t.getMimeType());
+            assertTrue(t.getData().length > 0);
+            assertFalse(t.getZ() == 1 && t.getX() + t.getY() == 1);
+        }
+    }
+
+    @Test
+    public void testWebMercator() throws Exception {
+        TilePyramid p = VectorTileEncoder.webMercator(2);
+        assertEquals(3, p.getGrids().size());
+        assertEquals(4, p.grid(2).getWidth().intValue());
+
+        // top left tile is the north west quadrant
+        assertTrue(p.bounds(new Tile(1, 0, 0)).getMinY() == 0);
+    }
+
+    @Test
+    public void testBadExtentAndBuffer() throws Exception {
+        try {
+            encoder.setExtent(0);
+            fail("expected IllegalArgumentException");
+        }
+        catch(IllegalArgumentException e) {
+        }
+        try {
+            encoder.setBuffer(-1);
+            fail("expected IllegalArgumentException");
+        }
+        catch(IllegalArgumentException e) {
+        }
+    }
+
+    long area(int[] cmd) {
+        // decode the single ring
+        int n = (cmd[3] >> 3) + 1;
+        int[] xs = new int[n], ys = new int[n];
+        int x = 0, y = 0;
+        for (int i = 0, j = 1; i < n; i++, j += 2) {
+            if (i == 1) {
+                j++;
+            }
+            x += unzigzag(cmd[j]);
+            y += unzigzag(cmd[j+1]);
+            xs[i] = x;
+            ys[i] = y;
+        }
+
+        long a = 0;
+        for (int i = 0; i < n; i++) {
+            int j = (i + 1) % n;
+            a += (long) xs[i] * ys[j] - (long) xs[j] * ys[i];
+        }
+        return a;
+    }
+
+    int unzigzag(int i) {
+        return (i >>> 1) ^ -(i & 1);
+    }
+
+    Map<Integer,List<Object>> layer(byte[] tile) {
+        return message(message(tile).get(3).get(0));
+    }
+
+    Map<Integer,List<Object>> feature(byte[] tile, long id) {
+        return feature(layer(tile), id);
+    }
+
+    Map<Integer,List<Object>> feature(Map<Integer,List<Object>> layer, long id) {
+        for (Object o : layer.get(2)) {
+            Map<Integer,List<Object>> f = message(o);
+            if (f.get(1).get(0).equals(id)) {
+                return f;
+            }
+        }
+        return null;
+    }
+
+    String string(Object o) {
+        return new String((byte[]) o, ProtobufWriter.UTF8);
+    }
+
+    int[] packed(Object o) {
+        byte[] b = (byte[]) o;
+        List<Long> vals = new ArrayList<Long>();
+        int[] pos = {0};
+        while (pos[0] < b.length) {
+            vals.add(varint(b, pos));
+        }
+
+        int[] arr = new int[vals.size()];
+        for (int i = 0; i < arr.length; i++) {
+            arr[i] = vals.get(i).intValue();
+        }
+        return arr;
+    }
+
+    Map<Integer,List<Object>> message(Object o) {
+        byte[] b = (byte[]) o;
+        Map<Integer,List<Object>> msg = new LinkedHashMap<Integer, List<Object>>();
+
+        int[] pos = {0};
+        while (pos[0] < b.length) {
+            long tag = varint(b, pos);
+            int field = (int) (tag >> 3);
+
+            Object val;
+            switch((int) (tag & 0x7)) {
+            case ProtobufWriter.VARINT:
+                val = varint(b, pos);
+                break;
+            case ProtobufWriter.BYTES:
+                int len = (int) varint(b, pos);
+                byte[] bytes = new byte[len];
+                System.arraycopy(b, pos[0], bytes, 0, len);
+                pos[0] += len;
+                val = bytes;
+                break;
+            case ProtobufWriter.FIXED32:
+                pos[0] += 4;
+                val = null;
+                break;
+            default:
+                pos[0] += 8;
+                val = null;
+            }
+
+            if (!msg.containsKey(field)) {
+                msg.put(field, new ArrayList<Object>());
+            }
+            msg.get(field).add(val);
+        }
+        return msg;
+    }
+
+    long varint(byte[] b, int[] pos) {
+        long v = 0;
+        int shift = 0;
+        while (true) {
+            byte x = b[pos[0]++];
+            v |= (long) (x & 0x7F) << shift;
+            if ((x & 0x80) == 0) {
+                return v;
+            }
+            shift += 7;
+        }
+    }
+
+    Geometry geom(String wkt) throws Exception {
+        return new WKTReader().read(wkt);
+    }
+}
@@ -4,6 +4,11 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.zip.GZIPInputStream;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
@@ -22,9 +27,13 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TestName;
 
+import org.w3c.dom.Document;
+
 import com.vividsolutions.jts.geom.Envelope;
 
 import static org.jeo.map.CartoCSS.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class SVGRendererTest {
 
@@ -110,6 +119,29 @@ public class SVGRendererTest {
         r.render(output);
     }
 
+    @Test
+    public void compressed() throws Exception {
+        Style s = Style.build().select("*")
+           .set(POLYGON_FILL, RGB.gray)
+           .style();
+
+        java.util.Map<Object,Object> opts = new HashMap<Object, Object>();
+        opts.put(SVG.COMPRESS, true);
+        opts.put(SVG.PRECISION, 0);
+
+        View v = Map.build().layer(TestData.states()).style(s).view();
+        r.init(v, opts);
+        r.render(output);
+
+        Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(
+            new GZIPInputStream(new ByteArrayInputStream(output.toByteArray())));
+        assertEquals("svg", doc.getDocumentElement().getNodeName());
+
+        String d = doc.getElementsByTagName("path").item(0).getAttributes()
+            .getNamedItem("d").getNodeValue();
+        assertTrue(d.matches("m[-0-9 mlz]+"));
+    }
+
     //uncomment to write out resulting svg to home directory
     //@After
     public void debugOutput() throws IOException {
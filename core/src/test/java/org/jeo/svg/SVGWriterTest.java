@@ -0,0 +1,93 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.svg;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.jeo.geom.CoordinatePath;
+import org.jeo.geom.GeomBuilder;
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Geometry;
+
+public class SVGWriterTest {
+
+    static final String DECL = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>";
+
+    @Test
+    public void testLine() throws Exception {
+        Geometry g = new GeomBuilder().points(10.04, 20, 15.5, 20, 15.5, 12.25, 15.51, 12.26)
+            .lineString().get();
+        assertEquals("<path d=\"m10 20 5.5 0 0-7.7\"/>", path(g, 1));
+        assertEquals("<path d=\"m10.04 20 5.46 0 0-7.75 0.01 0.01\"/>", path(g, 2));
+        assertEquals("<path d=\"m10 20 6 0 0-8\"/>", path(g, 0));
+    }
+
+    @Test
+    public void testPolygon() throws Exception {
+        Geometry g = new GeomBuilder()
+            .points(0, 0, 10, 0, 10, 10, 0, 0).ring()
+            .points(2, 1, 8, 1, 8, 7, 2, 1).ring().polygon().get();
+        assertEquals("<path d=\"m0 0 10 0 0 10z" + "m2 1 6 0 0 6z\"/>", path(g, 1));
+    }
+
+    @Test
+    public void testElements() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SVGWriter w = new SVGWriter(1).init(out, false);
+        w.start("svg", "width", 10);
+        w.atts("fill", "red").emptyElement("circle", "cx", 1.26, "cy", 2d);
+        w.element("text", "a < b & \"c\"", "x", 1.0, "font-family", "\"Foo\"");
+        w.end("svg").close();
+
+        assertEquals(DECL + "<svg width=\"10\"><circle fill=\"red\" cx=\"1.3\" cy=\"2\"/>"
+            + "<text x=\"1\" font-family=\"&quot;Foo&quot;\">a &lt; b &amp; \"c\"</text></svg>",
+            out.toString("UTF-8"));
+    }
+
+    @Test
+    public void testIndent() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SVGWriter w = new SVGWriter(1).indent(2).init(out, false);
+        w.start("svg").start("g").emptyElement("rect").end("g").end("svg").close();
+
+        assertEquals(DECL + "\n<svg>\n  <g>\n    <rect/>\n  </g>\n</svg>\n",
+            out.toString("UTF-8"));
+    }
+
+    @Test
+    public void testCompress() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SVGWriter w = new SVGWriter(1).init(out, true);
+        w.emptyElement("svg").close();
+
+        String svg = IOUtils.toString(
+            new GZIPInputStream(new ByteArrayInputStream(out.toByteArray())), "UTF-8");
+        assertEquals(DECL + "<svg/>", svg);
+    }
+
+    String path(Geometry g, int precision) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SVGWriter w = new SVGWriter(precision).init(out, false);
+        w.path(CoordinatePath.create(g)).close();
+        return out.toString("UTF-8").substring(DECL.length());
+    }
+}
@@ -23,6 +23,7 @@ import java.util.Map;
 
 import org.jeo.data.FileVectorDriver;
 import org.jeo.data.VectorDriver;
+import org.jeo.data.cache.ColumnarCache;
 import org.jeo.feature.Schema;
 import org.jeo.util.Key;
 import org.jeo.util.Messages;
@@ -48,7 +49,8 @@ public class CSV extends FileVectorDriver<CSVDataset> {
 
     @Override
     public List<Key<?>> getKeys() {
-        return (List) Arrays.asList(FILE, DELIM, HEADER, X, Y);
+        return (List) Arrays.asList(FILE, DELIM, HEADER, X, Y, ColumnarCache.CACHE,
+            ColumnarCache.CACHE_DIR);
     }
 
     @Override
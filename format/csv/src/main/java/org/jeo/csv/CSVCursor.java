@@ -19,6 +19,7 @@ import java.io.IOException;
 import java.util.Scanner;
 
 import org.jeo.data.Cursor;
+import org.jeo.feature.ArrayFeature;
 import org.jeo.feature.Feature;
 
 import com.csvreader.CsvReader;
@@ -27,12 +28,25 @@ public class CSVCursor extends Cursor<Feature> {
 
     CSVDataset csv;
     CsvReader reader;
+    ArrayFeature reused;
     Feature next;
     int i;
 
     public CSVCursor(CsvReader reader, CSVDataset csv) throws FileNotFoundException {
+        this(reader, csv, null);
+    }
+
+    /**
+     * Creates the cursor.
+     *
+     * @param reused Feature to read every row into, <code>null</code> to create a new feature
+     *   for each row.
+     */
+    public CSVCursor(CsvReader reader, CSVDataset csv, ArrayFeature reused) 
+        throws FileNotFoundException {
         this.reader = reader;
         this.csv = csv;
+        this.reused = reused;
         next = null;
         i = 0;
     }
@@ -40,7 +54,7 @@ public class CSVCursor extends Cursor<Feature> {
     @Override
     public boolean hasNext() throws IOException {
         if (next == null && reader.readRecord()) {
-            next = csv.feature(i++, reader);
+            next = csv.feature(i++, reader, reused);
         }
 
         return next != null;
@@ -29,6 +29,8 @@ import org.jeo.data.FileData;
 import org.jeo.data.Query;
 import org.jeo.data.QueryPlan;
 import org.jeo.data.VectorDataset;
+import org.jeo.data.cache.ColumnarCache;
+import org.jeo.feature.ArrayFeature;
 import org.jeo.feature.BasicFeature;
 import org.jeo.feature.Feature;
 import org.jeo.feature.Schema;
@@ -55,6 +57,9 @@ public class CSVDataset implements VectorDataset, FileData {
     /** handler for specific csv flavor */
     CSVHandler handler;
 
+    /** binary cache, may be null */
+    ColumnarCache cache;
+
     public CSVDataset(File file) throws IOException {
         this(file, new CSVOpts());
     }
@@ -103,6 +108,19 @@ public class CSVDataset implements VectorDataset, FileData {
         }
         
         schema = sb.schema();
+
+        if (opts.getCacheDir() != null) {
+            cache = new ColumnarCache(file, opts.getCacheDir(), getName()) {
+                @Override
+                protected Cursor<Feature> read() throws IOException {
+                    return CSVDataset.this.cursor();
+                }
+                @Override
+                protected CoordinateReferenceSystem readCRS() {
+                    return CSVDataset.this.crs();
+                }
+            };
+        }
     }
 
     @Override
@@ -133,11 +151,17 @@ public class CSVDataset implements VectorDataset, FileData {
 
     @Override
     public Envelope bounds() throws IOException {
-        return Cursors.extent(cursor(new Query()));
+        if (cache != null && cache.available()) {
+            return cache.bounds();
+        }
+        return Cursors.extent(cursor(new Query().reuse()));
     }
 
     @Override
     public long count(Query q) throws IOException {
+        if (cache != null && q.getMode() == Cursor.READ && cache.available()) {
+            return cache.count(q);
+        }
         return Cursors.size(cursor(q));
     }
 
@@ -147,41 +171,77 @@ public class CSVDataset implements VectorDataset, FileData {
             throw new IllegalArgumentException("write cursors not supported");
         }
 
+        if (cache != null && cache.available()) {
+            return cache.cursor(q);
+        }
+
+        QueryPlan qp = new QueryPlan(q);
+        return qp.apply(cursor(qp.isReusable()));
+    }
+
+    CSVCursor cursor() throws IOException {
+        return cursor(false);
+    }
+
+    CSVCursor cursor(boolean reuse) throws IOException {
         CsvReader reader = reader();
         if (opts.hasHeader()) {
             reader.readHeaders();
         }
 
-        return new QueryPlan(q).apply(new CSVCursor(reader, this));
+        return new CSVCursor(reader, this, reuse ? new ArrayFeature(null, schema) : null);
     }
 
     public void close() {
+        if (cache != null) {
+            cache.close();
+        }
     }
 
     CsvReader reader() throws FileNotFoundException {
         return new CsvReader(new BufferedReader(new FileReader(file)), opts.getDelimiter());
     }
 
-    Feature feature(int i, CsvReader r) throws IOException {
+    /**
+     * Reads the feature of a row, into <tt>reused</tt> if not <code>null</code> and the row 
+     * matches the header.
+     */
+    Feature feature(int i, CsvReader r, ArrayFeature reused) throws IOException {
+        String[] row = r.getValues();
+        if (row.length + 1 == schema.size()) {
+            ArrayFeature f = reused != null ? reused.reset(String.valueOf(i)) :
+                new ArrayFeature(String.valueOf(i), new Object[schema.size()], schema);
+
+            Object[] values = f.values();
+            values[0] = handler.geom(r);
+            for (int j = 0; j < row.length; j++) {
+                values[j+1] = parse(row[j]);
+            }
+            return f;
+        }
+
+        // row does not match header
         List<Object> values = new ArrayList<Object>();
         values.add(handler.geom(r));
 
-        for (String val : r.getValues()) {
-            Object parsed = null;
+        for (String val : row) {
+            values.add(parse(val));
+        }
+
+        return new BasicFeature(String.valueOf(i), values, schema);
+    }
+
+    Object parse(String val) {
+        try {
+            return Integer.parseInt(val);
+        }
+        catch(NumberFormatException e1) {
             try {
-                parsed = Integer.parseInt(val);
+                return Double.parseDouble(val);
             }
-            catch(NumberFormatException e1) {
-                try {
-                    parsed = Double.parseDouble(val);
-                }
-                catch(NumberFormatException e2) {
-                    parsed = val;
-                }
+            catch(NumberFormatException e2) {
+                return val;
             }
-            values.add(parsed);
         }
-
-        return new BasicFeature(String.valueOf(i), values, schema);
     }
 }
@@ -15,11 +15,14 @@
 package org.jeo.csv;
 
 import static org.jeo.csv.CSV.*;
+
+import java.io.File;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.jeo.data.cache.ColumnarCache;
 import org.jeo.util.Key;
 import org.jeo.util.Pair;
 
@@ -31,6 +34,8 @@ public class CSVOpts {
     String xcol, ycol, wktcol;
     Integer x, y, wkt;
 
+    File cacheDir;
+
     List<Pair<Object,Class<?>>> mappings = new ArrayList<Pair<Object,Class<?>>>();
 
     public static CSVOpts fromMap(Map<?, Object> map) {
@@ -45,6 +50,8 @@ public class CSVOpts {
             csvOpts.xy(x.toString(), Y.get(map).toString());
         }
 
+        csvOpts.cache(ColumnarCache.dir(map));
+
         return csvOpts;
     }
 
@@ -98,12 +105,29 @@ public class CSVOpts {
         return this;
     }
 
+    public File getCacheDir() {
+        return cacheDir;
+    }
+
+    /**
+     * Enables a {@link ColumnarCache} stored in the specified directory, <code>null</code> 
+     * disables caching.
+     */
+    public CSVOpts cache(File cacheDir) {
+        this.cacheDir = cacheDir;
+        return this;
+    }
+
     public Map<Key<?>,Object> toMap() {
         Map<Key<?>, Object> map = new LinkedHashMap<Key<?>, Object>();
         map.put(DELIM, delim);
         map.put(HEADER, header);
         map.put(X, x != null ? x : xcol);
         map.put(Y, y != null ? y : ycol);
+        if (cacheDir != null) {
+            map.put(ColumnarCache.CACHE, true);
+            map.put(ColumnarCache.CACHE_DIR, cacheDir);
+        }
         return map;
     }
 
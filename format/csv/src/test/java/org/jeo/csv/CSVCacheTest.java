@@ -0,0 +1,128 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.csv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.jeo.Tests;
+import org.jeo.data.Cursor;
+import org.jeo.data.Cursors;
+import org.jeo.data.Query;
+import org.jeo.data.VectorApiTestBase;
+import org.jeo.data.VectorDataset;
+import org.jeo.feature.Feature;
+import org.jeo.util.Util;
+import org.junit.Test;
+
+public class CSVCacheTest extends VectorApiTestBase {
+
+    File dir;
+
+    @Override
+    protected VectorDataset createVectorData() throws Exception {
+        dir = Tests.newTmpDir("states", "csv");
+        Tests.unzip(getClass().getResourceAsStream("states.csv.zip"), dir);
+
+        return CSV.open(new File(dir, "states.csv"),
+            new CSVOpts().wkt("wkt").delimiter(';').cache(new File(dir, "cache")));
+    }
+
+    @Override
+    public void testCRS() throws IOException {
+        // ignore for now, we don't have any mechanism for projection in csv
+    }
+
+    @Test
+    public void testCacheFile() throws Exception {
+        CSVDataset data = CSV.open(new File(dir, "states.csv"),
+            new CSVOpts().wkt("wkt").delimiter(';'));
+        CSVDataset cached = CSV.open(new File(dir, "states.csv"),
+            new CSVOpts().wkt("wkt").delimiter(';').cache(new File(dir, "cache")));
+
+        assertEquals(data.count(new Query()), cached.count(new Query()));
+        assertTrue(cached.cache.getFile().exists());
+        assertEquals(data.bounds(), cached.bounds());
+
+        Query q = new Query().filter("STATE_ABBR = 'TX'");
+        assertEquals(data.count(q), cached.count(q));
+
+        List<Feature> expected = read(data.cursor(new Query()));
+        List<Feature> actual = read(cached.cursor(new Query()));
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Feature e = expected.get(i), a = actual.get(i);
+            assertEquals(e.getId(), a.getId());
+            assertEquals(e.get("STATE_NAME"), a.get("STATE_NAME"));
+            assertEquals(e.get("SAMP_POP"), a.get("SAMP_POP"));
+            assertTrue(e.geometry().equalsExact(a.geometry()));
+        }
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        File file = new File(dir, "small.csv");
+        write(file, "bomb, 1, 2");
+
+        CSVDataset data = new CSV().open((Map) Util.map("file", file, "x", "lon", "y", "lat",
+            "cache", true, "cache_dir", new File(dir, "cache")));
+        assertEquals(1, data.count(new Query()));
+        assertEquals(1, data.bounds().getMinX(), 0.1);
+        assertTrue(data.cache.getFile().exists());
+
+        // ensure the modification time changes
+        write(file, "dynamite, 3, 4", "anvil, 5, 6");
+        file.setLastModified(file.lastModified() + 10000);
+
+        assertEquals(2, data.count(new Query()));
+        assertEquals(3, data.bounds().getMinX(), 0.1);
+        assertEquals(1, Cursors.size(data.cursor(new Query().filter("name = 'anvil'"))));
+    }
+
+    List<Feature> read(Cursor<Feature> c) throws IOException {
+        List<Feature> list = new ArrayList<Feature>();
+        try {
+            for (Feature f : c) {
+                list.add(f);
+            }
+        }
+        finally {
+            c.close();
+        }
+        return list;
+    }
+
+    void write(File file, String... rows) throws IOException {
+        Writer out = new FileWriter(file);
+        try {
+            out.write("name, lon, lat\n");
+            for (String row : rows) {
+                out.write(row);
+                out.write("\n");
+            }
+        }
+        finally {
+            out.close();
+        }
+    }
+}
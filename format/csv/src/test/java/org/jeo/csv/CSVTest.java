@@ -15,14 +15,18 @@
 package org.jeo.csv;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
 import org.jeo.Tests;
+import org.jeo.data.Cursor;
 import org.jeo.data.Cursors;
 import org.jeo.data.Query;
+import org.jeo.feature.Feature;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -52,6 +56,23 @@ public class CSVTest {
         assertEquals(1, Cursors.size(csv.cursor(new Query().filter("name = 'fire,cracker'"))));
     }
 
+    @Test
+    public void testReuse() throws Exception {
+        Cursor<Feature> c = csv.cursor(new Query().reuse());
+        try {
+            assertTrue(c.hasNext());
+            Feature first = c.next();
+            assertEquals("0", first.getId());
+
+            assertTrue(c.hasNext());
+            assertSame(first, c.next());
+            assertEquals("1", first.getId());
+        }
+        finally {
+            c.close();
+        }
+    }
+
     InputStream csv() {
         StringBuilder sb = new StringBuilder();
         
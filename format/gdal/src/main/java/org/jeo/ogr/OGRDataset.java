@@ -293,7 +293,7 @@ public class OGRDataset implements VectorDataset, FileData {
                 l.SetSpatialFilterRect(bb.getMinX(), bb.getMinY(), bb.getMaxX(), bb.getMaxY());
             }
 
-            if (!q.isFiltered()) {
+            if (!q.isFiltered() && !q.isAggregated()) {
                 return q.adjustCount(l.GetFeatureCount());
             }
 
@@ -19,7 +19,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.jeo.data.Cursor;
-import org.jeo.feature.BasicFeature;
+import org.jeo.feature.ArrayFeature;
 import org.jeo.feature.Feature;
 import org.jeo.feature.Field;
 import org.jeo.feature.Schema;
@@ -46,17 +46,17 @@ public class FeatureCursor extends Cursor<Feature> {
     final boolean transaction;
     // index of primary key columns in result set
     final List<Integer> pkColumns;
-    // reusable holder for values as BasicFeature will copy these out
-    final List<Object> values;
     // reusable buffer for generating fid
     final StringBuilder buf = new StringBuilder();
+    // feature reused for every row, null if features are not reused
+    final ArrayFeature reused;
 
     Boolean next;
     Feature feature;
 
     FeatureCursor(Session session, Results results, Mode mode, FeatureEntry entry, GeoPkgWorkspace workspace,
-            Schema schema, PrimaryKey primaryKey, boolean usingTransaction, List<String> fields)
-        throws IOException {
+            Schema schema, PrimaryKey primaryKey, boolean usingTransaction, List<String> fields,
+            boolean reuse) throws IOException {
         super(mode);
 
         this.session = session;
@@ -80,8 +80,6 @@ public class FeatureCursor extends Cursor<Feature> {
         }
         this.fields = this.schema.getFields();
 
-        values = new ArrayList<Object>(schema.getFields().size());
-
         pkColumns = new ArrayList<Integer>(primaryKey.getColumns().size());
         int end = fields.size();
         for (PrimaryKeyColumn pkcol : primaryKey.getColumns()) {
@@ -93,6 +91,8 @@ public class FeatureCursor extends Cursor<Feature> {
                 pkColumns.add(end++);
             }
         }
+
+        reused = reuse && mode == READ ? new ArrayFeature(null, this.schema) : null;
     }
 
     @Override
@@ -113,19 +113,6 @@ public class FeatureCursor extends Cursor<Feature> {
         try {
             if (next != null && next) {
                 try {
-                    values.clear();
-
-                    for (int i = 0; i < fields.size(); i++) {
-                        Class type = fields.get(i).getType();
-                        if (Geometry.class.isAssignableFrom(type)) {
-                            byte[] bytes = results.getBytes(i);
-                            values.add(bytes != null ? geomReader.read(bytes) : null);
-                        }
-                        else {
-                            values.add(results.getObject(i,type));
-                        }
-                    }
-
                     String fid = null;
 
                     if (!pkColumns.isEmpty()) {
@@ -144,7 +131,22 @@ public class FeatureCursor extends Cursor<Feature> {
                         fid = buf.toString();
                     }
 
-                    return feature = new BasicFeature(fid, values, schema);
+                    ArrayFeature f = reused != null ? reused.reset(fid) : 
+                        new ArrayFeature(fid, new Object[fields.size()], schema);
+                    Object[] values = f.values();
+
+                    for (int i = 0; i < fields.size(); i++) {
+                        Class type = fields.get(i).getType();
+                        if (Geometry.class.isAssignableFrom(type)) {
+                            byte[] bytes = results.getBytes(i);
+                            values[i] = bytes != null ? geomReader.read(bytes) : null;
+                        }
+                        else {
+                            values[i] = results.getObject(i,type);
+                        }
+                    }
+
+                    return feature = f;
                 } finally {
                     next = null;
                 }
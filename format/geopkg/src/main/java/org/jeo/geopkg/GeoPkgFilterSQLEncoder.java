@@ -14,14 +14,131 @@
  */
 package org.jeo.geopkg;
 
+import java.sql.Types;
+
+import org.jeo.filter.Expression;
+import org.jeo.filter.Like;
+import org.jeo.filter.Literal;
+import org.jeo.filter.Property;
 import org.jeo.filter.Spatial;
 import org.jeo.sql.FilterSQLEncoder;
+import org.jeo.util.Pair;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
 
+/**
+ * Filter encoder for GeoPackage.
+ * <p>
+ * SQLite has no spatial functions so spatial filters are encoded loosely as a lookup of the 
+ * rtree spatial index of the feature table, when it has one, and evaluated exactly afterward.
+ * </p>
+ */
 public class GeoPkgFilterSQLEncoder extends FilterSQLEncoder {
 
+    String rtree;
+    String geometry;
+
+    /**
+     * Sets the rtree spatial index used to encode spatial filters.
+     * 
+     * @param rtree Name of the rtree table, may be <code>null</code>.
+     * @param geometry Name of the indexed geometry column.
+     */
+    public void setRtree(String rtree, String geometry) {
+        this.rtree = rtree;
+        this.geometry = geometry;
+    }
+
     @Override
     public Object visit(Spatial<?> spatial, Object obj) {
-        abort(spatial, "Spatial filters unsupported");
+        if (rtree == null || pkey == null || pkey.getColumns().size() != 1) {
+            abort(spatial, "Spatial filters require a spatial index");
+        }
+
+        switch(spatial.getType()) {
+        case DISJOINT:
+        case BEYOND:
+            abort(spatial, "Spatial filter can not be narrowed down with the spatial index");
+        default:
+        }
+
+        boolean left = spatial.getLeft() instanceof Property;
+        Expression p = left ? spatial.getLeft() : spatial.getRight();
+        Expression e = left ? spatial.getRight() : spatial.getLeft();
+        if (!(p instanceof Property) || !((Property) p).getProperty().equals(geometry) 
+            || !(e instanceof Literal)) {
+            abort(spatial, "Spatial filter must compare the geometry column to a literal");
+        }
+
+        Envelope bbox = envelope(e.evaluate(null));
+        if (bbox == null || bbox.isNull()) {
+            abort(spatial, "Spatial filter requires a non empty geometry");
+        }
+        if (spatial.getType() == Spatial.Type.DWITHIN) {
+            Object d = spatial.getDistance().evaluate(null);
+            if (!(d instanceof Number)) {
+                abort(spatial, "Distance must be a number");
+            }
+            bbox = new Envelope(bbox);
+            bbox.expandBy(((Number) d).doubleValue());
+        }
+
+        // features whose bounds intersect the bounds of the literal
+        sql.name(pkey.getColumns().get(0).getName()).add(" IN (SELECT id FROM ").name(rtree)
+           .add(" WHERE minx <= ");
+        encode(bbox.getMaxX());
+        sql.add(" AND maxx >= ");
+        encode(bbox.getMinX());
+        sql.add(" AND miny <= ");
+        encode(bbox.getMaxY());
+        sql.add(" AND maxy >= ");
+        encode(bbox.getMinY());
+        sql.add(")");
+        loose = true;
+        return obj;
+    }
+
+    void encode(double d) {
+        if (prepared) {
+            sql.add("?");
+            args.add(new Pair<Object, Integer>(d, Types.DOUBLE));
+        }
+        else {
+            sql.add(d);
+        }
+    }
+
+    Envelope envelope(Object obj) {
+        if (obj instanceof Geometry) {
+            return ((Geometry) obj).getEnvelopeInternal();
+        }
+        if (obj instanceof Envelope) {
+            return (Envelope) obj;
+        }
         return null;
     }
+
+    @Override
+    public Object visit(Like like, Object obj) {
+        // LIKE is case insensitive in sqlite, GLOB matches the case sensitive filter exactly
+        Object match = like.getMatch().evaluate(null);
+        if (!(match instanceof String) || REGEX.matcher((String) match).find()) {
+            abort(like, "pattern can not be expressed in sql");
+        }
+
+        // the wildcard matches line terminators in sql but not in memory
+        superset(like, ((String) match).indexOf('%') >= 0);
+
+        if (like.isNegated()) {
+            orNull(like.getProperty(), obj);
+        }
+        like.getProperty().accept(this, obj);
+        sql.add(like.isNegated() ? " NOT GLOB " : " GLOB ");
+        sql.str(((String) match).replace('%', '*'));
+        if (like.isNegated()) {
+            sql.add(')');
+        }
+        return obj;
+    }
 }
@@ -19,20 +19,22 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
+import org.jeo.data.Aggregate;
+import org.jeo.data.Aggregator;
 import org.jeo.data.Cursor;
 import org.jeo.data.Cursors;
 import org.jeo.data.Dataset;
 import org.jeo.data.FileData;
 import org.jeo.data.Handle;
+import org.jeo.data.Nearest;
 import org.jeo.data.Query;
 import org.jeo.data.QueryPlan;
 import org.jeo.tile.Tile;
+import org.jeo.tile.TileGrid;
 import org.jeo.tile.TilePyramid;
 import org.jeo.tile.TilePyramidBuilder;
 import org.jeo.data.Workspace;
@@ -41,6 +43,7 @@ import org.jeo.feature.Feature;
 import org.jeo.feature.Features;
 import org.jeo.feature.Field;
 import org.jeo.feature.Schema;
+import org.jeo.filter.Filter;
 import org.jeo.filter.Filters;
 import org.jeo.geom.Envelopes;
 import org.jeo.geom.Geom;
@@ -55,6 +58,7 @@ import org.osgeo.proj4j.CoordinateReferenceSystem;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Envelope;
 import static java.lang.String.format;
 import org.jeo.data.Transaction;
@@ -206,15 +210,14 @@ public class GeoPkgWorkspace implements Workspace, FileData {
     public long count(final FeatureEntry entry, final Query q) throws IOException {
         QueryPlan qp = new QueryPlan(q);
 
-        if (!Envelopes.isNull(q.getBounds())) {
+        if (!Envelopes.isNull(q.getBounds()) || q.getNearest() != null || q.isAggregated()) {
             return Cursors.size(cursor(entry, q));
         }
 
         final SQL sql = new SQL("SELECT count(*) FROM ").name(entry.getTableName());
         Session session = backend.session();
-        // if filter refers to properties not in the schema, defer to CQL filter
-        final List<Object> args = missingProperties(entry, q, session) ?
-                Collections.EMPTY_LIST : encodeQuery(sql, q, qp, primaryKey(entry, session));
+        final List<Object> args = encodeQuery(sql, q, qp, entry, schema(entry, session),
+            primaryKey(entry, session), null);
 
         if (q.isFiltered() && !qp.isFiltered()) {
             return Cursors.size(cursor(entry, q));
@@ -254,11 +257,47 @@ public class GeoPkgWorkspace implements Workspace, FileData {
             return new FeatureAppendCursor(transaction, entry, this, schema, usingTransaction);
         }
 
+        String rtree = null;
+        if (!Envelopes.isNull(q.getBounds()) || q.getNearest() != null 
+            || !Filters.isTrueOrNull(q.getFilter())) {
+            rtree = rtree(entry);
+        }
+
+        if (rtree != null && q.getNearest() != null && q.getMode() == Mode.READ) {
+            session.close();
+            return nearest(entry, q, rtree);
+        }
+
         QueryPlan qp = new QueryPlan(q);
         PrimaryKey pk = primaryKey(entry, session);
+
+        SQL from = new SQL(" FROM ").name(entry.getTableName());
+        List<Object> args = encodeQuery(from, q, qp, entry, schema, pk, rtree);
+
+        if (qp.isAggregated()) {
+            return aggregate(from, args, q, qp, transaction, session);
+        }
+
         SQL sqlb = new SQL("SELECT ");
 
         List<String> queryFields = q.getFields(schema);
+        boolean fieldsSelected = true;
+
+        Filter<Feature> residual = qp.getResidualFilter();
+        if (!queryFields.isEmpty() && residual != null) {
+            // the filter applied afterward needs the properties it refers to, the fields are
+            // then selected afterward as well
+            List<String> props = new ArrayList<String>(queryFields);
+            for (String p : Filters.properties(residual)) {
+                if (schema.field(p) != null && !props.contains(p)) {
+                    props.add(p);
+                    fieldsSelected = false;
+                }
+            }
+            // keep the fields in schema order
+            queryFields = new Query().fields(props).getFields(schema);
+        }
+
         // working set of fields in query
         if (queryFields.isEmpty()) {
             sqlb.add(" * ");
@@ -277,17 +316,12 @@ public class GeoPkgWorkspace implements Workspace, FileData {
             }
             sqlb.trim(2);
         }
-        sqlb.add(" FROM ").name(entry.getTableName());
+        sqlb.add(from);
 
-        // @todo if the generated SQL would reference any missing properties then
-        // we cannot do a native query (until we filter them out)
-        boolean missingProperties = missingProperties(entry, q, session);
-        List<Object> args =  missingProperties ?
-            Collections.EMPTY_LIST : encodeQuery(sqlb, q, qp, pk);
-        // if no missing properties, tell the query plan we can do the fields
-        if (!missingProperties) {
+        if (fieldsSelected) {
             qp.fields();
         }
+        LOG.debug("Query plan for {}: {}", entry.getTableName(), qp);
 
         Results rs = transaction.queryPrepared(sqlb.toString(), args.toArray());
         // if under a transaction, close the session since we're done with it
@@ -297,48 +331,213 @@ public class GeoPkgWorkspace implements Workspace, FileData {
 
         // if session != transaction, tell the cursor not to close the session
         Cursor<Feature> c = new FeatureCursor(transaction, rs, q.getMode(), entry, this,
-            schema, pk, usingTransaction, queryFields);
+            schema, pk, usingTransaction, queryFields, qp.isReusable());
 
-        if (!Envelopes.isNull(q.getBounds())) {
-            c = Cursors.intersects(c, q.getBounds());
+        return qp.apply(c);
+    }
+
+    /**
+     * Reads the natively computed aggregates of a query.
+     */
+    Cursor<Feature> aggregate(SQL from, List<Object> args, Query q, QueryPlan qp,
+        Session transaction, Session session) throws IOException {
+        GeoPkgFilterSQLEncoder sqlfe = new GeoPkgFilterSQLEncoder();
+        SQL sql = new SQL("SELECT ").add(sqlfe.encode(q.getAggregates(), q.getGroupBy()))
+            .add(from);
+
+        int columns = q.getGroupBy().size();
+        for (Aggregate a : q.getAggregates()) {
+            columns += a.columns();
         }
 
-        return qp.apply(c);
+        List<Feature> features = new ArrayList<Feature>();
+        Results rs = transaction.queryPrepared(sql.toString(), args.toArray());
+        try {
+            while (rs.next()) {
+                Object[] row = new Object[columns];
+                for (int i = 0; i < columns; i++) {
+                    row[i] = rs.getObject(i, Object.class);
+                }
+                features.add(Aggregator.feature(q, features.size(), row));
+            }
+        }
+        finally {
+            rs.close();
+            session.close();
+        }
+
+        return qp.apply(Cursors.create(features));
+    }
+
+    /**
+     * Nearest neighbour search guided by the rtree of the feature table.
+     * <p>
+     * Features are read from a window centered on the query point that is grown until the k
+     * nearest features found all lie within it, or it covers the extent of the table.
+     * </p>
+     */
+    Cursor<Feature> nearest(FeatureEntry entry, Query q, String rtree) throws IOException {
+        Nearest nearest = q.getNearest();
+        Coordinate p = nearest.getPoint();
+
+        Envelope extent = null;
+        double r = 0;
+        Results rs = backend.query(format("SELECT min(minx), max(maxx), min(miny), max(maxy), " +
+            "count(*) FROM %s", new SQL().name(rtree).toString()));
+        try {
+            if (rs.next() && rs.getLong(4) > 0) {
+                extent = new Envelope(rs.getDouble(0), rs.getDouble(1), rs.getDouble(2),
+                    rs.getDouble(3));
+                if (!Envelopes.isNull(q.getBounds())) {
+                    extent = extent.intersection(q.getBounds());
+                }
+            }
+
+            if (extent == null || extent.isNull()) {
+                return Cursors.empty(Feature.class);
+            }
+
+            // start with a window expected to hold about k features
+            double size = Math.max(extent.getWidth(), extent.getHeight());
+            r = size * Math.sqrt(nearest.getK() / (double) rs.getLong(4)) / 2d;
+        }
+        finally {
+            rs.close();
+        }
+        r = Math.max(r, extent.distance(new Envelope(p)));
+
+        while (true) {
+            Nearest.Queue queue = nearest.queue();
+
+            Envelope window = new Envelope(p.x - r, p.x + r, p.y - r, p.y + r);
+            Envelope bounds = Envelopes.isNull(q.getBounds()) ? window :
+                window.intersection(q.getBounds());
+            if (!bounds.isNull()) {
+                Query wq = new Query().bounds(bounds).filter(q.getFilter())
+                    .fields(new ArrayList<String>(q.getFields())).transaction(q.getTransaction());
+                Cursor<Feature> c = cursor(entry, wq);
+                try {
+                    for (Feature f : c) {
+                        queue.offer(f);
+                    }
+                }
+                finally {
+                    c.close();
+                }
+            }
+
+            // any feature closer than r intersects the window
+            if ((queue.isFull() && queue.distance() <= r) || window.contains(extent)) {
+                QueryPlan qp = new QueryPlan(q);
+                qp.bounded();
+                qp.filtered();
+                qp.nearest();
+                qp.fields();
+                return qp.apply(Cursors.create(queue.features()));
+            }
+            r *= 2;
+        }
     }
 
-    List<Object> encodeQuery(SQL sql, Query q, QueryPlan qp, PrimaryKey pk) {
+    /**
+     * Returns the name of the rtree spatial index of a feature table, or <code>null</code> if the
+     * table has none.
+     */
+    String rtree(FeatureEntry entry) throws IOException {
+        if (entry.getGeometryColumn() == null) {
+            return null;
+        }
+
+        String name = format("rtree_%s_%s", entry.getTableName(), entry.getGeometryColumn());
+        Results rs = backend.queryPrepared(
+            "SELECT name FROM sqlite_master WHERE type = 'table' AND name = ?", name);
+        try {
+            return rs.next() ? name : null;
+        }
+        finally {
+            rs.close();
+        }
+    }
+
+    List<Object> encodeQuery(SQL sql, Query q, QueryPlan qp, FeatureEntry entry, Schema schema,
+        PrimaryKey pk, String rtree) {
         GeoPkgFilterSQLEncoder sqlfe = new GeoPkgFilterSQLEncoder();
         sqlfe.setPrimaryKey(pk);
         sqlfe.setDbTypes(backend.dbTypes);
+        sqlfe.setSchema(schema);
+        sqlfe.setRtree(rtree, entry.getGeometryColumn());
 
-        if (!Filters.isTrueOrNull(q.getFilter())) {
-            try {
-                String where = sqlfe.encode(q.getFilter(), null);
-                sql.add(" WHERE ").add(where);
-                qp.filtered();
+        List<Object> args = new ArrayList<Object>();
+
+        String where = null;
+        Filter<Feature> filter = q.getFilter();
+        if (!Filters.isTrueOrNull(filter)) {
+            // encode what we can, the rest is evaluated afterward
+            Pair<Filter<Feature>,Filter<Feature>> split = sqlfe.split(filter);
+            if (split.first() != null) {
+                where = sqlfe.encode(split.first(), null);
+                for (Pair<Object, Integer> p : sqlfe.getArgs()) {
+                    args.add(p.first());
+                }
+                qp.filtered(split.second());
             }
-            catch(Exception e) {
-                LOG.debug("Unable to natively encode filter: " + q.getFilter(), e);
+            if (split.second() != null) {
+                LOG.debug("Unable to natively encode filter: " + split.second());
             }
         }
 
-        if (q.getLimit() != null) {
-            sql.add(" LIMIT ").add(q.getLimit());
-            qp.limited();
+        Envelope bounds = q.getBounds();
+        boolean bbox = false;
+        if (!Envelopes.isNull(bounds) && rtree != null && pk.getColumns().size() == 1) {
+            // the rtree stores rounded bounds so only use it to narrow down the candidates,
+            // the bounds are checked exactly afterward
+            sql.add(" WHERE ").name(pk.getColumns().get(0).getName()).add(" IN (SELECT id FROM ")
+               .name(rtree).add(" WHERE minx <= ? AND maxx >= ? AND miny <= ? AND maxy >= ?)");
+            args.addAll(0, Arrays.asList((Object) bounds.getMaxX(), bounds.getMinX(),
+                bounds.getMaxY(), bounds.getMinY()));
+            bbox = true;
+        }
+
+        if (where != null) {
+            sql.add(bbox ? " AND (" : " WHERE ").add(where).add(bbox ? ")" : "");
         }
-        if (q.getOffset() != null) {
-            //sqlite doesn't understand offset without limit
-            if (q.getLimit() == null) {
-                sql.add(" LIMIT -1");
+
+        // limit and offset only apply natively if every feature read is part of the result
+        boolean exact = Envelopes.isNull(bounds) && q.getNearest() == null
+            && (Filters.isTrueOrNull(q.getFilter()) || qp.isFiltered());
+
+        if (q.isAggregated()) {
+            if (!exact || q.getMode() != Mode.READ) {
+                // aggregated afterward, along with offset and limit
+                return args;
+            }
+
+            if (!q.getGroupBy().isEmpty()) {
+                SQL names = new SQL();
+                for (String g : q.getGroupBy()) {
+                    names.name(g).add(", ");
+                }
+                names.trim(2);
+                sql.add(" GROUP BY ").add(names).add(" ORDER BY ").add(names);
             }
-            sql.add(" OFFSET ").add(q.getOffset());
-            qp.offsetted();
+            qp.aggregated();
         }
 
-        List<Object> args = new ArrayList<Object>(sqlfe.getArgs().size());
-        for (Pair<Object, Integer> p : sqlfe.getArgs()) {
-            args.add(p.first());
+        if (exact) {
+            if (q.getLimit() != null) {
+                sql.add(" LIMIT ").add(q.getLimit());
+                qp.limited();
+            }
+            if (q.getOffset() != null) {
+                //sqlite doesn't understand offset without limit
+                if (q.getLimit() == null) {
+                    sql.add(" LIMIT -1");
+                }
+                sql.add(" OFFSET ").add(q.getOffset());
+                qp.offsetted();
+            }
         }
+
         return args;
     }
 
@@ -481,6 +680,96 @@ public class GeoPkgWorkspace implements Workspace, FileData {
         entry.init(e);
     }
 
+    /**
+     * Creates a new tile set.
+     * <p>
+     * The entry must specify a table name and a tile pyramid. The srid and bounds of the entry
+     * default to those of the pyramid.
+     * </p>
+     */
+    public void create(TileEntry entry) throws IOException {
+        //clone entry so we can work on it
+        TileEntry e = new TileEntry();
+        e.init(entry);
+
+        if (e.getTableName() == null) {
+            throw new IllegalArgumentException("Entry must have table name");
+        }
+
+        TilePyramid pyr = e.getTilePyramid();
+        if (pyr == null) {
+            throw new IllegalArgumentException("Entry must have tile pyramid");
+        }
+
+        if (e.getIdentifier() == null) {
+            e.setIdentifier(e.getTableName());
+        }
+        if (e.getDescription() == null) {
+            e.setDescription(e.getIdentifier());
+        }
+
+        if (e.getSrid() == null && pyr.getCRS() != null) {
+            e.setSrid(Proj.epsgCode(pyr.getCRS()));
+        }
+        if (e.getSrid() == null) {
+            throw new IllegalArgumentException("Entry must have srid");
+        }
+
+        if (e.getBounds() == null) {
+            e.setBounds(pyr.getBounds());
+        }
+
+        //mark changed
+        e.lastChange(new Date());
+
+        Session session = backend.transaction();
+        try {
+            boolean complete = false;
+            try {
+                createTileTable(e, session);
+                addGeopackageContentsEntry(e, session);
+                addTileMatrixSetEntry(e, session);
+                addTileMatrixEntries(e, session);
+                complete = true;
+            } finally {
+                session.endTransaction(complete);
+            }
+        } finally {
+            session.close();
+        }
+
+        //update the entry
+        entry.init(e);
+    }
+
+    void createTileTable(TileEntry entry, Session session) throws IOException {
+        SQL sql = new SQL("CREATE TABLE ").name(entry.getTableName()).add("(")
+            .add("id INTEGER PRIMARY KEY AUTOINCREMENT, zoom_level INTEGER NOT NULL, ")
+            .add("tile_column INTEGER NOT NULL, tile_row INTEGER NOT NULL, ")
+            .add("tile_data BLOB NOT NULL, UNIQUE (zoom_level, tile_column, tile_row))");
+
+        session.execute(sql.toString());
+    }
+
+    void addTileMatrixSetEntry(TileEntry entry, Session session) throws IOException {
+        Envelope b = entry.getTilePyramid().getBounds();
+        String sql = format("INSERT INTO %s VALUES (?, ?, ?, ?, ?, ?)", TILE_MATRIX_SET);
+
+        session.executePrepared(sql, entry.getTableName(), entry.getSrid(),
+            b.getMinX(), b.getMinY(), b.getMaxX(), b.getMaxY());
+    }
+
+    void addTileMatrixEntries(TileEntry entry, Session session) throws IOException {
+        TilePyramid pyr = entry.getTilePyramid();
+        String sql = format("INSERT INTO %s VALUES (?, ?, ?, ?, ?, ?, ?, ?)", TILE_MATRIX);
+
+        for (TileGrid grid : pyr.getGrids()) {
+            session.executePrepared(sql, entry.getTableName(), grid.getZ(), grid.getWidth(),
+                grid.getHeight(), pyr.getTileWidth(), pyr.getTileHeight(),
+                grid.getXRes(), grid.getYRes());
+        }
+    }
+
     void createFeatureTable(Schema schema, FeatureEntry entry, Session session) throws IOException {
         SQL sql = new SQL("CREATE TABLE ").name(schema.getName()).add("(");
 
@@ -501,7 +790,7 @@ public class GeoPkgWorkspace implements Workspace, FileData {
         session.execute(sql.toString());
     }
 
-    void addGeopackageContentsEntry(FeatureEntry entry, Session session) throws IOException {
+    void addGeopackageContentsEntry(Entry entry, Session session) throws IOException {
         //addCRS(e.getSrid());
 
         SQL sqlb = new SQL("INSERT INTO").add(" %s ", GEOPACKAGE_CONTENTS)
@@ -750,6 +1039,23 @@ public class GeoPkgWorkspace implements Workspace, FileData {
         
     }
 
+    /**
+     * Inserts a tile into a tile set, replacing any existing tile with the same index.
+     */
+    public void insert(TileEntry entry, Tile tile) throws IOException {
+        SQL sql = new SQL("INSERT OR REPLACE INTO ").name(entry.getTableName())
+            .add(" (zoom_level, tile_column, tile_row, tile_data) VALUES (?,?,?,?)");
+
+        Session session = backend.session();
+        try {
+            session.executePrepared(sql.toString(),
+                tile.getZ(), tile.getX(), tile.getY(), tile.getData());
+        }
+        finally {
+            session.close();
+        }
+    }
+
     TileEntry createTileEntry(Results rs) throws IOException {
         final TileEntry e = new TileEntry();
         backend.initEntry(e, rs);
@@ -781,18 +1087,6 @@ public class GeoPkgWorkspace implements Workspace, FileData {
         return e;
     }
 
-    boolean missingProperties(FeatureEntry entry, Query q, Session session) throws IOException {
-        boolean hasMissing = false;
-        if (q.getFilter() != null) {
-            Set<String> properties = Filters.properties(q.getFilter());
-            // try to defer resolving the schema unless needed
-            if (!properties.isEmpty()) {
-                hasMissing = !q.missingProperties(schema(entry, session)).isEmpty();
-            }
-        }
-        return hasMissing;
-    }
-
     @Override
     /**
      * Closes the geopackage and the underlying database connection.
@@ -26,10 +26,23 @@ import com.vividsolutions.jts.io.InputStreamInStream;
 import com.vividsolutions.jts.io.ParseException;
 import com.vividsolutions.jts.io.WKBReader;
 
+/**
+ * Reads geometries in the GeoPackage binary format.
+ * <p>
+ * The reader reuses its decoding buffers across calls so a single instance should be used to
+ * read many geometries, by one thread at a time.
+ * </p>
+ */
 public class GeoPkgGeomReader {
 
+    final WKBReader wkbReader = new WKBReader();
+    final ByteArrayInStream bytesIn = new ByteArrayInStream(new byte[0]);
+    final ByteOrderDataInStream din = new ByteOrderDataInStream();
+    final byte[] buf = new byte[4];
+
     public Geometry read(byte[] bytes) throws IOException {
-        return read(new ByteArrayInStream(bytes));
+        bytesIn.setBytes(bytes);
+        return read(bytesIn);
     }
 
     public Geometry read(InputStream in) throws IOException {
@@ -42,7 +55,7 @@ public class GeoPkgGeomReader {
         
         // read the geometry
         try {
-            Geometry g = new WKBReader().read(input);
+            Geometry g = wkbReader.read(input);
             g.setSRID(h.srid);
             return g;
         } catch (ParseException e) {
@@ -83,14 +96,13 @@ public class GeoPkgGeomReader {
 
         // read first 4 bytes  
         // TODO: something with the magic number
-        byte[] buf = new byte[4];
         in.read(buf);
 
         // next byte flags
         h.flags = new Flags((byte)buf[3]);
 
         // set endianness
-        ByteOrderDataInStream din = new ByteOrderDataInStream(in);
+        din.setInStream(in);
         din.setOrder(h.flags.getEndianess());
 
         // read the srid
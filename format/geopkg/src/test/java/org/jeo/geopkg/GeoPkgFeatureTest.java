@@ -19,26 +19,35 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.apache.commons.io.FileUtils;
+import org.jeo.data.Aggregate;
 import org.jeo.data.Cursor;
+import org.jeo.data.Cursors;
 import org.jeo.data.Query;
+import org.jeo.data.QueryPlan;
 import org.jeo.data.VectorDataset;
 import org.jeo.feature.BasicFeature;
 import org.jeo.feature.Feature;
 import org.jeo.feature.Features;
 import org.jeo.feature.Schema;
 import org.jeo.feature.SchemaBuilder;
+import org.jeo.filter.Filter;
 import org.jeo.geom.Geom;
+import org.jeo.geopkg.Backend.Session;
 import org.jeo.geopkg.Entry.DataType;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.MultiPolygon;
@@ -125,6 +134,255 @@ public class GeoPkgFeatureTest extends GeoPkgTestSupport {
         c.close();
     }
 
+    @Test
+    public void testReadWithPartialFilter() throws Exception {
+        FeatureEntry entry = geopkg.feature("states");
+        createRTree(entry);
+        String geom = geopkg.createSchema(entry).geometry().getName();
+
+        for (String cql : Arrays.asList(
+            "STATE_NAME LIKE 'N%' AND foo IS NULL",
+            "STATE_NAME NOT LIKE 'N%'",
+            "STATE_NAME LIKE 'n%'",
+            "STATE_ABBR NOT IN ('TX', 'CA') AND SAMP_POP / 2 > 500000",
+            "INTERSECTS(" + geom + ", POLYGON((-100 35, -90 35, -90 45, -100 45, -100 35)))"
+                + " AND SAMP_POP > 1000000",
+            "DWITHIN(" + geom + ", POINT(-95 40), 2, meters) OR STATE_NAME = 'Texas'")) {
+            Query q = new Query().filter(cql);
+            Filter<Feature> filter = q.getFilter();
+
+            List<String> expected = new ArrayList<String>();
+            for (Feature f : read(geopkg.cursor(entry, new Query()))) {
+                if (filter.apply(f)) {
+                    expected.add(f.get("STATE_NAME").toString());
+                }
+            }
+
+            List<String> actual = new ArrayList<String>();
+            for (Feature f : read(geopkg.cursor(entry, q.fields("STATE_NAME")))) {
+                assertEquals(1, f.map().size());
+                actual.add(f.get("STATE_NAME").toString());
+            }
+            assertEquals(cql, expected, actual);
+            assertEquals(cql, expected.size(), geopkg.count(entry, q));
+        }
+    }
+
+    @Test
+    public void testReadNegatedWithNull() throws Exception {
+        FeatureEntry entry = geopkg.feature("states");
+        VectorDataset states = (VectorDataset) geopkg.get("states");
+
+        // a state without abbreviation or region
+        Cursor<Feature> c = states.cursor(new Query().append());
+        assertTrue(c.hasNext());
+        Feature f = c.next();
+        f.put("STATE_NAME", "Nowhere");
+        c.write().close();
+
+        for (String cql : Arrays.asList(
+            "STATE_ABBR NOT IN ('TX', 'CA')",
+            "SUB_REGION NOT LIKE 'N%'",
+            "NOT (STATE_ABBR IN ('TX', 'CA'))",
+            "NOT (SUB_REGION = 'Pacific')")) {
+            Query q = new Query().filter(cql);
+
+            List<String> expected = new ArrayList<String>();
+            for (Feature e : read(new QueryPlan(q).apply(geopkg.cursor(entry, new Query())))) {
+                expected.add(e.get("STATE_NAME").toString());
+            }
+            assertTrue(cql, expected.contains("Nowhere"));
+
+            List<String> actual = new ArrayList<String>();
+            for (Feature a : read(geopkg.cursor(entry, q))) {
+                actual.add(a.get("STATE_NAME").toString());
+            }
+            assertEquals(cql, expected, actual);
+            assertEquals(cql, expected.size(), geopkg.count(entry, q));
+        }
+    }
+
+    @Test
+    public void testReadLikeMultiline() throws Exception {
+        FeatureEntry entry = geopkg.feature("states");
+        VectorDataset states = (VectorDataset) geopkg.get("states");
+
+        // the wildcard does not match line terminators in memory
+        Cursor<Feature> c = states.cursor(new Query().append());
+        assertTrue(c.hasNext());
+        c.next().put("STATE_NAME", "New\nLine");
+        c.write().close();
+
+        for (String cql : Arrays.asList("STATE_NAME LIKE 'New%'", "STATE_NAME NOT LIKE 'New%'")) {
+            Query q = new Query().filter(cql);
+
+            List<String> expected = new ArrayList<String>();
+            for (Feature e : read(new QueryPlan(q).apply(geopkg.cursor(entry, new Query())))) {
+                expected.add(e.get("STATE_NAME").toString());
+            }
+            assertTrue(cql, expected.contains("New\nLine") == cql.contains("NOT"));
+
+            List<String> actual = new ArrayList<String>();
+            for (Feature a : read(geopkg.cursor(entry, q))) {
+                actual.add(a.get("STATE_NAME").toString());
+            }
+            assertEquals(cql, expected, actual);
+            assertEquals(cql, expected.size(), geopkg.count(entry, q));
+        }
+    }
+
+    @Test
+    public void testNearest() throws Exception {
+        FeatureEntry entry = geopkg.feature("states");
+        assertNull(geopkg.rtree(entry));
+        assertNearest(entry);
+    }
+
+    @Test
+    public void testNearestWithRTree() throws Exception {
+        FeatureEntry entry = geopkg.feature("states");
+        createRTree(entry);
+        assertNotNull(geopkg.rtree(entry));
+        assertNearest(entry);
+
+        Envelope bbox = new Envelope(-100, -90, 35, 45);
+        assertEquals(Cursors.size(Cursors.intersects(
+            geopkg.cursor(entry, new Query()), bbox)), geopkg.count(entry, new Query().bounds(bbox)));
+    }
+
+    @Test
+    public void testReuse() throws Exception {
+        FeatureEntry entry = geopkg.feature("states");
+
+        List<Feature> expected = read(geopkg.cursor(entry, new Query()));
+        Cursor<Feature> c = geopkg.cursor(entry, new Query().reuse());
+        try {
+            Feature f = null;
+            for (Feature e : expected) {
+                assertTrue(c.hasNext());
+                Feature next = c.next();
+                if (f != null) {
+                    assertSame(f, next);
+                }
+                f = next;
+                assertEquals(e.getId(), f.getId());
+                assertEquals(e.map(), f.map());
+            }
+            assertFalse(c.hasNext());
+        }
+        finally {
+            c.close();
+        }
+
+        // features retained by a nearest query are not reused
+        List<Feature> nearest = read(geopkg.cursor(entry,
+            new Query().nearest(new Coordinate(-97, 31), 2).reuse()));
+        assertEquals(2, nearest.size());
+        assertEquals("Texas", nearest.get(0).get("STATE_NAME"));
+    }
+
+    @Test
+    public void testAggregate() throws Exception {
+        FeatureEntry entry = geopkg.feature("states");
+        Aggregate[] aggs = new Aggregate[]{Aggregate.count(), Aggregate.sum("SAMP_POP"),
+            Aggregate.min("STATE_NAME"), Aggregate.max("P_MALE"), Aggregate.mean("P_FEMALE"),
+            Aggregate.histogram("P_MALE", 0.47, 0.51, 4)};
+
+        assertAggregate(entry, new Query().aggregate(aggs));
+        assertAggregate(entry, new Query().aggregate(aggs).filter("SAMP_POP > 1000000"));
+        assertAggregate(entry, new Query().aggregate(aggs).filter("SAMP_POP < 0"));
+        assertAggregate(entry, new Query().aggregate(aggs).groupBy("SUB_REGION"));
+        assertAggregate(entry, new Query().aggregate(aggs).groupBy("SUB_REGION", "STATE_FIPS")
+            .bounds(new Envelope(-110, -80, 30, 40)));
+        assertAggregate(entry, new Query().aggregate(aggs).groupBy("SUB_REGION").offset(2).limit(3));
+        assertAggregate(entry, new Query().groupBy("SUB_REGION"));
+
+        createRTree(entry);
+        assertAggregate(entry, new Query().aggregate(aggs).groupBy("SUB_REGION")
+            .bounds(new Envelope(-110, -80, 30, 40)));
+    }
+
+    void assertAggregate(FeatureEntry entry, Query q) throws Exception {
+        List<Feature> expected = read(new QueryPlan(q).apply(geopkg.cursor(entry, new Query())));
+        List<Feature> actual = read(geopkg.cursor(entry, q));
+
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.size(), geopkg.count(entry, q));
+        for (int i = 0; i < expected.size(); i++) {
+            Feature e = expected.get(i), a = actual.get(i);
+            assertEquals(e.map().keySet(), a.map().keySet());
+            for (String key : e.map().keySet()) {
+                if (e.get(key) instanceof Double) {
+                    assertEquals((Double) e.get(key), ((Number) a.get(key)).doubleValue(), 1e-6);
+                }
+                else if (e.get(key) instanceof Number) {
+                    assertEquals(((Number) e.get(key)).longValue(), ((Number) a.get(key)).longValue());
+                }
+                else {
+                    assertEquals(e.get(key), a.get(key));
+                }
+            }
+        }
+    }
+
+    void assertNearest(FeatureEntry entry) throws Exception {
+        Coordinate[] points = new Coordinate[]{new Coordinate(-97, 31), new Coordinate(-120, 45),
+            new Coordinate(-75, 41), new Coordinate(-150, 60), new Coordinate(0, 0)};
+
+        for (Coordinate p : points) {
+            for (int k : new int[]{1, 5, 100}) {
+                assertNearest(entry, new Query().nearest(p, k));
+                assertNearest(entry, new Query().nearest(p, k).filter("STATE_NAME > 'M'"));
+                assertNearest(entry, new Query().nearest(p, k).bounds(new Envelope(-110, -80, 30, 40)));
+                assertNearest(entry, new Query().nearest(p, k).offset(1).limit(2));
+            }
+        }
+        assertEquals("Texas", Cursors.first(geopkg.cursor(entry,
+            new Query().nearest(points[0], 1))).get("STATE_NAME"));
+    }
+
+    void assertNearest(FeatureEntry entry, Query q) throws Exception {
+        List<Feature> expected = read(new QueryPlan(q).apply(geopkg.cursor(entry, new Query())));
+        List<Feature> actual = read(geopkg.cursor(entry, q));
+
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.size(), geopkg.count(entry, q));
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getId(), actual.get(i).getId());
+        }
+    }
+
+    List<Feature> read(Cursor<Feature> c) throws Exception {
+        List<Feature> list = new ArrayList<Feature>();
+        try {
+            for (Feature f : c) {
+                list.add(f);
+            }
+        }
+        finally {
+            c.close();
+        }
+        return list;
+    }
+
+    void createRTree(FeatureEntry entry) throws Exception {
+        String rtree = "rtree_states_" + entry.getGeometryColumn();
+
+        Session session = geopkg.backend.session();
+        try {
+            session.execute(String.format(
+                "CREATE VIRTUAL TABLE %s USING rtree(id, minx, maxx, miny, maxy)", rtree));
+            for (Feature f : read(geopkg.cursor(entry, new Query()))) {
+                Envelope e = f.geometry().getEnvelopeInternal();
+                session.executePrepared(String.format("INSERT INTO %s VALUES (?,?,?,?,?)", rtree),
+                    Long.parseLong(f.getId()), e.getMinX(), e.getMaxX(), e.getMinY(), e.getMaxY());
+            }
+        }
+        finally {
+            session.close();
+        }
+    }
+
     @Test
     public void testAdd() throws Exception {
         FeatureEntry entry = geopkg.feature("states");
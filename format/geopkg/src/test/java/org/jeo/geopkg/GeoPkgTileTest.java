@@ -27,6 +27,7 @@ import java.util.List;
 import org.apache.commons.io.FileUtils;
 import org.jeo.data.Cursor;
 import org.jeo.tile.Tile;
+import org.jeo.tile.TilePyramid;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -70,4 +71,35 @@ public class GeoPkgTileTest extends GeoPkgTestSupport {
         assertNull(r.next());
     }
 
+    @Test
+    public void testCreate() throws Exception {
+        TileEntry entry = new TileEntry();
+        entry.setTableName("foo");
+        entry.setTilePyramid(TilePyramid.build().grids(3).pyramid());
+
+        geopkg.create(entry);
+        assertEquals(4326, entry.getSrid().intValue());
+
+        geopkg.insert(entry, new Tile(1, 2, 1, new byte[]{1, 2, 3}, "image/png"));
+        geopkg.insert(entry, new Tile(2, 3, 0, new byte[]{4, 5}, "image/png"));
+
+        TileEntry e = geopkg.tile("foo");
+        assertNotNull(e);
+        assertEquals(3, e.getTilePyramid().getGrids().size());
+        assertEquals(4, e.getTilePyramid().grid(1).getWidth().intValue());
+
+        Cursor<Tile> r = geopkg.read(e);
+        assertTrue(r.hasNext());
+        Tile t = r.next();
+        assertEquals(Integer.valueOf(1), t.getZ());
+        assertEquals(Integer.valueOf(2), t.getX());
+        assertEquals(Integer.valueOf(1), t.getY());
+        assertEquals(3, t.getData().length);
+
+        assertTrue(r.hasNext());
+        assertNotNull(r.next());
+        assertFalse(r.hasNext());
+        r.close();
+    }
+
 }
@@ -142,6 +142,11 @@ public class MongoDataset implements VectorDataset {
             dbcol.find(encodeBboxQuery(q.getBounds())) : dbcol.find();
         qp.bounded();
 
+        if (!Filters.isTrueOrNull(q.getFilter()) || q.getNearest() != null) {
+            // offset and limit have to be applied after filtering and nearest selection
+            return qp.apply(new MongoCursor(q.getMode(), dbCursor, this));
+        }
+
         Integer offset = q.getOffset();
         if (offset != null) {
             dbCursor.skip(offset);
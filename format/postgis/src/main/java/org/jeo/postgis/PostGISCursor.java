@@ -24,9 +24,11 @@ import java.util.LinkedHashMap;
 import java.util.Map;
 
 import org.jeo.data.Cursor;
+import org.jeo.feature.ArrayFeature;
 import org.jeo.feature.BasicFeature;
 import org.jeo.feature.DiffFeature;
 import org.jeo.feature.Feature;
+import org.jeo.feature.Schema;
 import org.jeo.sql.PrimaryKey;
 import org.jeo.sql.PrimaryKeyColumn;
 
@@ -40,11 +42,24 @@ public class PostGISCursor extends Cursor<Feature> {
     Boolean hasNext;
     Feature next;
 
-    PostGISCursor(ResultSet rs, Connection cx, Mode mode, PostGISDataset dataset) {
+    /** schema index of each result set column */
+    int[] columns;
+    /** whether each result set column is a geometry */
+    boolean[] geometry;
+    WKBReader wkbReader = new WKBReader();
+    /** buffer for building feature ids */
+    StringBuilder sb = new StringBuilder();
+
+    /** whether to reuse a single feature for every row */
+    boolean reuse;
+    ArrayFeature reused;
+
+    PostGISCursor(ResultSet rs, Connection cx, Mode mode, PostGISDataset dataset, boolean reuse) {
         super(mode);
         this.rs = rs;
         this.cx = cx;
         this.dataset = dataset;
+        this.reuse = reuse && mode == READ;
     }
 
     @Override
@@ -63,29 +78,43 @@ public class PostGISCursor extends Cursor<Feature> {
     public Feature next() throws IOException {
         if (hasNext != null && hasNext.booleanValue()) {
             try {
-                Map<String,Object> map = new LinkedHashMap<String, Object>();
-                ResultSetMetaData md = rs.getMetaData();
-                for (int i = 0; i < md.getColumnCount(); i++) {
-                    Object obj = rs.getObject(i+1);
-                    String col = md.getColumnName(i+1);
-
-                    if (dataset.schema().field(col).isGeometry()) {
-                        obj = new WKBReader().read(rs.getBytes(i+1));
-                    }
-
-                    map.put(col, obj);
+                if (columns == null) {
+                    init(rs.getMetaData());
                 }
 
+                Schema schema = dataset.schema();
                 PrimaryKey key = dataset.getTable().getPrimaryKey();
-                StringBuilder sb = new StringBuilder();
-                for (PrimaryKeyColumn pkcol : key.getColumns()) {
-                    sb.append(map.get(pkcol.getName())).append(".");
+                sb.setLength(0);
+
+                if (columns.length == schema.size()) {
+                    // every field selected, read straight into a value array
+                    if (reuse && reused == null) {
+                        reused = new ArrayFeature(null, schema);
+                    }
+
+                    Object[] values = reused != null ? reused.values() : new Object[schema.size()];
+                    for (int i = 0; i < columns.length; i++) {
+                        values[columns[i]] = read(i);
+                    }
+
+                    for (PrimaryKeyColumn pkcol : key.getColumns()) {
+                        sb.append(values[schema.indexOf(pkcol.getName())]).append(".");
+                    }
+                    next = reused != null ? reused.reset(fid(sb, key)) :
+                        new ArrayFeature(fid(sb, key), values, schema);
                 }
-                if (!key.getColumns().isEmpty()) {
-                    sb.setLength(sb.length()-1);
+                else {
+                    Map<String,Object> map = new LinkedHashMap<String, Object>();
+                    for (int i = 0; i < columns.length; i++) {
+                        map.put(schema.getFields().get(columns[i]).getName(), read(i));
+                    }
+
+                    for (PrimaryKeyColumn pkcol : key.getColumns()) {
+                        sb.append(map.get(pkcol.getName())).append(".");
+                    }
+                    next = new BasicFeature(fid(sb, key), map, schema);
                 }
 
-                next = new BasicFeature(sb.toString(), map, dataset.schema());
                 return next = mode == Cursor.UPDATE ? new DiffFeature(next) : next;
             }
             catch(Exception e) {
@@ -99,6 +128,33 @@ public class PostGISCursor extends Cursor<Feature> {
         return null;
     }
 
+    void init(ResultSetMetaData md) throws SQLException {
+        Schema schema = dataset.schema();
+
+        columns = new int[md.getColumnCount()];
+        geometry = new boolean[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            String col = md.getColumnName(i+1);
+            columns[i] = schema.indexOf(col);
+            geometry[i] = schema.field(col).isGeometry();
+        }
+    }
+
+    Object read(int i) throws Exception {
+        if (geometry[i]) {
+            byte[] bytes = rs.getBytes(i+1);
+            return bytes != null ? wkbReader.read(bytes) : null;
+        }
+        return rs.getObject(i+1);
+    }
+
+    String fid(StringBuilder sb, PrimaryKey key) {
+        if (!key.getColumns().isEmpty()) {
+            sb.setLength(sb.length()-1);
+        }
+        return sb.toString();
+    }
+
     @Override
     protected void doWrite() throws IOException {
         dataset.doUpdate(next, ((DiffFeature) next).getChanged(), cx);
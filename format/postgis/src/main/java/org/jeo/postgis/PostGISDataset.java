@@ -29,9 +29,12 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
+import org.jeo.data.Aggregate;
+import org.jeo.data.Aggregator;
 import org.jeo.data.Cursor;
 import org.jeo.data.Cursors;
 import org.jeo.data.Driver;
+import org.jeo.data.Nearest;
 import org.jeo.data.Query;
 import org.jeo.data.QueryPlan;
 import org.jeo.data.VectorDataset;
@@ -54,10 +57,11 @@ import org.osgeo.proj4j.CoordinateReferenceSystem;
 
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Point;
 import com.vividsolutions.jts.geom.Polygon;
 import com.vividsolutions.jts.io.WKBReader;
 import com.vividsolutions.jts.io.WKTWriter;
-import java.util.Set;
 
 public class PostGISDataset implements VectorDataset {
 
@@ -141,11 +145,9 @@ public class PostGISDataset implements VectorDataset {
         final SQL sql = new SQL("SELECT count(*) FROM ").name(schema().getName());
         final List<Pair<Object,Integer>> args = new ArrayList<Pair<Object,Integer>>();
 
-        // if filter refers to properties not in the schema, defer to CQL filter
-        if (!missingProperties(q)) {
-            encodeQuery(sql, q, qp, args);
-        }
-        if (!Filters.isTrueOrNull(q.getFilter()) && qp.isFiltered()) {
+        encodeQuery(sql, q, qp, args);
+        if (!Filters.isTrueOrNull(q.getFilter()) && qp.isFiltered() && q.getNearest() == null
+            && !q.isAggregated()) {
             return pg.run(new DbOP<Long>() {
                 @Override
                 protected Long doRun(Connection cx) throws Exception {
@@ -176,7 +178,15 @@ public class PostGISDataset implements VectorDataset {
             }
     
             Schema schema = schema();
-    
+
+            SQL from = new SQL(" FROM ").name(schema.getName());
+            List<Pair<Object,Integer>> args = new ArrayList<Pair<Object,Integer>>();
+            encodeQuery(from, q, qp, args);
+
+            if (qp.isAggregated()) {
+                return aggregate(from, args, q, qp, cx);
+            }
+
             SQL sql = new SQL("SELECT ");
             
             if (q.getFields().isEmpty()) {
@@ -203,27 +213,33 @@ public class PostGISDataset implements VectorDataset {
     
                     geom = geom || f.isGeometry();
                 }
+                // the filter applied afterward needs the properties it refers to
+                Filter<Feature> residual = qp.getResidualFilter();
+                if (residual != null) {
+                    for (String prop : Filters.properties(residual)) {
+                        Field f = schema.field(prop);
+                        if (f != null && !f.isGeometry() && !q.getFields().contains(prop)) {
+                            encodeFieldForSelect(f, sql);
+                            sql.add(", ");
+                        }
+                    }
+                }
                 sql.trim(2);
-    
-                
+
                 if (!geom && schema.geometry() != null) {
                     encodeFieldForSelect(schema.geometry(), sql.add(", "));
                 }
             }
     
-            sql.add(" FROM ").name(schema.getName());
-
-            List<Pair<Object,Integer>> args = new ArrayList<Pair<Object,Integer>>();
-            // if filter refers to properties not in the schema, defer to CQL filter
-            if (!missingProperties(q)) {
-                encodeQuery(sql, q, qp, args);
-            }
+            sql.add(from);
 
             pg.logQuery(sql, args);
+            LOG.debug("Query plan for {}: {}", schema.getName(), qp);
 
             try {
                 PreparedStatement st = pg.prepareStatement(sql, args, cx);
-                return qp.apply(new PostGISCursor(st.executeQuery(), cx, q.getMode(), this));
+                return qp.apply(new PostGISCursor(
+                    st.executeQuery(), cx, q.getMode(), this, qp.isReusable()));
             }
             catch(SQLException e) {
                 cx.close();
@@ -234,6 +250,46 @@ public class PostGISDataset implements VectorDataset {
         }
     }
 
+    /**
+     * Reads the natively computed aggregates of a query.
+     */
+    Cursor<Feature> aggregate(SQL from, List<Pair<Object,Integer>> args, Query q, QueryPlan qp,
+        Connection cx) throws SQLException {
+        FilterSQLEncoder sqle = new PostGISFilterEncoder(this);
+        SQL sql = new SQL("SELECT ").add(sqle.encode(q.getAggregates(), q.getGroupBy())).add(from);
+
+        int columns = q.getGroupBy().size();
+        for (Aggregate a : q.getAggregates()) {
+            columns += a.columns();
+        }
+
+        pg.logQuery(sql, args);
+
+        List<Feature> features = new ArrayList<Feature>();
+        try {
+            PreparedStatement st = pg.prepareStatement(sql, args, cx);
+            try {
+                ResultSet rs = st.executeQuery();
+                while (rs.next()) {
+                    Object[] row = new Object[columns];
+                    for (int i = 0; i < columns; i++) {
+                        row[i] = rs.getObject(i + 1);
+                    }
+                    features.add(Aggregator.feature(q, features.size(), row));
+                }
+                rs.close();
+            }
+            finally {
+                st.close();
+            }
+        }
+        finally {
+            cx.close();
+        }
+
+        return qp.apply(Cursors.create(features));
+    }
+
     @Override
     public void close() {
     }
@@ -272,22 +328,60 @@ public class PostGISDataset implements VectorDataset {
 
         Filter<Feature> filter = q.getFilter();
         if (!Filters.isTrueOrNull(filter)) {
+            // encode what we can, the rest is evaluated afterward
             FilterSQLEncoder sqle = new PostGISFilterEncoder(this);
-            try {
-                String where = sqle.encode(filter, null);
-                if (args.isEmpty()) {
-                    sql.add(" WHERE ");
-                }
+            Pair<Filter<Feature>,Filter<Feature>> split = sqle.split(filter);
+            if (split.first() != null) {
+                String where = sqle.encode(split.first(), null);
+                sql.add(qp.isBounded() ? " AND " : " WHERE ");
                 sql.add(where);
                 args.addAll(sqle.getArgs());
 
-                qp.filtered();
+                qp.filtered(split.second());
             }
-            catch(Exception e) {
-                LOG.debug("Unable to natively encode filter", e);
+            if (split.second() != null) {
+                LOG.debug("Unable to natively encode filter: " + split.second());
             }
         }
 
+        if (!Filters.isTrueOrNull(filter) && !qp.isFiltered()) {
+            // offset, limit, nearest and aggregates have to be applied after filtering
+            return;
+        }
+
+        if (q.isAggregated()) {
+            if (q.getNearest() != null || q.getMode() != Cursor.READ
+                || (!Envelopes.isNull(q.getBounds()) && !qp.isBounded())) {
+                return;
+            }
+
+            if (!q.getGroupBy().isEmpty()) {
+                SQL group = new SQL(), order = new SQL();
+                for (String g : q.getGroupBy()) {
+                    group.name(g).add(", ");
+                    order.name(g).add(" NULLS FIRST, ");
+                }
+                sql.add(" GROUP BY ").add(group.trim(2)).add(" ORDER BY ").add(order.trim(2));
+            }
+            qp.aggregated();
+        }
+
+        Nearest nearest = q.getNearest();
+        if (nearest != null) {
+            if (schema.geometry() != null && pg.info.hasKnnDistance()) {
+                // the query plan sorts the candidates by exact distance, and applies any offset
+                // and limit afterward
+                Integer srid = schema.geometry().property("srid", Integer.class);
+                Point p = new GeometryFactory().createPoint(nearest.getPoint());
+
+                sql.add(" ORDER BY ").name(schema.geometry().getName())
+                   .add(" <-> ST_GeomFromText(?, ?) LIMIT ").add(nearest.getK());
+                args.add(new Pair(p.toText(), Types.VARCHAR));
+                args.add(new Pair(srid, Types.INTEGER));
+            }
+            return;
+        }
+
         Integer offset = q.getOffset();
         if (offset != null) {
             qp.offsetted();
@@ -443,16 +537,4 @@ public class PostGISDataset implements VectorDataset {
                 "Unable to generate value for %s.%s", schema().getName(), pkcol.getName()));
         }
     }
-
-    boolean missingProperties(Query q) throws IOException {
-        boolean hasMissing = false;
-        if (q.getFilter() != null) {
-            Set<String> properties = Filters.properties(q.getFilter());
-            // try to defer resolving the schema unless needed
-            if (!properties.isEmpty()) {
-                hasMissing = !q.missingProperties(schema()).isEmpty();
-            }
-        }
-        return hasMissing;
-    }
 }
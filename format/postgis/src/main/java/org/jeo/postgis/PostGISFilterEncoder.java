@@ -15,6 +15,7 @@
 package org.jeo.postgis;
 
 import org.jeo.feature.Field;
+import org.jeo.filter.Spatial;
 import org.jeo.sql.FilterSQLEncoder;
 
 import com.vividsolutions.jts.geom.Geometry;
@@ -29,6 +30,40 @@ public class PostGISFilterEncoder extends FilterSQLEncoder {
         setSchema(dataset.schema());
     }
 
+    @Override
+    public Object visit(Spatial<?> spatial, Object obj) {
+        Field fld = field(spatial.getLeft(), spatial.getRight());
+
+        switch(spatial.getType()) {
+        case DISJOINT:
+        case BEYOND:
+            return super.visit(spatial, obj);
+        case DWITHIN:
+            // uses the spatial index itself
+            sql.add("ST_DWithin(");
+            spatial.getLeft().accept(this, fld);
+            sql.add(", ");
+            spatial.getRight().accept(this, fld);
+            sql.add(", ");
+            spatial.getDistance().accept(this, null);
+            sql.add(")");
+            return obj;
+        default:
+        }
+
+        // compare bounding boxes first so the spatial index is used
+        sql.add("(");
+        spatial.getLeft().accept(this, fld);
+        sql.add(" && ");
+        spatial.getRight().accept(this, fld);
+        if (spatial.getType() != Spatial.Type.BBOX) {
+            sql.add(" AND ");
+            super.visit(spatial, obj);
+        }
+        sql.add(")");
+        return obj;
+    }
+
     @Override
     protected int srid(Geometry geo, Object obj) {
         if (geo.getSRID() == 0 && obj instanceof Field) {
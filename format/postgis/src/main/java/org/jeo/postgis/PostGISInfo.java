@@ -54,4 +54,13 @@ public class PostGISInfo {
     public boolean isAtLeastVersion2() {
         return postgis.compareTo(new Version("2.0")) >= 1;
     }
+
+    /**
+     * Whether the <tt>&lt;-></tt> operator orders by actual geometry distance rather than by
+     * distance between bounding boxes.
+     */
+    public boolean hasKnnDistance() {
+        return postgis.compareTo(new Version("2.2")) >= 0
+            && postgres.compareTo(new Version("9.5")) >= 0;
+    }
 }
@@ -44,6 +44,7 @@ import java.util.Properties;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.jeo.data.Aggregate;
 import org.jeo.data.Cursor;
 import org.jeo.data.Cursors;
 import org.jeo.data.Dataset;
@@ -65,6 +66,7 @@ import org.jeo.geom.Envelopes;
 import org.jeo.geom.Geom;
 import org.jeo.json.JSONObject;
 import org.jeo.json.JSONValue;
+import org.jeo.json.encoder.JSONEncoder;
 import org.jeo.map.MapBuilder;
 import org.jeo.map.Style;
 import org.jeo.map.View;
@@ -78,7 +80,10 @@ import org.osgeo.proj4j.CoordinateReferenceSystem;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Point;
 
 import org.jeo.filter.Id;
 import org.jeo.filter.Literal;
@@ -144,6 +149,10 @@ public class FeatureHandler extends Handler {
 
         Query q = buildQuery(layer, request);
 
+        // optional number of decimal places for coordinates, checked before streaming starts
+        final Integer precision = request.parms.containsKey("precision") ? 
+            parsePrecision(request.parms.getProperty("precision")) : null;
+
         String fieldSpec = request.parms.getProperty("fields");
         String[] fields = null;
         if (fieldSpec != null && fieldSpec.length() > 0) {
@@ -180,6 +189,9 @@ public class FeatureHandler extends Handler {
             @Override
             public void write(OutputStream output) throws IOException {
                 w = new GeoJSONWriter(new OutputStreamWriter(output));
+                if (precision != null) {
+                    w.setPrecision(precision);
+                }
                 w.featureCollection(c);
                 w.flush();
             }
@@ -201,6 +213,12 @@ public class FeatureHandler extends Handler {
             bbox = parseBBOX(p.getProperty("bbox"));
         }
 
+        //parse the nearest point and number of features
+        Pair<Coordinate,Integer> nearest = null;
+        if (p.containsKey("nearest")) {
+            nearest = parseNearest(p.getProperty("nearest"));
+        }
+
         Query q = new Query();
 
         String fid = parseFeatureId(request);
@@ -219,6 +237,13 @@ public class FeatureHandler extends Handler {
                 bbox = Proj.reproject(bbox, to, from);
             }
 
+            // and the nearest point
+            if (nearest != null && from != null && !Proj.equal(from, to)) {
+                Point pt = new GeometryFactory().createPoint(nearest.first());
+                nearest = new Pair<Coordinate,Integer>(
+                    Proj.reproject(pt, to, from).getCoordinate(), nearest.second());
+            }
+
             q.reproject(from, to);
         }
 
@@ -226,6 +251,10 @@ public class FeatureHandler extends Handler {
             q.bounds(bbox);
         }
 
+        if (nearest != null) {
+            q.nearest(nearest.first(), nearest.second());
+        }
+
         if (p.containsKey("limit")) {
             q.limit(Integer.parseInt(p.getProperty("limit")));
         }
@@ -238,6 +267,14 @@ public class FeatureHandler extends Handler {
             q.filter(parseFilter(p.getProperty("filter")));
         }
 
+        if (p.containsKey("aggregate")) {
+            q.aggregate(parseAggregates(p.getProperty("aggregate")));
+        }
+
+        if (p.containsKey("groupBy")) {
+            q.groupBy(p.getProperty("groupBy").split(" *, *"));
+        }
+
         return q;
     }
 
@@ -362,7 +399,7 @@ public class FeatureHandler extends Handler {
             }
         }
         else {
-            style = createStyle();
+            style = defaultStyle();
         }
         mb.style(style);
 
@@ -547,6 +584,52 @@ public class FeatureHandler extends Handler {
             Double.parseDouble(split[1]), Double.parseDouble(split[3]));
     }
 
+    Pair<Coordinate,Integer> parseNearest(String nearest) {
+        String[] split = nearest.split(",");
+        try {
+            if (split.length == 3) {
+                Coordinate c = new Coordinate(
+                    Double.parseDouble(split[0]), Double.parseDouble(split[1]));
+                int k = Integer.parseInt(split[2].trim());
+                if (k > 0) {
+                    return new Pair<Coordinate,Integer>(c, k);
+                }
+            }
+        }
+        catch(NumberFormatException e) {
+            // fall through
+        }
+        throw new HttpException(HTTP_BADREQUEST,
+            "Invalid nearest: " + nearest + ", expected x,y,k with positive k");
+    }
+
+    Integer parsePrecision(String precision) {
+        try {
+            int p = Integer.parseInt(precision.trim());
+            if (p >= -1 && p <= JSONEncoder.MAX_PRECISION) {
+                return p;
+            }
+        }
+        catch(NumberFormatException e) {
+            // fall through
+        }
+        throw new HttpException(HTTP_BADREQUEST, "Invalid precision: " + precision 
+            + ", expected an integer between -1 and " + JSONEncoder.MAX_PRECISION);
+    }
+
+    Aggregate[] parseAggregates(String aggregates) {
+        List<Aggregate> list = new ArrayList<Aggregate>();
+        for (String spec : aggregates.split(";")) {
+            try {
+                list.add(Aggregate.parse(spec));
+            }
+            catch(IllegalArgumentException e) {
+                throw new HttpException(HTTP_BADREQUEST, e.getMessage());
+            }
+        }
+        return list.toArray(new Aggregate[list.size()]);
+    }
+
     Filter parseFilter(String cql) {
         try {
             return CQL.parse(cql);
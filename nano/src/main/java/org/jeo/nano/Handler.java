@@ -47,6 +47,9 @@ import org.osgeo.proj4j.UnsupportedParameterException;
 
 public abstract class Handler {
 
+    /** default style, shared across requests */
+    private volatile Style defaultStyle;
+
     public void init(NanoServer server) {
     }
 
@@ -155,6 +158,17 @@ public abstract class Handler {
         }
     }
 
+    /**
+     * Returns the default style, creating it with {@link #createStyle()} on first use and 
+     * reusing it for subsequent requests.
+     */
+    protected Style defaultStyle() {
+        if (defaultStyle == null) {
+            defaultStyle = createStyle();
+        }
+        return defaultStyle;
+    }
+
     protected Style createStyle() {
         return Style.build().select("*")
                 .set(CartoCSS.LINE_COLOR, "gray")
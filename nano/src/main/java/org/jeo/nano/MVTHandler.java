@@ -0,0 +1,174 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.nano;
+
+import static org.jeo.nano.NanoHTTPD.HTTP_BADREQUEST;
+import static org.jeo.nano.NanoHTTPD.HTTP_NOTFOUND;
+import static org.jeo.nano.NanoHTTPD.HTTP_OK;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jeo.data.Dataset;
+import org.jeo.data.Query;
+import org.jeo.data.VectorDataset;
+import org.jeo.data.Workspace;
+import org.jeo.filter.cql.CQL;
+import org.jeo.filter.cql.ParseException;
+import org.jeo.mvt.VectorTileEncoder;
+import org.jeo.nano.NanoHTTPD.Response;
+import org.jeo.tile.Tile;
+import org.jeo.tile.TilePyramid;
+import org.jeo.tile.TilePyramid.Origin;
+import org.jeo.util.Pair;
+
+/**
+ * Serves vector layers as Mapbox vector tiles in the spherical mercator tiling scheme.
+ * <p>
+ * Tiles are requested as <tt>/mvt/&lt;workspace>/&lt;layer>/&lt;z>/&lt;x>/&lt;y>.pbf</tt>, with a
+ * top left origin unless the <tt>origin</tt> parameter specifies otherwise. The optional
+ * <tt>fields</tt> and <tt>filter</tt> parameters restrict the attributes and features encoded,
+ * and <tt>buffer</tt> and <tt>extent</tt> control the encoding of geometries.
+ * </p>
+ */
+public class MVTHandler extends Handler {
+
+    /* /mvt/<workspace>/<layer>/<z>/<x>/<y>.<format> */
+    static final Pattern MVT_URI_RE = Pattern.compile(
+        "/mvt(?:/([\\w-]+)(?:/([\\w-]+)))/(\\d+)/+(\\d+)/+(\\d+)(?:\\.(\\w+))?",
+        Pattern.CASE_INSENSITIVE);
+
+    /** maximum zoom level served */
+    static final int MAX_ZOOM = 22;
+
+    static final TilePyramid PYRAMID = VectorTileEncoder.webMercator(MAX_ZOOM);
+
+    @Override
+    public boolean canHandle(Request request, NanoServer server) {
+        return match(request, MVT_URI_RE);
+    }
+
+    @Override
+    public Response handle(Request request, NanoServer server) {
+        try {
+            Pair<Workspace, VectorDataset> p = findVectorLayer(request, server);
+            VectorDataset layer = p.second();
+
+            try {
+                Tile t = parseTileIndex(request);
+
+                VectorTileEncoder encoder = new VectorTileEncoder(PYRAMID);
+                Properties q = request.getParms();
+                try {
+                    if (q != null && q.containsKey("buffer")) {
+                        encoder.setBuffer(parseInt(q, "buffer"));
+                    }
+                    if (q != null && q.containsKey("extent")) {
+                        encoder.setExtent(parseInt(q, "extent"));
+                    }
+                }
+                catch(IllegalArgumentException e) {
+                    throw new HttpException(HTTP_BADREQUEST, e.getMessage());
+                }
+
+                byte[] pbf = encoder.encode(t, layer, parseQuery(q));
+                return new Response(
+                    HTTP_OK, VectorTileEncoder.MIME_TYPE, new ByteArrayInputStream(pbf));
+            }
+            finally {
+                layer.close();
+                Workspace ws = p.first();
+                if (ws != null) {
+                    ws.close();
+                }
+            }
+        }
+        catch(IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    Pair<Workspace, VectorDataset> findVectorLayer(Request request, NanoServer server)
+        throws IOException {
+        Pair<Workspace, ? extends Dataset> p = findWorkspaceOrDataset(request, server.getRegistry());
+        if (!(p.second() instanceof VectorDataset)) {
+            throw new HttpException(HTTP_NOTFOUND, "No such vector layer at: " + request.getUri());
+        }
+        return (Pair<Workspace, VectorDataset>) p;
+    }
+
+    Tile parseTileIndex(Request request) {
+        Matcher m = (Matcher) request.getContext().get(Matcher.class);
+
+        Tile t = new Tile(Integer.parseInt(m.group(3)), Integer.parseInt(m.group(4)),
+            Integer.parseInt(m.group(5)));
+
+        // map to the pyramid origin if necessary
+        Properties q = request.getParms();
+        if (q != null && q.containsKey("origin")) {
+            Origin origin;
+            try {
+                origin = Origin.valueOf(q.getProperty("origin").toUpperCase());
+            }
+            catch(IllegalArgumentException e) {
+                throw new HttpException(HTTP_BADREQUEST, "Illegal origin parameter: "
+                    + q.getProperty("origin"));
+            }
+            t = PYRAMID.realign(t, origin);
+        }
+
+        if (t == null || PYRAMID.grid(t.getZ()) == null) {
+            throw new HttpException(HTTP_NOTFOUND, "No tile grid for zoom level " + m.group(3));
+        }
+        return t;
+    }
+
+    Query parseQuery(Properties p) {
+        Query q = new Query();
+        if (p == null) {
+            return q;
+        }
+
+        String fields = p.getProperty("fields");
+        if (fields != null && fields.length() > 0) {
+            q.fields(fields.split(","));
+        }
+
+        if (p.containsKey("filter")) {
+            String cql = p.getProperty("filter");
+            try {
+                q.filter(CQL.parse(cql));
+            }
+            catch(ParseException e) {
+                throw new HttpException(HTTP_BADREQUEST, "Unsupported cql filter: " + cql + "\n"
+                    + e.getMessage());
+            }
+        }
+        return q;
+    }
+
+    int parseInt(Properties p, String key) {
+        try {
+            return Integer.parseInt(p.getProperty(key));
+        }
+        catch(NumberFormatException e) {
+            throw new HttpException(HTTP_BADREQUEST, "Illegal " + key + " parameter: "
+                + p.getProperty(key));
+        }
+    }
+}
@@ -30,7 +30,9 @@ import java.util.logging.Level;
 import org.jeo.data.DataRepository;
 import org.jeo.data.DataRepositoryView;
 import org.jeo.data.DirectoryRepository;
+import org.jeo.data.MetadataCache;
 import org.jeo.data.mem.MemRepository;
+import org.jeo.filter.Filters;
 import org.jeo.map.render.RendererRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -62,7 +64,7 @@ public class NanoServer extends NanoHTTPD {
 
         if (handlers == null || handlers.isEmpty()) {
             handlers = Arrays.asList(new TileHandler(), new FeatureHandler(), new StyleHandler(),
-                    new WMSHandler(), new WMTSHandler());
+                    new WMSHandler(), new WMTSHandler(), new MVTHandler());
         }
 
         this.handlers.addAll(handlers);
@@ -214,7 +216,15 @@ public class NanoServer extends NanoHTTPD {
     static DataRepositoryView loadRegistry(Opts opts) {
         DataRepository repo;
         if (opts.data != null) {
-            repo = new DirectoryRepository(opts.data);
+            DirectoryRepository dir = new DirectoryRepository(opts.data);
+            dir.setMetadataCache(MetadataCache.forDirectory(opts.data));
+            try {
+                // listing starts computing metadata in the background
+                dir.query(Filters.all());
+            } catch (IOException e) {
+                LOG.warn("Error listing " + opts.data.getPath(), e);
+            }
+            repo = dir;
         } else {
             repo = new MemRepository();
         }
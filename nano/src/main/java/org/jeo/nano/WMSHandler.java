@@ -20,9 +20,13 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import org.jeo.data.DataRepositoryView;
 import org.jeo.data.Dataset;
@@ -52,6 +56,22 @@ public class WMSHandler extends OWSHandler {
 
     static final Logger LOG = LoggerFactory.getLogger(NanoServer.class);
 
+    /** maximum number of combined styles to cache */
+    static final int COMBINED_CACHE_SIZE = 32;
+
+    /** 
+     * combined styles, keyed by the names of the styles they were combined from. Entries are 
+     * validated against the styles returned by the repository, which returns a new style object 
+     * when the files it was read from change in length or modification time.
+     */
+    final Map<List<String>,Combined> combined = Collections.synchronizedMap(
+        new LinkedHashMap<List<String>, Combined>(COMBINED_CACHE_SIZE, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<String>, Combined> eldest) {
+                return size() > COMBINED_CACHE_SIZE;
+            }
+        });
+
     public WMSHandler() {
         super("wms");
     }
@@ -80,7 +100,7 @@ public class WMSHandler extends OWSHandler {
             Filter filter = i < filters.size() ? filters.get(i) : null;
             mb.layer(dataSet.get(i), filter);
         }
-        mb.style(Style.combine(styles));
+        mb.style(styles.size() == 1 ? styles.get(0) : Style.combine(styles));
         View view = mb.view();
         Renderer renderer = factory.create(view, null);
         renderer.init(view, null);
@@ -94,6 +114,44 @@ public class WMSHandler extends OWSHandler {
         return new NanoHTTPD.Response(HTTP_OK, mimeType, new ByteArrayInputStream(bout.toByteArray()));
     }
 
+    Style combine(List<String> names, List<Style> styles) {
+        if (styles.size() == 1) {
+            return styles.get(0);
+        }
+
+        Combined c = combined.get(names);
+        if (c == null || !c.valid(styles)) {
+            c = new Combined(styles);
+            combined.put(new ArrayList<String>(names), c);
+        }
+        return c.style;
+    }
+
+    /**
+     * A combined style along with the styles it was combined from.
+     */
+    static class Combined {
+        final List<Style> sources;
+        final Style style;
+
+        Combined(List<Style> sources) {
+            this.sources = new ArrayList<Style>(sources);
+            this.style = Style.combine(sources);
+        }
+
+        boolean valid(List<Style> styles) {
+            if (styles.size() != sources.size()) {
+                return false;
+            }
+            for (int i = 0; i < styles.size(); i++) {
+                if (styles.get(i) != sources.get(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
     class GetCaps implements DelegateHandler {
 
         final XMLWriter xml;
@@ -326,6 +384,9 @@ public class WMSHandler extends OWSHandler {
 
             List<Dataset> datasets = resolveDatasets(layerSpecs, server.getRegistry());
             List<Style> styles = resolveStyles(styleSpecs, datasets, server.getRegistry());
+            if (styles.size() > 1) {
+                styles = Collections.singletonList(combine(Arrays.asList(styleSpecs), styles));
+            }
 
             if (crs == null && !datasets.isEmpty()) {
                 crs = datasets.get(0).crs();
@@ -383,7 +444,7 @@ public class WMSHandler extends OWSHandler {
                 }
             }
             if (styles.isEmpty()) {
-                styles.add(createStyle());
+                styles.add(defaultStyle());
             }
             return styles;
         }
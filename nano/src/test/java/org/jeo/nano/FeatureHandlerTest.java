@@ -18,6 +18,7 @@ import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.Point;
 import java.io.InputStreamReader;
+import java.util.Properties;
 import java.util.regex.Pattern;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -77,6 +78,69 @@ public class FeatureHandlerTest extends HandlerTestSupport {
         mock.verify();
     }
 
+    @Test
+    public void testGetWorkspaceDatasetJSONNearest() throws Exception {
+        mock = MockServer.create()
+                .withVectorLayer()
+                    .withNearestFeatures()
+                .replay();
+
+        Response res = makeRequest(
+                new Request("/features/foo/bar", "GET", null, q("nearest","-97,31,3"), null),
+                NanoHTTPD.HTTP_OK,
+                NanoHTTPD.MIME_JSON
+        );
+
+        Cursor<Feature> features = (Cursor<Feature>) new GeoJSONReader().read(res.stream());
+        assertFalse(features.hasNext());
+
+        mock.verify();
+
+        mock = MockServer.create()
+                .withVectorLayer()
+                .replay();
+        makeBadRequest(
+                new Request("/features/foo/bar", "GET", null, q("nearest","-97,31"), null),
+                NanoHTTPD.HTTP_BADREQUEST,
+                "Invalid nearest: -97,31, expected x,y,k with positive k"
+        );
+    }
+
+    @Test
+    public void testGetWorkspaceDatasetJSONAggregate() throws Exception {
+        mock = MockServer.create()
+                .withVectorLayer()
+                    .withAggregateFeatures()
+                .replay();
+
+        Properties q = q("aggregate", "count;sum(value)");
+        q.put("groupBy", "name");
+        Response res = makeRequest(
+                new Request("/features/foo/bar", "GET", null, q, null),
+                NanoHTTPD.HTTP_OK,
+                NanoHTTPD.MIME_JSON
+        );
+
+        JSONObject parse = (JSONObject) new JSONParser().parse(new InputStreamReader(res.stream()));
+        JSONArray features = (JSONArray) parse.get("features");
+        assertEquals(1, features.size());
+        JSONObject props = (JSONObject) ((JSONObject) features.get(0)).get("properties");
+        assertEquals("foo", props.get("name"));
+        assertEquals(2l, props.get("count"));
+        assertEquals(3.0, props.get("sum_value"));
+
+        mock.verify();
+
+        mock = MockServer.create()
+                .withVectorLayer()
+                .replay();
+        makeBadRequest(
+                new Request("/features/foo/bar", "GET", null, q("aggregate","median(value)"), null),
+                NanoHTTPD.HTTP_BADREQUEST,
+                "Unknown aggregate function: median"
+        );
+    }
+
     @Test
     public void testGetWorkspaceDatasetJSONAllFieldsWithQuery() throws Exception {
         // make sure all fields come back when using a filter
@@ -346,6 +410,20 @@ public class FeatureHandlerTest extends HandlerTestSupport {
         
     }
 
+    @Test
+    public void testInvalidPrecision() throws Exception {
+        for (String precision : new String[]{"abc", "18", "-2"}) {
+            mock = MockServer.create()
+                        .withVectorLayer()
+                    .replay();
+            makeBadRequest(
+                    new Request("/features/foo/bar", "GET", null, q("precision", precision), null),
+                    NanoHTTPD.HTTP_BADREQUEST,
+                    "Invalid precision: " + precision + ", expected an integer between -1 and 17"
+            );
+        }
+    }
+
     private void assertInvalidSRSResponse(String srs, String message) throws Exception {
         mock = MockServer.create()
                     .withVectorLayer()
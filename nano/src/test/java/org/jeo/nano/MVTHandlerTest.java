@@ -0,0 +1,96 @@
+/* Copyright 2014 The jeo project. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeo.nano;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.jeo.mvt.VectorTileEncoder;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MVTHandlerTest extends HandlerTestSupport {
+
+    @Before
+    public void init() {
+        handler = new MVTHandler();
+    }
+
+    @Test
+    public void testPattern() {
+        assertPattern(MVTHandler.MVT_URI_RE, "/mvt/work-space/data_set/1/2/3.pbf",
+            "work-space", "data_set", "1", "2", "3", "pbf");
+        assertPattern(MVTHandler.MVT_URI_RE, "/mvt/workspace/dataset/4/5/6",
+            "workspace", "dataset", "4", "5", "6", null);
+        assertFalse(MVTHandler.MVT_URI_RE.matcher("/mvt/workspace/dataset").matches());
+    }
+
+    @Test
+    public void testGet() throws Exception {
+        mock = MockServer.create()
+                .withMemoryVectorLayer()
+                .replay();
+
+        makeRequest(
+                new Request("/mvt/foo/bar/1/0/0.pbf", "GET", null, q("fields", "name"), null),
+                NanoHTTPD.HTTP_OK,
+                VectorTileEncoder.MIME_TYPE
+        );
+
+        mock.verify();
+    }
+
+    @Test
+    public void testBadFilter() throws Exception {
+        mock = MockServer.create()
+                .withMemoryVectorLayer()
+                .replay();
+
+        Request request = new Request("/mvt/foo/bar/1/0/0.pbf", "GET", null, q("filter", "name="),
+            null);
+        assertTrue(handler.canHandle(request, mock.server));
+        try {
+            handler.handle(request, mock.server);
+            fail("expected HttpException");
+        }
+        catch(HttpException e) {
+            assertEquals(NanoHTTPD.HTTP_BADREQUEST, e.status);
+        }
+
+        mock.verify();
+    }
+
+    @Test
+    public void testBadExtent() throws Exception {
+        mock = MockServer.create()
+                .withMemoryVectorLayer()
+                .replay();
+
+        Request request = new Request("/mvt/foo/bar/1/0/0.pbf", "GET", null, q("extent", "0"),
+            null);
+        assertTrue(handler.canHandle(request, mock.server));
+        try {
+            handler.handle(request, mock.server);
+            fail("expected HttpException");
+        }
+        catch(HttpException e) {
+            assertEquals(NanoHTTPD.HTTP_BADREQUEST, e.status);
+        }
+
+        mock.verify();
+    }
+}
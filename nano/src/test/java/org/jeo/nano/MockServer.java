@@ -18,6 +18,7 @@ import com.google.common.base.Function;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
+import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Point;
 
@@ -35,6 +36,7 @@ import static org.easymock.EasyMock.expectLastCall;
 import org.easymock.IAnswer;
 import org.easymock.IExpectationSetters;
 import org.easymock.classextension.EasyMock;
+import org.jeo.data.Aggregate;
 import org.jeo.data.Cursor;
 import org.jeo.data.Cursors;
 import org.jeo.data.DataRepositoryView;
@@ -139,6 +141,26 @@ public class MockServer {
         return this;
     }
 
+    MockServer withNearestFeatures() throws Exception {
+        expect(vectorLayer.cursor(new Query().nearest(new Coordinate(-97, 31), 3)))
+                .andReturn(Cursors.empty(Feature.class)).once();
+
+        return this;
+    }
+
+    MockServer withAggregateFeatures() throws Exception {
+        Map<String,Object> values = new LinkedHashMap<String, Object>();
+        values.put("name", "foo");
+        values.put("count", 2l);
+        values.put("sum_value", 3.0);
+
+        expect(vectorLayer.cursor(new Query().aggregate(Aggregate.count(), Aggregate.sum("value"))
+            .groupBy("name"))).andReturn(Cursors.create(
+                Arrays.asList((Feature) new BasicFeature("0", values)))).once();
+
+        return this;
+    }
+
     MockServer withFeatureHavingId(String id) throws Exception {
         Feature f = new BasicFeature(id);
         f.put("id", id);
@@ -41,6 +41,8 @@ import org.jeo.proj.Proj;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 
 import org.junit.Before;
@@ -183,6 +185,25 @@ public class WMSHandlerTest extends HandlerTestSupport {
         assertEquals("[VALUE] < 5", handler.filters.get(2).toString());
     }
 
+    @Test
+    public void testCombine() throws Exception {
+        WMSHandler handler = new WMSHandler();
+        Style a = Style.build().select("#ds1").set("line-color", "red").endRule().style();
+        Style b = Style.build().select("#ds2").set("line-color", "blue").endRule().style();
+        List<String> names = Arrays.asList("a", "b");
+
+        Style combined = handler.combine(names, Arrays.asList(a, b));
+        assertEquals(2, combined.getRules().size());
+        assertSame(combined, handler.combine(names, Arrays.asList(a, b)));
+
+        // style reloaded by the repository
+        Style b2 = Style.build().select("#ds2").set("line-color", "green").endRule().style();
+        Style reloaded = handler.combine(names, Arrays.asList(a, b2));
+        assertNotSame(combined, reloaded);
+        assertEquals("green", reloaded.getRules().get(1).get("line-color"));
+        assertEquals(1, handler.combined.size());
+    }
+
     static class WMSHandlerRenderCapture extends WMSHandler {
         List<Dataset> dataSet;
         List<Style> styles;
@@ -13,8 +13,6 @@ import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Iterator;
 
-import javax.imageio.ImageIO;
-
 import org.geotools.factory.CommonFactoryFinder;
 import org.geotools.geometry.jts.LiteShape2;
 import org.geotools.referencing.operation.transform.AffineTransform2D;
@@ -35,6 +33,7 @@ import org.jeo.feature.Feature;
 import org.jeo.filter.Expression;
 import org.jeo.filter.Literal;
 import org.jeo.geotools.GT;
+import org.jeo.image.ImageEncoders;
 import org.jeo.map.Layer;
 import org.jeo.map.Map;
 import org.jeo.map.RGB;
@@ -113,7 +112,7 @@ public class GTRenderer extends BaseRenderer {
 
     @Override
     protected boolean canRenderTiles() {
-        return false;
+        return true;
     }
 
     @Override
@@ -174,7 +173,7 @@ public class GTRenderer extends BaseRenderer {
         labelCache.end(g, rect(view.window()));
 
         if (output != null) {
-            ImageIO.write(img, IMAGE_FORMAT.get(opts).toUpperCase(), output);
+            ImageEncoders.create(opts).encode(img, output);
         }
     }
 
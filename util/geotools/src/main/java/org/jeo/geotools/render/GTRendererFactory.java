@@ -5,6 +5,7 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
+import org.jeo.image.ImageEncoders;
 import org.jeo.map.View;
 import org.jeo.map.render.RendererFactory;
 import org.jeo.util.Key;
@@ -28,9 +29,9 @@ public class GTRendererFactory implements RendererFactory<GTRenderer> {
         new Key<Integer>("image-type", Integer.class, BufferedImage.TYPE_4BYTE_ABGR); 
 
     /**
-     * Format of final image to encode.
+     * Format of final image to encode, see {@link ImageEncoders#IMAGE_FORMAT}.
      */
-    public static Key<String> IMAGE_FORMAT = new Key<String>("image-format", String.class, "png");
+    public static Key<String> IMAGE_FORMAT = ImageEncoders.IMAGE_FORMAT;
 
     @Override
     public String getName() {
@@ -18,7 +18,10 @@ import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.regex.Pattern;
 
+import org.jeo.data.Aggregate;
+import org.jeo.data.Aggregator;
 import org.jeo.feature.Field;
 import org.jeo.feature.Schema;
 import org.jeo.filter.All;
@@ -26,6 +29,7 @@ import org.jeo.filter.Comparison;
 import org.jeo.filter.Expression;
 import org.jeo.filter.Filter;
 import org.jeo.filter.FilterVisitor;
+import org.jeo.filter.Filters;
 import org.jeo.filter.Function;
 import org.jeo.filter.Id;
 import org.jeo.filter.Literal;
@@ -54,11 +58,19 @@ import org.jeo.filter.Null;
  * statement are stored in {@link #getArgs()}. When <code>false</code> the encoder will encode 
  * literals directly. 
  * </p>
+ * <p>
+ * Filters that can only partially be encoded are handled with {@link #split(Filter)}, which 
+ * separates the parts of a filter that can be evaluated by the database from those that have 
+ * to be evaluated in memory.
+ * </p>
  * 
  * @author Justin Deoliveira, OpenGeo
  */
 public class FilterSQLEncoder extends FilterVisitor {
 
+    /** regular expression syntax in like patterns */
+    protected static final Pattern REGEX = Pattern.compile("[\\\\.\\[\\]{}()*+?^$|]");
+
     protected PrimaryKey pkey;
     protected DbTypes dbtypes = new DbTypes();
     protected Schema schema;
@@ -68,6 +80,12 @@ public class FilterSQLEncoder extends FilterVisitor {
     protected boolean prepared = true;
     protected List<Pair<Object, Integer>> args;
 
+    /**
+     * Set when the encoded sql only approximates the filter, matching a superset of the features
+     * that match it, for instance when a spatial predicate is encoded as a spatial index lookup.
+     */
+    protected boolean loose;
+
     public FilterSQLEncoder() {
         sql = new SQL();
         args = new ArrayList<Pair<Object, Integer>>();
@@ -101,14 +119,160 @@ public class FilterSQLEncoder extends FilterVisitor {
         this.prepared = prepared;
     }
 
+    /**
+     * Whether the last filter encoded is only approximated by the sql, the sql matching a 
+     * superset of the features matched by the filter.
+     */
+    public boolean isLoose() {
+        return loose;
+    }
+
     public String encode(Filter<?> filter, Object obj) {
         sql.clear();
         args.clear();
+        loose = false;
 
         filter.accept(this, obj);
         return sql.toString();
     }
 
+    /**
+     * Splits a filter into a part that can be encoded as sql and a residual part that has to be 
+     * evaluated in memory.
+     * <p>
+     * The filter is split along its top level <tt>AND</tt> operands. An operand is part of the 
+     * encodable filter if it can be encoded and, when a schema is set, only refers to properties
+     * of the schema. Otherwise it is part of the residual filter. Operands that can only be 
+     * encoded loosely (see {@link #isLoose()}) are part of both filters, the sql narrowing down 
+     * the candidates that the residual filter is evaluated against.
+     * </p>
+     * <p>
+     * This method leaves the state of the encoder undefined, the encodable filter should be 
+     * encoded afterward with {@link #encode(Filter, Object)}.
+     * </p>
+     * @return The encodable filter and the residual filter, either <code>null</code> if empty.
+     */
+    public <T> Pair<Filter<T>,Filter<T>> split(Filter<T> filter) {
+        List<Filter<T>> encodable = new ArrayList<Filter<T>>();
+        List<Filter<T>> residual = new ArrayList<Filter<T>>();
+
+        List<Filter<T>> parts = new ArrayList<Filter<T>>();
+        flatten(filter, parts);
+
+        for (Filter<T> part : parts) {
+            if (Filters.isTrueOrNull(part)) {
+                continue;
+            }
+            if (schema != null && !hasProperties(part)) {
+                residual.add(part);
+                continue;
+            }
+
+            try {
+                encode(part, null);
+                encodable.add(part);
+                if (loose) {
+                    residual.add(part);
+                }
+            }
+            catch(RuntimeException e) {
+                residual.add(part);
+            }
+        }
+
+        return new Pair<Filter<T>, Filter<T>>(and(encodable), and(residual));
+    }
+
+    <T> void flatten(Filter<T> filter, List<Filter<T>> parts) {
+        if (filter instanceof Logic && ((Logic<T>) filter).getType() == Logic.Type.AND) {
+            for (Filter<T> part : ((Logic<T>) filter).getParts()) {
+                flatten(part, parts);
+            }
+        }
+        else if (filter != null) {
+            parts.add(filter);
+        }
+    }
+
+    boolean hasProperties(Filter<?> filter) {
+        for (String p : Filters.properties(filter)) {
+            if (schema.field(p) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    <T> Filter<T> and(List<Filter<T>> parts) {
+        if (parts.isEmpty()) {
+            return null;
+        }
+        return parts.size() == 1 ? parts.get(0) : new Logic<T>(Logic.Type.AND, parts);
+    }
+
+    /**
+     * Encodes the select list of an aggregate query, the group by properties followed by the 
+     * columns of each aggregate as described by {@link Aggregate#columns()}.
+     * <p>
+     * The results of each row can be converted back to aggregate values with 
+     * {@link Aggregator#feature(org.jeo.data.Query, int, Object[])}.
+     * </p>
+     */
+    public String encode(List<Aggregate> aggregates, List<String> groupBy) {
+        sql.clear();
+        args.clear();
+
+        for (String g : groupBy) {
+            sql.name(g).add(", ");
+        }
+        for (Aggregate agg : aggregates) {
+            encode(agg);
+            sql.add(", ");
+        }
+        if (!groupBy.isEmpty() || !aggregates.isEmpty()) {
+            sql.trim(2);
+        }
+        return sql.toString();
+    }
+
+    protected void encode(Aggregate agg) {
+        String prop = agg.getProperty();
+        switch(agg.getType()) {
+        case COUNT:
+            if (prop == null) {
+                sql.add("COUNT(*)");
+            }
+            else {
+                sql.add("COUNT(").name(prop).add(")");
+            }
+            break;
+        case SUM:
+            sql.add("SUM(").name(prop).add(")");
+            break;
+        case MEAN:
+            sql.add("AVG(").name(prop).add(")");
+            break;
+        case MIN:
+            sql.add("MIN(").name(prop).add(")");
+            break;
+        case MAX:
+            sql.add("MAX(").name(prop).add(")");
+            break;
+        case HISTOGRAM:
+            // one column per bin, the last bin includes the upper end of the range
+            int bins = agg.getBins();
+            for (int i = 0; i < bins; i++) {
+                sql.add("SUM(CASE WHEN ").name(prop).add(" >= ").add(agg.edge(i)).add(" AND ")
+                   .name(prop).add(i < bins - 1 ? " < " : " <= ").add(agg.edge(i + 1))
+                   .add(" THEN 1 ELSE 0 END), ");
+            }
+            sql.trim(2);
+            break;
+        default:
+            abort(agg, "unsupported aggregate");
+        }
+    }
+
     protected void abort(Object obj, String reason) {
         throw new FilterSQLException(
             String.format("Unable to encode %s as sql, %s @ %s", obj, reason, sql.toString())); 
@@ -238,9 +402,19 @@ public class FilterSQLEncoder extends FilterVisitor {
     public Object visit(Logic<?> logic, Object obj) {
         switch(logic.getType()) {
         case NOT:
-            sql.add("NOT (");
+            boolean l = loose;
+            loose = false;
+
+            // a null result is false in memory, NOT (...) would keep it null and drop the row
+            sql.add("CASE WHEN (");
             logic.getParts().get(0).accept(this, obj);
-            sql.add(")");
+            sql.add(") THEN 0 ELSE 1 END = 1");
+
+            if (loose) {
+                // negating a superset does not give a superset
+                abort(logic, "approximate filter can not be negated");
+            }
+            loose = l;
             break;
         default:
             String op = logic.getType().name();
@@ -290,6 +464,12 @@ public class FilterSQLEncoder extends FilterVisitor {
         case WITHIN:
             function = "ST_Within";
             break;
+        case CONTAINS:
+            function = "ST_Contains";
+            break;
+        case EQUALS:
+            function = "ST_Equals";
+            break;
         default:
             abort(spatial, "unsupported spatial filter");
         }
@@ -305,6 +485,10 @@ public class FilterSQLEncoder extends FilterVisitor {
     @Override
     public Object visit(Math math, Object obj) {
         sql.add('(');
+        if (math.getOperator() == Math.DIVIDE) {
+            // math is evaluated in floating point, avoid integer division
+            sql.add("1.0*");
+        }
         math.getLeft().accept(this, obj);
         sql.add(math.getOperator());
         math.getRight().accept(this, obj);
@@ -314,30 +498,89 @@ public class FilterSQLEncoder extends FilterVisitor {
 
     @Override
     public Object visit(Like like, Object obj) {
+        String match = match(like);
+
+        if (like.isNegated()) {
+            orNull(like.getProperty(), obj);
+        }
         like.getProperty().accept(this, obj);
-        sql.add(" LIKE ");
-        sql.str((String) like.getMatch().evaluate(null));
+        sql.add(like.isNegated() ? " NOT LIKE " : " LIKE ");
+        sql.str(match);
+        if (like.isNegated()) {
+            sql.add(')');
+        }
         return obj;
     }
 
+    /**
+     * Opens the "(p IS NULL OR " prefix of a negated comparison, the filter matches null values
+     * in memory but NOT LIKE / NOT IN never do in sql. The caller closes the parenthesis.
+     */
+    protected void orNull(Expression property, Object obj) {
+        sql.add('(');
+        property.accept(this, obj);
+        sql.add(" IS NULL OR ");
+    }
+
+    /**
+     * Returns the pattern of a like filter, aborting if the pattern relies on regular expression
+     * syntax that has no sql equivalent.
+     */
+    protected String match(Like<?> like) {
+        Object match = like.getMatch().evaluate(null);
+        if (!(match instanceof String) || REGEX.matcher((String) match).find()) {
+            abort(like, "pattern can not be expressed in sql");
+        }
+
+        String m = (String) match;
+
+        // a literal underscore in the pattern but a single character wildcard in sql
+        superset(like, m.indexOf('_') >= 0);
+
+        // the wildcard matches line terminators in sql but not in memory
+        superset(like, m.indexOf('%') >= 0);
+        return m;
+    }
+
+    /**
+     * Marks the encoding of a like filter as loose if the sql pattern matches more values than the
+     * filter does. A negated filter would then match fewer values in sql and is aborted.
+     */
+    protected void superset(Like<?> like, boolean superset) {
+        if (superset) {
+            if (like.isNegated()) {
+                abort(like, "pattern can not be expressed in sql");
+            }
+            loose = true;
+        }
+    }
+
     @Override
     public Object visit(In in, Object obj) {
+        if (in.isNegated()) {
+            orNull(in.getProperty(), obj);
+        }
         in.getProperty().accept(this, obj);
-        sql.add(" IN ");
+        sql.add(in.isNegated() ? " NOT IN " : " IN ");
         sql.add('(');
         List<Expression> vals = in.getValues();
         for (int i = 0; i < vals.size(); i++) {
-            Object evaluate = vals.get(i).evaluate(null);
+            Object evaluate = vals.get(i) instanceof Literal ? vals.get(i).evaluate(null) : null;
             if (evaluate instanceof String) {
                 sql.str(evaluate.toString());
-            } else {
+            } else if (evaluate instanceof Number) {
                 sql.add(evaluate);
+            } else {
+                abort(in, "only string and number values supported");
             }
             if (i + 1 < vals.size()) {
                 sql.add(',');
             }
         }
         sql.add(')');
+        if (in.isNegated()) {
+            sql.add(')');
+        }
         return obj;
     }
 
@@ -352,7 +595,7 @@ public class FilterSQLEncoder extends FilterVisitor {
         return obj;
     }
 
-    Field field(Expression e1, Expression e2) {
+    protected Field field(Expression e1, Expression e2) {
         if (schema == null) {
             return null;
         }
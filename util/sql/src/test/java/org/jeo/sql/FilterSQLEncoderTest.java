@@ -16,8 +16,16 @@ package org.jeo.sql;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jeo.data.Aggregate;
+import org.jeo.feature.SchemaBuilder;
 import org.jeo.filter.Filter;
+import org.jeo.filter.cql.CQL;
 import org.jeo.geom.GeomBuilder;
+import org.jeo.util.Pair;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -74,6 +82,20 @@ public class FilterSQLEncoderTest {
         assertEncoded(f, "ST_Intersects(\"geom\", ST_GeomFromText(?,?))", geo.toText(), 4326);
     }
 
+    @Test
+    public void testAggregate() throws Exception {
+        List<Aggregate> aggs = Arrays.asList(Aggregate.count(), Aggregate.sum("foo"),
+            Aggregate.mean("foo"), Aggregate.histogram("bar", 0, 2, 2));
+
+        assertEquals("\"baz\", COUNT(*), SUM(\"foo\"), AVG(\"foo\"), "
+            + "SUM(CASE WHEN \"bar\" >= 0.0 AND \"bar\" < 1.0 THEN 1 ELSE 0 END), "
+            + "SUM(CASE WHEN \"bar\" >= 1.0 AND \"bar\" <= 2.0 THEN 1 ELSE 0 END)",
+            sqle.encode(aggs, Arrays.asList("baz")));
+        assertTrue(sqle.getArgs().isEmpty());
+
+        assertEquals("\"baz\"", sqle.encode(new ArrayList<Aggregate>(), Arrays.asList("baz")));
+    }
+
     void assertEncoded(Filter f, String sql, Object... args) {
         assertEquals(sql, sqle.encode(f, null));
         assertEquals(args.length, sqle.getArgs().size());
@@ -92,6 +114,13 @@ public class FilterSQLEncoderTest {
     public void testLike() throws Exception {
         Filter f = Filter.build().property("x").literal("foo%bar").like().filter();
         assertEquals("\"x\" LIKE 'foo%bar'", sqle.encode(f, null));
+
+        // wildcard matches line terminators in sql only
+        assertTrue(sqle.isLoose());
+
+        f = Filter.build().property("x").literal("foo").like().filter();
+        assertEquals("\"x\" LIKE 'foo'", sqle.encode(f, null));
+        assertFalse(sqle.isLoose());
     }
 
     @Test
@@ -100,6 +129,72 @@ public class FilterSQLEncoderTest {
         assertEquals("(\"x\"*?) = ?", sqle.encode(f, null));
     }
 
+    @Test
+    public void testNegated() throws Exception {
+        Filter f = CQL.parse("x NOT IN ('six', 6)");
+        assertEquals("(\"x\" IS NULL OR \"x\" NOT IN ('six',6))", sqle.encode(f, null));
+
+        f = CQL.parse("x NOT LIKE 'foo'");
+        assertEquals("(\"x\" IS NULL OR \"x\" NOT LIKE 'foo')", sqle.encode(f, null));
+        assertFalse(sqle.isLoose());
+
+        try {
+            sqle.encode(CQL.parse("x NOT LIKE 'foo%'"), null);
+            fail("negated wildcard encoded");
+        }
+        catch(FilterSQLException e) {
+        }
+
+        f = CQL.parse("NOT (x = 'foo')");
+        assertEquals("CASE WHEN (\"x\" = ?) THEN 0 ELSE 1 END = 1", sqle.encode(f, null));
+    }
+
+    @Test
+    public void testLikeLoose() throws Exception {
+        Filter f = Filter.build().property("x").literal("foo_bar%").like().filter();
+        assertEquals("\"x\" LIKE 'foo_bar%'", sqle.encode(f, null));
+        assertTrue(sqle.isLoose());
+
+        for (String regex : Arrays.asList("foo.*", "fo[o]", "(foo)?")) {
+            try {
+                sqle.encode(Filter.build().property("x").literal(regex).like().filter(), null);
+                fail("regular expression encoded: " + regex);
+            }
+            catch(FilterSQLException e) {
+            }
+        }
+    }
+
+    @Test
+    public void testDivide() throws Exception {
+        Filter f = Filter.build().property("x").literal(2).divide().literal(3).gt().filter();
+        assertEquals("(1.0*\"x\"/?) > ?", sqle.encode(f, null));
+    }
+
+    @Test
+    public void testSplit() throws Exception {
+        sqle.setSchema(new SchemaBuilder("widgets").field("x", Integer.class)
+            .field("name", String.class).schema());
+
+        Filter f = CQL.parse("x > 1 AND (name LIKE 'w.*' AND y = 2) AND name LIKE 'a_%'");
+        Pair<Filter<Object>, Filter<Object>> split = sqle.split(f);
+        assertEquals(CQL.parse("x > 1 AND name LIKE 'a_%'"), split.first());
+        assertEquals(CQL.parse("name LIKE 'w.*' AND y = 2 AND name LIKE 'a_%'").toString(),
+            split.second().toString());
+
+        split = sqle.split(CQL.parse("x > 1 OR y = 2"));
+        assertNull(split.first());
+        assertEquals(CQL.parse("x > 1 OR y = 2"), split.second());
+
+        split = sqle.split(CQL.parse("x > 1 AND name = 'foo'"));
+        assertEquals(CQL.parse("x > 1 AND name = 'foo'"), split.first());
+        assertNull(split.second());
+
+        // loose encoding can't be negated
+        split = sqle.split(CQL.parse("NOT (name LIKE 'a_%')"));
+        assertNull(split.first());
+    }
+
     @Test
     public void testNull() throws Exception {
         Filter f = Filter.build().property("x").isNull().property("y").isNotNull().or().filter();